@@ -107,9 +107,9 @@ public Object transaction(DBReader reader) throws DBOperationCancelledException
       AttributeInfo info = AttributeInfo.instance(reader);
       for (DBAttribute<?> attr : allValues.keySet())
         if (!info.isShadowable(attr)) myNotChanged.putFrom(allValues, attr);
-      myBase = item.getValue(SyncSchema.BASE);
-      myConflict = item.getValue(SyncSchema.CONFLICT);
-      myDownload = item.getValue(SyncSchema.DOWNLOAD);
+      myBase = SyncSchema.readShadow(reader, myItem, SyncSchema.BASE);
+      myConflict = SyncSchema.readShadow(reader, myItem, SyncSchema.CONFLICT);
+      myDownload = SyncSchema.readShadow(reader, myItem, SyncSchema.DOWNLOAD);
       collectAttributes(reader);
       ThreadGate.AWT.execute(this);
       return null;
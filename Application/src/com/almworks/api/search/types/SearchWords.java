@@ -11,8 +11,10 @@
 import com.almworks.api.search.TextSearchUtils;
 import com.almworks.api.syncreg.SyncCubeRegistry;
 import com.almworks.api.syncreg.SyncRegistry;
+import com.almworks.items.api.DBAttribute;
 import com.almworks.items.api.DBReader;
 import com.almworks.items.api.DP;
+import com.almworks.items.api.FullTextPredicate;
 import com.almworks.util.English;
 import com.almworks.util.Terms;
 import com.almworks.util.bool.BoolExpr;
@@ -20,9 +22,11 @@
 import com.almworks.util.text.TextUtil;
 import org.almworks.util.Collections15;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 public class SearchWords implements TextSearchType {
@@ -118,7 +122,7 @@ public TextSearchType getType() {
     }
   }
 
-  private static class MyDP extends DP {
+  private static class MyDP extends DP implements FullTextPredicate {
     @NotNull private final Connection myConnection;
     @NotNull private final String[] myStringWords;
     @NotNull private final char[][] myCharWords;
@@ -134,6 +138,25 @@ public boolean accept(long item, DBReader reader) {
       return myConnection.matchAllWords(item, myCharWords, myStringWords, reader);
     }
 
+    @Nullable
+    @Override
+    public String[] getFullTextWords() {
+      return myConnection.getFullTextSlaveReferences() != null ? myStringWords : null;
+    }
+
+    @NotNull
+    @Override
+    public List<DBAttribute<Long>> getFullTextSlaveReferences() {
+      List<DBAttribute<Long>> references = myConnection.getFullTextSlaveReferences();
+      return references != null ? references : Collections.<DBAttribute<Long>>emptyList();
+    }
+
+    @Override
+    public boolean isCacheable() {
+      // refers connection
+      return false;
+    }
+
     @Override
     protected boolean equalDP(DP other) {
       final MyDP that = (MyDP)other;
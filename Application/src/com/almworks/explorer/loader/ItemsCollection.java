@@ -45,6 +45,10 @@
  */
 public class ItemsCollection implements ItemModelRegistryImpl.Listener {
   private final MapMarshaller<Long, LoadedItemImpl> myItems = new MapMarshaller<Long, LoadedItemImpl>();
+  /**
+   * Values of the loaded items are stored by columns: a query result may have many thousands of items
+   */
+  private final LoadedItemColumns myColumns = new LoadedItemColumns();
   private final ItemModelRegistryImpl myRegistry;
   private final TimeTracker myTimeTracker;
   private final DetachComposite myDetach = new DetachComposite();
@@ -151,7 +155,7 @@ public Object transaction(DBReader reader) {
   public void addItem(final long item, final DBReader reader) {
     LoadedItemImpl loadedItem = myItems.putNew(item, new Computable<LoadedItemImpl>() {
       public LoadedItemImpl compute() {
-        return LoadedItemImpl.create(myRegistry, item, reader);
+        return LoadedItemImpl.create(myRegistry, item, reader, myColumns);
       }
     });
     if (loadedItem != null) {
@@ -243,7 +247,7 @@ public boolean isElementSetChanged() {
 
   public ItemsCollection createCopy() {
     final ItemsCollection copy = new ItemsCollection(myRegistry, myTimeTracker);
-    myItems.copyTo(copy.myItems, LoadedItemImpl.COPIER);
+    myItems.copyTo(copy.myItems, LoadedItemImpl.copier(copy.myColumns));
 
     Collection<LoadedItemImpl> allItems = myListModelUpdater.getAllElements();
     List<LoadedItemImpl> listCopy = Collections15.arrayList(allItems.size());
@@ -0,0 +1,32 @@
+package com.almworks.explorer.loader;
+
+import com.almworks.api.application.ItemKey;
+import com.almworks.util.properties.PropertyColumns;
+import org.almworks.util.Util;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Values of {@link LoadedItemImpl loaded items} of one {@link ItemsCollection}. Enum values of many items are
+ * usually the same {@link ItemKey item keys}, so they are shared too.
+ */
+class LoadedItemColumns extends PropertyColumns {
+  @Override
+  protected boolean isShareable(@NotNull Object value) {
+    return value instanceof ItemKey || super.isShareable(value);
+  }
+
+  @Override
+  protected boolean canShare(@NotNull Object stored, @NotNull Object value) {
+    if (!super.canShare(stored, value))
+      return false;
+    if (!(value instanceof ItemKey))
+      return true;
+    // item keys are equal by id, a renamed key is not shared with the old one
+    ItemKey storedKey = (ItemKey) stored;
+    ItemKey key = (ItemKey) value;
+    return storedKey.getResolvedItem() == key.getResolvedItem()
+      && Util.equals(storedKey.getDisplayName(), key.getDisplayName())
+      && Util.equals(storedKey.getOrder(), key.getOrder())
+      && storedKey.getIcon() == key.getIcon();
+  }
+}
@@ -15,6 +15,7 @@
 import com.almworks.util.commons.Procedure;
 import com.almworks.util.exec.ThreadGate;
 import com.almworks.util.model.SetHolder;
+import com.almworks.util.properties.PropertyColumns;
 import com.almworks.util.properties.PropertyMap;
 import com.almworks.util.properties.PropertyMapValueDecorator;
 import com.almworks.util.threads.Threads;
@@ -62,10 +63,11 @@ public void invoke(LoadedItemImpl arg) {
 
   private final Object myLock = new Object();
   private UpdateMode myMode = LIFE_MODE;
-  private final PropertyMap myValues = new PropertyMap();
+  private final PropertyMap myValues;
   private final DBStatusHolder myDBStatus;
 
-  private LoadedItemImpl(@NotNull PropertyMap values) {
+  private LoadedItemImpl(@NotNull PropertyMap values, @Nullable PropertyColumns columns) {
+    myValues = createValues(columns);
     values.copyTo(myValues);
     myDBStatus = new DBStatusHolder(this);
   }
@@ -74,18 +76,31 @@ void updateStatus(DBReader reader) {
     myDBStatus.updateStatus(reader);
   }
 
-  private LoadedItemImpl(PropertyMap originalValues, DBStatusHolder originalStatus) {
+  private LoadedItemImpl(PropertyMap originalValues, DBStatusHolder originalStatus, @Nullable PropertyColumns columns) {
     DECL.assumeThreadMayBeAWT();
+    myValues = createValues(columns);
     originalValues.copyTo(myValues);
     myDBStatus = new DBStatusHolder(this);
     myDBStatus.setStatus(originalStatus.getStatus());
   }
 
+  private static PropertyMap createValues(@Nullable PropertyColumns columns) {
+    return columns == null ? new PropertyMap() : new PropertyMap(null, null, columns.createRow());
+  }
+
   @Nullable
   public static LoadedItemImpl create(ItemModelRegistry registry, long item, DBReader reader) {
+    return create(registry, item, reader, null);
+  }
+
+  /**
+   * @param columns storage of values shared by items of a collection, null to store values in the item
+   */
+  @Nullable
+  public static LoadedItemImpl create(ItemModelRegistry registry, long item, DBReader reader, @Nullable PropertyColumns columns) {
     PropertyMap values = registry.extractValues(SyncUtils.readTrunk(reader, item));
     if (values == null) return null;
-    LoadedItemImpl r = new LoadedItemImpl(values);
+    LoadedItemImpl r = new LoadedItemImpl(values, columns);
     r.updateStatus(reader);
     return r;
   }
@@ -288,7 +303,7 @@ private interface UpdateMode {
 
     void flushModifications(LoadedItemImpl loaded);
 
-    LoadedItemImpl copy(LoadedItemImpl parameter);
+    LoadedItemImpl copy(LoadedItemImpl parameter, @Nullable PropertyColumns columns);
   }
 
 
@@ -348,8 +363,8 @@ public void flushModifications(LoadedItemImpl loaded) {
       myLastValues = null;
     }
 
-    public LoadedItemImpl copy(LoadedItemImpl parameter) {
-      LoadedItemImpl copy = new LoadedItemImpl(parameter.myValues, parameter.myDBStatus);
+    public LoadedItemImpl copy(LoadedItemImpl parameter, @Nullable PropertyColumns columns) {
+      LoadedItemImpl copy = new LoadedItemImpl(parameter.myValues, parameter.myDBStatus, columns);
       FreezedMode frozenMode = new FreezedMode();
       if (myLastValues != null) {
         frozenMode.myLastValues = new PropertyMap();
@@ -383,17 +398,21 @@ public boolean isOutOfDate(LoadedItemImpl loadedArtifact) {
     public void flushModifications(LoadedItemImpl loaded) {
     }
 
-    public LoadedItemImpl copy(LoadedItemImpl parameter) {
-      LoadedItemImpl copy = new LoadedItemImpl(parameter.myValues, parameter.myDBStatus);
+    public LoadedItemImpl copy(LoadedItemImpl parameter, @Nullable PropertyColumns columns) {
+      LoadedItemImpl copy = new LoadedItemImpl(parameter.myValues, parameter.myDBStatus, columns);
       copy.myMode = this;
       return copy;
     }
   };
 
-  public static final FactoryWithParameter<LoadedItemImpl, LoadedItemImpl> COPIER =
-    new FactoryWithParameter<LoadedItemImpl, LoadedItemImpl>() {
+  /**
+   * @param columns storage of values of the copies
+   */
+  public static FactoryWithParameter<LoadedItemImpl, LoadedItemImpl> copier(@Nullable final PropertyColumns columns) {
+    return new FactoryWithParameter<LoadedItemImpl, LoadedItemImpl>() {
       public LoadedItemImpl create(LoadedItemImpl parameter) {
-        return parameter.myMode.copy(parameter);
+        return parameter.myMode.copy(parameter, columns);
       }
     };
+  }
 }
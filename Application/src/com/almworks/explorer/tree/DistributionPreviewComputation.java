@@ -8,7 +8,6 @@
 import com.almworks.api.syncreg.ItemHypercube;
 import com.almworks.explorer.qbuilder.filter.BaseEnumConstraintDescriptor;
 import com.almworks.integers.IntArray;
-import com.almworks.integers.LongArray;
 import com.almworks.integers.LongList;
 import com.almworks.integers.LongSetBuilder;
 import com.almworks.items.api.DBAttribute;
@@ -24,7 +23,6 @@
 import org.almworks.util.detach.Lifespan;
 import org.jetbrains.annotations.Nullable;
 
-import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 
@@ -54,50 +52,30 @@ public void perform(Lifespan lifespan, DBReader reader, ItemHypercube cube) {
 //      }
       return;
     }
-    long start = System.currentTimeMillis();
-    LongArray items = myFilter.query(reader).copyItemsSorted();
-    long duration = System.currentTimeMillis() - start;
-    Log.debug("Distribution count: " + duration + "ms/" + items.size() + "count " + myChildren.size() + "childCount " + myFilter.getExpr());
     DBAttribute attribute = myDescriptor.getAttribute();
     if (!Long.class.equals(attribute.getScalarClass())) {
       Log.error("Wrong attribute " + attribute);
       setNoPreview();
       return;
     }
-    DBAttribute<Long> parentAttribute = myDescriptor.getParentAttribute();
+    DBAttribute<Long> parentAttribute;
     switch (attribute.getComposition()) {
-    case SCALAR: readScalarValues(count, reader, attribute, parentAttribute, items); break;
+    case SCALAR: parentAttribute = myDescriptor.getParentAttribute(); break;
     case SET:
-    case LIST: readCollectionValues(count, reader, attribute, items); break;
+    case LIST: parentAttribute = null; break;
     default:
       Log.error("Wrong attribute " + attribute);
       setNoPreview();
       return;
     }
+    long start = System.currentTimeMillis();
+    LongList valueCounts = myFilter.query(reader).valueCount(attribute, parentAttribute);
+    long duration = System.currentTimeMillis() - start;
+    Log.debug("Distribution count: " + duration + "ms/" + valueCounts.size() / 2 + "values " + myChildren.size() + "childCount " + myFilter.getExpr());
+    for (int i = 0; i + 1 < valueCounts.size(); i += 2) count.addCount(valueCounts.get(i), (int) valueCounts.get(i + 1));
     ThreadGate.AWT.execute(new SetPreviewRunnable(count));
   }
 
-  private void readCollectionValues(CountCollector count, DBReader reader, DBAttribute<? extends Collection<Long>> attribute, LongArray items) {
-    for (int i = 0; i < items.size(); i++) {
-      long item = items.get(i);
-      Collection<Long> values = attribute.getValue(item, reader);
-      if (values == null) count.incNullCount();
-      else for (Long value : values) count.incValueCount(value);
-    }
-  }
-
-  private void readScalarValues(CountCollector count, DBReader reader, DBAttribute<Long> attribute, DBAttribute<Long> parentAttribute, LongArray items) {
-    for(int i = 0; i < items.size(); i++) {
-      final long item = items.get(i);
-      Long value = attribute.getValue(item, reader);
-      if (value == null) count.incNullCount();
-      while(value != null && value > 0L) {
-        count.incValueCount(value);
-        value = parentAttribute != null ? parentAttribute.getValue(value, reader) : null;
-      }
-    }
-  }
-
   private void setNoPreview() {
     Log.warn("Setting no preview " + myDescriptor + " " + myChildren.size());
     for (DistributionQueryNodeImpl child : myChildren) child.setPreview(new ItemsPreview.Unavailable());
@@ -226,14 +204,17 @@ public int getCount(Object items) {
       }
     }
 
-    public void incValueCount(Long value) {
-      if (value == null || value <= 0) return;
+    /**
+     * @param value the value or 0 for items without value
+     */
+    public void addCount(long value, int count) {
+      if (value == 0) {
+        if (myCountNulls) myNullCount += count;
+        return;
+      }
+      if (value < 0) return;
       int index = myAllValues.indexOf(value);
-      if (index >= 0) myCount.set(index, myCount.get(index) + 1);
-    }
-
-    public void incNullCount() {
-      if (myCountNulls) myNullCount++;
+      if (index >= 0) myCount.set(index, myCount.get(index) + count);
     }
 
     @Nullable
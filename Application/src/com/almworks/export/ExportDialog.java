@@ -89,7 +89,7 @@ public void onChange() {
 
   private void updateExportDetails() {
     StringBuffer buf = new StringBuffer("<html><body>");
-    buf.append("<b>Exporting:</b> ").append(ExportUtils.getTotals(myData.getRecords())).append(".<br>");
+    buf.append("<b>Exporting:</b> ").append(ExportUtils.getTotals(myData)).append(".<br>");
     buf.append(getAttributesString()).append("<br>");
     appendFormatDetails(buf);
     myForm.setExportDetails(buf.toString());
@@ -18,15 +18,9 @@ public class ExportUtils {
 
   private ExportUtils() {}
 
-  public static String getTotals(List<ExportedData.ArtifactRecord> records) {
+  public static String getTotals(ExportedData data) {
     StringBuffer buf = new StringBuffer();
-    Map<String, Integer> typeCounters = Collections15.linkedHashMap();
-    for (ExportedData.ArtifactRecord record : records) {
-      String typeId = record.getDisplayableType();
-      Integer c = typeCounters.get(typeId);
-      typeCounters.put(typeId, c == null ? 1 : c + 1);
-    }
-    for (Map.Entry<String, Integer> entry : typeCounters.entrySet()) {
+    for (Map.Entry<String, Integer> entry : data.getTypeCounts().entrySet()) {
       String type = entry.getKey();
       Integer count = entry.getValue();
       if (buf.length() > 0)
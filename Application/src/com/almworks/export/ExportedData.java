@@ -11,21 +11,28 @@
 import com.almworks.engine.gui.attachments.Attachment;
 import com.almworks.util.LogHelper;
 import com.almworks.util.advmodel.AListModel;
+import com.almworks.util.exec.ThreadGate;
 import com.almworks.util.models.TableColumnAccessor;
 import com.almworks.util.properties.PropertyMap;
+import com.almworks.util.threads.Computable;
+import com.almworks.util.threads.Threads;
 import com.almworks.util.ui.actions.CantPerformException;
 import org.almworks.util.Collections15;
 import org.almworks.util.Util;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.util.Collection;
-import java.util.Date;
-import java.util.LinkedHashSet;
-import java.util.List;
+import java.util.*;
 
 public class ExportedData {
-  @NotNull private final List<ArtifactRecord> myRecords;
+  /**
+   * Number of items which values are copied at once during export
+   */
+  private static final int CHUNK_SIZE = 200;
+
+  @NotNull private final List<LoadedItem> myItems;
+  @NotNull private final Map<String, Integer> myTypeCounts;
+  @NotNull private final Set<Connection> myConnections;
   @NotNull private final LinkedHashSet<ItemExport> myKeys;
   @NotNull private final List<String> mySelectedColumnsNames;
   @Nullable private final String myCollectionName;
@@ -36,10 +43,13 @@ public class ExportedData {
   private final ModelKey<List<Comment>> myComments;
   private final ModelKey<List<Attachment>> myAttachments;
 
-  private ExportedData(List<ArtifactRecord> records, LinkedHashSet<ItemExport> keys, List<String> selectedColumnsNames,
-    String collectionName, GenericNode node, ItemExport keyExport, ItemExport summaryExport, ModelKey<List<Comment>> comments, ModelKey<List<Attachment>> attachments)
+  private ExportedData(List<LoadedItem> items, Map<String, Integer> typeCounts, Set<Connection> connections,
+    LinkedHashSet<ItemExport> keys, List<String> selectedColumnsNames, String collectionName, GenericNode node,
+    ItemExport keyExport, ItemExport summaryExport, ModelKey<List<Comment>> comments, ModelKey<List<Attachment>> attachments)
   {
-    myRecords = records;
+    myItems = items;
+    myTypeCounts = typeCounts;
+    myConnections = connections;
     myKeys = keys;
     mySelectedColumnsNames = selectedColumnsNames;
     myCollectionName = collectionName;
@@ -56,25 +66,25 @@ public static ExportedData create(TableController controller) throws CantPerform
     if (size == 0)
       throw new CantPerformException();
 
-    List<ArtifactRecord> allRecords = Collections15.arrayList();
-
     List<LoadedItem> items = Collections15.arrayList(Collections15.linkedHashSet(model.toList()));
     LinkedHashSet<ItemExport> exports = new LinkedHashSet<ItemExport>();
     ItemExport keyExport = null;
     ItemExport summaryExport = null;
     ModelKey<List<Comment>> comments = null;
     ModelKey<List<Attachment>> attachments = null;
+    Map<String, Integer> typeCounts = Collections15.linkedHashMap();
+    Set<Connection> connections = Collections15.hashSet();
     for (LoadedItem item : items) {
-      Connection connection = item.getConnection();
-      PropertyMap map = new PropertyMap(item.getValues());
+      connections.add(item.getConnection());
       ExportDescription description = item.getMetaInfo().getExportDescription();
       exports.addAll(description.getExports());
       keyExport = areSame(keyExport, description.getItemKeyExport());
       summaryExport = areSame(summaryExport, description.getItemSummaryExport());
       comments = areSame(comments, description.getComments());
       attachments = areSame(attachments, description.getAttachments());
-      ArtifactRecord record = new ArtifactRecord(map, connection, description.getTypeDisplayName());
-      allRecords.add(record);
+      String type = description.getTypeDisplayName();
+      Integer count = typeCounts.get(type);
+      typeCounts.put(type, count == null ? 1 : count + 1);
     }
 
     @Nullable String collectionName = controller.getCollectionShortName();
@@ -83,7 +93,7 @@ public static ExportedData create(TableController controller) throws CantPerform
     List<String> selectedColumnsNames = Collections15.arrayList();
     List<TableColumnAccessor<LoadedItem, ?>> columns = controller.getSelectedColumns();
     for (TableColumnAccessor<LoadedItem, ?> column : columns) selectedColumnsNames.add(column.getId());
-    return new ExportedData(allRecords, exports, selectedColumnsNames, collectionName, node, keyExport, summaryExport, comments, attachments);
+    return new ExportedData(items, typeCounts, connections, exports, selectedColumnsNames, collectionName, node, keyExport, summaryExport, comments, attachments);
   }
 
   private static <T> T areSame(T prev, T next) {
@@ -93,8 +103,27 @@ private static <T> T areSame(T prev, T next) {
     return prev;
   }
 
-  public List<ArtifactRecord> getRecords() {
-    return myRecords;
+  /**
+   * Records are copied from the table items by chunks while iterated, so the iteration must not be performed on AWT thread.
+   * Each iteration copies the records again.
+   */
+  public Iterable<ArtifactRecord> getRecords() {
+    return new Iterable<ArtifactRecord>() {
+      public Iterator<ArtifactRecord> iterator() {
+        return new RecordIterator();
+      }
+    };
+  }
+
+  public int getRecordCount() {
+    return myItems.size();
+  }
+
+  /**
+   * @return number of exported items of each type
+   */
+  public Map<String, Integer> getTypeCounts() {
+    return Collections.unmodifiableMap(myTypeCounts);
   }
 
   public LinkedHashSet<ItemExport> getKeys() {
@@ -139,11 +168,71 @@ public ModelKey<List<Attachment>> getAttachments() {
   }
 
   public Collection<Connection> getConnections() {
-    final Collection<Connection> conns = Collections15.hashSet();
-    for(final ArtifactRecord rec : myRecords) {
-      conns.add(rec.getConnection());
+    return Collections.unmodifiableSet(myConnections);
+  }
+
+  /**
+   * Iterates records converting the source items by chunks, only the current chunk of records is kept
+   */
+  static abstract class ChunkIterator<S, R> implements Iterator<R> {
+    private final List<S> mySources;
+    private final int myChunkSize;
+    private final List<R> myChunk = Collections15.arrayList();
+    private int myChunkIndex;
+    private int myNextSource;
+
+    protected ChunkIterator(List<S> sources, int chunkSize) {
+      mySources = sources;
+      myChunkSize = chunkSize;
+    }
+
+    public boolean hasNext() {
+      return myChunkIndex < myChunk.size() || myNextSource < mySources.size();
+    }
+
+    public R next() {
+      if (!hasNext())
+        throw new NoSuchElementException();
+      if (myChunkIndex >= myChunk.size()) {
+        List<S> sources = mySources.subList(myNextSource, Math.min(myNextSource + myChunkSize, mySources.size()));
+        myNextSource += sources.size();
+        myChunk.clear();
+        myChunkIndex = 0;
+        myChunk.addAll(readChunk(sources));
+        assert myChunk.size() == sources.size() : myChunk.size() + " " + sources.size();
+      }
+      return myChunk.get(myChunkIndex++);
+    }
+
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+
+    protected abstract List<R> readChunk(List<S> sources);
+  }
+
+  /**
+   * Copies the values the table shows (including decorated and not yet saved ones) in AWT thread
+   */
+  private class RecordIterator extends ChunkIterator<LoadedItem, ArtifactRecord> {
+    public RecordIterator() {
+      super(myItems, CHUNK_SIZE);
+    }
+
+    @Override
+    protected List<ArtifactRecord> readChunk(final List<LoadedItem> items) {
+      Threads.assertLongOperationsAllowed();
+      return ThreadGate.AWT_IMMEDIATE.compute(new Computable<List<ArtifactRecord>>() {
+        public List<ArtifactRecord> compute() {
+          List<ArtifactRecord> records = Collections15.arrayList(items.size());
+          for (LoadedItem item : items) {
+            String type = item.getMetaInfo().getExportDescription().getTypeDisplayName();
+            records.add(new ArtifactRecord(new PropertyMap(item.getValues()), item.getConnection(), type));
+          }
+          return records;
+        }
+      });
     }
-    return conns;
   }
 
   public static class ArtifactRecord {
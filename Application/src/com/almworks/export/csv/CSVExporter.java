@@ -19,7 +19,6 @@
 import java.nio.charset.Charset;
 import java.text.DateFormat;
 import java.text.NumberFormat;
-import java.util.List;
 import java.util.Set;
 
 public class CSVExporter extends WriterExporterHelper {
@@ -64,8 +63,8 @@ protected void writeData(PrintWriter out, ExportedData data, ExportParameters pa
 
     if (Util.NN(parameters.get(CSVParams.OUTPUT_HEADER), false))
       writeHeader(out, keys, delimiter);
-    List<ExportedData.ArtifactRecord> records = data.getRecords();
-    int size = records.size();
+    Iterable<ExportedData.ArtifactRecord> records = data.getRecords();
+    int size = data.getRecordCount();
     double step = size == 0 ? 0F : 1F / size;
     int count = 0;
     ExportContext context = new ExportContext(numberFormat, dateFormat, false);
@@ -18,7 +18,6 @@
 import java.net.URL;
 import java.text.DateFormat;
 import java.text.NumberFormat;
-import java.util.List;
 import java.util.Set;
 import java.util.regex.Pattern;
 
@@ -38,12 +37,12 @@ protected void writeData(PrintWriter out, ExportedData data, ExportParameters pa
 
   private void writeDataTables(PrintWriter out, ExportedData data, ExportParameters parameters) {
     Set<ItemExport> keys = parameters.getKeys();
-    List<ExportedData.ArtifactRecord> records = data.getRecords();
+    Iterable<ExportedData.ArtifactRecord> records = data.getRecords();
     DateFormat dateFormat = parameters.getDateFormat();
     NumberFormat numberFormat = parameters.getNumberFormat();
     Integer p = parameters.get(HTMLParams.BUGS_PER_TABLE);
     int bugsPerTable = p == null ? MAX_BUGS_PER_PAGE : p;
-    int size = records.size();
+    int size = data.getRecordCount();
     double step = size == 0 ? 0F : 1F / size;
     int count = 0;
     int totalPages = (size + bugsPerTable - 1) / bugsPerTable;
@@ -114,7 +113,7 @@ private void writeTableHeader(PrintWriter out, Set<ItemExport> keys, int page, i
       writeInfoRow(out, "Path", getPath(node), "infoPath");
     }
     writeInfoRow(out, "Report Created", getDate(data.getDateCollected(), parameters.getLocale()), "infoDate");
-    writeInfoRow(out, "Total", ExportUtils.getTotals(data.getRecords()), "infoTotal");
+    writeInfoRow(out, "Total", ExportUtils.getTotals(data), "infoTotal");
     writeInfoRow(out, "Page", page + " of " + totalPages, "page");
     out.println("  </table>");
     out.println("</div>");
@@ -155,7 +154,7 @@ private void writeInfoRow(PrintWriter out, String name, String value, String css
   private void writeHtmlFooter(PrintWriter out, ExportedData data, ExportParameters parameters) {
     out.println("<div class=\"footer\">");
     out.println("  <table class=\"footerInfo infoTable\" border=\"0\" cellpadding=\"0\" cellspacing=\"0\">");
-    writeInfoRow(out, "Total", ExportUtils.getTotals(data.getRecords()), "infoTotal");
+    writeInfoRow(out, "Total", ExportUtils.getTotals(data), "infoTotal");
     out.println("  </table>");
     out.println("</div>");
     out.println("</body>");
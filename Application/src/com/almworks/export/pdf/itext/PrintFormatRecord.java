@@ -16,7 +16,9 @@
 import com.itextpdf.text.Document;
 import com.itextpdf.text.DocumentException;
 import com.itextpdf.text.pdf.PdfWriter;
+import org.almworks.util.Collections15;
 import org.almworks.util.Log;
+import org.jetbrains.annotations.Nullable;
 import util.concurrent.SynchronizedBoolean;
 
 import java.io.IOException;
@@ -24,8 +26,10 @@
 import java.text.DateFormat;
 import java.text.NumberFormat;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -56,10 +60,13 @@ public List<PrintElement<Document>> buildList() {
 
     final Collection<Connection> conns = myData.getConnections();
     ExportContext context = new ExportContext(myParameters.getNumberFormat(), myParameters.getDateFormat(), false);
+    Iterator<ExportedData.ArtifactRecord> records = myData.getRecords().iterator();
+    PropertyMap firstValues = records.hasNext() ? records.next().getValues() : null;
+    Map<ItemExport, ExportValueType> types = Collections15.linkedHashMap();
     for (ItemExport modelKey : exportkeySet) {
       if (modelKey.isExportable(conns)) {
-        ExportValueType type = getExportValueType(modelKey, context);
-        assert isValueTypeForAllRecords(modelKey, type, context) : type + " " + modelKey;
+        ExportValueType type = getExportValueType(modelKey, firstValues, context);
+        types.put(modelKey, type);
         if (type == ExportValueType.LARGE_STRING) {
           builder.addLargeField(modelKey);
         } else {
@@ -67,6 +74,7 @@ public List<PrintElement<Document>> buildList() {
         }
       }
     }
+    assert isValueTypeForAllRecords(types, context) : types;
 
     if (myParameters.getBoolean(PDFParams.COMMENTS)) {
       final ModelKey<List<Comment>> modelKey = myData.getComments();
@@ -81,26 +89,31 @@ public List<PrintElement<Document>> buildList() {
     return builder.createList();
   }
 
-  private boolean isValueTypeForAllRecords(ItemExport modelKey, ExportValueType type, ExportContext context) {
+  /**
+   * Checks all the records in one pass, since the records are copied again on every iteration
+   */
+  private boolean isValueTypeForAllRecords(Map<ItemExport, ExportValueType> types, ExportContext context) {
     for (ExportedData.ArtifactRecord artifactRecord : myData.getRecords()) {
-      Pair<String, ExportValueType> pair = modelKey.formatForExport(artifactRecord.getValues(), context);
-      if (pair == null)
-        continue;
-      ExportValueType t = pair.getSecond();
-      if (type != null && t != type) {
-        Log.warn("export format: " + modelKey.getDisplayName() + " " + type + " " + t);
+      for (Map.Entry<ItemExport, ExportValueType> entry : types.entrySet()) {
+        ItemExport modelKey = entry.getKey();
+        Pair<String, ExportValueType> pair = modelKey.formatForExport(artifactRecord.getValues(), context);
+        if (pair == null)
+          continue;
+        ExportValueType type = entry.getValue();
+        ExportValueType t = pair.getSecond();
+        if (type != null && t != type) {
+          Log.warn("export format: " + modelKey.getDisplayName() + " " + type + " " + t);
+        }
       }
     }
     return true;
   }
 
-  private ExportValueType getExportValueType(ItemExport modelKey, ExportContext context) {
-    List<ExportedData.ArtifactRecord> records = myData.getRecords();
-    if (records.isEmpty())
+  private static ExportValueType getExportValueType(ItemExport modelKey, @Nullable PropertyMap firstValues, ExportContext context) {
+    if (firstValues == null)
       return ExportValueType.STRING;
-    ExportedData.ArtifactRecord first = records.get(0);
     Pair<String,ExportValueType> pair =
-      modelKey.formatForExport(first.getValues(), context);
+      modelKey.formatForExport(firstValues, context);
     if (pair == null)
       return ExportValueType.STRING;
     return pair.getSecond();
@@ -120,7 +133,7 @@ public void writePdf(OutputStream outStream, Progress progress, SynchronizedBool
       }
 
       double p = 0.1;
-      double step = 0.9 / myData.getRecords().size();
+      double step = 0.9 / myData.getRecordCount();
 
       NumberFormat numberFormat = myParameters.getNumberFormat();
       DateFormat dateFormat = myParameters.getDateFormat();
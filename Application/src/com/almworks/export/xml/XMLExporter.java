@@ -19,7 +19,6 @@
 import java.io.PrintWriter;
 import java.text.DateFormat;
 import java.text.NumberFormat;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -47,8 +46,8 @@ private void writeIssues(PrintWriter out, ExportedData data, ExportParameters pa
     Set<ItemExport> keys = parameters.getKeys();
     DateFormat dateFormat = parameters.getDateFormat();
     NumberFormat numberFormat = parameters.getNumberFormat();
-    List<ExportedData.ArtifactRecord> records = data.getRecords();
-    int size = records.size();
+    Iterable<ExportedData.ArtifactRecord> records = data.getRecords();
+    int size = data.getRecordCount();
     double step = size == 0 ? 0F : 1F / size;
     int count = 0;
     ExportContext context = new ExportContext(numberFormat, dateFormat, false);
@@ -157,6 +157,12 @@ public boolean accept(long item, DBReader reader) {
       return conn.matchAllWords(item, myChars, myWords, reader);
     }
 
+    @Override
+    public boolean isCacheable() {
+      // refers connections
+      return false;
+    }
+
     @Override
     protected boolean equalDP(DP other) {
       return Arrays.equals(myWords, ((MyDP)other).myWords);
@@ -1,10 +1,12 @@
 package com.almworks.sumtable;
 
 import com.almworks.integers.LongArray;
-import com.almworks.items.api.DBAttribute;
-import com.almworks.items.api.DBFilter;
-import com.almworks.items.api.DBReader;
-import com.almworks.items.api.ReadTransaction;
+import com.almworks.integers.LongList;
+import com.almworks.items.api.*;
+import com.almworks.items.dp.DPEquals;
+import com.almworks.items.dp.DPIntersects;
+import com.almworks.items.dp.DPNotNull;
+import com.almworks.util.bool.BoolExpr;
 import com.almworks.util.commons.Procedure;
 import com.almworks.util.exec.ThreadGate;
 import com.almworks.util.threads.Bottleneck;
@@ -215,6 +217,16 @@ public LongArray transaction(DBReader reader) {
         }
       }).waitForCompletion();
 
+      myFilter.getDatabase().readBackground(new ReadTransaction<Object>() {
+        public Object transaction(DBReader reader) {
+          DBQuery query = myFilter.query(reader);
+          fillIndexedBits(items, myRows, rowBits, query);
+          fillIndexedBits(items, myColumns, columnBits, query);
+          fillIndexedBits(items, myCounters, counterBits, query);
+          return null;
+        }
+      }).waitForCompletion();
+
       MyTransaction[] transactions = new MyTransaction[] {
         new MyTransaction(items, rowBits, myRows),
         new MyTransaction(items, columnBits, myColumns),
@@ -227,12 +239,71 @@ public LongArray transaction(DBReader reader) {
       }
     }
 
+    private boolean isIndexed(STFilter filter) {
+      DBAttribute attr = filter.getAttribute();
+      return attr != null && attr.getScalarClass() == Long.class && filter.getValues() != null;
+    }
+
+    /**
+     * Fills bits of filters by attribute values with SQL queries, which use the index on the value column, without
+     * reading values of each item.
+     */
+    private void fillIndexedBits(LongArray items, List<STFilter> filters, BitSet2[] bits, DBQuery query) {
+      for (int i = 0; i < filters.size(); i++) {
+        if (shouldStop())
+          return;
+        STFilter filter = filters.get(i);
+        if (!isIndexed(filter))
+          continue;
+        DBAttribute attr = filter.getAttribute();
+        List<Long> values = Collections15.arrayList();
+        boolean noValue = false;
+        for (Long value : filter.getValues()) {
+          if (value == null)
+            continue;
+          if (value == 0L)
+            noValue = true;
+          else
+            values.add(value);
+        }
+        if (!values.isEmpty()) {
+          BoolExpr<DP> expr = attr.getComposition() == DBAttribute.ScalarComposition.SCALAR ?
+            DPEquals.equalOneOf((DBAttribute<Long>) attr, values) : DPIntersects.create(attr, values);
+          bits[i] = setBits(items, query.query(expr).copyItemsSorted(), true, bits[i]);
+        }
+        if (noValue)
+          bits[i] = setBits(items, query.query(DPNotNull.create(attr)).copyItemsSorted(), false, bits[i]);
+      }
+    }
+
+    /**
+     * Sets bits of items that are contained (or not contained) in the indexed items, both lists are sorted
+     */
+    private BitSet2 setBits(LongArray items, LongList indexed, boolean contained, BitSet2 set) {
+      int size = items.size();
+      int j = 0;
+      for (int i = 0; i < size; i++) {
+        long item = items.get(i);
+        while (j < indexed.size() && indexed.get(j) < item)
+          j++;
+        boolean found = j < indexed.size() && indexed.get(j) == item;
+        if (found == contained) {
+          if (set == null)
+            set = new BitSet2(size);
+          set.set(i);
+        }
+      }
+      return set;
+    }
+
     private void fillFilterListBits(long item, int revisionIndex, List<STFilter> filters, BitSet2[] bits,
       DBReader reader, Map<DBAttribute, Object> cache, int size)
     {
       int count = filters.size();
       for (int i = 0; i < count; i++) {
         final STFilter filter = filters.get(i);
+        if (isIndexed(filter))
+          continue;
 
         final boolean accepted;
         final DBAttribute attr = filter.getAttribute();
@@ -108,6 +108,14 @@ public DBAttribute getAttribute() {
     return myAttribute;
   }
 
+  /**
+   * @return values of the {@link #getAttribute() attribute} accepted by this filter, 0 stands for no value
+   */
+  @Nullable
+  public Set<Long> getValues() {
+    return myLongs;
+  }
+
   public boolean accepts(Object attrValue) {
     if(myLongs != null) {
       if(attrValue instanceof Collection) {
@@ -0,0 +1,72 @@
+package com.almworks.export;
+
+import com.almworks.util.tests.BaseTestCase;
+import org.almworks.util.Collections15;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+public class ExportedDataTests extends BaseTestCase {
+  public void testChunks() {
+    List<Integer> sources = Collections15.arrayList(1, 2, 3, 4, 5);
+    TestIterator iterator = new TestIterator(sources, 2);
+    List<String> records = Collections15.arrayList();
+    while (iterator.hasNext()) records.add(iterator.next());
+    assertEquals(Collections15.arrayList("r1", "r2", "r3", "r4", "r5"), records);
+    assertEquals(Collections15.arrayList(Collections15.arrayList(1, 2), Collections15.arrayList(3, 4), Collections.singletonList(5)), iterator.myChunks);
+  }
+
+  public void testChunkReadOnDemand() {
+    TestIterator iterator = new TestIterator(Collections15.arrayList(1, 2, 3, 4, 5), 2);
+    assertTrue(iterator.hasNext());
+    // nothing is read before the first record is requested
+    assertEquals(0, iterator.myChunks.size());
+    assertEquals("r1", iterator.next());
+    assertEquals("r2", iterator.next());
+    assertEquals(1, iterator.myChunks.size());
+    assertEquals("r3", iterator.next());
+    assertEquals(2, iterator.myChunks.size());
+  }
+
+  public void testExactChunks() {
+    TestIterator iterator = new TestIterator(Collections15.arrayList(1, 2, 3, 4), 2);
+    for (int i = 1; i <= 4; i++) assertEquals("r" + i, iterator.next());
+    assertFalse(iterator.hasNext());
+    assertEquals(2, iterator.myChunks.size());
+    checkNoNext(iterator);
+  }
+
+  public void testEmpty() {
+    TestIterator iterator = new TestIterator(Collections.<Integer>emptyList(), 2);
+    assertFalse(iterator.hasNext());
+    checkNoNext(iterator);
+    assertEquals(0, iterator.myChunks.size());
+  }
+
+  private static void checkNoNext(Iterator<?> iterator) {
+    try {
+      iterator.next();
+      fail();
+    } catch (NoSuchElementException e) {
+      // expected
+    }
+  }
+
+  private static class TestIterator extends ExportedData.ChunkIterator<Integer, String> {
+    private final List<List<Integer>> myChunks = Collections15.arrayList();
+
+    public TestIterator(List<Integer> sources, int chunkSize) {
+      super(sources, chunkSize);
+    }
+
+    @Override
+    protected List<String> readChunk(List<Integer> sources) {
+      myChunks.add(Collections15.arrayList(sources));
+      List<String> records = Collections15.arrayList();
+      for (Integer source : sources) records.add("r" + source);
+      return records;
+    }
+  }
+}
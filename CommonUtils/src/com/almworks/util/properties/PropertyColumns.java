@@ -0,0 +1,258 @@
+package com.almworks.util.properties;
+
+import com.almworks.util.collections.IntArray;
+import org.almworks.util.Collections15;
+import org.almworks.util.Const;
+import org.almworks.util.TypedKey;
+import org.jetbrains.annotations.NotNull;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.AbstractMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Column-oriented storage for many maps with the same keys, such as values of rows of a table.<br>
+ * Each key has a column: an array of values indexed by row. A row is a {@link #createRow() map} that reads and writes
+ * its cells of the columns, so many rows do not need a hash map each. Equal {@link #isShareable(Object) shareable}
+ * values of a column are stored as one instance while the column has few distinct values.<br>
+ * A row is released when its map is garbage collected, then the row is reused by a new map.
+ * Row maps are thread-safe, {@link Map#entrySet()} and {@link Map#keySet()} of a row are snapshots.
+ */
+public class PropertyColumns {
+  private static final Object NULL = new Object();
+  private static final int MAX_SHARED = 256;
+
+  private final Map<TypedKey<?>, Column> myColumns = Collections15.hashMap();
+  private final List<Column> myColumnList = Collections15.arrayList();
+  private final IntArray myFreeRows = new IntArray();
+  private final ReferenceQueue<Row> myReleased = new ReferenceQueue<Row>();
+  private RowReference[] myRows = new RowReference[16];
+  private int[] mySizes = new int[16];
+  private int myRowCount;
+
+  public synchronized Map<TypedKey<?>, Object> createRow() {
+    releaseCollected();
+    int index;
+    if (myFreeRows.size() == 0) {
+      index = myRowCount++;
+      if (index >= myRows.length) {
+        int length = Math.max(index + 1, myRows.length * 2);
+        RowReference[] rows = new RowReference[length];
+        System.arraycopy(myRows, 0, rows, 0, myRows.length);
+        myRows = rows;
+        int[] sizes = new int[length];
+        System.arraycopy(mySizes, 0, sizes, 0, mySizes.length);
+        mySizes = sizes;
+      }
+    } else
+      index = myFreeRows.removeAt(myFreeRows.size() - 1);
+    Row row = new Row(index);
+    myRows[index] = new RowReference(row, myReleased);
+    return row;
+  }
+
+  /**
+   * @return number of rows that are in use or may be reused
+   */
+  public synchronized int getRowCount() {
+    releaseCollected();
+    return myRowCount - myFreeRows.size();
+  }
+
+  public synchronized int getColumnCount() {
+    return myColumnList.size();
+  }
+
+  /**
+   * @return true if equal values of the class may be stored as one instance. The values must be immutable.
+   */
+  protected boolean isShareable(@NotNull Object value) {
+    return value instanceof String || value instanceof Boolean || value instanceof Integer || value instanceof Long;
+  }
+
+  /**
+   * Checks that the stored instance may be used instead of an equal value
+   */
+  protected boolean canShare(@NotNull Object stored, @NotNull Object value) {
+    return stored.getClass() == value.getClass();
+  }
+
+  private void releaseCollected() {
+    assert Thread.holdsLock(this);
+    while (true) {
+      RowReference reference = (RowReference) myReleased.poll();
+      if (reference == null)
+        break;
+      int index = reference.myIndex;
+      if (myRows[index] != reference)
+        continue;
+      for (Column column : myColumnList)
+        column.set(index, null);
+      myRows[index] = null;
+      mySizes[index] = 0;
+      myFreeRows.add(index);
+    }
+  }
+
+  private Object get(int row, TypedKey<?> key) {
+    Column column = myColumns.get(key);
+    return column == null ? null : column.get(row);
+  }
+
+  private Object put(int row, TypedKey<?> key, Object value) {
+    Column column = myColumns.get(key);
+    if (column == null) {
+      column = new Column(key);
+      myColumns.put(key, column);
+      myColumnList.add(column);
+    }
+    Object stored = value == null ? NULL : share(column, value);
+    Object old = column.set(row, stored);
+    if (old == null)
+      mySizes[row]++;
+    return old;
+  }
+
+  private Object remove(int row, TypedKey<?> key) {
+    Column column = myColumns.get(key);
+    if (column == null)
+      return null;
+    Object old = column.set(row, null);
+    if (old != null)
+      mySizes[row]--;
+    return old;
+  }
+
+  private Object share(Column column, Object value) {
+    Map<Object, Object> shared = column.myShared;
+    if (shared == null || !isShareable(value))
+      return value;
+    Object stored = shared.get(value);
+    if (stored != null && canShare(stored, value))
+      return stored;
+    if (stored == null && shared.size() >= MAX_SHARED) {
+      // values are mostly distinct, sharing costs more than it saves
+      column.myShared = null;
+      return value;
+    }
+    shared.put(value, value);
+    return value;
+  }
+
+  private static Object decode(Object stored) {
+    return stored == NULL ? null : stored;
+  }
+
+
+  private static class Column {
+    private final TypedKey<?> myKey;
+    private Object[] myValues = Const.EMPTY_OBJECTS;
+    private Map<Object, Object> myShared = Collections15.hashMap();
+
+    public Column(TypedKey<?> key) {
+      myKey = key;
+    }
+
+    public Object get(int row) {
+      return row < myValues.length ? myValues[row] : null;
+    }
+
+    public Object set(int row, Object value) {
+      if (row >= myValues.length) {
+        if (value == null)
+          return null;
+        Object[] values = new Object[Math.max(row + 1, myValues.length * 2)];
+        System.arraycopy(myValues, 0, values, 0, myValues.length);
+        myValues = values;
+      }
+      Object old = myValues[row];
+      myValues[row] = value;
+      return old;
+    }
+  }
+
+
+  private static class RowReference extends WeakReference<Row> {
+    private final int myIndex;
+
+    public RowReference(Row row, ReferenceQueue<Row> queue) {
+      super(row, queue);
+      myIndex = row.myIndex;
+    }
+  }
+
+
+  private class Row extends AbstractMap<TypedKey<?>, Object> {
+    private final int myIndex;
+
+    public Row(int index) {
+      myIndex = index;
+    }
+
+    @Override
+    public Object get(Object key) {
+      if (!(key instanceof TypedKey))
+        return null;
+      synchronized (PropertyColumns.this) {
+        return decode(PropertyColumns.this.get(myIndex, (TypedKey<?>) key));
+      }
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+      if (!(key instanceof TypedKey))
+        return false;
+      synchronized (PropertyColumns.this) {
+        return PropertyColumns.this.get(myIndex, (TypedKey<?>) key) != null;
+      }
+    }
+
+    @Override
+    public Object put(TypedKey<?> key, Object value) {
+      synchronized (PropertyColumns.this) {
+        return decode(PropertyColumns.this.put(myIndex, key, value));
+      }
+    }
+
+    @Override
+    public Object remove(Object key) {
+      if (!(key instanceof TypedKey))
+        return null;
+      synchronized (PropertyColumns.this) {
+        return decode(PropertyColumns.this.remove(myIndex, (TypedKey<?>) key));
+      }
+    }
+
+    @Override
+    public int size() {
+      synchronized (PropertyColumns.this) {
+        return mySizes[myIndex];
+      }
+    }
+
+    @Override
+    public void clear() {
+      synchronized (PropertyColumns.this) {
+        for (Column column : myColumnList)
+          column.set(myIndex, null);
+        mySizes[myIndex] = 0;
+      }
+    }
+
+    @Override
+    public Set<Entry<TypedKey<?>, Object>> entrySet() {
+      Map<TypedKey<?>, Object> copy = Collections15.hashMap();
+      synchronized (PropertyColumns.this) {
+        for (Column column : myColumnList) {
+          Object value = column.get(myIndex);
+          if (value != null)
+            copy.put(column.myKey, decode(value));
+        }
+      }
+      return copy.entrySet();
+    }
+  }
+}
@@ -238,7 +238,8 @@ public void copyTo(PropertyMap dest) {
     dest.mySingleKey = mySingleKey;
     dest.mySingleObject = mySingleObject;
     if (myValues == null) {
-      dest.myValues = null;
+      if (dest.myValues != null)
+        dest.myValues.clear();
     } else {
       if (dest.myValues == null) {
         dest.myValues = createMap();
@@ -0,0 +1,68 @@
+package com.almworks.util.properties;
+
+import com.almworks.util.tests.BaseTestCase;
+import org.almworks.util.TypedKey;
+
+import java.util.Map;
+
+public class PropertyColumnsTests extends BaseTestCase {
+  private static final TypedKey<String> NAME = TypedKey.create("name");
+  private static final TypedKey<Integer> COUNT = TypedKey.create("count");
+
+  private final PropertyColumns myColumns = new PropertyColumns();
+
+  public void testRows() {
+    Map<TypedKey<?>, Object> row1 = myColumns.createRow();
+    Map<TypedKey<?>, Object> row2 = myColumns.createRow();
+    assertNull(row1.put(NAME, "a"));
+    row2.put(COUNT, 2);
+    row2.put(NAME, null);
+    assertEquals("a", row1.get(NAME));
+    assertFalse(row1.containsKey(COUNT));
+    assertEquals(1, row1.size());
+    assertNull(row2.get(NAME));
+    assertTrue(row2.containsKey(NAME));
+    assertEquals(2, row2.size());
+    assertEquals(2, row2.keySet().size());
+
+    assertEquals("a", row1.remove(NAME));
+    assertTrue(row1.isEmpty());
+    row2.clear();
+    assertTrue(row2.isEmpty());
+    assertEquals(2, myColumns.getRowCount());
+    assertEquals(2, myColumns.getColumnCount());
+  }
+
+  public void testShareValues() {
+    Map<TypedKey<?>, Object> row1 = myColumns.createRow();
+    Map<TypedKey<?>, Object> row2 = myColumns.createRow();
+    row1.put(NAME, new String("value"));
+    row2.put(NAME, new String("value"));
+    assertSame(row1.get(NAME), row2.get(NAME));
+
+    for (int i = 0; i < 1000; i++) row1.put(NAME, "value" + i);
+    row1.put(NAME, new String("other"));
+    row2.put(NAME, new String("other"));
+    assertNotSame(row1.get(NAME), row2.get(NAME));
+    assertEquals(row1.get(NAME), row2.get(NAME));
+  }
+
+  public void testPropertyMap() {
+    PropertyMap source = new PropertyMap();
+    source.put(NAME, "a");
+    source.put(COUNT, 1);
+    PropertyMap map = new PropertyMap(null, null, myColumns.createRow());
+    source.copyTo(map);
+    assertEquals("a", map.get(NAME));
+    assertEquals(Integer.valueOf(1), map.get(COUNT));
+    assertEquals(2, map.size());
+
+    PropertyMap single = PropertyMap.create(COUNT, 2);
+    single.copyTo(map);
+    assertEquals(Integer.valueOf(2), map.get(COUNT));
+    assertNull(map.get(NAME));
+    map.put(NAME, "b");
+    assertEquals(2, map.size());
+    assertEquals(1, myColumns.getRowCount());
+  }
+}
@@ -39,4 +39,12 @@ public interface DownloadManager {
 
   @NotNull
   DownloadedFile getDownloadStatus(String key);
+
+  /**
+   * Gives the downloaded file its own copy of the content, if the content is shared with other downloaded files.
+   * Should be called before the file is passed to a program that may change it.
+   *
+   * long synchronous operation
+   */
+  void detachContent(File file) throws IOException;
 }
@@ -9,6 +9,7 @@
 import com.almworks.util.progress.Progress;
 import com.almworks.util.progress.ProgressSource;
 import org.almworks.util.detach.DetachComposite;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
 
@@ -21,6 +22,20 @@ public interface DownloadOwner {
   HttpResponseData load(DetachComposite life, String argument, boolean retrying, boolean noninteractive, BasicScalarModel<Boolean> cancelFlag)
     throws CannotCreateLoaderException, IOException, HttpLoaderException;
 
+  /**
+   * Loads the content starting from the offset, used to resume an interrupted download.<br>
+   * Implementations that cannot request a range of the content may ignore the offset and load the whole content: the
+   * caller checks the response status and the Content-Range header.
+   * @param offset number of bytes already received, 0 to load whole content
+   * @param validator ETag or Last-Modified of the response that started the download, to be sent as If-Range. So the
+   * server sends whole content if the file has changed since. Not null if the offset is positive.
+   */
+  default HttpResponseData load(DetachComposite life, String argument, boolean retrying, boolean noninteractive, BasicScalarModel<Boolean> cancelFlag,
+    long offset, @Nullable String validator) throws CannotCreateLoaderException, IOException, HttpLoaderException
+  {
+    return load(life, argument, retrying, noninteractive, cancelFlag);
+  }
+
   class DownloadTracker implements StreamTransferTracker {
     public static final String X = "Application.Download.";
     private static final LText2 DOWNLOADED_PERCENT =
@@ -0,0 +1,372 @@
+package com.almworks.download;
+
+import com.almworks.api.http.HttpResponseData;
+import com.almworks.api.http.HttpUtils;
+import com.almworks.util.LogHelper;
+import com.almworks.util.io.IOUtils;
+import com.almworks.util.io.StreamTransferTracker;
+import org.almworks.util.Collections15;
+import org.almworks.util.Failure;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Local storage of downloaded content.<br>
+ * A download is written to a partial file named after the download key, so an interrupted transfer is resumed from the
+ * bytes already received. The validator (ETag or Last-Modified) of the response that started the file is kept next to
+ * it, a resumed request sends it as If-Range so a changed file is downloaded again instead of being spliced.<br>
+ * A complete file is moved to the store under the hash of its content, so equal files are stored once. Files visible
+ * to the user are hard links to the stored content. Stored content is not trusted blindly: a linked file may be
+ * edited in place, so the hash of stored content is verified before it is linked again. A file is given its own copy
+ * of the content before it is opened by an external program, see {@link #detach(File)}.<br>
+ * Downloads are processed concurrently. Content is hashed outside of the store lock, only renames and links of
+ * the store files are performed under it.
+ */
+class ContentStore {
+  private static final String STORE_SUBDIR = ".store";
+  private static final String PARTIAL_SUBDIR = ".partial";
+  private static final String PARTIAL_EXT = ".part";
+  private static final String VALIDATOR_EXT = ".validator";
+  private static final long PARTIAL_EXPIRATION = 7 * 24 * 3600 * 1000L;
+  private static final int HTTP_PARTIAL_CONTENT = 206;
+
+  private final File myStoreDir;
+  private final File myPartialDir;
+  private final Object myStoreLock = new Object();
+  /**
+   * Stored files which content is verified: hash -> state of the file when it was hashed
+   */
+  private final ConcurrentMap<String, Stamp> myVerified = new ConcurrentHashMap<String, Stamp>();
+
+  public ContentStore(File downloadDir) {
+    myStoreDir = new File(downloadDir, STORE_SUBDIR);
+    myPartialDir = new File(downloadDir, PARTIAL_SUBDIR);
+  }
+
+  /**
+   * @return file that holds content of not finished download of the key. The file may not exist
+   */
+  public File getPartialFile(String keyURL) throws IOException {
+    ensureDir(myPartialDir);
+    try {
+      return new File(myPartialDir, IOUtils.md5sum(keyURL) + PARTIAL_EXT);
+    } catch (NoSuchAlgorithmException e) {
+      throw new Failure(e);
+    }
+  }
+
+  /**
+   * @return If-Range value to resume the partial download, null if the download cannot be resumed and should start
+   * from scratch
+   */
+  @Nullable
+  public String getResumeValidator(File partial) {
+    File validator = getValidatorFile(partial);
+    if (!partial.isFile() || partial.length() == 0 || !validator.isFile()) return null;
+    try {
+      String value = new String(Files.readAllBytes(validator.toPath()), StandardCharsets.UTF_8).trim();
+      return value.isEmpty() ? null : value;
+    } catch (IOException e) {
+      LogHelper.warning("Cannot read download validator", validator, e);
+      return null;
+    }
+  }
+
+  /**
+   * Writes the response content to the partial file. The content is appended if the response is the range starting at
+   * the offset, otherwise (the server ignores the range) the file is rewritten.
+   * @param offset length of the partial file when the response was requested
+   */
+  public void receive(HttpResponseData response, File partial, long offset, @Nullable final StreamTransferTracker tracker)
+    throws IOException
+  {
+    final long start = offset > 0 ? getRangeStart(response) : 0;
+    if (start != 0 && start != offset) {
+      delete(partial);
+      throw new IOException("Unexpected content range " + start + " (" + offset + " requested)");
+    }
+    StreamTransferTracker rangeTracker = tracker == null || start == 0 ? tracker : new StreamTransferTracker() {
+      @Override
+      public void onTransfer(long bytesTransferred) throws IOException {
+        tracker.onTransfer(start + bytesTransferred);
+      }
+
+      @Override
+      public void setLength(long length) {
+        tracker.setLength(length >= 0 ? start + length : length);
+      }
+    };
+    if (start == 0) writeValidator(partial, response);
+    FileOutputStream output = new FileOutputStream(partial, start > 0);
+    long received;
+    long expected = response.getContentLength();
+    try {
+      received = HttpUtils.transferToStream(response, output, rangeTracker);
+    } finally {
+      IOUtils.closeStreamIgnoreExceptions(output);
+    }
+    // a dropped connection may look like the end of the content
+    if (expected >= 0 && received < expected) throw new IOException("Download is interrupted: " + received + " of " + expected + " bytes received");
+  }
+
+  /**
+   * Moves the complete file to the store and replaces the target with a link to the stored content.<br>
+   * If the content is already stored, the stored file is checked to still have it. A stored file that is changed via
+   * one of its links keeps the changed content for these links, the new file takes its place in the store.<br>
+   * If the file system cannot link, the file is moved to the target, so no duplicate is left in the store.
+   * @param target reserved file, it is replaced atomically and never deleted, so no other download can take its name
+   */
+  public void store(File file, File target) throws IOException {
+    String hash = hashContent(file);
+    delete(getValidatorFile(file));
+    ensureDir(myStoreDir);
+    File stored = new File(myStoreDir, hash);
+    Stamp verified = verify(stored, hash, file.length());
+    boolean known;
+    boolean linked;
+    synchronized (myStoreLock) {
+      // the stored file may have changed or been replaced since it was hashed
+      known = verified != null && stored.isFile() && verified.equals(Stamp.create(stored));
+      if (!known) {
+        move(file, stored);
+        myVerified.put(hash, Stamp.create(stored));
+      }
+      linked = createLink(stored, target);
+      if (!linked) move(known ? file : stored, target);
+    }
+    if (linked && known) Files.delete(file.toPath());
+  }
+
+  /**
+   * Replaces the downloaded file with its own copy of the content, if it is linked to the stored content. Changes of
+   * the file do not affect other files with the same content then.
+   */
+  public void detach(File file) throws IOException {
+    File[] stored = myStoreDir.listFiles();
+    if (stored == null || !file.isFile()) return;
+    long length = file.length();
+    for (File storedFile : stored) {
+      if (storedFile.length() != length || !Files.isSameFile(storedFile.toPath(), file.toPath())) continue;
+      Path copy = Files.createTempFile(file.getAbsoluteFile().getParentFile().toPath(), "." + file.getName(), ".copy");
+      try {
+        Files.copy(file.toPath(), copy, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+        move(copy.toFile(), file);
+      } finally {
+        Files.deleteIfExists(copy);
+      }
+      return;
+    }
+  }
+
+  /**
+   * Deletes stored content that is not linked from any of the referenced files and partial files of long abandoned
+   * downloads.
+   * @param referenced all files of known downloads
+   */
+  public void cleanUp(Collection<File> referenced) {
+    Map<Long, List<File>> byLength = Collections15.hashMap();
+    for (File file : referenced) {
+      if (file == null || !file.isFile()) continue;
+      List<File> files = byLength.get(file.length());
+      if (files == null) {
+        files = Collections15.arrayList();
+        byLength.put(file.length(), files);
+      }
+      files.add(file);
+    }
+    synchronized (myStoreLock) {
+      File[] stored = myStoreDir.listFiles();
+      if (stored != null)
+        for (File file : stored) {
+          if (isLinked(file, byLength.get(file.length()))) continue;
+          myVerified.remove(file.getName());
+          delete(file);
+        }
+    }
+    File[] partial = myPartialDir.listFiles();
+    long expired = System.currentTimeMillis() - PARTIAL_EXPIRATION;
+    if (partial != null)
+      for (File file : partial) if (file.lastModified() < expired) delete(file);
+  }
+
+  /**
+   * @return offset of the content range, 0 if the response has whole content
+   */
+  static long getRangeStart(HttpResponseData response) throws IOException {
+    if (response.getStatusCode() != HTTP_PARTIAL_CONTENT) return 0;
+    String range = getHeader(response, "Content-Range");
+    // bytes <start>-<end>/<total>
+    if (range != null && range.startsWith("bytes ")) {
+      int dash = range.indexOf('-');
+      if (dash > 0)
+        try {
+          return Long.parseLong(range.substring(6, dash).trim());
+        } catch (NumberFormatException e) {
+          // fall through
+        }
+    }
+    throw new IOException("Cannot parse content range " + range);
+  }
+
+  private static boolean isLinked(File stored, @Nullable List<File> candidates) {
+    if (candidates == null) return false;
+    for (File file : candidates) {
+      try {
+        if (Files.isSameFile(stored.toPath(), file.toPath())) return true;
+      } catch (IOException e) {
+        LogHelper.warning("Cannot compare files", stored, file, e);
+        // keep the stored content
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return stamp of the stored file if it has content with the hash, null if the file should be replaced
+   */
+  @Nullable
+  private Stamp verify(File stored, String hash, long length) {
+    if (!stored.isFile() || stored.length() != length) return null;
+    try {
+      Stamp stamp = Stamp.create(stored);
+      if (stamp.equals(myVerified.get(hash))) return stamp;
+      if (!hash.equals(hashContent(stored))) return null;
+      myVerified.put(hash, stamp);
+      return stamp;
+    } catch (IOException e) {
+      LogHelper.debug("Cannot verify stored content", stored, e);
+      return null;
+    }
+  }
+
+  /**
+   * Creates the link under a temporary name next to the target and renames it over the target
+   */
+  private static boolean createLink(File stored, File target) {
+    File dir = target.getAbsoluteFile().getParentFile();
+    Path link = null;
+    try {
+      for (int i = 0; link == null; i++) {
+        Path path = new File(dir, "." + target.getName() + "." + i + ".link").toPath();
+        try {
+          link = Files.createLink(path, stored.toPath());
+        } catch (FileAlreadyExistsException e) {
+          // try the next name
+        }
+      }
+      move(link.toFile(), target);
+      return true;
+    } catch (UnsupportedOperationException | IOException e) {
+      LogHelper.debug("Cannot link downloaded file", target, e);
+      if (link != null) delete(link.toFile());
+      return false;
+    }
+  }
+
+  private static void move(File source, File target) throws IOException {
+    try {
+      Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  private static File getValidatorFile(File partial) {
+    return new File(partial.getPath() + VALIDATOR_EXT);
+  }
+
+  /**
+   * Remembers the strong ETag or else Last-Modified of the response, the server does not send a range for weak ETag
+   */
+  private static void writeValidator(File partial, HttpResponseData response) throws IOException {
+    String validator = getHeader(response, "ETag");
+    if (validator != null && validator.startsWith("W/")) validator = null;
+    if (validator == null) validator = getHeader(response, "Last-Modified");
+    File file = getValidatorFile(partial);
+    if (validator == null) delete(file);
+    else Files.write(file.toPath(), validator.getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Nullable
+  private static String getHeader(HttpResponseData response, String name) {
+    for (Map.Entry<String, String> entry : response.getResponseHeaders().entrySet())
+      if (name.equalsIgnoreCase(entry.getKey())) return entry.getValue();
+    return null;
+  }
+
+  private static String hashContent(File file) throws IOException {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new Failure(e);
+    }
+    InputStream stream = new FileInputStream(file);
+    try {
+      byte[] buffer = new byte[8192];
+      int read;
+      while ((read = stream.read(buffer)) >= 0) digest.update(buffer, 0, read);
+    } finally {
+      IOUtils.closeStreamIgnoreExceptions(stream);
+    }
+    StringBuilder builder = new StringBuilder();
+    for (byte b : digest.digest()) {
+      builder.append(Character.forDigit((b >> 4) & 0xF, 16));
+      builder.append(Character.forDigit(b & 0xF, 16));
+    }
+    return builder.toString();
+  }
+
+  /**
+   * Length and modification time of a file, an in-place change of a stored file changes its stamp
+   */
+  private static class Stamp {
+    private final long myLength;
+    private final FileTime myModified;
+
+    private Stamp(long length, FileTime modified) {
+      myLength = length;
+      myModified = modified;
+    }
+
+    public static Stamp create(File file) throws IOException {
+      return new Stamp(file.length(), Files.getLastModifiedTime(file.toPath()));
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof Stamp)) return false;
+      Stamp other = (Stamp) obj;
+      return myLength == other.myLength && myModified.equals(other.myModified);
+    }
+
+    @Override
+    public int hashCode() {
+      return (int) myLength * 31 + myModified.hashCode();
+    }
+  }
+
+  private static void delete(File file) {
+    try {
+      Files.deleteIfExists(file.toPath());
+    } catch (IOException e) {
+      LogHelper.warning("Cannot delete", file, e);
+    }
+  }
+
+  private static void ensureDir(File dir) throws IOException {
+    if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) throw new IOException("cannot create " + dir);
+  }
+}
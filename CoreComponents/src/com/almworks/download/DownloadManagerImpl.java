@@ -36,6 +36,7 @@
 import javax.mail.internet.MimeUtility;
 import java.io.*;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 
 import static com.almworks.util.collections.Functional.filter;
@@ -64,11 +65,13 @@ public class DownloadManagerImpl implements DownloadManager, Startable {
 
   private final Store myStore;
   private final WorkArea myWorkArea;
+  private final ContentStore myContentStore;
   private final SynchronizedBoolean myLoaded = new SynchronizedBoolean(false);
 
   public DownloadManagerImpl(Store store, WorkArea workArea) {
     myStore = store;
     myWorkArea = workArea;
+    myContentStore = new ContentStore(workArea.getDownloadDir());
     myDownloadOwnerResolver = new DownloadOwnerResolverImpl();
   }
 
@@ -118,6 +121,10 @@ public DownloadedFile getDownloadStatus(String key) {
     return entry == null ? new EmptyDownloadedFile(key) : entry;
   }
 
+  public void detachContent(File file) throws IOException {
+    myContentStore.detach(file);
+  }
+
 
   public void removeFileDownloadListener(String key, FileDownloadListener listener) {
     synchronized (myLock) {
@@ -220,12 +227,7 @@ private DownloadedFile storeFile(String attachmentURL, String filename, String m
     entryChanged(entry);
 
     try {
-      File resultFile;
-      if (source instanceof byte[]) {
-        resultFile = makeFile(filename, null, mimeType, (byte[]) source);
-      } else {
-        resultFile = makeFile(filename, null, mimeType, (File) source);
-      }
+      File resultFile = makeFile(filename, null, mimeType, writeTemporaryFile(source));
       entry.setFile(resultFile);
       entry.setMimeType(mimeType);
       entry.setSize(resultFile.length());
@@ -303,7 +305,8 @@ public Detach download(final DownloadEntry entry, boolean force, final boolean n
     synchronized (myDownloadDetaches) {
       myDownloadDetaches.put(entry.getKeyURL(), detach);
     }
-    ThreadGate.LONG(this).execute(new Runnable() {
+    // downloads of different entries are independent, the queue may run them concurrently
+    ThreadGate.LONG(entry).execute(new Runnable() {
       public void run() {
         try {
           boolean shouldRetry = doDownload(entry, request, owner, detach, noninteractive, false);
@@ -334,7 +337,6 @@ public void doDetach() {
     });
     DetachComposite life = new DetachComposite();
     detach.add(life);
-    File tempFile = null;
     try {
       try {
         DownloadOwner.DownloadTracker tracker = new DownloadOwner.DownloadTracker();
@@ -345,13 +347,12 @@ public void doDetach() {
         entry.setState(DownloadedFile.State.DOWNLOADING);
         entryChanged(entry);
         String argument = request.getArgument();
-        Pair<File, FileOutputStream> pair = createTemporaryFile();
-        tempFile = pair.getFirst();
-        FileOutputStream output = pair.getSecond();
-        Pair<String, String> loadResult = loadFile(owner, life, argument, retrying, noninteractive, cancelFlag, waiting, output, tracker);
+        // not deleted on failure, the next attempt resumes the download
+        File partial = myContentStore.getPartialFile(entry.getKeyURL());
+        Pair<String, String> loadResult = loadFile(owner, life, argument, retrying, noninteractive, cancelFlag, waiting, partial, tracker);
         String mimeType = loadResult.getFirst();
         String contentFilename = loadResult.getSecond();
-        File resultFile = makeFile(contentFilename, request.getSuggestedFilename(), mimeType, tempFile);
+        File resultFile = makeFile(contentFilename, request.getSuggestedFilename(), mimeType, partial);
         entry.setFile(resultFile);
         entry.setMimeType(mimeType);
         entry.setSize(resultFile.length());
@@ -383,17 +384,6 @@ public void doDetach() {
       LogHelper.debug(e);
       setError(entry, CANCELLED_ERROR, e);
     } finally {
-      if (tempFile != null) {
-        try {
-          FileUtil.deleteFile(tempFile, true);
-        } catch (InterruptedException e) {
-          Thread.currentThread().interrupt();
-// ignore
-        } catch (Exception e) {
-          // ignore
-          Log.warn("fin", e);
-        }
-      }
       try {
         entry.setProgressSource(null);
       } catch (Exception e) {
@@ -406,18 +396,20 @@ public void doDetach() {
   }
 
   private Pair<String, String> loadFile(DownloadOwner owner, DetachComposite life, String argument, boolean retrying, boolean noninteractive, BasicScalarModel<Boolean> cancelFlag,
-    Progress waiting, FileOutputStream output, StreamTransferTracker tracker)
+    Progress waiting, File partial, StreamTransferTracker tracker)
     throws CannotCreateLoaderException, HttpLoaderException, IOException
   {
     String mimeType;
     String contentFilename;
-    HttpResponseData loader = owner.load(life, argument, retrying, noninteractive, cancelFlag);
+    String validator = myContentStore.getResumeValidator(partial);
+    long offset = validator != null ? partial.length() : 0;
+    HttpResponseData loader = owner.load(life, argument, retrying, noninteractive, cancelFlag, offset, validator);
     waiting.setDone();
     //noinspection CatchGenericClass
     try {
       mimeType = Util.NN(loader.getContentType());
       contentFilename = decodeFilename(loader.getContentFilename());
-      HttpUtils.transferToStream(loader, output, tracker);
+      myContentStore.receive(loader, partial, offset, tracker);
     } catch (RuntimeException e) {
       // any exception may happen if we close connection concurrently
       if (Boolean.TRUE.equals(cancelFlag.getValue()))
@@ -425,7 +417,6 @@ private Pair<String, String> loadFile(DownloadOwner owner, DetachComposite life,
       else
         throw e;
     } finally {
-      IOUtils.closeStreamIgnoreExceptions(output);
       loader.releaseConnection();
     }
     return Pair.create(mimeType, contentFilename);
@@ -447,6 +438,24 @@ private static String decodeFilename(@Nullable String filename) {
     return processedName;
   }
 
+  private File writeTemporaryFile(Object source) throws IOException {
+    Pair<File, FileOutputStream> pair = createTemporaryFile();
+    File file = pair.getFirst();
+    boolean success = false;
+    try {
+      try {
+        if (source instanceof byte[]) pair.getSecond().write((byte[]) source);
+      } finally {
+        IOUtils.closeStreamIgnoreExceptions(pair.getSecond());
+      }
+      if (source instanceof File) FileUtil.copyFile((File) source, file);
+      success = true;
+    } finally {
+      if (!success && !file.delete()) Log.warn("cannot delete " + file);
+    }
+    return file;
+  }
+
   private Pair<File, FileOutputStream> createTemporaryFile() throws IOException {
     File dir = myWorkArea.getDownloadDir();
     int c = 0;
@@ -473,17 +482,14 @@ private Pair<File, FileOutputStream> createTemporaryFile() throws IOException {
     throw lastException != null ? lastException : new IOException("cannot create temporary file in " + dir);
   }
 
-  private File makeFile(String contentFilename, String suggestedName, String mimeType, File tempFile)
+  /**
+   * @param content complete file, moved to the content store
+   */
+  private File makeFile(String contentFilename, String suggestedName, String mimeType, File content)
     throws IOException
   {
     File file = chooseTargetFile(contentFilename, suggestedName, mimeType);
-    FileUtil.copyFile(tempFile, file);
-    return file;
-  }
-
-  private File makeFile(String contentFilename, String suggestedName, String mimeType, byte[] data) throws IOException {
-    File file = chooseTargetFile(contentFilename, suggestedName, mimeType);
-    FileUtil.writeFile(file, data);
+    myContentStore.store(content, file);
     return file;
   }
 
@@ -556,6 +562,7 @@ private void doLoad() {
       Collection<DownloadEntry> entries = myDownloads.values();
       entriesArray = entries.toArray(new DownloadEntry[entries.size()]);
     }
+    List<File> files = Collections15.arrayList();
     for (DownloadEntry entry : entriesArray) {
       DownloadedFile.State state = entry.getState();
       if (state == DownloadedFile.State.DOWNLOADING || state == DownloadedFile.State.QUEUED) {
@@ -563,7 +570,10 @@ private void doLoad() {
         entry.setLastDownloadError(DOWNLOAD_INTERRUPTED.format());
       }
       checkEntryFile(entry);
+      File file = entry.getFile();
+      if (file != null) files.add(file);
     }
+    myContentStore.cleanUp(files);
     myLoaded.set(true);
   }
 
@@ -0,0 +1,339 @@
+package com.almworks.download;
+
+import com.almworks.api.http.HttpResponseData;
+import com.almworks.util.commons.ProcedureE;
+import com.almworks.util.io.IOUtils;
+import com.almworks.util.io.StreamTransferTracker;
+import com.almworks.util.tests.BaseTestCase;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.almworks.util.Collections15;
+import org.apache.commons.httpclient.URI;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+public class ContentStoreTests extends BaseTestCase {
+  private static final byte[] CONTENT = createTestData(100000, 7);
+  private static final byte[] CHANGED_CONTENT = createTestData(100000, 11);
+
+  private HttpServer myServer;
+  private final List<String> myRanges = Collections15.arrayList();
+  private final List<String> myIfRanges = Collections15.arrayList();
+  private volatile byte[] myContent = CONTENT;
+  private volatile String myETag = "\"v1\"";
+  private volatile boolean myRangeSupported = true;
+  private volatile int myCutAfter = -1;
+  private volatile int myLastSent;
+  private File myDir;
+  private ContentStore myStore;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myDir = createTempDir();
+    myStore = new ContentStore(myDir);
+    myServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    myServer.createContext("/file", this::serve);
+    myServer.start();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    myServer.stop(0);
+    super.tearDown();
+  }
+
+  public void testResume() throws IOException {
+    File partial = myStore.getPartialFile("http://server/file");
+    myCutAfter = 30000;
+    try {
+      myStore.receive(request(0), partial, 0, null);
+      fail("Download is not interrupted");
+    } catch (IOException e) {
+      // expected
+    }
+    long offset = partial.length();
+    assertTrue(String.valueOf(offset), offset > 0 && offset <= 30000);
+    String validator = myStore.getResumeValidator(partial);
+    assertEquals(myETag, validator);
+
+    myCutAfter = -1;
+    final long[] progress = {0, 0};
+    myStore.receive(request(offset, validator), partial, offset, new StreamTransferTracker() {
+      @Override
+      public void onTransfer(long bytesTransferred) {
+        progress[0] = bytesTransferred;
+      }
+
+      @Override
+      public void setLength(long length) {
+        progress[1] = length;
+      }
+    });
+    assertEquals(Arrays.asList(null, "bytes=" + offset + "-"), myRanges);
+    assertEquals(Arrays.asList(null, myETag), myIfRanges);
+    assertEquals(CONTENT.length - offset, myLastSent);
+    assertEquals(CONTENT.length, progress[0]);
+    assertEquals(CONTENT.length, progress[1]);
+    assertTrue(Arrays.equals(CONTENT, Files.readAllBytes(partial.toPath())));
+  }
+
+  public void testRangeIgnored() throws IOException {
+    myRangeSupported = false;
+    File partial = myStore.getPartialFile("http://server/file");
+    Files.write(partial.toPath(), createTestData(100, 3));
+    myStore.receive(request(100, myETag), partial, 100, null);
+    assertEquals(CONTENT.length, myLastSent);
+    assertTrue(Arrays.equals(CONTENT, Files.readAllBytes(partial.toPath())));
+  }
+
+  public void testChangedFileNotSpliced() throws IOException {
+    File partial = myStore.getPartialFile("http://server/file");
+    myCutAfter = 30000;
+    try {
+      myStore.receive(request(0), partial, 0, null);
+      fail("Download is not interrupted");
+    } catch (IOException e) {
+      // expected
+    }
+    myCutAfter = -1;
+    myContent = CHANGED_CONTENT;
+    myETag = "\"v2\"";
+    long offset = partial.length();
+    myStore.receive(request(offset, myStore.getResumeValidator(partial)), partial, offset, null);
+    // If-Range does not match, whole new content is sent
+    assertEquals(CHANGED_CONTENT.length, myLastSent);
+    assertTrue(Arrays.equals(CHANGED_CONTENT, Files.readAllBytes(partial.toPath())));
+    assertEquals(myETag, myStore.getResumeValidator(partial));
+  }
+
+  public void testNoValidatorNoResume() throws IOException {
+    myETag = null;
+    File partial = myStore.getPartialFile("http://server/file");
+    myCutAfter = 30000;
+    try {
+      myStore.receive(request(0), partial, 0, null);
+      fail("Download is not interrupted");
+    } catch (IOException e) {
+      // expected
+    }
+    assertTrue(partial.length() > 0);
+    assertNull(myStore.getResumeValidator(partial));
+  }
+
+  public void testEqualContentStoredOnce() throws IOException {
+    File partial1 = myStore.getPartialFile("http://server/file?1");
+    File partial2 = myStore.getPartialFile("http://server/file?2");
+    assertFalse(partial1.equals(partial2));
+    myStore.receive(request(0), partial1, 0, null);
+    myStore.receive(request(0), partial2, 0, null);
+    File target1 = new File(myDir, "a.bin");
+    File target2 = new File(myDir, "b.bin");
+    assertTrue(target1.createNewFile());
+    myStore.store(partial1, target1);
+    myStore.store(partial2, target2);
+    assertFalse(partial1.exists());
+    assertFalse(partial2.exists());
+    assertTrue(Arrays.equals(CONTENT, Files.readAllBytes(target1.toPath())));
+    assertTrue(Arrays.equals(CONTENT, Files.readAllBytes(target2.toPath())));
+    File[] stored = getStoreDir().listFiles();
+    assertEquals(1, stored.length);
+    assertTrue(Files.isSameFile(stored[0].toPath(), target1.toPath()));
+    assertTrue(Files.isSameFile(stored[0].toPath(), target2.toPath()));
+
+    myStore.cleanUp(Arrays.asList(target1, target2));
+    assertEquals(1, getStoreDir().listFiles().length);
+    assertTrue(target1.delete());
+    myStore.cleanUp(Collections.singletonList(target2));
+    assertEquals(1, getStoreDir().listFiles().length);
+    // not referenced content is deleted
+    assertTrue(target2.delete());
+    myStore.cleanUp(Collections.<File>emptyList());
+    assertEquals(0, getStoreDir().listFiles().length);
+  }
+
+  public void testEditedLinkNotReused() throws IOException {
+    File target1 = new File(myDir, "a.bin");
+    File target2 = new File(myDir, "b.bin");
+    myStore.store(writeFile("1", CONTENT), target1);
+    // in place edit of a linked file with the same length
+    RandomAccessFile edit = new RandomAccessFile(target1, "rw");
+    try {
+      edit.write(CHANGED_CONTENT);
+    } finally {
+      edit.close();
+    }
+    myStore.store(writeFile("2", CONTENT), target2);
+    assertTrue(Arrays.equals(CONTENT, Files.readAllBytes(target2.toPath())));
+    assertTrue(Arrays.equals(CHANGED_CONTENT, Files.readAllBytes(target1.toPath())));
+    assertFalse(Files.isSameFile(target1.toPath(), target2.toPath()));
+    // the edited content is not referenced from the store any more
+    assertEquals(1, getStoreDir().listFiles().length);
+    assertTrue(Files.isSameFile(getStoreDir().listFiles()[0].toPath(), target2.toPath()));
+  }
+
+  public void testReservedTargetReplaced() throws IOException {
+    File target = new File(myDir, "a.bin");
+    assertTrue(target.createNewFile());
+    myStore.store(writeFile("1", CONTENT), target);
+    assertTrue(Arrays.equals(CONTENT, Files.readAllBytes(target.toPath())));
+    assertTrue(Files.isSameFile(getStoreDir().listFiles()[0].toPath(), target.toPath()));
+    // no temporary links are left
+    File[] files = myDir.listFiles();
+    Arrays.sort(files);
+    assertEquals(Arrays.asList(getStoreDir(), target), Arrays.asList(files));
+  }
+
+  public void testDetach() throws IOException {
+    File target1 = new File(myDir, "a.bin");
+    File target2 = new File(myDir, "b.bin");
+    myStore.store(writeFile("1", CONTENT), target1);
+    myStore.store(writeFile("2", CONTENT), target2);
+    myStore.detach(target1);
+    assertTrue(Arrays.equals(CONTENT, Files.readAllBytes(target1.toPath())));
+    assertFalse(Files.isSameFile(target1.toPath(), target2.toPath()));
+    Files.write(target1.toPath(), CHANGED_CONTENT);
+    assertTrue(Arrays.equals(CONTENT, Files.readAllBytes(target2.toPath())));
+    File stored = getStoreDir().listFiles()[0];
+    assertTrue(Files.isSameFile(stored.toPath(), target2.toPath()));
+    // a file with own content is not copied again
+    myStore.detach(target1);
+    assertTrue(Arrays.equals(CHANGED_CONTENT, Files.readAllBytes(target1.toPath())));
+    assertEquals(3, myDir.listFiles().length);
+  }
+
+  private File getStoreDir() {
+    return new File(myDir, ".store");
+  }
+
+  private File writeFile(String name, byte[] content) throws IOException {
+    File file = new File(myDir, name + ".tmp");
+    Files.write(file.toPath(), content);
+    return file;
+  }
+
+  private void serve(HttpExchange exchange) throws IOException {
+    String range = exchange.getRequestHeaders().getFirst("Range");
+    String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+    synchronized (myRanges) {
+      myRanges.add(range);
+      myIfRanges.add(ifRange);
+    }
+    byte[] content = myContent;
+    String etag = myETag;
+    if (etag != null) exchange.getResponseHeaders().add("ETag", etag);
+    int start = 0;
+    if (range != null && myRangeSupported && (ifRange == null || ifRange.equals(etag))) {
+      start = Integer.parseInt(range.substring("bytes=".length(), range.indexOf('-')));
+      exchange.getResponseHeaders().add("Content-Range", "bytes " + start + "-" + (content.length - 1) + "/" + content.length);
+    }
+    int length = content.length - start;
+    exchange.sendResponseHeaders(start > 0 ? 206 : 200, length);
+    OutputStream body = exchange.getResponseBody();
+    int sent = myCutAfter >= 0 ? Math.min(myCutAfter, length) : length;
+    // set before the client may receive the whole response
+    myLastSent = sent;
+    body.write(content, start, sent);
+    body.flush();
+    // if the content is cut, the connection is dropped
+    exchange.close();
+  }
+
+  private HttpResponseData request(long offset) throws IOException {
+    return request(offset, null);
+  }
+
+  private HttpResponseData request(long offset, String validator) throws IOException {
+    URL url = new URL("http://127.0.0.1:" + myServer.getAddress().getPort() + "/file");
+    HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+    if (offset > 0) connection.setRequestProperty("Range", "bytes=" + offset + "-");
+    if (validator != null) connection.setRequestProperty("If-Range", validator);
+    return new ConnectionResponse(connection);
+  }
+
+  private static class ConnectionResponse implements HttpResponseData {
+    private final HttpURLConnection myConnection;
+
+    public ConnectionResponse(HttpURLConnection connection) {
+      myConnection = connection;
+    }
+
+    @Override
+    public String getContentFilename() {
+      return null;
+    }
+
+    @Override
+    public String getContentType() {
+      return myConnection.getContentType();
+    }
+
+    @Override
+    public String getFullContentType() {
+      return myConnection.getContentType();
+    }
+
+    @Override
+    public long getContentLength() {
+      return myConnection.getContentLengthLong();
+    }
+
+    @Override
+    public void readStream(ProcedureE<InputStream, IOException> reader) throws IOException {
+      InputStream stream = myConnection.getInputStream();
+      try {
+        reader.invoke(stream);
+      } finally {
+        IOUtils.closeStreamIgnoreExceptions(stream);
+      }
+    }
+
+    @NotNull
+    @Override
+    public Map<String, String> getResponseHeaders() {
+      Map<String, String> result = Collections15.hashMap();
+      for (Map.Entry<String, List<String>> entry : myConnection.getHeaderFields().entrySet())
+        if (entry.getKey() != null && !entry.getValue().isEmpty()) result.put(entry.getKey(), entry.getValue().get(0));
+      return result;
+    }
+
+    @Override
+    public URI getLastURI() {
+      return null;
+    }
+
+    @Override
+    public int getStatusCode() {
+      try {
+        return myConnection.getResponseCode();
+      } catch (IOException e) {
+        return 0;
+      }
+    }
+
+    @NotNull
+    @Override
+    public String getStatusText() {
+      return String.valueOf(getStatusCode());
+    }
+
+    @Override
+    public String getCharset() {
+      return null;
+    }
+
+    @Override
+    public void releaseConnection() {
+      myConnection.disconnect();
+    }
+  }
+}
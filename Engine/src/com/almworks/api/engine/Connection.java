@@ -42,6 +42,7 @@
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.Date;
+import java.util.List;
 
 /**
  * @author sereda
@@ -229,6 +230,17 @@ SyncTask synchronizeItemView(Constraint validRemoteQueryConstraint, @Nullable DB
 
   boolean matchAllWords(long item, char[][] charWords, String[] stringWords, DBReader reader);
 
+  /**
+   * Tells if {@link #matchAllWords} can be narrowed with the database full-text index. This is possible when the method
+   * matches words as case-insensitive substrings of raw string attributes of the item and its slaves.
+   * @return attributes of slaves referring to their master item, which texts are matched too.<br>
+   * null if the words are matched in some other way and the index cannot be used.
+   */
+  @Nullable
+  default List<DBAttribute<Long>> getFullTextSlaveReferences() {
+    return null;
+  }
+
   @Nullable
   @ThreadSafe
   ConstraintDescriptor getDescriptorByIdSafe(String id);
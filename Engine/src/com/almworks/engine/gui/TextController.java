@@ -42,11 +42,18 @@ public TextController(ModelKey<T> key, @NotNull Convertor<T, String> toTextConve
     myEmptyValue = emptyValue;
   }
 
+  /**
+   * @return true if {@link #toHumanText} converts raw text, false if human text is the raw text
+   */
+  public static boolean isRawTextConverted() {
+    return Env.getBoolean(COMMENT_HTML);
+  }
+
   @NotNull
   public static String toHumanText(String rawText) {
     if (rawText == null) return "";
     String humanText;
-    if (Env.getBoolean(COMMENT_HTML)) {
+    if (isRawTextConverted()) {
       try {
         Document document = HtmlUtils.buildHtmlDocument(new InputSource(new StringReader(rawText)));
         humanText = JDOMUtils.getText(document.getRootElement());
@@ -35,7 +35,8 @@ protected void customUpdate(UpdateContext context) throws CantPerformException {
   protected void doPerform(ActionContext context) throws CantPerformException {
     File file = getGoodFile(context);
     if (file != null) {
-      FileActions.performAction(myAction, file, context.getComponent());
+      if (myAction == OPEN_CONTAINING_FOLDER) FileActions.performAction(myAction, file, context.getComponent());
+      else AttachmentUtils.openExternally(myAction, file, context.getComponent());
     }
   }
 
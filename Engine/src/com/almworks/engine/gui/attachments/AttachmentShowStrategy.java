@@ -4,7 +4,6 @@
 import com.almworks.util.English;
 import com.almworks.util.Env;
 import com.almworks.util.config.Configuration;
-import com.almworks.util.files.FileActions;
 import org.almworks.util.ArrayUtil;
 import org.almworks.util.Util;
 import org.jetbrains.annotations.NotNull;
@@ -99,17 +98,17 @@ public String getName(int size) {
     @Override
     public void showFile(File file, String mimeType, Configuration viewConfig, Component owner, String title,
         String description) {
-      FileActions.openFile(file, owner);
+      AttachmentUtils.open(file, owner);
     }
 
     @Override
     public void showAttachment(File file, String mimeType, Attachment attachment, Configuration viewConfig, Component owner) {
-      FileActions.openFile(file, owner);
+      AttachmentUtils.open(file, owner);
     }
 
     @Override
     public void showAttachment(DownloadedFile dFile, Attachment attachment, Configuration viewConfig, Component owner) {
-      FileActions.openFile(dFile.getFile(), owner);
+      AttachmentUtils.open(dFile.getFile(), owner);
     }
 
     @Override
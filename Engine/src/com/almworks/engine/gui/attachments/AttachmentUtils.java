@@ -1,6 +1,7 @@
 package com.almworks.engine.gui.attachments;
 
 import com.almworks.api.config.MiscConfig;
+import com.almworks.api.download.DownloadManager;
 import com.almworks.api.gui.MainMenu;
 import com.almworks.api.misc.WorkArea;
 import com.almworks.util.Env;
@@ -15,6 +16,7 @@
 import com.almworks.util.components.recent.UnwrapCombo;
 import com.almworks.util.components.renderer.Renderers;
 import com.almworks.util.config.Configuration;
+import com.almworks.util.exec.Context;
 import com.almworks.util.exec.ThreadGate;
 import com.almworks.util.files.FileActions;
 import com.almworks.util.files.FileUtil;
@@ -47,7 +49,7 @@ public class AttachmentUtils {
   public static AnAction createOpenWithAction(final File file, final Component dialogOwner) {
     return new FileDataAction("&Open With\u2026") {
       protected void perform(FileData data) {
-        FileActions.openAs(file, dialogOwner);
+        openExternally(FileActions.Action.OPEN_AS, file, dialogOwner);
       }
     };
   }
@@ -102,7 +104,33 @@ public void run() {
   }
 
   public static void open(File file, Component owner) {
-    FileActions.openFile(file, owner);
+    openExternally(FileActions.Action.OPEN, file, owner);
+  }
+
+  /**
+   * Performs the action that passes the file to an external program. A downloaded file gets its own copy of the
+   * content first, so changes made by the program do not affect other attachments with the same content.
+   */
+  public static void openExternally(final FileActions.Action action, final File file, final Component owner) {
+    final DownloadManager downloadManager = Context.get(DownloadManager.ROLE);
+    if (downloadManager == null) {
+      FileActions.performAction(action, file, owner);
+      return;
+    }
+    ThreadGate.LONG.execute(new Runnable() {
+      public void run() {
+        try {
+          downloadManager.detachContent(file);
+        } catch (IOException e) {
+          Log.warn("cannot copy content of " + file, e);
+        }
+        ThreadGate.AWT.execute(new Runnable() {
+          public void run() {
+            FileActions.performAction(action, file, owner);
+          }
+        });
+      }
+    });
   }
 
   public static String makeFileCopyForUpload(WorkArea workArea, File originalFile) throws AttachmentSaveException {
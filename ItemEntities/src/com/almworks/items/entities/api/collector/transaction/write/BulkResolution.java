@@ -17,6 +17,13 @@
 
 import java.util.*;
 
+/**
+ * Resolves all places of a table by one set-based query per resolution: items are selected by values of one of the
+ * identity columns (the one with the most distinct values), then values of all the identity columns are loaded and
+ * matched against the places.<br>
+ * Places with a null identity value or a reference to not resolved entity are left to other policies. So are places
+ * which identity is shared by several items.
+ */
 class BulkResolution {
   private static final int MAX_QUERY_VALUES = SQLUtil.MAX_SQL_PARAMS - 2;
   public static final ResolutionPolicy POLICY = new ResolutionPolicy() {
@@ -27,16 +34,19 @@ class BulkResolution {
     public Result resolve(WriteState state, EntityTable table, List<EntityPlace> places, List<KeyInfo> resolutionColumns) {
       //noinspection ConstantConditions
       if (MAX_QUERY_VALUES < 2) return null;
-      if (resolutionColumns.size() != 1) return null;
-      KeyInfo column = resolutionColumns.get(0);
+      if (resolutionColumns.isEmpty()) return null;
       AttributeCache cache = state.getAttributeCache();
       DBItemType dbItemType = cache.getType(table.getItemType());
       long type = dbItemType != null ? state.getReader().findMaterialized(dbItemType) : 0;
-      KeyCounterpart counterpart = cache.getCounterpart(column);
-      DBAttribute<?> attribute = counterpart.getAttribute();
-      if (type <= 0 || attribute == null) return null;
-      if (!checkAttribute(attribute)) return null;
-      BulkResolution resolution = new BulkResolution(state, column, counterpart, attribute, type, places, new Result(table));
+      if (type <= 0) return null;
+      List<KeyCounterpart> counterparts = Collections15.arrayList(resolutionColumns.size());
+      for (KeyInfo column : resolutionColumns) {
+        KeyCounterpart counterpart = cache.getCounterpart(column);
+        DBAttribute<?> attribute = counterpart.getAttribute();
+        if (attribute == null || !checkAttribute(attribute)) return null;
+        counterparts.add(counterpart);
+      }
+      BulkResolution resolution = new BulkResolution(state, resolutionColumns, counterparts, type, places, new Result(table));
       resolution.perform();
       return resolution.getResult();
     }
@@ -47,61 +57,85 @@ private boolean checkAttribute(DBAttribute<?> attribute) {
   };
   
   private final WriteState myState;
-  private final KeyInfo myColumn;
-  private final KeyCounterpart myCounterpart;
+  private final List<KeyInfo> myColumns;
+  private final List<KeyCounterpart> myCounterparts;
   private final List<EntityPlace> myPlaces;
-  private final DBAttribute<?> myAttribute;
   private final long myType;
   private final ResolutionPolicy.Result myResult;
 
-  private BulkResolution(WriteState state, KeyInfo column, KeyCounterpart counterpart, DBAttribute<?> attribute, long type, List<EntityPlace> places,
-    ResolutionPolicy.Result result) {
+  private BulkResolution(WriteState state, List<KeyInfo> columns, List<KeyCounterpart> counterparts, long type,
+    List<EntityPlace> places, ResolutionPolicy.Result result) {
     myState = state;
-    myColumn = column;
-    myCounterpart = counterpart;
-    myAttribute = attribute;
+    myColumns = columns;
+    myCounterparts = counterparts;
     myType = type;
     myPlaces = places;
     myResult = result;
   }
 
   public void perform() {
-    LongArray items = queryItems();
+    Map<EntityPlace, List<Object>> placeKeys = collectPlaceKeys();
+    if (placeKeys.isEmpty()) return;
+    LongArray items = queryItems(placeKeys);
     if (items == null) return;
-    HashSet<Object> allDBValues = Collections15.hashSet();
-    Map<Object, Long> valueResolution = collectResolutionMap(items, allDBValues);
-    resolve(valueResolution, allDBValues);
+    HashSet<List<Object>> allDBKeys = Collections15.hashSet();
+    Map<List<Object>, Long> keyResolution = collectResolutionMap(items, allDBKeys);
+    resolve(placeKeys, keyResolution, allDBKeys);
   }
 
   public ResolutionPolicy.Result getResult() {
     return myResult;
   }
 
-  private void resolve(Map<Object, Long> valueResolution, Collection<Object> allDBValues) {
+  /**
+   * @return DB values of identity columns for each place which has all of them
+   */
+  private Map<EntityPlace, List<Object>> collectPlaceKeys() {
+    Map<EntityPlace, List<Object>> placeKeys = Collections15.linkedHashMap();
     for (EntityPlace place : myPlaces) {
-      Object entityValue = place.getValue(myColumn);
-      if (entityValue == null || entityValue == ValueRow.NULL_VALUE) continue;
-      Object dbValue = myCounterpart.convertToDB(myState, entityValue);
-      if (dbValue == null) continue;
-      if (!allDBValues.contains(dbValue)) myResult.addNotExisting(place);
-      Long item = valueResolution.get(dbValue);
+      List<Object> key = Collections15.arrayList(myColumns.size());
+      for (int i = 0; i < myColumns.size(); i++) {
+        Object entityValue = place.getValue(myColumns.get(i));
+        if (entityValue == null || entityValue == ValueRow.NULL_VALUE) break;
+        Object dbValue = myCounterparts.get(i).convertToDB(myState, entityValue);
+        if (dbValue == null) break;
+        key.add(dbValue);
+      }
+      if (key.size() == myColumns.size()) placeKeys.put(place, key);
+    }
+    return placeKeys;
+  }
+
+  private void resolve(Map<EntityPlace, List<Object>> placeKeys, Map<List<Object>, Long> keyResolution,
+    Collection<List<Object>> allDBKeys)
+  {
+    for (Map.Entry<EntityPlace, List<Object>> entry : placeKeys.entrySet()) {
+      EntityPlace place = entry.getKey();
+      List<Object> key = entry.getValue();
+      if (!allDBKeys.contains(key)) myResult.addNotExisting(place);
+      Long item = keyResolution.get(key);
       if (item != null && item > 0) myResult.addResolution(place, item);
     }
   }
 
-  private Map<Object, Long> collectResolutionMap(LongArray items, Set<Object> allExistingValues) {
+  private Map<List<Object>, Long> collectResolutionMap(LongArray items, Set<List<Object>> allExistingKeys) {
     filterBy(items, SyncAttributes.CONNECTION, myState.getConnection());
     filterBy(items, DBAttribute.TYPE, myType);
-    List<?> dbValues = myAttribute.collectValues(items, getReader());
-    allExistingValues.addAll(dbValues);
-    Map<Object, Long> valueResolution = Collections15.hashMap();
-    for (int i = 0; i < dbValues.size(); i++) {
-      Object dbValue = dbValues.get(i);
-      Long existing = valueResolution.get(dbValue);
-      if (existing != null) valueResolution.put(dbValue, 0l);
-      else valueResolution.put(dbValue, items.get(i));
+    List<List<?>> columnValues = Collections15.arrayList(myCounterparts.size());
+    for (KeyCounterpart counterpart : myCounterparts) {
+      //noinspection ConstantConditions
+      columnValues.add(counterpart.getAttribute().collectValues(items, getReader()));
     }
-    return valueResolution;
+    Map<List<Object>, Long> keyResolution = Collections15.hashMap();
+    for (int i = 0; i < items.size(); i++) {
+      List<Object> key = Collections15.arrayList(columnValues.size());
+      for (List<?> values : columnValues) key.add(values.get(i));
+      allExistingKeys.add(key);
+      Long existing = keyResolution.get(key);
+      if (existing != null) keyResolution.put(key, 0l);
+      else keyResolution.put(key, items.get(i));
+    }
+    return keyResolution;
   }
 
   private void filterBy(LongArray items, DBAttribute<Long> attribute, long connection) {
@@ -116,18 +150,32 @@ private void filterBy(LongArray items, DBAttribute<Long> attribute, long connect
     }
   }
 
-  private LongArray queryItems() {
-    ArrayList<Object> values = Collections15.arrayList();
-    for (EntityPlace place : myPlaces) {
-      Object value = place.getValue(myColumn);
-      if (value == null || value == ValueRow.NULL_VALUE) continue;
-      values.add(value);
+  /**
+   * Selects items by values of the identity column with the most distinct values
+   */
+  private LongArray queryItems(Map<EntityPlace, List<Object>> placeKeys) {
+    int column = -1;
+    Map<Object, Object> columnValues = null;
+    for (int i = 0; i < myColumns.size(); i++) {
+      // DB value -> entity value
+      Map<Object, Object> values = Collections15.linkedHashMap();
+      for (Map.Entry<EntityPlace, List<Object>> entry : placeKeys.entrySet()) {
+        Object dbValue = entry.getValue().get(i);
+        if (!values.containsKey(dbValue)) values.put(dbValue, entry.getKey().getValue(myColumns.get(i)));
+      }
+      if (columnValues == null || values.size() > columnValues.size()) {
+        column = i;
+        columnValues = values;
+      }
     }
+    assert columnValues != null;
+    KeyCounterpart counterpart = myCounterparts.get(column);
+    List<Object> values = Collections15.arrayList(columnValues.values());
     LongArray result = new LongArray();
     int start = 0;
     while (start < values.size()) {
       int end = Math.min(start + MAX_QUERY_VALUES, values.size());
-      BoolExpr<DP> expr = myCounterpart.queryOneOf(myState, values.subList(start, end));
+      BoolExpr<DP> expr = counterpart.queryOneOf(myState, values.subList(start, end));
       if (expr == null) return null;
       LongArray found = DatabaseUnwrapper.query(getReader(), expr).copyItemsSorted();
       result.addAll(found);
@@ -400,6 +400,34 @@ public void testIdentityConflict() {
     assertEquals("X", readValue(itemB, idMutable));
   }
   
+  public void testResolveCompositeIdentity() {
+    final EntityHolder[] holders = {add1("a", "b"), add1("a", "c"), add1("d", "b")};
+    final long[] items = new long[holders.length];
+    new WriteTransaction() {
+      @Override
+      protected void doTest(EntityWriter writer) {
+        writer.write();
+        for (int i = 0; i < holders.length; i++) items[i] = forItem(holders[i]).getItem();
+      }
+    }.waitWrite();
+
+    createTransaction();
+    final EntityHolder[] again = {add1("d", "b"), add1("a", "c"), add1("a", "b"), add1("d", "c")};
+    new WriteTransaction() {
+      @Override
+      protected void doTest(EntityWriter writer) {
+        writer.write();
+        assertEquals(items[2], forItem(again[0]).getItem());
+        assertEquals(items[1], forItem(again[1]).getItem());
+        assertEquals(items[0], forItem(again[2]).getItem());
+        long created = forItem(again[3]).getItem();
+        for (long item : items) assertTrue(created != item);
+        assertEquals("d", forItem(again[3]).getValue(aID1));
+        assertEquals("c", forItem(again[3]).getValue(aID2));
+      }
+    }.waitWrite();
+  }
+
   private <T> long findSingle(EntityKey<T> key, final T value) {
     final LongArray result = new LongArray();
     final DBAttribute<T> attribute = StoreBridge.toScalarAttribute(NS, key);
@@ -7,6 +7,7 @@
 import com.almworks.util.bool.BoolExpr;
 import com.almworks.util.commons.LongObjFunction2;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 public interface DBQuery {
   DBReader getReader();
@@ -30,6 +31,18 @@ public interface DBQuery {
    */
   LongList distributionCount(DBAttribute<?>... groupAttributes);
 
+  /**
+   * Counts the number of items in the query by values of the attribute. The counting is done by the database, items
+   * are not loaded.
+   *
+   * @param attribute attribute to count values of. Must be based on INTEGER scalar, may be a set or a list.
+   * @param parentAttribute if not null, refers value to its parent value. The count of each value is added to counts
+   * of all its ancestors.
+   *
+   * @return a table of pairs [value, count] sorted by value. Value 0 is the number of items that have no value.
+   */
+  LongList valueCount(DBAttribute<?> attribute, @Nullable DBAttribute<Long> parentAttribute);
+
   /**
    * Runs query and returns an array of matched items. The list is unique and sorted. It is also writable and
    * can be further altered by the caller.
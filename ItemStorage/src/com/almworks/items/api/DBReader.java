@@ -8,11 +8,22 @@
 import org.jetbrains.annotations.Nullable;
 
 import java.io.DataOutputStream;
+import java.util.Collection;
 import java.util.Map;
 
 public interface DBReader {
   <T> T getValue(long item, DBAttribute<T> attribute);
 
+  /**
+   * Loads values of the attributes for all the items at once: each attribute is read with a single statement whatever
+   * the number of items is.<br>
+   * The loaded values are kept until the end of the transaction, so subsequent {@link #getValue(long, DBAttribute)}
+   * calls for these items and attributes do not access the database. Call this method before reading many items one
+   * by one.
+   * @param items items to load values of, in any order
+   */
+  void prefetchValues(LongList items, Collection<? extends DBAttribute<?>> attributes);
+
   DBQuery query(BoolExpr<DP> expr);
 
   long getTransactionIcn();
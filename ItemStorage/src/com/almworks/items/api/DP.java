@@ -42,6 +42,16 @@ public boolean addAffectingAttributes(Collection<? super DBAttribute> target) {
     return false;
   }
 
+  /**
+   * Operators built for the predicate are kept in the query plan cache until tables are changed, and they keep the
+   * predicate.<br>
+   * DP that refers objects with shorter lifetime (for example, a connection or other application components) should
+   * return false, so the plans built for it are not cached.
+   */
+  public boolean isCacheable() {
+    return true;
+  }
+
   /**
    * DP that depends on volatile factors resolves in the context of current transaction using "current" factor values.<br>
    * Resolution must be the same in the same transaction for {@link #equalDP(DP) equal} DPs for all calls of this method.
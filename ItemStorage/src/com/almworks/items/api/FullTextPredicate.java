@@ -0,0 +1,26 @@
+package com.almworks.items.api;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+
+/**
+ * A predicate that accepts only items containing all the words (as case-insensitive substrings) in their string
+ * attributes, or in string attributes of their slave items.<br>
+ * Such predicate may be evaluated with help of the full-text index: the index finds candidate items, and the predicate
+ * checks only the candidates.
+ */
+public interface FullTextPredicate {
+  /**
+   * @return the words each accepted item contains, null if the predicate cannot be narrowed with the index
+   */
+  @Nullable
+  String[] getFullTextWords();
+
+  /**
+   * @return attributes of slave items that refer to the master. Texts of the slaves are matched as the master's texts
+   */
+  @NotNull
+  List<DBAttribute<Long>> getFullTextSlaveReferences();
+}
@@ -3,12 +3,17 @@
 import com.almworks.items.api.DBAttribute;
 import com.almworks.items.api.DBReader;
 import com.almworks.items.api.DP;
+import com.almworks.items.api.FullTextPredicate;
 import com.almworks.util.bool.BoolExpr;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-public class DPTextMatch extends DPAttribute<String> {
+public class DPTextMatch extends DPAttribute<String> implements FullTextPredicate {
   private final Pattern myPattern;
   private final boolean myWhole;
 
@@ -32,6 +37,20 @@ protected boolean acceptValue(String value, DBReader reader) {
     return myWhole ? matcher.matches() : matcher.find();
   }
 
+  @Nullable
+  @Override
+  public String[] getFullTextWords() {
+    if ((myPattern.flags() & Pattern.LITERAL) == 0)
+      return null;
+    return new String[] {myPattern.pattern()};
+  }
+
+  @NotNull
+  @Override
+  public List<DBAttribute<Long>> getFullTextSlaveReferences() {
+    return Collections.emptyList();
+  }
+
   @Override
   public String toString() {
     return getAttribute() + " ~= " + myPattern;
@@ -41,17 +41,17 @@ public void writeValueToStream(DataOutput out, Object userValue, TransactionCont
   public Object arrayGet(Object storage, int index) {
     Object scalarArray = ObjectArrayAccessor.INSTANCE.getObjectValue(storage, index);
     if (scalarArray == null)
-      return emptyCollection();
+      return null;
     Collection target = createCollection();
     NullableArrayStorageAccessor accessor = myScalarAdapter.getNullableAccessor();
     int i = 0;
     while (true) {
-      Object value = accessor.getObjectValue(scalarArray, i);
+      Object value = accessor.getObjectValue(scalarArray, i++);
       if (value == null)
         break;
       target.add(value);
     }
-    return target;
+    return target.isEmpty() ? null : target;
   }
 
   protected abstract Collection emptyCollection();
@@ -130,14 +130,14 @@ public Object arrayLoad(LongList itemsSorted, @Nullable SQLiteLongArray itemsArr
       try {
         Object result = null;
         LongIterator ii = itemsSorted.iterator();
-        long nextItem = ii.hasNext() ? -1 : ii.nextValue();
+        long nextItem = ii.hasNext() ? ii.nextValue() : -1;
         int itemIndex = 0;
         select.step();
         while (select.hasRow()) {
           long item = select.columnLong(0);
           while (nextItem < item && nextItem >= 0) {
             result = ObjectArrayAccessor.INSTANCE.setNull(result, itemIndex);
-            nextItem = ii.hasNext() ? -1 : ii.nextValue();
+            nextItem = ii.hasNext() ? ii.nextValue() : -1;
             itemIndex++;
           }
           if (nextItem != item) {
@@ -150,11 +150,12 @@ public Object arrayLoad(LongList itemsSorted, @Nullable SQLiteLongArray itemsArr
             select.step();
           } while (select.hasRow() && select.columnLong(0) == item);
           result = ObjectArrayAccessor.INSTANCE.setObjectValue(result, itemIndex, value);
+          nextItem = ii.hasNext() ? ii.nextValue() : -1;
           itemIndex++;
         }
         while (nextItem >= 0) {
           result = ObjectArrayAccessor.INSTANCE.setNull(result, itemIndex);
-          nextItem = ii.hasNext() ? -1 : ii.nextValue();
+          nextItem = ii.hasNext() ? ii.nextValue() : -1;
           itemIndex++;
         }
         if (itemIndex != itemsSorted.size()) {
@@ -9,12 +9,14 @@
 import com.almworks.items.impl.dbadapter.DBColumn;
 import com.almworks.items.impl.dbadapter.DBColumnType;
 import com.almworks.items.impl.dbadapter.DBTable;
+import com.almworks.items.impl.migrations.AttributeMapByItems;
 import com.almworks.items.impl.migrations.DBMigrationProcedure;
 import com.almworks.items.impl.migrations.ObfuscatedAttributeMap;
 import com.almworks.items.impl.scalars.*;
 import com.almworks.items.impl.sqlite.SQLUtil;
 import com.almworks.items.impl.sqlite.TransactionContext;
 import com.almworks.items.impl.sqlite.filter.*;
+import com.almworks.util.Env;
 import org.almworks.util.Collections15;
 import org.almworks.util.Log;
 
@@ -33,6 +35,9 @@ public class DBConfiguration {
   private final List<DBMigrationProcedure> myMigrations = new CopyOnWriteArrayList<DBMigrationProcedure>();
 
   private File myProfileBaseFile;
+  private int myGroupCommitSize = 1;
+  private boolean myWalEnabled;
+  private long myWalSizeLimit = 4 * 1024 * 1024;
 
   public void registerScalarValueAdapter(ScalarValueAdapter<?> adapter) {
     synchronized (myValueAdapters) {
@@ -72,6 +77,8 @@ public static DBConfiguration createDefault(File databaseFile) {
     if ("true".equalsIgnoreCase(System.getProperty("profile.sql"))) {
       r.setProfileBaseFile(new File(databaseFile.getParent(), "profile.txt"));
     }
+    r.setGroupCommitSize(Env.getInteger("db.group.commit", 1));
+    r.setWalEnabled(Env.getBoolean("db.wal"));
     // todo add migrations
     return r;
   }
@@ -85,6 +92,7 @@ private void registerStandardFilterConvertors() {
     registerExtractionFactory(new ExtractionFactoryDPReferredBy());
     registerExtractionFactory(new ExtractionFactoryDPCompare());
     // todo other standard DP
+    registerExtractionFactory(new TextIndexExtractionFactory());
     registerExtractionFactory(new DefaultExtractionFactory());
   }
 
@@ -113,6 +121,7 @@ public void registerStandardScalarAdapters() {
 
   public void registerStandardMigrations() {
     myMigrations.add(new ObfuscatedAttributeMap());
+    myMigrations.add(new AttributeMapByItems());
   }
 
   public Collection<DBMigrationProcedure> getMigrations() {
@@ -131,6 +140,39 @@ public void setProfileBaseFile(File profileBaseFile) {
     myProfileBaseFile = profileBaseFile;
   }
 
+  /**
+   * @return max number of pending write transactions that are committed together, 1 if group commit is off
+   */
+  public int getGroupCommitSize() {
+    return myGroupCommitSize;
+  }
+
+  public void setGroupCommitSize(int groupCommitSize) {
+    myGroupCommitSize = Math.max(1, groupCommitSize);
+  }
+
+  /**
+   * @return true if the database uses write-ahead log instead of rollback journal, so readers do not wait for writers
+   */
+  public boolean isWalEnabled() {
+    return myWalEnabled;
+  }
+
+  public void setWalEnabled(boolean walEnabled) {
+    myWalEnabled = walEnabled;
+  }
+
+  /**
+   * @return size in bytes the write-ahead log is truncated to after a checkpoint
+   */
+  public long getWalSizeLimit() {
+    return myWalSizeLimit;
+  }
+
+  public void setWalSizeLimit(long walSizeLimit) {
+    myWalSizeLimit = walSizeLimit;
+  }
+
   public void addTrigger(DBTriggerCounterpart trigger) {
     myTriggers.add(trigger);
   }
@@ -2,6 +2,7 @@
 
 import com.almworks.integers.*;
 import com.almworks.items.api.*;
+import com.almworks.items.util.DatabaseUtil;
 import com.almworks.util.LazySubscription;
 import com.almworks.util.bool.BoolExpr;
 import com.almworks.util.bool.Reductions;
@@ -14,12 +15,18 @@
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.Collections;
 import java.util.Map;
+import java.util.Set;
 
 public class DBLiveQueryImpl implements DBLiveQuery {
   private final BoolExpr<DP> myExpr;
   private final LongArray myCachedItemsSorted = new LongArray();
   private BoolExpr<DP> myLastResolvedExpr;
+  /**
+   * Attributes that define the result of {@link #myLastResolvedExpr}, null if not known
+   */
+  private Set<DBAttribute> myAffectingAttributes;
   private final Lifecycle myCommonListenersLife = new Lifecycle();
 
   private final Object myLock = myCachedItemsSorted;
@@ -50,7 +57,22 @@ public long getLastProcessedTransactionIcn() {
     }
   }
 
-  public void guidedUpdate(long fromIcn, long toIcn, DBEvent incomingEvent, @Nullable BoolExpr<DP> resolvedExpr, DBReader reader, LiveQueryManager.ResolutionSubscription commonSubscription) {
+  /**
+   * @return false if changes of the given attributes cannot change the set of items matching the query
+   */
+  public boolean isAffectedBy(Set<DBAttribute> changedAttributes) {
+    synchronized (myLock) {
+      return myAffectingAttributes == null || !Collections.disjoint(myAffectingAttributes, changedAttributes);
+    }
+  }
+
+  /**
+   * @param evaluate false if the changes are known not to change the set of matching items (see {@link #isAffectedBy}),
+   * then the query is not evaluated unless its resolution has changed
+   */
+  public void guidedUpdate(long fromIcn, long toIcn, DBEvent incomingEvent, @Nullable BoolExpr<DP> resolvedExpr,
+    DBReader reader, LiveQueryManager.ResolutionSubscription commonSubscription, boolean evaluate)
+  {
     assert myIcn == fromIcn : this + " " + myIcn + " " + fromIcn;
     boolean fullUpdate = false;
     if (resolvedExpr == null) {
@@ -71,9 +93,18 @@ public void guidedUpdate(long fromIcn, long toIcn, DBEvent incomingEvent, @Nulla
       }
     } else if (!incomingEvent.isEmpty()) {
       LongList update = incomingEvent.getAddedAndChangedSorted();
-      LongSetBuilder setBuilder = new LongSetBuilder();
-      query.filterItems(update, setBuilder);
-      LongList inView = setBuilder.commitToArray();
+      LongList inView;
+      if (evaluate) {
+        LongSetBuilder setBuilder = new LongSetBuilder();
+        query.filterItems(update, setBuilder);
+        inView = setBuilder.commitToArray();
+      } else {
+        synchronized (myLock) {
+          LongArray unchangedView = LongArray.copy(update);
+          unchangedView.retainSorted(myCachedItemsSorted);
+          inView = unchangedView;
+        }
+      }
       LongList affectedSorted = incomingEvent.getAffectedSorted();
       synchronized (myLock) {
         fireEvent = DBEvent.createAndUpdateCurrent(myCachedItemsSorted, affectedSorted, inView);
@@ -101,7 +132,7 @@ public void independentUpdate(DBReader reader, LiveQueryManager.ResolutionSubscr
     } else {
       LongList list = reader.getChangedItemsSorted(icn);
       DBEvent event = DBEvent.create(list);
-      guidedUpdate(icn, lastIcn, event, null, reader, commonSubscription);
+      guidedUpdate(icn, lastIcn, event, null, reader, commonSubscription, true);
     }
   }
 
@@ -120,6 +151,7 @@ private void fullUpdateLocked(long lastIcn, BoolExpr<DP> resolvedExpr, DBReader
     myCachedItemsSorted.sortUnique();
     myIcn = lastIcn;
     myLastResolvedExpr = resolvedExpr;
+    myAffectingAttributes = DatabaseUtil.collectAffectingAttributes(resolvedExpr);
   }
 
   private void fire(@NotNull DBEvent event, DBReader reader) {
@@ -9,6 +9,7 @@
 import com.almworks.util.bool.BoolExpr;
 import com.almworks.util.commons.LongObjFunction2;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.Map;
 
@@ -52,6 +53,15 @@ public LongList distributionCount(DBAttribute<?>... groupAttributes) {
     }
   }
 
+  @Override
+  public LongList valueCount(DBAttribute<?> attribute, @Nullable DBAttribute<Long> parentAttribute) {
+    try {
+      return extractor().valueCount(context(), attribute, parentAttribute);
+    } catch (SQLiteException e) {
+      throw new DBException(e);
+    }
+  }
+
   @NotNull
   public LongArray copyItemsSorted() {
     LongSetBuilder builder = copyItems(new LongSetBuilder());
@@ -141,7 +151,7 @@ public <T> long getItemByKey(DBAttribute<T> attribute, T value) {
   }
 
   private ExtractionProcessor extractor() {
-    // todo call once?
+    // the operator is cached by QueryPlanCache, the filter is resolved for the current transaction
     return ExtractionProcessor.create(myFilter, context());
   }
 
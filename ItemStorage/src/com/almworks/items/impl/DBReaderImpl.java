@@ -1,5 +1,6 @@
 package com.almworks.items.impl;
 
+import com.almworks.integers.LongArray;
 import com.almworks.integers.LongList;
 import com.almworks.items.api.*;
 import com.almworks.items.impl.sqlite.Schema;
@@ -7,6 +8,7 @@
 import com.almworks.items.util.AttributeMap;
 import com.almworks.sqlite4java.SQLParts;
 import com.almworks.sqlite4java.SQLiteException;
+import com.almworks.sqlite4java.SQLiteLongArray;
 import com.almworks.sqlite4java.SQLiteStatement;
 import com.almworks.util.bool.BoolExpr;
 import com.almworks.util.collections.UserDataHolder;
@@ -20,6 +22,7 @@
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -43,6 +46,12 @@ public AttributeAdapter getAttributeAdapter(DBAttribute<?> attribute) {
 
   public <T> T getValue(long item, DBAttribute<T> attribute) {
     try {
+      PrefetchedValues prefetched = PrefetchedValues.get(myContext);
+      if (prefetched != null) {
+        Object value = prefetched.getValue(item, attribute);
+        if (value != PrefetchedValues.NOT_LOADED)
+          return (T) value;
+      }
       AttributeAdapter adapter = getAttributeAdapter(attribute);
       return (T) adapter.readValue(item, this);
     } catch (SQLiteException e) {
@@ -53,6 +62,27 @@ public <T> T getValue(long item, DBAttribute<T> attribute) {
     }
   }
 
+  @Override
+  public void prefetchValues(LongList items, Collection<? extends DBAttribute<?>> attributes) {
+    if (items == null || items.isEmpty() || attributes == null || attributes.isEmpty())
+      return;
+    LongArray itemsSorted = LongArray.copy(items);
+    itemsSorted.sortUnique();
+    PrefetchedValues prefetched = PrefetchedValues.getOrCreate(myContext);
+    SQLiteLongArray array = null;
+    try {
+      array = myContext.useArray(itemsSorted, true, true);
+      for (DBAttribute<?> attribute : attributes) {
+        prefetched.load(attribute, getAttributeAdapter(attribute), itemsSorted, array, myContext);
+      }
+    } catch (SQLiteException e) {
+      throw new DBException(e);
+    } finally {
+      if (array != null)
+        array.dispose();
+    }
+  }
+
   public com.almworks.items.api.DBQuery query(BoolExpr<DP> expr) {
     return new DBQueryImpl(this, expr);
   }
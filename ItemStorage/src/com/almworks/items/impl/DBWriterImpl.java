@@ -15,7 +15,6 @@
 import org.almworks.util.Log;
 import org.jetbrains.annotations.Nullable;
 
-import java.util.Iterator;
 import java.util.Map;
 
 public class DBWriterImpl extends DBReaderImpl implements DBWriter {
@@ -26,26 +25,30 @@ public DBWriterImpl(TransactionContext context, WriteHandle<?> writeHandle) {
     if (!context.isWriteAllowed())
       throw new IllegalArgumentException(context + " does not allow writing");
     myWriteHandle = writeHandle;
+    TextIndex.install(context);
   }
 
   public <T> void setValue(long item, DBAttribute<T> attribute, @Nullable T value) {
     if (item <= 0) throw new IllegalArgumentException("Item " + item + " attribute " + attribute);
     setValue0(item, attribute, value);
+    // hooks may refer to the attribute item. The ID attribute is found by its own value, which the caches see via hooks
+    boolean materializeFirst = !DBAttribute.ID.equals(attribute);
+    if (materializeFirst) materialize(attribute);
     TransactionContext context = getContext();
     notifyHooks(context, item, attribute, value, context.getTransactionCache());
     notifyHooks(context, item, attribute, value, context.getSessionContext().getSessionCache());
-    materialize(attribute);
+    if (!materializeFirst) materialize(attribute);
   }
 
   private <T> void notifyHooks(TransactionContext context, long item, DBAttribute<T> attribute, T value, Map cache) {
-    for (Iterator ii = cache.values().iterator(); ii.hasNext();) {
-      Object object = ii.next();
+    // hooks may put their own caches to the map
+    for (Object object : cache.values().toArray()) {
       if (object instanceof WriteHook) {
         try {
           ((WriteHook) object).onSetValue(context, item, attribute, value);
         } catch (Exception e) {
           Log.warn(object + " could not process hook (" + item + ", " + attribute + ", " + value + ")", e);
-          ii.remove();
+          cache.values().remove(object);
         }
       }
     }
@@ -60,9 +63,9 @@ private <T> AttributeAdapter setValue0(long item, DBAttribute<T> attribute, T va
       }
       boolean changed = adapter.writeValue(item, value, this);
       if (changed) {
-        itemChanged(item);
+        myContext.itemChanged(item, attribute);
         if (!oldReferences.isEmpty()) {
-          propagateChangeToOldReferences(oldReferences);
+          propagateChangeToOldReferences(oldReferences, attribute);
         }
       }
       return adapter;
@@ -71,9 +74,9 @@ private <T> AttributeAdapter setValue0(long item, DBAttribute<T> attribute, T va
     }
   }
 
-  private void propagateChangeToOldReferences(LongList list) {
+  private void propagateChangeToOldReferences(LongList list, DBAttribute<?> attribute) {
     for (int i = 0; i < list.size(); i++) {
-      itemChanged(list.get(i));
+      myContext.itemChanged(list.get(i), attribute);
     }
   }
 
@@ -144,12 +147,15 @@ public void clearAttribute(DBAttribute<?> attribute) {
       String table = myContext.getTableName(adapter.getTable(), false);
       if (table == null)
         return;
-      SQLiteStatement st = myContext.prepare(myContext.sql().append("DELETE * FROM ").append(table));
+      SQLiteStatement st = myContext.prepare(myContext.sql().append("DELETE FROM ").append(table));
       try {
         st.step();
       } finally {
         st.dispose();
       }
+      PrefetchedValues prefetched = PrefetchedValues.get(myContext);
+      if (prefetched != null)
+        prefetched.dropAttribute(attribute);
       long a = findMaterialized(attribute);
       if (a != 0)
         clearItem(a);
@@ -1,6 +1,7 @@
 package com.almworks.items.impl;
 
 import com.almworks.items.api.DBPriority;
+import com.almworks.items.impl.dbadapter.DBCallback;
 import com.almworks.items.impl.dbadapter.DBProperty;
 import com.almworks.items.impl.dbadapter.DBRead;
 import com.almworks.items.impl.dbadapter.DBTransaction;
@@ -8,6 +9,7 @@
 import com.almworks.items.impl.sqlite.DatabaseManager;
 import com.almworks.items.impl.sqlite.Schema;
 import com.almworks.items.impl.sqlite.TransactionContext;
+import com.almworks.items.impl.sqlite.WalCheckpointJob;
 import com.almworks.sqlite4java.SQLiteException;
 import com.almworks.sqlite4java.SQLiteStatement;
 import com.almworks.util.collections.ChangeListener;
@@ -34,10 +36,20 @@ public class DatabaseHouseKeeper {
   // analyze after each 200 transactions
   private static final long ANALYZE_TRANSACTION_THRESHOLD = 200;
 
+  // number of items added to the text index by one transaction
+  private static final int TEXT_INDEX_CHUNK = 500;
+
+  // WAL checkpoints run when the main queue gets empty, but not more often than this
+  private static final long CHECKPOINT_PERIOD = 5000;
+
   private DatabaseManager myDatabase;
   private boolean myEnabled;
   private volatile DatabaseJob myCurrentJob;
   private volatile long myLastCheckTime;
+  private volatile WalCheckpointJob myCheckpointJob;
+  private volatile long myLastCheckpointTime;
+  private volatile long myWalSize;
+  private volatile long myCheckpointDuration;
 
   private final Bottleneck myBottleneck = new Bottleneck(500, ThreadGate.AWT, new Runnable() {
     @Override
@@ -81,17 +93,21 @@ private void check() {
   private void checkAndRun(final DatabaseManager db) {
     Log.debug(this + " running db check");
     final boolean[] allowed = {false};
+    final boolean[] textIndexComplete = {true};
     myCurrentJob = db.read(HOUSEKEEPING, new DBRead() {
       @Override
       public void read(TransactionContext context) throws SQLiteException {
         allowed[0] = isHousekeepingRequired(context);
+        textIndexComplete[0] = TextIndex.isComplete(context);
       }
 
       @Override
       public void dbSuccess() {
         myCurrentJob = null;
-        Log.debug(DatabaseHouseKeeper.this + " db check complete (" + allowed[0] + ")");
-        if (allowed[0]) {
+        Log.debug(DatabaseHouseKeeper.this + " db check complete (" + allowed[0] + ", " + textIndexComplete[0] + ")");
+        if (!textIndexComplete[0]) {
+          buildTextIndex(db);
+        } else if (allowed[0]) {
           runHouseKeeping(db);
         }
       }
@@ -171,6 +187,82 @@ public void dbFailure(Throwable throwable) {
     });
   }
 
+  private void buildTextIndex(final DatabaseManager db) {
+    if (!isEnabled())
+      return;
+    final boolean[] complete = {false};
+    myCurrentJob = db.write(HOUSEKEEPING, new DBTransaction() {
+      @Override
+      public void transaction(TransactionContext context) throws Exception {
+        complete[0] = TextIndex.buildNext(context, TEXT_INDEX_CHUNK);
+      }
+
+      @Override
+      public void dbSuccess() {
+        myCurrentJob = null;
+        if (complete[0]) {
+          Log.debug(DatabaseHouseKeeper.this + " text index built");
+          // the index has grown, check if analysis is due
+          checkAndRun(db);
+        } else {
+          buildTextIndex(db);
+        }
+      }
+
+      @Override
+      public void dbFailure(Throwable throwable) {
+        Log.warn(DatabaseHouseKeeper.this + " text index failed", throwable);
+        myCurrentJob = null;
+      }
+    });
+  }
+
+  /**
+   * Copies committed pages from write-ahead log to the database. Checkpoints do not depend on {@link #setEnabled}: the
+   * log grows until it is checkpointed.
+   */
+  private void checkpoint(DatabaseManager db) {
+    long now = System.currentTimeMillis();
+    if (myCheckpointJob != null || now - myLastCheckpointTime < CHECKPOINT_PERIOD)
+      return;
+    myLastCheckpointTime = now;
+    final WalCheckpointJob[] job = {null};
+    job[0] = new WalCheckpointJob(new DBCallback() {
+      @Override
+      public void dbSuccess() {
+        WalCheckpointJob done = job[0];
+        myWalSize = done.getWalSize();
+        myCheckpointDuration = done.getDuration();
+        myCheckpointJob = null;
+        if (done.getWalSize() > 0) Log.debug(DatabaseHouseKeeper.this + " " + done);
+      }
+
+      @Override
+      public void dbFailure(Throwable throwable) {
+        Log.debug(DatabaseHouseKeeper.this + " checkpoint failed", throwable);
+        myCheckpointJob = null;
+      }
+    });
+    myCheckpointJob = job[0];
+    if (!db.checkpoint(HOUSEKEEPING, job[0])) {
+      myCheckpointJob = null;
+    }
+  }
+
+  /**
+   * @return size of write-ahead log before the last checkpoint, 0 if WAL is not used
+   */
+  public long getWalSize() {
+    return myWalSize;
+  }
+
+  /**
+   * @return duration of the last WAL checkpoint
+   */
+  public long getCheckpointDuration() {
+    return myCheckpointDuration;
+  }
+
   private synchronized boolean isEnabled() {
     return myEnabled;
   }
@@ -188,9 +280,11 @@ public synchronized void start(DatabaseManager database) {
       return;
     }
     myDatabase = database;
+    final DatabaseManager db = database;
     database.getMainQueueEmptySignal().addChangeListener(Lifespan.FOREVER, ThreadGate.STRAIGHT, new ChangeListener() {
       @Override
       public void onChange() {
+        checkpoint(db);
         if (System.currentTimeMillis() - myLastCheckTime > MINIMUM_TIME_BETWEEN_QUEUE_CAUSED_CHECKS) {
           check();
         }
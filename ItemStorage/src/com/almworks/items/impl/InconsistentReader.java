@@ -10,6 +10,7 @@
 import org.almworks.util.TypedKey;
 
 import java.io.DataOutputStream;
+import java.util.Collection;
 import java.util.Map;
 
 public class InconsistentReader implements DBReader {
@@ -29,6 +30,11 @@ public T transaction(DBReader reader) {
     }).waitForCompletion();
   }
 
+  @Override
+  public void prefetchValues(LongList items, Collection<? extends DBAttribute<?>> attributes) {
+    // every read is a separate transaction, there is nowhere to keep prefetched values
+  }
+
   public DBQuery query(BoolExpr<DP> expr) {
     assert false;
     return null;
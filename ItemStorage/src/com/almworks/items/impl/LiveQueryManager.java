@@ -15,6 +15,7 @@
 
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 public class LiveQueryManager implements QueryProcessor.Client {
@@ -98,13 +99,17 @@ private void firstUpdate(DBReader reader) {
 
   private void subsequentUpdate(DBReader reader, long curIcn) {
     DBEvent event = curIcn == myIcn ? DBEvent.EMPTY : null;
+    // queries that do not depend on the changed attributes keep their items, they are only told which items changed
+    Set<DBAttribute> changedAttributes = ((DBReaderImpl) reader).getContext().getDatabaseContext()
+      .getChangedAttributesLog().getChangedAttributes(myIcn, curIcn);
     for (DBLiveQueryImpl query : myFilterList) {
       long start = System.currentTimeMillis();
       if (query.getLastProcessedTransactionIcn() == myIcn) {
         if (event == null) {
           event = DBEvent.create(reader.getChangedItemsSorted(myIcn));
         }
-        query.guidedUpdate(myIcn, curIcn, event, null, reader, myCurrentResolutionSubscription);
+        boolean affected = changedAttributes == null || query.isAffectedBy(changedAttributes);
+        query.guidedUpdate(myIcn, curIcn, event, null, reader, myCurrentResolutionSubscription, affected);
       } else {
         query.independentUpdate(reader, myCurrentResolutionSubscription);
       }
@@ -0,0 +1,128 @@
+package com.almworks.items.impl;
+
+import com.almworks.integers.LongArray;
+import com.almworks.integers.LongList;
+import com.almworks.items.api.DBAttribute;
+import com.almworks.items.impl.sqlite.TransactionContext;
+import com.almworks.items.util.AttributeMap;
+import com.almworks.sqlite4java.SQLiteException;
+import com.almworks.sqlite4java.SQLiteLongArray;
+import org.almworks.util.Collections15;
+import org.almworks.util.TypedKey;
+import org.jetbrains.annotations.Nullable;
+import util.external.BitSet2;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Attribute values loaded in bulk by {@link DBReaderImpl#prefetchValues}. Lives in the transaction cache, so the values
+ * are forgotten when the transaction ends.<br>
+ * Being a {@link WriteHook}, it drops a value as soon as the value is changed within the transaction.
+ */
+class PrefetchedValues implements WriteHook {
+  private static final TypedKey<PrefetchedValues> KEY = TypedKey.create("prefetchedValues");
+  static final Object NOT_LOADED = new Object();
+
+  private final Map<DBAttribute<?>, List<Chunk>> myChunks = Collections15.hashMap();
+
+  @Nullable
+  static PrefetchedValues get(TransactionContext context) {
+    Map<TypedKey<?>, ?> cache = context.getTransactionCache();
+    return cache != null ? KEY.getFrom(cache) : null;
+  }
+
+  static PrefetchedValues getOrCreate(TransactionContext context) {
+    Map<TypedKey<?>, ?> cache = context.getTransactionCache();
+    PrefetchedValues values = KEY.getFrom(cache);
+    if (values == null) {
+      values = new PrefetchedValues();
+      KEY.putTo(cache, values);
+    }
+    return values;
+  }
+
+  /**
+   * @param itemsSorted sorted unique items
+   * @param itemsArray the same items bound to SQLite array
+   */
+  void load(DBAttribute<?> attribute, AttributeAdapter adapter, LongArray itemsSorted, SQLiteLongArray itemsArray,
+    TransactionContext context) throws SQLiteException
+  {
+    Object storage = adapter.arrayLoad(itemsSorted, itemsArray, context);
+    List<Chunk> chunks = myChunks.get(attribute);
+    if (chunks == null) {
+      chunks = Collections15.arrayList();
+      myChunks.put(attribute, chunks);
+    }
+    // the latest chunk goes first, so it overrides values loaded earlier
+    chunks.add(0, new Chunk(adapter, itemsSorted, storage));
+  }
+
+  /**
+   * @return the value or {@link #NOT_LOADED} if the value has not been prefetched or has been changed since
+   */
+  Object getValue(long item, DBAttribute<?> attribute) {
+    List<Chunk> chunks = myChunks.get(attribute);
+    if (chunks == null)
+      return NOT_LOADED;
+    for (Chunk chunk : chunks) {
+      int index = chunk.myItems.binarySearch(item);
+      if (index < 0)
+        continue;
+      if (chunk.myDropped != null && chunk.myDropped.get(index))
+        return NOT_LOADED;
+      return copyMutable(chunk.myAdapter.arrayGet(chunk.myStorage, index));
+    }
+    return NOT_LOADED;
+  }
+
+  @Override
+  public <T> void onSetValue(TransactionContext context, long item, DBAttribute<T> attribute, T value) {
+    List<Chunk> chunks = myChunks.get(attribute);
+    if (chunks == null)
+      return;
+    for (Chunk chunk : chunks) {
+      int index = chunk.myItems.binarySearch(item);
+      if (index >= 0) {
+        if (chunk.myDropped == null)
+          chunk.myDropped = new BitSet2();
+        chunk.myDropped.set(index);
+      }
+    }
+  }
+
+  void dropAttribute(DBAttribute<?> attribute) {
+    myChunks.remove(attribute);
+  }
+
+  /**
+   * Values that come straight from the database are owned by the caller. Prefetched values are shared, so mutable ones
+   * are copied before they are returned.
+   */
+  private static Object copyMutable(Object value) {
+    if (value instanceof AttributeMap)
+      return ((AttributeMap) value).copy();
+    if (value instanceof LongList)
+      return LongArray.copy((LongList) value);
+    if (value instanceof byte[])
+      return ((byte[]) value).clone();
+    if (value instanceof Date)
+      return new Date(((Date) value).getTime());
+    return value;
+  }
+
+  private static class Chunk {
+    private final AttributeAdapter myAdapter;
+    private final LongArray myItems;
+    private final Object myStorage;
+    private BitSet2 myDropped;
+
+    private Chunk(AttributeAdapter adapter, LongArray items, Object storage) {
+      myAdapter = adapter;
+      myItems = items;
+      myStorage = storage;
+    }
+  }
+}
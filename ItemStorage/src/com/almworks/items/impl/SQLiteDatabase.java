@@ -250,6 +250,20 @@ public void setLongHousekeepingAllowed(boolean housekeepingAllowed) {
     myHousekeeper.setEnabled(housekeepingAllowed);
   }
 
+  /**
+   * @return size of write-ahead log found by the last checkpoint, 0 if WAL is not used
+   */
+  public long getWalSize() {
+    return myHousekeeper.getWalSize();
+  }
+
+  /**
+   * @return duration of the last WAL checkpoint, ms
+   */
+  public long getCheckpointDuration() {
+    return myHousekeeper.getCheckpointDuration();
+  }
+
   @Override
   public void registerTrigger(final DBTrigger trigger) {
     final DBTriggerCounterpart counterpart = new DBTriggerCounterpart(trigger);
@@ -0,0 +1,350 @@
+package com.almworks.items.impl;
+
+import com.almworks.integers.LongArray;
+import com.almworks.integers.LongList;
+import com.almworks.integers.LongSetBuilder;
+import com.almworks.items.api.DBAttribute;
+import com.almworks.items.impl.dbadapter.*;
+import com.almworks.items.impl.sqlite.Schema;
+import com.almworks.items.impl.sqlite.TransactionContext;
+import com.almworks.sqlite4java.SQLiteException;
+import com.almworks.sqlite4java.SQLiteStatement;
+import org.almworks.util.Collections15;
+import org.almworks.util.Log;
+import org.almworks.util.TypedKey;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+import static com.almworks.items.impl.dbadapter.DBColumn.ITEM;
+
+/**
+ * Inverted index of words contained in string attributes.<br>
+ * A token is a maximal run of letters and digits, case-folded. The index maps each token to the items that contain it
+ * (with number of occurrences). A word matches a token when the word's runs are substrings of tokens, so the index
+ * finds items containing a word as a substring.<br>
+ * Postings are kept per attribute and replaced when the attribute value changes. Values removed without
+ * {@link DBWriterImpl#setValue} (such as by {@link DBWriterImpl#clearAttribute}) leave their postings, so an item found
+ * by the index may not contain the word any more. Callers must check the candidates.<br>
+ * Items written before the index has been created are indexed in background by {@link #buildNext}, the index is used
+ * only after that is {@link #isComplete complete}.
+ */
+public class TextIndex implements WriteHook {
+  private static final TypedKey<TextIndex> KEY = TypedKey.create("textIndex");
+  private static final TypedKey<Map<String, Long>> TOKEN_IDS = TypedKey.create("textIndexTokenIds");
+
+  /**
+   * Last item indexed by {@link #buildNext}, {@link #COMPLETE} when all items are indexed
+   */
+  private static final DBProperty<Long> INDEXED_ITEM = DBProperty.create("textIndexItem", Long.class);
+  private static final long COMPLETE = Long.MAX_VALUE;
+
+  /**
+   * Shorter runs match too many tokens to be useful
+   */
+  static final int MIN_RUN_LENGTH = 2;
+
+  private static final DBLongColumn TOKEN_ID = new DBLongColumn("id");
+  private static final DBStringColumn TOKEN = new DBStringColumn("token");
+  private static final DBLongColumn POSTING_TOKEN = new DBLongColumn("token");
+  private static final DBLongColumn POSTING_ATTRIBUTE = new DBLongColumn("attribute");
+  private static final DBIntColumn POSTING_COUNT = new DBIntColumn("count");
+
+  private static final DBTable TOKENS = createTokens();
+  static final DBTable POSTINGS = createPostings();
+
+  private static DBTable createTokens() {
+    DBTableBuilder builder = DBTableBuilder.createPrimaryBuilder("com.almworks.items.impl:textTokens", TOKEN_ID);
+    builder.column(TOKEN, true);
+    builder.unique(TOKEN);
+    return builder.create();
+  }
+
+  private static DBTable createPostings() {
+    DBTableBuilder builder = new DBTableBuilder("com.almworks.items.impl:textPostings");
+    builder.column(POSTING_TOKEN, true).column(ITEM, true).column(POSTING_ATTRIBUTE, true).column(POSTING_COUNT, true);
+    builder.unique(POSTING_TOKEN, ITEM, POSTING_ATTRIBUTE);
+    builder.index(ITEM, POSTING_ATTRIBUTE);
+    return builder.create();
+  }
+
+  /**
+   * Makes the index follow values written in the session
+   */
+  static void install(TransactionContext context) {
+    Map cache = context.getSessionContext().getSessionCache();
+    if (KEY.getFrom(cache) == null) {
+      KEY.putTo(cache, new TextIndex());
+    }
+  }
+
+  @Override
+  public <T> void onSetValue(TransactionContext context, long item, DBAttribute<T> attribute, T value)
+    throws Exception
+  {
+    if (!isIndexed(attribute))
+      return;
+    try {
+      index(context, item, attribute, (String) value);
+    } catch (SQLiteException e) {
+      Log.warn(this + ": cannot index " + item + " " + attribute, e);
+      // the value is missing in the index, rebuild
+      context.setProperty(INDEXED_ITEM, 0L);
+    }
+  }
+
+  static boolean isIndexed(DBAttribute<?> attribute) {
+    return attribute.getScalarClass() == String.class && attribute.getComposition() == DBAttribute.ScalarComposition.SCALAR;
+  }
+
+  static boolean isComplete(TransactionContext context) throws SQLiteException {
+    return context.getLongProperty(INDEXED_ITEM, 0) == COMPLETE;
+  }
+
+  /**
+   * Indexes next items that have been written before the index was installed.
+   * @param count max number of items to index
+   * @return true if all items are indexed
+   */
+  static boolean buildNext(TransactionContext context, int count) throws SQLiteException {
+    long indexed = context.getLongProperty(INDEXED_ITEM, 0);
+    if (indexed == COMPLETE)
+      return true;
+    LongArray items = new LongArray();
+    SQLiteStatement st = context.prepare(context.sql().append("SELECT ").append(Schema.ITEMS_ITEM.getName())
+      .append(" FROM ").append(Schema.ITEMS).append(" WHERE ").append(Schema.ITEMS_ITEM.getName())
+      .append(" > ? ORDER BY 1 LIMIT ?"));
+    try {
+      st.bind(1, indexed).bind(2, count);
+      while (st.step()) {
+        items.add(st.columnLong(0));
+      }
+    } finally {
+      st.dispose();
+    }
+    if (items.isEmpty()) {
+      context.setProperty(INDEXED_ITEM, COMPLETE);
+      return true;
+    }
+    List<DBAttribute<?>> attributes = Collections15.arrayList();
+    for (DBAttribute<?> attribute : AttributeCache.getAttributes(context)) {
+      if (isIndexed(attribute)) attributes.add(attribute);
+    }
+    DBReaderImpl reader = new DBReaderImpl(context);
+    reader.prefetchValues(items, attributes);
+    for (int i = 0; i < items.size(); i++) {
+      long item = items.get(i);
+      for (DBAttribute<?> attribute : attributes) {
+        Object value = reader.getValue(item, attribute);
+        if (value != null) index(context, item, attribute, (String) value);
+      }
+      context.checkCancelled();
+    }
+    context.setProperty(INDEXED_ITEM, items.get(items.size() - 1));
+    return false;
+  }
+
+  /**
+   * @param words words accepted items contain
+   * @param slaveReferences attributes of slaves referring to their masters; masters of found slaves are found too
+   * @return sorted items that may contain all the words, null if the words are too short to narrow the search
+   */
+  @Nullable
+  static LongArray findCandidates(TransactionContext context, String[] words, List<DBAttribute<Long>> slaveReferences)
+    throws SQLiteException
+  {
+    LongArray result = null;
+    for (String run : getSearchRuns(words)) {
+      LongArray items = findItems(context, run);
+      if (!slaveReferences.isEmpty()) items = addMasters(context, items, slaveReferences);
+      if (result == null) result = items;
+      else result.retainSorted(items);
+      if (result.isEmpty())
+        break;
+    }
+    return result;
+  }
+
+  /**
+   * @return runs of the words long enough to narrow the search
+   */
+  static Set<String> getSearchRuns(String[] words) {
+    Set<String> runs = Collections15.linkedHashSet();
+    for (String word : words) {
+      if (word == null) continue;
+      for (String run : tokenize(word)) {
+        if (run.length() >= MIN_RUN_LENGTH) runs.add(run);
+      }
+    }
+    return runs;
+  }
+
+  /**
+   * @return case-folded maximal runs of letters and digits
+   */
+  static List<String> tokenize(String text) {
+    List<String> tokens = Collections15.arrayList();
+    StringBuilder token = new StringBuilder();
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      if (Character.isLetterOrDigit(c)) {
+        token.append(Character.toLowerCase(Character.toUpperCase(c)));
+      } else if (token.length() > 0) {
+        tokens.add(token.toString());
+        token.setLength(0);
+      }
+    }
+    if (token.length() > 0) tokens.add(token.toString());
+    return tokens;
+  }
+
+  /**
+   * Replaces postings of the item attribute with tokens of the text. Does nothing if the postings are up to date.
+   * @param text new value, null if the value is removed
+   */
+  private static void index(TransactionContext context, long item, DBAttribute<?> attribute, @Nullable String text)
+    throws SQLiteException
+  {
+    Map<String, Integer> counts = Collections15.linkedHashMap();
+    if (text != null) {
+      for (String token : tokenize(text)) {
+        Integer count = counts.get(token);
+        counts.put(token, count == null ? 1 : count + 1);
+      }
+    }
+    long attributeItem = IdentifiedObjectCache.get(context).getMaterialized(attribute, context);
+    if (attributeItem <= 0) {
+      // the ID attribute while it is being materialized
+      return;
+    }
+    if (counts.equals(loadPostings(context, item, attributeItem)))
+      return;
+    String postings = context.getTableName(POSTINGS, true);
+    SQLiteStatement st = context.prepare(context.sql().append("DELETE FROM ").append(postings).append(" WHERE ")
+      .append(ITEM.getName()).append(" = ? AND ").append(POSTING_ATTRIBUTE.getName()).append(" = ?"));
+    try {
+      st.bind(1, item).bind(2, attributeItem).step();
+    } finally {
+      st.dispose();
+    }
+    if (counts.isEmpty())
+      return;
+    st = context.prepare(context.sql().append("INSERT INTO ").append(postings).append(" (")
+      .append(POSTING_TOKEN.getName()).append(", ").append(ITEM.getName()).append(", ")
+      .append(POSTING_ATTRIBUTE.getName()).append(", ").append(POSTING_COUNT.getName()).append(") VALUES (?, ?, ?, ?)"));
+    try {
+      for (Map.Entry<String, Integer> e : counts.entrySet()) {
+        st.bind(1, getTokenId(context, e.getKey())).bind(2, item).bind(3, attributeItem).bind(4, e.getValue());
+        st.step();
+        st.reset(true);
+      }
+    } finally {
+      st.dispose();
+    }
+  }
+
+  /**
+   * @return indexed tokens of the item attribute with number of occurrences
+   */
+  private static Map<String, Integer> loadPostings(TransactionContext context, long item, long attributeItem)
+    throws SQLiteException
+  {
+    Map<String, Integer> counts = Collections15.hashMap();
+    String tokens = context.getTableName(TOKENS, false);
+    String postings = context.getTableName(POSTINGS, false);
+    if (tokens == null || postings == null)
+      return counts;
+    SQLiteStatement st = context.prepare(context.sql().append("SELECT t.").append(TOKEN.getName()).append(", p.")
+      .append(POSTING_COUNT.getName()).append(" FROM ").append(postings).append(" p, ").append(tokens)
+      .append(" t WHERE p.").append(ITEM.getName()).append(" = ? AND p.").append(POSTING_ATTRIBUTE.getName())
+      .append(" = ? AND t.").append(TOKEN_ID.getName()).append(" = p.").append(POSTING_TOKEN.getName()));
+    try {
+      st.bind(1, item).bind(2, attributeItem);
+      while (st.step()) {
+        counts.put(st.columnString(0), st.columnInt(1));
+      }
+    } finally {
+      st.dispose();
+    }
+    return counts;
+  }
+
+  private static long getTokenId(TransactionContext context, String token) throws SQLiteException {
+    // the cache lives in the transaction, so ids of rolled back tokens are forgotten
+    Map<TypedKey<?>, ?> cache = context.getTransactionCache();
+    Map<String, Long> ids = TOKEN_IDS.getFrom(cache);
+    if (ids == null) {
+      ids = Collections15.hashMap();
+      TOKEN_IDS.putTo(cache, ids);
+    }
+    Long id = ids.get(token);
+    if (id != null)
+      return id;
+    String tokens = context.getTableName(TOKENS, true);
+    SQLiteStatement st = context.prepare(context.sql().append("SELECT ").append(TOKEN_ID.getName()).append(" FROM ")
+      .append(tokens).append(" WHERE ").append(TOKEN.getName()).append(" = ?"));
+    try {
+      st.bind(1, token);
+      if (st.step()) id = st.columnLong(0);
+    } finally {
+      st.dispose();
+    }
+    if (id == null) {
+      st = context.prepare(context.sql().append("INSERT INTO ").append(tokens).append(" (").append(TOKEN.getName())
+        .append(") VALUES (?)"));
+      try {
+        st.bind(1, token).step();
+        id = context.getConnection().getLastInsertId();
+      } finally {
+        st.dispose();
+      }
+    }
+    ids.put(token, id);
+    return id;
+  }
+
+  private static LongArray findItems(TransactionContext context, String run) throws SQLiteException {
+    String tokens = context.getTableName(TOKENS, false);
+    String postings = context.getTableName(POSTINGS, false);
+    if (tokens == null || postings == null)
+      return new LongArray();
+    // runs contain only letters and digits, so LIKE needs no escaping
+    SQLiteStatement st = context.prepare(context.sql().append("SELECT DISTINCT p.").append(ITEM.getName())
+      .append(" FROM ").append(postings).append(" p, ").append(tokens).append(" t WHERE t.").append(TOKEN.getName())
+      .append(" LIKE ? AND p.").append(POSTING_TOKEN.getName()).append(" = t.").append(TOKEN_ID.getName()));
+    LongSetBuilder builder = new LongSetBuilder();
+    context.addCancellable(st);
+    try {
+      st.bind(1, "%" + run + "%");
+      while (st.step()) {
+        builder.add(st.columnLong(0));
+      }
+    } finally {
+      context.removeCancellable(st);
+      st.dispose();
+    }
+    return builder.commitToArray();
+  }
+
+  private static LongArray addMasters(TransactionContext context, LongList items,
+    List<DBAttribute<Long>> slaveReferences)
+  {
+    DBReaderImpl reader = new DBReaderImpl(context);
+    reader.prefetchValues(items, slaveReferences);
+    LongSetBuilder builder = new LongSetBuilder();
+    for (int i = 0; i < items.size(); i++) {
+      long item = items.get(i);
+      builder.add(item);
+      for (DBAttribute<Long> reference : slaveReferences) {
+        Long master = reader.getValue(item, reference);
+        if (master != null && master > 0) builder.add(master);
+      }
+    }
+    return builder.commitToArray();
+  }
+
+  @Override
+  public String toString() {
+    return "TextIndex";
+  }
+}
@@ -0,0 +1,90 @@
+package com.almworks.items.impl;
+
+import com.almworks.integers.LongArray;
+import com.almworks.integers.LongIterable;
+import com.almworks.integers.LongIterator;
+import com.almworks.integers.LongSetBuilder;
+import com.almworks.items.api.DP;
+import com.almworks.items.api.FullTextPredicate;
+import com.almworks.items.impl.dbadapter.ItemVisitor;
+import com.almworks.items.impl.sql.SQLItemSelect;
+import com.almworks.items.impl.sql.SQLItemSelectBuilder;
+import com.almworks.items.impl.sqlite.TransactionContext;
+import com.almworks.items.impl.sqlite.filter.ExtractionFunction;
+import com.almworks.items.impl.sqlite.filter.ExtractionOperator;
+import com.almworks.items.impl.sqlite.filter.ExtractionOperatorFactory;
+import com.almworks.items.impl.sqlite.filter.ExtractionVisitor;
+import com.almworks.sqlite4java.SQLiteException;
+
+/**
+ * Evaluates {@link FullTextPredicate} with help of {@link TextIndex}: only items found by the index are checked by the
+ * predicate. When the words are too short the predicate is left to {@link DefaultExtractionFactory}, while the index is
+ * not complete all items are checked.
+ */
+public class TextIndexExtractionFactory implements ExtractionOperatorFactory {
+  public ExtractionOperator convert(final DP predicate, boolean negated, TransactionContext transactionContext) {
+    if (negated || !(predicate instanceof FullTextPredicate))
+      return null;
+    final FullTextPredicate fullText = (FullTextPredicate) predicate;
+    final String[] words = fullText.getFullTextWords();
+    if (words == null || TextIndex.getSearchRuns(words).isEmpty())
+      return null;
+    return new ExtractionOperator() {
+      @Override
+      public int getPerformanceHit() {
+        return 10;
+      }
+
+      public ExtractionFunction apply(TransactionContext context, final ExtractionFunction input) {
+        return new ExtractionFunction() {
+          @Override
+          public void execute(TransactionContext context, final ExtractionVisitor visitor) throws SQLiteException {
+            // the operator may be cached, so the index state is checked each time
+            final LongArray candidates = TextIndex.isComplete(context) ?
+              TextIndex.findCandidates(context, words, fullText.getFullTextSlaveReferences()) : null;
+            final DBReaderImpl wrapper = new DBReaderImpl(context);
+            input.execute(context, new ExtractionVisitor() {
+              public void visitStarted(TransactionContext context) {
+                visitor.visitStarted(context);
+              }
+
+              public void visitSQL(TransactionContext context, SQLItemSelectBuilder sql) throws SQLiteException {
+                SQLItemSelect select = sql.build();
+                final LongSetBuilder builder = new LongSetBuilder();
+                select.visitItems(context, new ItemVisitor.ForEachItem() {
+                  @Override
+                  protected boolean visitItem(long item) throws SQLiteException {
+                    if (accept(item)) {
+                      builder.add(item);
+                    }
+                    return true;
+                  }
+                });
+                visitor.visitItems(context, builder.commitToArray());
+              }
+
+              public void visitItems(TransactionContext context, LongIterable items) throws SQLiteException {
+                final LongSetBuilder builder = new LongSetBuilder();
+                for (LongIterator ii = items.iterator(); ii.hasNext();) {
+                  long item = ii.nextValue();
+                  if (accept(item)) {
+                    builder.add(item);
+                  }
+                }
+                visitor.visitItems(context, builder.commitToArray());
+              }
+
+              public void visitFinished(TransactionContext context) throws SQLiteException {
+                visitor.visitFinished(context);
+              }
+
+              private boolean accept(long item) {
+                return (candidates == null || candidates.binarySearch(item) >= 0) && predicate.accept(item, wrapper);
+              }
+            });
+          }
+        };
+      }
+    };
+  }
+}
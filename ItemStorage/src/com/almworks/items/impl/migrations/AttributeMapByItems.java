@@ -0,0 +1,85 @@
+package com.almworks.items.impl.migrations;
+
+import com.almworks.integers.LongArray;
+import com.almworks.integers.LongIterator;
+import com.almworks.items.api.*;
+import com.almworks.items.dp.DPEquals;
+import com.almworks.items.dp.DPEqualsIdentified;
+import com.almworks.items.dp.DPNotNull;
+import com.almworks.items.impl.AttributeAdapter;
+import com.almworks.items.impl.AttributeCache;
+import com.almworks.items.impl.DBWriterImpl;
+import com.almworks.items.impl.dbadapter.DBColumn;
+import com.almworks.items.impl.scalars.ScalarAdapterAttributeMap;
+import com.almworks.items.impl.sqlite.TransactionContext;
+import com.almworks.items.util.AttributeMap;
+import com.almworks.sqlite4java.SQLiteException;
+import com.almworks.sqlite4java.SQLiteStatement;
+import org.almworks.util.Log;
+
+/**
+ * Rewrites stored {@link AttributeMap attribute maps} in the format that refers to attributes by items.<br>
+ * Values are rewritten in place: the maps do not change, so items are not marked as changed.
+ */
+public class AttributeMapByItems extends DBMigrationProcedure {
+  public AttributeMapByItems() {
+    super("com.almworks.items.migrations.AttributeMapByItems");
+  }
+
+  @Override
+  protected boolean migrate(DBWriter w) {
+    if (!(w instanceof DBWriterImpl)) {
+      Log.warn("cannot migrate attribute maps with " + w);
+      return false;
+    }
+    DBWriterImpl writer = (DBWriterImpl) w;
+    TransactionContext context = writer.getContext();
+    LongArray attrs = w.query(DPEqualsIdentified.create(DBAttribute.TYPE, DBItemType.ATTRIBUTE)
+      .and(DPEquals.create(DBAttribute.SCALAR_CLASS, AttributeMap.class.getName()))).copyItemsSorted();
+    try {
+      for (LongIterator it = attrs.iterator(); it.hasNext();) {
+        DBAttribute<?> attribute = AttributeCache.get(context).getAttributeByItem(it.nextValue(), context);
+        if (attribute == null || attribute.getComposition() != DBAttribute.ScalarComposition.SCALAR)
+          continue;
+        AttributeAdapter adapter = writer.getAttributeAdapter(attribute);
+        if (adapter == null || !(adapter.getScalarAdapter() instanceof ScalarAdapterAttributeMap))
+          continue;
+        //noinspection unchecked
+        migrateAttribute((DBAttribute<AttributeMap>) attribute, adapter, writer);
+      }
+    } catch (SQLiteException e) {
+      throw new DBException(e);
+    }
+    return true;
+  }
+
+  private void migrateAttribute(DBAttribute<AttributeMap> attribute, AttributeAdapter adapter, DBWriterImpl writer)
+    throws SQLiteException
+  {
+    TransactionContext context = writer.getContext();
+    String table = context.getTableName(adapter.getTable(), false);
+    if (table == null)
+      return;
+    LongArray items = writer.query(DPNotNull.create(attribute)).copyItemsSorted();
+    ScalarAdapterAttributeMap scalarAdapter = (ScalarAdapterAttributeMap) adapter.getScalarAdapter();
+    SQLiteStatement update = context.prepare(context.sql()
+      .append("UPDATE ").append(table)
+      .append(" SET ").append(adapter.getScalarColumn().getName())
+      .append(" = ? WHERE ").append(DBColumn.ITEM.getName()).append(" = ?"));
+    try {
+      for (LongIterator it = items.iterator(); it.hasNext();) {
+        long item = it.nextValue();
+        AttributeMap value = writer.getValue(item, attribute);
+        if (value == null)
+          continue;
+        scalarAdapter.bindParameter(update, 1, value, context);
+        update.bind(2, item);
+        update.step();
+        update.reset();
+      }
+    } finally {
+      update.dispose();
+    }
+    Log.debug("migrated " + items.size() + " values of " + attribute);
+  }
+}
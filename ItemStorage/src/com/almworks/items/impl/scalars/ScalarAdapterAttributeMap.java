@@ -4,6 +4,7 @@
 import com.almworks.items.impl.AttributeAdapter;
 import com.almworks.items.impl.AttributeCache;
 import com.almworks.items.impl.DBWriterImpl;
+import com.almworks.items.impl.IdentifiedObjectCache;
 import com.almworks.items.impl.ScalarValueAdapter;
 import com.almworks.items.impl.dbadapter.DBColumn;
 import com.almworks.items.impl.sqlite.TransactionContext;
@@ -19,7 +20,15 @@
 
 // written attributes should be materialized!
 public class ScalarAdapterAttributeMap extends ScalarValueAdapter<AttributeMap> {
+  /**
+   * Attributes are written by ids, values follow each attribute
+   */
   private static final int SIGNATURE = 0xA1151B0E;
+  /**
+   * Attributes are written by items, followed by the lengths of the values and the values. A value is decoded when it
+   * is first requested.
+   */
+  private static final int SIGNATURE_ITEMS = 0xA1151B0F;
 
   @Override
   public Class<AttributeMap> getAdaptedClass() {
@@ -61,6 +70,8 @@ public AttributeMap loadUserValue(SQLiteStatement select, int columnIndex, Trans
   @Override
   protected AttributeMap readValueFromStream(DataInput in, TransactionContext context) throws IOException {
     int signature = in.readInt();
+    if (signature == SIGNATURE_ITEMS)
+      return readByItems(in, context);
     if (signature != SIGNATURE)
       throw new IOException("bad signature");
     AttributeMap r = new AttributeMap();
@@ -83,16 +94,95 @@ protected AttributeMap readValueFromStream(DataInput in, TransactionContext cont
     return r;
   }
 
+  private AttributeMap readByItems(DataInput in, TransactionContext context) throws IOException {
+    int mapLength = CompactInt.readInt(in);
+    if (mapLength < 0)
+      return null;
+    AttributeCache cache = AttributeCache.get(context);
+    DBAttribute[] attributes = new DBAttribute[mapLength];
+    for (int i = 0; i < mapLength; i++) {
+      long item = CompactInt.readLong(in);
+      attributes[i] = cache.getAttributeByItem(item, context);
+      if (attributes[i] == null) {
+        throw new IOException("cannot locate attribute " + item);
+      }
+    }
+    int[] offsets = new int[mapLength + 1];
+    for (int i = 0; i < mapLength; i++) {
+      int length = CompactInt.readInt(in);
+      if (length < 0)
+        throw new IOException("bad length " + length + " of " + attributes[i].getId());
+      offsets[i + 1] = offsets[i] + length;
+    }
+    byte[] values = new byte[offsets[mapLength]];
+    in.readFully(values);
+    AttributeMap r = new AttributeMap();
+    for (int i = 0; i < mapLength; i++) {
+      DBAttribute attribute = attributes[i];
+      AttributeAdapter adapter = context.getDatabaseContext().getAttributeAdapter(attribute);
+      if (adapter == null) {
+        throw new IOException("cannot read " + attribute.getId());
+      }
+      EncodedValue value = new EncodedValue(adapter, values, offsets[i], offsets[i + 1] - offsets[i]);
+      // nested maps refer to attributes, so they cannot be decoded outside of the transaction
+      if (adapter.getScalarClass() == AttributeMap.class)
+        r.put(attribute, adapter.readValueFromStream(value.getInput(), context));
+      else
+        r.putLazy(attribute, value);
+    }
+    return r;
+  }
+
   @Override
   protected void writeValueToStream(DataOutput out, AttributeMap userValue, TransactionContext context)
     throws IOException
   {
-    out.writeInt(SIGNATURE);
     if (userValue == null) {
+      out.writeInt(SIGNATURE_ITEMS);
       CompactInt.writeInt(out, -1);
       return;
     }
     Set<DBAttribute<?>> attributes = userValue.keySet();
+    long[] items = new long[attributes.size()];
+    int index = 0;
+    for (DBAttribute<?> attribute : attributes) {
+      long item = getAttributeItem(attribute, context);
+      if (item <= 0) {
+        writeByIds(out, userValue, context);
+        return;
+      }
+      items[index++] = item;
+    }
+    ByteArrayOutputStream values = new ByteArrayOutputStream();
+    DataOutputStream valuesOut = new DataOutputStream(values);
+    int[] lengths = new int[attributes.size()];
+    index = 0;
+    for (DBAttribute attribute : attributes) {
+      AttributeAdapter adapter = context.getDatabaseContext().getAttributeAdapter(attribute);
+      if (adapter == null) {
+        throw new IOException("cannot write " + attribute.getId());
+      }
+      int start = valuesOut.size();
+      adapter.writeValueToStream(valuesOut, userValue.get(attribute), context);
+      lengths[index++] = valuesOut.size() - start;
+    }
+    out.writeInt(SIGNATURE_ITEMS);
+    CompactInt.writeInt(out, items.length);
+    for (long item : items) {
+      CompactInt.writeLong(out, item);
+    }
+    for (int length : lengths) {
+      CompactInt.writeInt(out, length);
+    }
+    out.write(values.toByteArray());
+  }
+
+  /**
+   * Old format, written when an attribute cannot be materialized
+   */
+  private void writeByIds(DataOutput out, AttributeMap userValue, TransactionContext context) throws IOException {
+    out.writeInt(SIGNATURE);
+    Set<DBAttribute<?>> attributes = userValue.keySet();
     CompactInt.writeInt(out, attributes.size());
     for (DBAttribute attribute : attributes) {
       CompactChar.writeString(out, attribute.getId());
@@ -104,10 +194,29 @@ protected void writeValueToStream(DataOutput out, AttributeMap userValue, Transa
     }
   }
 
+  private static long getAttributeItem(DBAttribute<?> attribute, TransactionContext context) {
+    long item = IdentifiedObjectCache.get(context).getMaterialized(attribute, context);
+    if (item <= 0 && context.isWriteAllowed()) {
+      item = new DBWriterImpl(context, null).materialize(attribute);
+    }
+    return item;
+  }
+
   @Override
   public void bindParameter(SQLiteStatement statement, int bindIndex, AttributeMap userValue,
     TransactionContext context) throws SQLiteException
   {
+    // materialize attributes
+    if (userValue != null) {
+      Set<DBAttribute<?>> attributes = userValue.keySet();
+      if (!attributes.isEmpty()) {
+        DBWriterImpl writer = new DBWriterImpl(context, null);
+        for (DBAttribute<?> attribute : attributes) {
+          writer.materialize(attribute);
+        }
+      }
+    }
+
     OutputStream os = statement.bindStream(bindIndex);
     try {
       DataOutputStream out = new DataOutputStream(os);
@@ -123,21 +232,41 @@ public void bindParameter(SQLiteStatement statement, int bindIndex, AttributeMap
         // ignore
       }
     }
- 
-    // materialize attributes
-    if (userValue != null) {
-      Set<DBAttribute<?>> attributes = userValue.keySet();
-      if (!attributes.isEmpty()) {
-        DBWriterImpl writer = new DBWriterImpl(context, null);
-        for (DBAttribute<?> attribute : attributes) {
-          writer.materialize(attribute);
-        }
-      }
-    }
   }
 
   @Override
   public Object toSearchValue(AttributeMap userValue) {
     return null;
   }
+
+  /**
+   * Encoded value of one attribute. Decoding of scalars does not need the transaction.
+   */
+  private static class EncodedValue extends AttributeMap.LazyValue {
+    private final AttributeAdapter myAdapter;
+    private final byte[] myBytes;
+    private final int myOffset;
+    private final int myLength;
+
+    private EncodedValue(AttributeAdapter adapter, byte[] bytes, int offset, int length) {
+      myAdapter = adapter;
+      myBytes = bytes;
+      myOffset = offset;
+      myLength = length;
+    }
+
+    private DataInput getInput() {
+      return new DataInputStream(new ByteArrayInputStream(myBytes, myOffset, myLength));
+    }
+
+    @Override
+    protected Object decode() {
+      try {
+        return myAdapter.readValueFromStream(getInput(), null);
+      } catch (IOException e) {
+        Log.warn("cannot read value", e);
+        return null;
+      }
+    }
+  }
 }
@@ -0,0 +1,49 @@
+package com.almworks.items.impl.sqlite;
+
+import com.almworks.items.api.DBAttribute;
+import org.almworks.util.Collections15;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Remembers attributes changed by recent transactions, so readers can tell which attributes have changed between two
+ * ICNs without looking at the values.<br>
+ * A transaction is recorded before it is committed. If it is rolled back, its ICN is reused by the next transaction,
+ * which replaces the record.
+ */
+public class ChangedAttributesLog {
+  private static final int MAX_TRANSACTIONS = 1000;
+
+  // Guarded by this. Null value means that the transaction's changes are not known
+  private final TreeMap<Long, Set<DBAttribute>> myChanges = new TreeMap<Long, Set<DBAttribute>>();
+
+  synchronized void transactionChanged(long icn, @Nullable Set<DBAttribute> attributes) {
+    myChanges.put(icn, attributes == null ? null : Collections.unmodifiableSet(Collections15.hashSet(attributes)));
+    while (myChanges.size() > MAX_TRANSACTIONS) {
+      myChanges.pollFirstEntry();
+    }
+  }
+
+  /**
+   * @return attributes changed by transactions with ICN in (fromIcn, toIcn], null if the changes are not known
+   */
+  @Nullable
+  public synchronized Set<DBAttribute> getChangedAttributes(long fromIcn, long toIcn) {
+    if (fromIcn >= toIcn)
+      return Collections.emptySet();
+    SortedMap<Long, Set<DBAttribute>> changes = myChanges.subMap(fromIcn + 1, toIcn + 1);
+    if (changes.size() != toIcn - fromIcn)
+      return null;
+    Set<DBAttribute> result = Collections15.hashSet();
+    for (Set<DBAttribute> attributes : changes.values()) {
+      if (attributes == null)
+        return null;
+      result.addAll(attributes);
+    }
+    return result;
+  }
+}
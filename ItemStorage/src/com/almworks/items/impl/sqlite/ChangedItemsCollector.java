@@ -2,10 +2,18 @@
 
 import com.almworks.integers.LongList;
 import com.almworks.integers.LongSetBuilder;
+import com.almworks.items.api.DBAttribute;
+import org.almworks.util.Collections15;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collections;
+import java.util.Set;
 
 public class ChangedItemsCollector {
   private final LongSetBuilder myChangedItems = new LongSetBuilder();
+  private final Set<DBAttribute> myChangedAttributes = Collections15.hashSet();
   private boolean myHasChangedItems;
+  private boolean myUnknownChange;
 
   public void itemChanged(long itemId) {
     if (itemId <= 0)
@@ -14,15 +22,36 @@ public void itemChanged(long itemId) {
     myHasChangedItems = true;
   }
 
+  /**
+   * @param attribute changed attribute of the item, null if the change cannot be attributed (e.g. a new item)
+   */
+  public void itemChanged(long itemId, @Nullable DBAttribute<?> attribute) {
+    if (itemId <= 0)
+      return;
+    itemChanged(itemId);
+    if (attribute == null) myUnknownChange = true;
+    else if (!myUnknownChange) myChangedAttributes.add(attribute);
+  }
+
   public LongList drainChangedItemsSorted() {
     LongList items = myChangedItems.toArray();
     myChangedItems.clear(true);
     return items;
   }
 
+  /**
+   * @return attributes changed since the last {@link #cleanUp()}, null if some changes are not attributed
+   */
+  @Nullable
+  public Set<DBAttribute> getChangedAttributes() {
+    return myUnknownChange ? null : Collections.unmodifiableSet(myChangedAttributes);
+  }
+
   public void cleanUp() {
     myChangedItems.clear(true);
+    myChangedAttributes.clear();
     myHasChangedItems = false;
+    myUnknownChange = false;
   }
 
   public boolean hasChanges() {
@@ -14,6 +14,11 @@ protected void dbrun(TransactionContext context) throws Throwable {
     myRead.read(context);
   }
 
+  @Override
+  public Object getStatisticsKey() {
+    return myRead.getClass();
+  }
+
   public TransactionType getTransactionType() {
     return TransactionType.READ_ROLLBACK;
   }
@@ -11,6 +11,10 @@ final class DBTransactionJob extends DatabaseJob {
   private final TransactionObserver myTransactionObserver;
 
   private long myIcn;
+  /**
+   * True if the job has been committed together with later jobs, and the last of them notifies the observer
+   */
+  private boolean myNotificationMerged;
 
   public DBTransactionJob(DBTransaction transaction, TransactionObserver transactionObserver) {
     myTransactionObserver = transactionObserver;
@@ -24,19 +28,31 @@ public TransactionType getTransactionType() {
 
   protected void handleFinished(boolean success) {
     super.handleFinished(success);
-    if (success && myIcn > 0) {
+    if (success && myIcn > 0 && !myNotificationMerged) {
       // todo pass myChange as a hint for the last icn
       myTransactionObserver.notifyTransaction(myIcn);
     }
     myIcn = 0;
   }
 
+  /**
+   * @return true if the transaction has changed items and got an ICN
+   */
+  boolean hasChanges() {
+    return myIcn > 0;
+  }
+
+  void mergeNotification() {
+    myNotificationMerged = true;
+  }
+
   protected void dbrun(TransactionContext context) throws Throwable {
     myTransaction.transaction(context);
     if (context.hasItemChanges()) {
       context.flushChangedItemsICN();
       applyTriggers(context);
       myIcn = context.getIcn();
+      context.getDatabaseContext().getChangedAttributesLog().transactionChanged(myIcn, context.getChangedAttributes());
       context.setProperty(Schema.NEXT_ICN, myIcn + 1);
     }
   }
@@ -10,11 +10,16 @@
 import org.jetbrains.annotations.NotNull;
 
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class DatabaseContext {
   private final DBConfiguration myConfiguration;
   private final Map<DBAttribute, AttributeAdapter> myAttributeAdapters = Collections15.hashMap();
   private final UserDataHolder myUserData = new UserDataHolder();
+  private final QueryPlanCache myQueryPlanCache = new QueryPlanCache();
+  private final ChangedAttributesLog myChangedAttributes = new ChangedAttributesLog();
+  private final AtomicLong myWriteCommits = new AtomicLong();
+  private final AtomicLong myTableChanges = new AtomicLong();
 
   public DatabaseContext(DBConfiguration configuration) {
     myConfiguration = configuration;
@@ -28,6 +33,38 @@ public UserDataHolder getUserData() {
     return myUserData;
   }
 
+  public QueryPlanCache getQueryPlanCache() {
+    return myQueryPlanCache;
+  }
+
+  public ChangedAttributesLog getChangedAttributesLog() {
+    return myChangedAttributes;
+  }
+
+  /**
+   * @return number of write transactions committed by all connections
+   */
+  public long getWriteCommitCount() {
+    return myWriteCommits.get();
+  }
+
+  void writeCommitted() {
+    myWriteCommits.incrementAndGet();
+  }
+
+  /**
+   * Counts changes of tables made by all connections. A change is counted when it is made and once more when the
+   * changing transaction is finished, so transactions started in between may be told from the later ones.
+   * @return number of table changes
+   */
+  public long getTableChangeCount() {
+    return myTableChanges.get();
+  }
+
+  void tablesChanged() {
+    myTableChanges.incrementAndGet();
+  }
+
   @NotNull
   public AttributeAdapter getAttributeAdapter(DBAttribute<?> attribute) {
     synchronized (myAttributeAdapters) {
@@ -94,6 +94,14 @@ public Object getIdentity() {
     return this;
   }
 
+  /**
+   * Jobs with the same key are expected to run for about the same time. The queue collects running time statistics
+   * by this key.
+   */
+  public Object getStatisticsKey() {
+    return getClass();
+  }
+
   public final synchronized void setListener(ChangeListener listener) {
     assert listener == null ^ myListener == null : myListener + " " + listener;
     myListener = listener;
@@ -270,7 +278,13 @@ public enum TransactionType {
     /**
      * Transaction will write to the MAIN database.
      */
-    WRITE
+    WRITE,
+
+    /**
+     * Job runs outside of any transaction, for statements that SQLite does not run inside a transaction (such as
+     * a WAL checkpoint). Each statement is committed on its own.
+     */
+    NONE
   }
 
 
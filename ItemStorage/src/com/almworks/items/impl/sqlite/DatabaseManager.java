@@ -11,23 +11,32 @@
 import com.almworks.util.collections.Modifiable;
 import com.almworks.util.commons.Procedure;
 import com.almworks.util.io.IOUtils;
+import org.almworks.util.Collections15;
 import org.almworks.util.Log;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.*;
 import java.util.Date;
+import java.util.List;
 import java.util.regex.Pattern;
 
 public class DatabaseManager {
   private static final Pattern ALLOWED_TEMP_DIR_NAME = Pattern.compile("\\p{ASCII}+");
+  /**
+   * Number of read connections with WAL. Without WAL readers wait for the writer anyway, so one connection is used.
+   */
+  private static final int WAL_READERS = Math.max(1, Env.getInteger("db.readers", 3));
 
   private final String myName;
   @NotNull
   private final DatabaseQueue myMainDB;
 
-  @Nullable
-  private final DatabaseQueue myShowDB;
+  /**
+   * Read-only connections, the first one ("view") also serves the query processor. Empty for in-memory database.
+   * There are several connections only with WAL.
+   */
+  private final List<DatabaseQueue> myReadDBs;
 
   @Nullable
   private final DatabaseQueue myMonitorDB;
@@ -49,25 +58,29 @@ public class DatabaseManager {
 
   private Thread myProfilerThread;
 
-  private DatabaseManager(String name, DatabaseQueue mainDB, @Nullable DatabaseQueue showDB, @Nullable DatabaseQueue monitorDB,
+  private DatabaseManager(String name, DatabaseQueue mainDB, List<DatabaseQueue> readDBs, @Nullable DatabaseQueue monitorDB,
     int din, @Nullable DatabaseContext databaseContext)
   {
     myName = "DM[" + name + "]";
     myMainDB = mainDB;
-    myShowDB = showDB;
+    myReadDBs = readDBs;
     myMonitorDB = monitorDB;
     myDin = din;
     myDatabaseContext = databaseContext;
-    DatabaseQueue queryDB = showDB != null ? showDB : mainDB;
+    DatabaseQueue queryDB = readDBs.isEmpty() ? mainDB : readDBs.get(0);
     myQueryProcessor = new QueryProcessorImpl(queryDB);
     myFilterManager = new SimpleOldFilterManager(myQueryProcessor, databaseContext);
     myCacheManager = new ValueCacheManager(myQueryProcessor);
-    myMonitor = myMonitorDB == null ? null : new DatabaseMonitor(myMonitorDB, myQueryProcessor);
+    List<DatabaseQueue> watchedQueues = Collections15.arrayList();
+    watchedQueues.add(mainDB);
+    watchedQueues.addAll(readDBs);
+    myMonitor = myMonitorDB == null ? null : new DatabaseMonitor(myMonitorDB, myQueryProcessor, watchedQueues);
   }
 
   private void start() {
-    createArrays(myMainDB, 4, TransactionContext.ICN_UPDATE_ARRAY);
-    if (myShowDB != null) createArrays(myShowDB, 4);
+    createArrays(myMainDB, DatabaseJob.TransactionType.WRITE, 4, TransactionContext.ICN_UPDATE_ARRAY);
+    // arrays are temporary tables, readers must not lock the main database
+    for (DatabaseQueue readDB : myReadDBs) createArrays(readDB, DatabaseJob.TransactionType.READ_COMMIT, 4);
 
     myCacheManager.attach();
     if (myMonitor != null) {
@@ -84,7 +97,9 @@ public void run() {
     }
   }
 
-  private void createArrays(DatabaseQueue db, final int count, final String... fixedNames) {
+  private void createArrays(DatabaseQueue db, final DatabaseJob.TransactionType type, final int count,
+    final String... fixedNames)
+  {
     db.execute(new DatabaseJob() {
       @Override
       protected void dbrun(TransactionContext context) throws Throwable {
@@ -102,7 +117,7 @@ protected void dbrun(TransactionContext context) throws Throwable {
 
       @Override
       public TransactionType getTransactionType() {
-        return TransactionType.WRITE;
+        return type;
       }
     });
   }
@@ -119,7 +134,9 @@ private void dumpCycle() {
         Thread.sleep(sleep);
         try {
           dump("main", myMainDB);
-          dump("view", myShowDB);
+          for (int i = 0; i < myReadDBs.size(); i++) {
+            dump(i == 0 ? "view" : "view" + i, myReadDBs.get(i));
+          }
           dump("monitor", myMonitorDB);
         } catch (RuntimeException e) {
           // ignore
@@ -157,7 +174,7 @@ public static DatabaseManager open(@Nullable File filename, @Nullable File tempD
     throws InterruptedException, SQLiteException
   {
     DatabaseQueue mainDB = null;
-    DatabaseQueue showDB = null;
+    List<DatabaseQueue> readDBs = Collections15.arrayList();
     DatabaseQueue monitorDB = null;
     boolean memoryDatabase = filename == null;
     int din;
@@ -165,20 +182,24 @@ public static DatabaseManager open(@Nullable File filename, @Nullable File tempD
       mainDB = DatabaseQueue.start(filename, "db:main", databaseContext);
       din = initDB(mainDB, tempDir);
       if (!memoryDatabase) {
-        showDB = DatabaseQueue.start(filename, "db:view", databaseContext);
+        int readers = databaseContext.getConfiguration().isWalEnabled() ? WAL_READERS : 1;
+        for (int i = 0; i < readers; i++) {
+          readDBs.add(DatabaseQueue.start(filename, i == 0 ? "db:view" : "db:view" + i, databaseContext));
+        }
         monitorDB = createMonitorDB(filename, databaseContext);
       }
     } catch (SQLiteException e) {
       if (monitorDB != null)
         monitorDB.stop(false);
-      if (showDB != null)
-        showDB.stop(false);
+      for (DatabaseQueue readDB : readDBs) {
+        readDB.stop(false);
+      }
       if (mainDB != null)
         mainDB.stop(false);
       throw e;
     }
     String name = filename == null ? "mem" : filename.getName();
-    DatabaseManager connection = new DatabaseManager(name, mainDB, showDB, monitorDB, din, databaseContext);
+    DatabaseManager connection = new DatabaseManager(name, mainDB, readDBs, monitorDB, din, databaseContext);
     connection.start();
     return connection;
   }
@@ -242,9 +263,11 @@ public void stop() throws InterruptedException {
     }
     myMainDB.stop(true);
     myMainDB.waitFor();
-    if (myShowDB != null) {
-      myShowDB.stop(true);
-      myShowDB.waitFor();
+    for (DatabaseQueue readDB : myReadDBs) {
+      readDB.stop(true);
+    }
+    for (DatabaseQueue readDB : myReadDBs) {
+      readDB.waitFor();
     }
     synchronized (this) {
       myStopped = true;
@@ -260,8 +283,9 @@ public DatabaseJob write(DBPriority priority, final DBTransaction transaction) {
 
   public void waitAllProcessed() throws InterruptedException {
     myMainDB.flush();
-    if (myShowDB != null)
-      myShowDB.flush();
+    for (DatabaseQueue readDB : myReadDBs) {
+      readDB.flush();
+    }
     if (myMonitorDB != null)
       myMonitorDB.flush();
   }
@@ -272,15 +296,52 @@ private DBTransactionJob createTransactionJob(DBTransaction transaction) {
   }
 
   public DatabaseJob read(DBPriority priority, final DBRead read) {
-    DatabaseQueue queue = priority.isForeground() ? myShowDB : myMainDB;
-    if (queue == null)
-      queue = myMainDB;
+    DatabaseQueue queue = selectReadQueue(priority);
     DBReadJob job = new DBReadJob(read);
     job.setPriority(priority.getRelativePriority());
     queue.execute(job);
     return job;
   }
 
+  /**
+   * Foreground reads go to the least loaded read connection.<br>
+   * Background reads run on the main queue after the writes requested before them. With WAL and several read connections
+   * they go to a read connection other than "view" when no write is pending, so they still see all such writes and do
+   * not delay foreground reads and live queries. Without WAL a long background read on a read connection would queue
+   * before foreground reads and hold a SHARED lock the writer waits for, so they stay on the main queue.
+   */
+  private DatabaseQueue selectReadQueue(DBPriority priority) {
+    if (myReadDBs.isEmpty())
+      return myMainDB;
+    boolean foreground = priority.isForeground();
+    if (!foreground && (myReadDBs.size() == 1 || !myDatabaseContext.getConfiguration().isWalEnabled() || myMainDB.hasWriteJobs()))
+      return myMainDB;
+    DatabaseQueue best = null;
+    int bestLoad = Integer.MAX_VALUE;
+    for (int i = foreground ? 0 : 1; i < myReadDBs.size(); i++) {
+      DatabaseQueue queue = myReadDBs.get(i);
+      int load = queue.getLoad();
+      if (load < bestLoad) {
+        best = queue;
+        bestLoad = load;
+      }
+    }
+    assert best != null : this;
+    return best;
+  }
+
+  /**
+   * Runs WAL checkpoint on the main connection
+   * @return false if the database does not use WAL, the job is not executed then
+   */
+  public boolean checkpoint(DBPriority priority, WalCheckpointJob job) {
+    if (myReadDBs.isEmpty() || !myDatabaseContext.getConfiguration().isWalEnabled())
+      return false;
+    job.setPriority(priority.toBackgroundPriority());
+    myMainDB.execute(job);
+    return true;
+  }
+
   public QueryProcessorImpl getQueryProcessor() {
     return myQueryProcessor;
   }
@@ -306,7 +367,13 @@ public Modifiable getMainQueueEmptySignal() {
   }
 
   public boolean isDbThread() {
-    return isDbThread(myMainDB) || isDbThread(myMonitorDB) || isDbThread(myShowDB);
+    if (isDbThread(myMainDB) || isDbThread(myMonitorDB))
+      return true;
+    for (DatabaseQueue readDB : myReadDBs) {
+      if (isDbThread(readDB))
+        return true;
+    }
+    return false;
   }
 
   private static boolean isDbThread(@Nullable DatabaseQueue queue) {
@@ -4,19 +4,31 @@
 import org.almworks.util.Log;
 import util.concurrent.SynchronizedBoolean;
 
+import java.util.List;
+
+/**
+ * Periodically checks for new transactions and watches database queues: queue state is dumped to the log when a job
+ * waits too long, and at debug level once in {@link #DUMP_PERIOD}.
+ */
 class DatabaseMonitor implements TransactionObserver, Runnable {
   private static final int PERIOD = 2000;
+  private static final int DUMP_PERIOD = 60000;
+  private static final int SLOW_WAIT = 10000;
 
   private final DatabaseQueue myQueue;
   private final QueryProcessor myQueryProcessor;
+  private final List<DatabaseQueue> myWatchedQueues;
   private final Thread myThread = ThreadFactory.create("db:monitor:timer", this);
   private final SynchronizedBoolean myStopped = new SynchronizedBoolean(false);
 
   private long myLastIcn;
+  private long myLastDump;
+  private long myLastWarning;
 
-  public DatabaseMonitor(DatabaseQueue queue, QueryProcessor queryProcessor) {
+  public DatabaseMonitor(DatabaseQueue queue, QueryProcessor queryProcessor, List<DatabaseQueue> watchedQueues) {
     myQueue = queue;
     myQueryProcessor = queryProcessor;
+    myWatchedQueues = watchedQueues;
   }
 
   public void start() {
@@ -39,12 +51,39 @@ public void run() {
       while (true) {
         if (myStopped.waitForValue(true, PERIOD)) return;
         myQueue.execute(new MonitorJob());
+        checkQueues();
       }
     } catch (InterruptedException e) {
       Log.warn(this + " interrupted, exiting", e);
     }
   }
 
+  private void checkQueues() {
+    long now = System.currentTimeMillis();
+    boolean slow = false;
+    for (DatabaseQueue queue : myWatchedQueues) {
+      if (queue.getOldestWait() > SLOW_WAIT) {
+        slow = true;
+        break;
+      }
+    }
+    boolean warn = slow && now - myLastWarning > DUMP_PERIOD;
+    boolean dump = now - myLastDump > DUMP_PERIOD;
+    if (!warn && !dump)
+      return;
+    StringBuilder report = new StringBuilder("database queues:");
+    for (DatabaseQueue queue : myWatchedQueues) {
+      report.append("\n").append(queue.dumpScheduler());
+    }
+    if (warn) {
+      myLastWarning = now;
+      Log.warn(report.toString());
+    } else {
+      Log.debug(report.toString());
+    }
+    myLastDump = now;
+  }
+
   public void notifyTransaction(long icn) {
     update(icn);
   }
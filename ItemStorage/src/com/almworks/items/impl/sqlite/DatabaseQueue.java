@@ -14,10 +14,10 @@
 import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
+import static com.almworks.items.impl.sqlite.DatabaseJob.TransactionType.NONE;
 import static com.almworks.items.impl.sqlite.DatabaseJob.TransactionType.READ_ROLLBACK;
 import static com.almworks.items.impl.sqlite.DatabaseJob.TransactionType.WRITE;
 
@@ -37,6 +37,7 @@ class DatabaseQueue implements DatabaseExecutor {
   private static final int STOP_REQUIRED = 2;
 
   private static final long MAX_STACKED_ROLLBACK_TRANSACTION_DURATION = 500;
+  private static final int WAL_AUTOCHECKPOINT_PAGES = 16384;
 
   private final Map<TypedKey, ?> myConnectionParameters = Collections15.synchronizedHashMap();
   private final File myDatabaseFile;
@@ -45,17 +46,16 @@ class DatabaseQueue implements DatabaseExecutor {
 
   private final SimpleModifiable myQueueEmptySignal = new SimpleModifiable();
 
-  private final ChangeListener myJobListener = new ChangeListener() {
-    public void onChange() {
-      checkJobs();
-    }
-  };
 
   private final Object myLock = new Object();
 
   // protected by myLock {
-  private final Map<Object, DatabaseJob> myJobs = Collections15.linkedHashMap();
+  private final JobScheduler myScheduler = new JobScheduler();
   private DatabaseJob myCurrentJob;
+  /**
+   * Jobs committed together with myCurrentJob (see {@link com.almworks.items.impl.DBConfiguration#getGroupCommitSize()}), null if none
+   */
+  private List<DatabaseJob> myCurrentBatch;
   private Thread myThread;
   private int myStopState = 0;
   // } end of protected by myLock
@@ -67,7 +67,12 @@ public void onChange() {
   private SessionContext mySessionContext;
   private TransactionContext myCurrentTransaction;
   private long myCurrentTransactionStartTime;
+  private long myCurrentTransactionWriteCommits;
+  private long myTableChangesAtBegin;
   private SQLiteProfiler myProfiler;
+  private int myBatchCount;
+  private int myBatchedJobCount;
+  private int myMaxBatchSize;
 
   public DatabaseQueue(@Nullable File databaseFile, String name, DatabaseContext databaseContext) {
     myDatabaseFile = databaseFile;
@@ -106,6 +111,7 @@ public void run() {
   public void stop(boolean gracefully) {
     DatabaseJob currentJob = null;
     List<DatabaseJob> removedJobs = null;
+    List<DatabaseJob> batchJobs = null;
 
     synchronized (myLock) {
       myStopState = Math.max(myStopState, gracefully ? STOP_REQUESTED : STOP_REQUIRED);
@@ -114,15 +120,21 @@ public void stop(boolean gracefully) {
         return;
       }
       if (!gracefully) {
-        removedJobs = Collections15.arrayList(myJobs.values());
-        myJobs.clear();
+        removedJobs = myScheduler.clear();
         currentJob = myCurrentJob;
+        if (myCurrentBatch != null) batchJobs = Collections15.arrayList(myCurrentBatch);
       }
       myLock.notify();
     }
     if (currentJob != null) {
       currentJob.cancel();
     }
+    if (batchJobs != null) {
+      for (DatabaseJob job : batchJobs) {
+        job.cancel();
+      }
+      removedJobs.addAll(batchJobs);
+    }
 
     finishJobs(currentJob, removedJobs);
   }
@@ -152,7 +164,7 @@ public void waitFor() throws InterruptedException {
 
   public void flush() throws InterruptedException {
     synchronized (myLock) {
-      while (!myJobs.isEmpty() || myCurrentJob != null) {
+      while (!myScheduler.isEmpty() || myCurrentJob != null) {
         myLock.wait(1000);
         myLock.notify();
       }
@@ -200,13 +212,14 @@ private void queueFunction() throws SQLiteException, InterruptedException {
       synchronized (myLock) {
         clearCurrentJob();
         while (true) {
-          if (myStopState == STOP_REQUIRED || (myStopState == STOP_REQUESTED && myJobs.isEmpty())) {
+          if (myStopState == STOP_REQUIRED || (myStopState == STOP_REQUESTED && myScheduler.isEmpty())) {
             // stop thread
             return;
           }
           job = selectJob(true);
           if (job != null) {
             myCurrentJob = job;
+            myCurrentBatch = selectBatch(job);
             break;
           }
           if (myCurrentTransaction != null) {
@@ -240,10 +253,52 @@ private void queueFunction() throws SQLiteException, InterruptedException {
       assert job != null;
       assert myCurrentJob != null;
 
-      runJob(job);
+      List<DatabaseJob> batch;
+      synchronized (myLock) {
+        batch = myCurrentBatch;
+      }
+      long started = System.currentTimeMillis();
+      if (batch == null) {
+        runJob(job);
+      } else {
+        runBatch(job, batch);
+      }
+      long duration = System.currentTimeMillis() - started;
+      synchronized (myLock) {
+        if (batch == null) {
+          myScheduler.jobFinished(job, duration);
+        } else {
+          long jobDuration = duration / (batch.size() + 1);
+          myScheduler.jobFinished(job, jobDuration);
+          for (DatabaseJob batchJob : batch) {
+            myScheduler.jobFinished(batchJob, jobDuration);
+          }
+        }
+      }
     }
   }
 
+  /**
+   * Selects pending write jobs to be committed together with the given one: they must follow it in the queue and have
+   * the same priority.
+   * @return selected jobs, removed from the queue, or null if the job is committed alone
+   */
+  private List<DatabaseJob> selectBatch(DatabaseJob job) {
+    assert Thread.holdsLock(myLock);
+    int size = myDatabaseContext.getConfiguration().getGroupCommitSize();
+    if (size <= 1 || !(job instanceof DBTransactionJob))
+      return null;
+    List<DatabaseJob> batch = null;
+    while (batch == null || batch.size() < size - 1) {
+      DatabaseJob next = selectJob(false);
+      if (!(next instanceof DBTransactionJob) || next.getPriority() != job.getPriority())
+        break;
+      if (batch == null) batch = Collections15.arrayList();
+      batch.add(selectJob(true));
+    }
+    return batch;
+  }
+
   private void createSessionContext() {
     mySessionContext = new SessionContext(myDatabaseContext);
   }
@@ -261,12 +316,23 @@ private void createConnection() {
   }
 
   private void rollback() {
+    boolean write = myCurrentTransaction != null && myCurrentTransaction.isWriteAllowed();
     disposeContext();
     try {
       myConnection.exec("ROLLBACK");
     } catch (SQLiteException e) {
       // ignore
     }
+    if (write) countTableChanges();
+  }
+
+  /**
+   * Counts table changes once more when a write transaction is finished, so transactions started before the end
+   * of the write transaction do not share query plans with the later ones (see {@link QueryPlanCache}).
+   */
+  private void countTableChanges() {
+    if (myDatabaseContext.getTableChangeCount() != myTableChangesAtBegin)
+      myDatabaseContext.tablesChanged();
   }
 
   private void disposeContext() {
@@ -281,40 +347,7 @@ private void disposeContext() {
 
   private DatabaseJob selectJob(boolean remove) {
     assert Thread.holdsLock(myLock);
-    if (myJobs.isEmpty())
-      return null;
-    DatabaseJob best = null;
-    Object bestKey = null;
-    int bestPriority = Integer.MIN_VALUE;
-    for (Iterator<Map.Entry<Object, DatabaseJob>> ii = myJobs.entrySet().iterator(); ii.hasNext();) {
-      Map.Entry<Object, DatabaseJob> entry = ii.next();
-      DatabaseJob job = entry.getValue();
-      if (job.getState() != DatabaseJob.State.PENDING) {
-        // i.e. remove cancelled
-        ii.remove();
-        continue;
-      }
-      // todo check if runnable
-      int priority = job.getPriority();
-      if (best != null) {
-        if (priority < bestPriority) {
-          continue;
-        } else if (priority == bestPriority) {
-          // todo choose the quickest, maintain statistics <jobclass> -> <timing>
-          continue;
-        }
-      }
-      best = job;
-      bestKey = entry.getKey();
-      bestPriority = priority;
-    }
-    if (best != null && remove) {
-      assert bestKey != null;
-      DatabaseJob removed = myJobs.remove(bestKey);
-      assert removed == best : removed + " " + best;
-      best = removed;
-    }
-    return best;
+    return myScheduler.select(remove, System.currentTimeMillis());
   }
 
   private DatabaseJob clearCurrentJob() {
@@ -325,18 +358,120 @@ private DatabaseJob clearCurrentJob() {
       lastJob.setListener(null);
       myLock.notify();
     }
+    clearCurrentBatch();
     return lastJob;
   }
 
+  private void clearCurrentBatch() {
+    assert Thread.holdsLock(myLock);
+    List<DatabaseJob> batch = myCurrentBatch;
+    myCurrentBatch = null;
+    if (batch != null) {
+      for (DatabaseJob job : batch) {
+        job.setListener(null);
+      }
+    }
+  }
+
+  /**
+   * Runs write jobs in one SQLite transaction. Each job runs in its own savepoint, so a failed job is rolled back alone.
+   * If the transaction itself fails, all jobs fail.
+   */
+  private void runBatch(DatabaseJob first, List<DatabaseJob> rest) throws SQLiteException {
+    if (myCurrentTransaction != null) {
+      rollback();
+    }
+    List<DatabaseJob> batch = Collections15.arrayList();
+    batch.add(first);
+    batch.addAll(rest);
+    List<DatabaseJob> committed = Collections15.arrayList();
+    boolean success = false;
+    try {
+      myConnection.exec("BEGIN IMMEDIATE");
+      myTableChangesAtBegin = myDatabaseContext.getTableChangeCount();
+      for (DatabaseJob job : batch) {
+        if (runInSavepoint(job)) {
+          committed.add(job);
+        }
+      }
+      myConnection.exec("COMMIT");
+      myDatabaseContext.writeCommitted();
+      success = true;
+    } catch (SQLiteException e) {
+      Log.warn(this + ": cannot commit " + batch.size() + " jobs", e);
+      try {
+        myConnection.exec("ROLLBACK");
+      } catch (SQLiteException ee) {
+        // ignore
+      }
+      clearSessionContext();
+    } finally {
+      countTableChanges();
+      if (!success) {
+        for (DatabaseJob job : batch) {
+          job.setFinished(false);
+        }
+      }
+    }
+    if (!success)
+      return;
+    DBTransactionJob notifying = null;
+    for (DatabaseJob job : committed) {
+      DBTransactionJob transactionJob = (DBTransactionJob) job;
+      if (transactionJob.hasChanges()) {
+        if (notifying != null) notifying.mergeNotification();
+        notifying = transactionJob;
+      }
+    }
+    for (DatabaseJob job : committed) {
+      job.setFinished(true);
+    }
+    myBatchCount++;
+    myBatchedJobCount += batch.size();
+    myMaxBatchSize = Math.max(myMaxBatchSize, batch.size());
+    Log.debug(this + ": committed " + committed.size() + " of " + batch.size() + " jobs together");
+  }
+
+  /**
+   * @return true if the job is successful and its changes are kept
+   */
+  private boolean runInSavepoint(DatabaseJob job) throws SQLiteException {
+    myConnection.exec("SAVEPOINT job");
+    myCurrentTransaction = new TransactionContext(myConnection, mySessionContext, true, myTableChangesAtBegin);
+    boolean success = false;
+    try {
+      job.execute(myCurrentTransaction);
+      success = !job.isCancelled();
+    } catch (Throwable e) {
+      handleJobException(job, e);
+    } finally {
+      disposeContext();
+    }
+    if (!success) {
+      myConnection.exec("ROLLBACK TO job");
+      clearSessionContext();
+      job.setFinished(false);
+    }
+    myConnection.exec("RELEASE job");
+    return success;
+  }
+
   private void runJob(DatabaseJob job) throws InterruptedException, SQLiteException {
     long now = System.currentTimeMillis();
     DatabaseJob.TransactionType type = job.getTransactionType();
     if (myCurrentTransaction != null) {
       // todo somehow assert that the last transaction was READ_ROLLBACK
-      if (type != READ_ROLLBACK || (now - myCurrentTransactionStartTime) > MAX_STACKED_ROLLBACK_TRANSACTION_DURATION) {
+      // in WAL mode the read transaction does not see later commits
+      if (type != READ_ROLLBACK || (now - myCurrentTransactionStartTime) > MAX_STACKED_ROLLBACK_TRANSACTION_DURATION ||
+        myCurrentTransactionWriteCommits != myDatabaseContext.getWriteCommitCount())
+      {
         rollback();
       }
     }
+    if (type == NONE) {
+      runWithoutTransaction(job);
+      return;
+    }
     if (type == READ_ROLLBACK) {
       if (myCurrentTransaction == null) {
         begin(false);
@@ -390,6 +525,25 @@ private void runJob(DatabaseJob job) throws InterruptedException, SQLiteExceptio
     }
   }
 
+  /**
+   * Runs the job in autocommit mode, no transaction is started
+   */
+  private void runWithoutTransaction(DatabaseJob job) throws SQLiteException {
+    assert myCurrentTransaction == null : myCurrentTransaction + " " + job;
+    myCurrentTransaction = new TransactionContext(myConnection, mySessionContext, false);
+    myCurrentTransactionStartTime = myCurrentTransaction.getTransactionTime();
+    boolean success = false;
+    try {
+      job.execute(myCurrentTransaction);
+      success = !job.isCancelled();
+    } catch (Throwable e) {
+      handleJobException(job, e);
+    } finally {
+      disposeContext();
+      job.setFinished(success);
+    }
+  }
+
   private void clearSessionContext() {
     Log.debug(this + ": clearing context");
     SessionContext context = mySessionContext;
@@ -407,6 +561,7 @@ private void warnJobError(DatabaseJob job, Throwable error, SQLiteException sqli
   }
 
   private void commit() throws SQLiteException {
+    boolean write = myCurrentTransaction != null && myCurrentTransaction.isWriteAllowed();
     disposeContext();
     try {
       myConnection.exec("COMMIT");
@@ -416,7 +571,10 @@ private void commit() throws SQLiteException {
       } else {
         throw e;
       }
+    } finally {
+      if (write) countTableChanges();
     }
+    if (write) myDatabaseContext.writeCommitted();
   }
 
   private void begin(boolean writeLock) throws SQLiteException {
@@ -431,7 +589,9 @@ private void begin(boolean writeLock) throws SQLiteException {
         myConnection.exec(sql);
       }
     }
-    myCurrentTransaction = new TransactionContext(myConnection, mySessionContext, writeLock);
+    myCurrentTransactionWriteCommits = myDatabaseContext.getWriteCommitCount();
+    myTableChangesAtBegin = myDatabaseContext.getTableChangeCount();
+    myCurrentTransaction = new TransactionContext(myConnection, mySessionContext, writeLock, myTableChangesAtBegin);
     myCurrentTransactionStartTime = myCurrentTransaction.getTransactionTime();
   }
 
@@ -457,7 +617,15 @@ private void initConnection(SQLiteConnection db) throws SQLiteException {
     safeExec(db, "pragma cache_size=" + getParameter(CACHE_SIZE, DEFAULT_CACHE_SIZE));
 //    safeExec(db, "pragma synchronous = OFF");
     safeExec(db, "PRAGMA legacy_file_format = OFF");
-    safeExec(db, "PRAGMA journal_mode = PERSIST");
+    if (myDatabaseFile != null && myDatabaseContext.getConfiguration().isWalEnabled()) {
+      safeExec(db, "PRAGMA journal_mode = WAL");
+      // checkpoints are run by DatabaseHouseKeeper when the queue is idle, this is a safety limit
+      safeExec(db, "PRAGMA wal_autocheckpoint = " + WAL_AUTOCHECKPOINT_PAGES);
+      // the log is truncated to this size when it is restarted after a complete checkpoint
+      safeExec(db, "PRAGMA journal_size_limit = " + myDatabaseContext.getConfiguration().getWalSizeLimit());
+    } else {
+      safeExec(db, "PRAGMA journal_mode = PERSIST");
+    }
     try {
       db.setBusyTimeout(getParameter(BUSY_TIMEOUT, DEFAULT_BUSY_TIMEOUT));
     } catch (SQLiteException e) {
@@ -491,6 +659,7 @@ private void threadStopped() {
     DatabaseJob currentJob;
     List<DatabaseJob> droppedJobs = null;
     synchronized (myLock) {
+      List<DatabaseJob> batch = myCurrentBatch;
       currentJob = clearCurrentJob();
       reincarnate = myStopState == STOP_NOT_REQUESTED;
       if (reincarnate && myDatabaseFile == null) {
@@ -498,11 +667,15 @@ private void threadStopped() {
         reincarnate = false;
       }
       if (!reincarnate) {
-        droppedJobs = Collections15.arrayList(myJobs.values());
-        myJobs.clear();
+        droppedJobs = myScheduler.clear();
+        if (batch != null) droppedJobs.addAll(batch);
       }
       myThread = null;
     }
+    if (myBatchCount > 0) {
+      Log.debug(this + ": group commit " + myBatchCount + " batches, " + myBatchedJobCount + " jobs, max " +
+        myMaxBatchSize);
+    }
     if (!reincarnate) {
       finishJobs(currentJob, droppedJobs);
       Log.debug(this + " stopped");
@@ -534,14 +707,14 @@ public void run() {
   public void execute(DatabaseJob job) {
     if (job == null)
       throw new NullPointerException();
-    job.setListener(myJobListener);
+    job.setListener(new JobListener(job));
     boolean abort = false;
     synchronized (myLock) {
       if (myThread == null || myStopState != STOP_NOT_REQUESTED) {
         Log.debug("job not executed " + job);
         abort = true;
       } else {
-        myJobs.put(job.getIdentity(), job);
+        myScheduler.add(job, System.currentTimeMillis());
         myLock.notify();
       }
     }
@@ -568,6 +741,50 @@ private void checkJobs() {
     }
   }
 
+  /**
+   * @return number of jobs waiting or running in the queue. The current job is not counted when it has finished
+   * running: its result may be already delivered while the queue thread has not picked the next job yet.
+   */
+  public int getLoad() {
+    synchronized (myLock) {
+      DatabaseJob current = myCurrentJob;
+      boolean running = current != null && current.getState() == DatabaseJob.State.RUNNING;
+      return myScheduler.size() + (running ? 1 : 0);
+    }
+  }
+
+  /**
+   * @return true if a write job is waiting or running in the queue
+   */
+  public boolean hasWriteJobs() {
+    synchronized (myLock) {
+      if (myCurrentJob != null && myCurrentJob.getTransactionType() == WRITE)
+        return true;
+      return myScheduler.hasJobs(WRITE);
+    }
+  }
+
+  /**
+   * @return pending jobs by priority, their wait times and running time statistics
+   */
+  public String dumpScheduler() {
+    StringBuilder r = new StringBuilder(this.toString()).append(": ");
+    synchronized (myLock) {
+      if (myCurrentJob != null) r.append("running ").append(myCurrentJob).append(", ");
+      myScheduler.dump(r, System.currentTimeMillis());
+    }
+    return r.toString();
+  }
+
+  /**
+   * @return how long the oldest pending job waits, ms
+   */
+  public long getOldestWait() {
+    synchronized (myLock) {
+      return myScheduler.getOldestWait(System.currentTimeMillis());
+    }
+  }
+
   public boolean isQueueThread() {
     return myThread == Thread.currentThread();
   }
@@ -584,4 +801,20 @@ public static DatabaseQueue start(File dbFile, String threadName, DatabaseContex
   public SQLiteProfiler getProfiler() {
     return myProfiler;
   }
+
+
+  private class JobListener implements ChangeListener {
+    private final DatabaseJob myJob;
+
+    public JobListener(DatabaseJob job) {
+      myJob = job;
+    }
+
+    public void onChange() {
+      synchronized (myLock) {
+        myScheduler.updatePriority(myJob);
+      }
+      checkJobs();
+    }
+  }
 }
\ No newline at end of file
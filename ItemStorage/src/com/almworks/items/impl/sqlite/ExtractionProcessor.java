@@ -2,6 +2,7 @@
 
 import com.almworks.integers.*;
 import com.almworks.items.api.DBAttribute;
+import com.almworks.items.api.DBException;
 import com.almworks.items.api.DP;
 import com.almworks.items.impl.DBReaderImpl;
 import com.almworks.items.impl.dbadapter.DBFilterInvalidException;
@@ -42,10 +43,22 @@ public String toString() {
     return myExtractor.toString();
   }
 
+  /**
+   * Creates processor for the filter. The operator built for the resolved filter is taken from (and put to)
+   * {@link QueryPlanCache}.
+   */
   public static ExtractionProcessor create(BoolExpr<DP> filter, TransactionContext context)
     throws DBFilterInvalidException
   {
-    ExtractionOperator executor = createExtractor(filter, context);
+    BoolExpr<DP> resolution = DP.resolve(filter, new DBReaderImpl(context), null);
+    QueryPlanCache cache = context.getDatabaseContext().getQueryPlanCache();
+    ExtractionOperator executor = cache.get(resolution, context);
+    if (executor == null) {
+      boolean outer = QueryPlanCache.startBuild(context);
+      executor = buildDisjunction(toDnf(resolution), context);
+      if (QueryPlanCache.finishBuild(context, outer))
+        cache.put(resolution, executor, context);
+    }
     return new ExtractionProcessor(executor);
   }
 
@@ -53,6 +66,9 @@ public static ExtractionOperator createExtractor(BoolExpr<DP> filter, Transactio
     throws DBFilterInvalidException
   {
     BoolExpr<DP> resolution = DP.resolve(filter, new DBReaderImpl(context), null);
+    // the operator being built depends on resolution in the current transaction
+    if (!resolution.equals(filter))
+      QueryPlanCache.markVolatile(context);
     BoolExpr<DP> dnf = toDnf(resolution);
     return buildDisjunction(dnf, context);
   }
@@ -107,6 +123,8 @@ private static ExtractionOperator buildTerm(BoolExpr<DP> expression, Transaction
     DP filter = expression.getTerm();
     if (filter == null)
       throw new DBFilterInvalidException();
+    if (!filter.isCacheable())
+      QueryPlanCache.markVolatile(context);
     boolean negated = expression.isNegated();
     // todo priorities for factories - in case there will be conflicting factories
     for (ExtractionOperatorFactory factory : context.getDatabaseContext().getConfiguration().getFilterConvertors()) {
@@ -146,6 +164,14 @@ public LongList distributionCount(TransactionContext context, DBAttribute<?>...
     return ItemsDistribution.distributionCount(context, items, groupAttributes);
   }
 
+  public LongList valueCount(TransactionContext context, DBAttribute<?> attribute,
+    @Nullable DBAttribute<Long> parentAttribute) throws SQLiteException
+  {
+    LongSetBuilder builder = new LongSetBuilder();
+    loadItems(context, builder);
+    return ItemsDistribution.valueCount(context, builder.commitToArray(), attribute, parentAttribute);
+  }
+
   public long count(TransactionContext context) throws SQLiteException {
     CollectingExtractionVisitor v = executeAndCollect(context);
 
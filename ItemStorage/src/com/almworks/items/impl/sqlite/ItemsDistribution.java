@@ -2,6 +2,7 @@
 
 import com.almworks.integers.LongArray;
 import com.almworks.integers.LongList;
+import com.almworks.integers.LongSetBuilder;
 import com.almworks.items.api.DBAttribute;
 import com.almworks.items.impl.AttributeAdapter;
 import com.almworks.items.impl.dbadapter.DBColumn;
@@ -10,6 +11,11 @@
 import com.almworks.sqlite4java.SQLiteException;
 import com.almworks.sqlite4java.SQLiteLongArray;
 import com.almworks.sqlite4java.SQLiteStatement;
+import gnu.trove.TLongIntHashMap;
+import gnu.trove.TLongLongHashMap;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
 
 /**
  * @author Igor Sereda
@@ -108,4 +114,115 @@ public static LongList distributionCount(TransactionContext context, LongList it
       st.dispose();
     }
   }
+
+  /**
+   * Counts items by values of the attribute with one grouped statement.
+   * @param attribute attribute with INTEGER scalar representation, may be a collection
+   * @param parentAttribute if not null, the count of each value is also added to all its ancestors
+   * @return pairs [value, count] sorted by value. Value 0 stands for items without value.
+   * See {@link com.almworks.items.api.DBQuery#valueCount}
+   */
+  public static LongList valueCount(TransactionContext context, LongList itemsSorted, DBAttribute<?> attribute,
+    @Nullable DBAttribute<Long> parentAttribute) throws SQLiteException
+  {
+    if (itemsSorted == null || itemsSorted.isEmpty())
+      return LongList.EMPTY;
+    AttributeAdapter adapter = getIntegerAdapter(context, attribute);
+    String table = context.getTableName(adapter.getTable(), false);
+    if (table == null)
+      return LongArray.create(0, itemsSorted.size());
+    TLongIntHashMap counts = new TLongIntHashMap();
+    SQLiteLongArray array = null;
+    SQLiteStatement st = SQLiteStatement.DISPOSED;
+    try {
+      array = context.useArray(itemsSorted, true, true);
+      // collection may contain a value more than once
+      String count = attribute.getComposition() == DBAttribute.ScalarComposition.SCALAR ? "count(*)" : "count(DISTINCT t0.value)";
+      SQLParts parts = new SQLParts("SELECT t1.").append(adapter.getScalarColumn().getName()).append(", ").append(count)
+        .append("\n  FROM ").append(array.getName()).append(" t0")
+        .append("\n  LEFT OUTER JOIN ").append(table).append(" t1 ON t0.value=t1.").append(DBColumn.ITEM.getName())
+        .append("\n  GROUP BY 1");
+      st = context.prepare(parts);
+      context.addCancellable(st);
+      while (st.step()) {
+        long value = st.columnNull(0) ? 0 : st.columnLong(0);
+        counts.adjustOrPutValue(value, st.columnInt(1), st.columnInt(1));
+      }
+    } finally {
+      if (array != null)
+        array.dispose();
+      context.removeCancellable(st);
+      st.dispose();
+    }
+    if (parentAttribute != null)
+      rollUp(context, counts, parentAttribute);
+    long[] values = counts.keys();
+    Arrays.sort(values);
+    LongArray r = new LongArray(values.length * 2);
+    for (long value : values) {
+      r.add(value);
+      r.add(counts.get(value));
+    }
+    return r;
+  }
+
+  /**
+   * Adds count of each value to the counts of all its ancestors. Parents are loaded level by level, so the number
+   * of statements is the depth of the hierarchy.
+   */
+  private static void rollUp(TransactionContext context, TLongIntHashMap counts, DBAttribute<Long> parentAttribute)
+    throws SQLiteException
+  {
+    AttributeAdapter adapter = getIntegerAdapter(context, parentAttribute);
+    String table = context.getTableName(adapter.getTable(), false);
+    if (table == null)
+      return;
+    TLongLongHashMap parents = new TLongLongHashMap();
+    LongSetBuilder level = new LongSetBuilder();
+    for (long value : counts.keys()) {
+      if (value > 0) level.add(value);
+    }
+    while (!level.isEmpty()) {
+      LongList values = level.commitToArray();
+      level = new LongSetBuilder();
+      SQLiteLongArray array = null;
+      SQLiteStatement st = SQLiteStatement.DISPOSED;
+      try {
+        array = context.useArray(values, true, true);
+        st = context.prepare(new SQLParts("SELECT t0.value, t1.").append(adapter.getScalarColumn().getName())
+          .append("\n  FROM ").append(array.getName()).append(" t0")
+          .append("\n  INNER JOIN ").append(table).append(" t1 ON t0.value=t1.").append(DBColumn.ITEM.getName()));
+        context.addCancellable(st);
+        while (st.step()) {
+          if (st.columnNull(1)) continue;
+          long parent = st.columnLong(1);
+          parents.put(st.columnLong(0), parent);
+          if (parent > 0 && !parents.containsKey(parent) && !counts.containsKey(parent)) level.add(parent);
+        }
+      } finally {
+        if (array != null)
+          array.dispose();
+        context.removeCancellable(st);
+        st.dispose();
+      }
+    }
+    TLongIntHashMap own = (TLongIntHashMap) counts.clone();
+    for (long value : own.keys()) {
+      int count = own.get(value);
+      long parent = parents.get(value);
+      // limit the walk in case of cycle
+      for (int depth = 0; parent > 0 && parent != value && depth <= parents.size(); depth++) {
+        counts.adjustOrPutValue(parent, count, count);
+        parent = parents.get(parent);
+      }
+    }
+  }
+
+  private static AttributeAdapter getIntegerAdapter(TransactionContext context, DBAttribute<?> attribute) {
+    AttributeAdapter adapter = context.getDatabaseContext().getAttributeAdapter(attribute);
+    if (adapter.getScalarColumn().getDatabaseClass() != DBColumnType.INTEGER) {
+      throw new IllegalArgumentException("cannot calculate distribution by attribute " + attribute);
+    }
+    return adapter;
+  }
 }
@@ -0,0 +1,282 @@
+package com.almworks.items.impl.sqlite;
+
+import org.almworks.util.Collections15;
+
+import java.util.*;
+
+import static com.almworks.items.impl.sqlite.DatabaseJob.TransactionType.WRITE;
+
+/**
+ * Pending jobs of a {@link DatabaseQueue}.<br>
+ * Jobs are kept in levels by priority, FIFO within a level. The job with the highest priority is selected, but a job
+ * gains one priority step for each {@link #AGING_PERIOD} it waits, so low priority jobs are not starved.<br>
+ * At equal priority read jobs do not depend on each other, so of the reads that precede the first write in the level
+ * the one that is expected to be the quickest is selected. Expected running time is collected per
+ * {@link DatabaseJob#getStatisticsKey() job class}. Writes and reads following them keep their order.<br>
+ * A job replaces the pending job with the same {@link DatabaseJob#getIdentity() identity} and takes its place.<br>
+ * Not thread-safe, guarded by the queue lock.
+ */
+final class JobScheduler {
+  static final long AGING_PERIOD = 1000;
+  /**
+   * How many reads are compared when looking for the quickest one
+   */
+  private static final int SHORTEST_JOB_WINDOW = 32;
+
+  private final Map<Object, Entry> myEntries = Collections15.hashMap();
+  private final TreeMap<Integer, TreeMap<Long, Entry>> myLevels = new TreeMap<Integer, TreeMap<Long, Entry>>();
+  private final Map<Object, JobStatistics> myStatistics = Collections15.hashMap();
+  private long mySequence;
+
+  private long myDequeued;
+  private long myTotalWait;
+  private long myMaxWait;
+
+  /**
+   * @return the pending job that has been replaced, or null
+   */
+  DatabaseJob add(DatabaseJob job, long now) {
+    Object identity = job.getIdentity();
+    Entry entry = myEntries.get(identity);
+    if (entry != null) {
+      DatabaseJob replaced = entry.myJob;
+      entry.myJob = job;
+      updatePriority(job);
+      return replaced;
+    }
+    entry = new Entry(job, identity, mySequence++, now);
+    myEntries.put(identity, entry);
+    level(entry.myPriority).put(entry.mySequence, entry);
+    return null;
+  }
+
+  /**
+   * Moves the job to the level of its current priority
+   */
+  void updatePriority(DatabaseJob job) {
+    Entry entry = myEntries.get(job.getIdentity());
+    if (entry == null || entry.myJob != job)
+      return;
+    int priority = job.getPriority();
+    if (priority == entry.myPriority)
+      return;
+    removeFromLevel(entry);
+    entry.myPriority = priority;
+    level(priority).put(entry.mySequence, entry);
+  }
+
+  /**
+   * @param remove if true the selected job is removed
+   * @return the job to run next, or null if there are no pending jobs
+   */
+  DatabaseJob select(boolean remove, long now) {
+    TreeMap<Long, Entry> best = null;
+    long bestPriority = Long.MIN_VALUE;
+    for (Iterator<TreeMap<Long, Entry>> ii = myLevels.descendingMap().values().iterator(); ii.hasNext();) {
+      TreeMap<Long, Entry> level = ii.next();
+      Entry head = purgeHead(level);
+      if (head == null) {
+        ii.remove();
+        continue;
+      }
+      long priority = head.myPriority + (now - head.myEnqueued) / AGING_PERIOD;
+      // levels are visited from the highest priority, equal aged priority does not win
+      if (priority > bestPriority) {
+        best = level;
+        bestPriority = priority;
+      }
+    }
+    if (best == null)
+      return null;
+    Entry selected = selectInLevel(best);
+    if (remove) {
+      myEntries.remove(selected.myIdentity);
+      removeFromLevel(selected);
+      long wait = now - selected.myEnqueued;
+      myDequeued++;
+      myTotalWait += wait;
+      myMaxWait = Math.max(myMaxWait, wait);
+    }
+    return selected.myJob;
+  }
+
+  private Entry selectInLevel(TreeMap<Long, Entry> level) {
+    Entry selected = level.firstEntry().getValue();
+    if (selected.myJob.getTransactionType() == WRITE)
+      return selected;
+    long selectedTime = getExpectedTime(selected.myJob);
+    int count = 0;
+    for (Iterator<Entry> ii = level.values().iterator(); ii.hasNext() && count < SHORTEST_JOB_WINDOW; count++) {
+      Entry entry = ii.next();
+      DatabaseJob job = entry.myJob;
+      if (job.getState() != DatabaseJob.State.PENDING) {
+        ii.remove();
+        myEntries.remove(entry.myIdentity);
+        continue;
+      }
+      if (job.getTransactionType() == WRITE)
+        break;
+      long time = getExpectedTime(job);
+      if (time < selectedTime) {
+        selected = entry;
+        selectedTime = time;
+      }
+    }
+    return selected;
+  }
+
+  /**
+   * Removes jobs that are not pending (i.e. cancelled) from the head of the level
+   * @return the first pending job or null if the level is empty
+   */
+  private Entry purgeHead(TreeMap<Long, Entry> level) {
+    while (!level.isEmpty()) {
+      Entry head = level.firstEntry().getValue();
+      if (head.myJob.getState() == DatabaseJob.State.PENDING)
+        return head;
+      level.pollFirstEntry();
+      myEntries.remove(head.myIdentity);
+    }
+    return null;
+  }
+
+  private TreeMap<Long, Entry> level(int priority) {
+    TreeMap<Long, Entry> level = myLevels.get(priority);
+    if (level == null) {
+      level = new TreeMap<Long, Entry>();
+      myLevels.put(priority, level);
+    }
+    return level;
+  }
+
+  private void removeFromLevel(Entry entry) {
+    TreeMap<Long, Entry> level = myLevels.get(entry.myPriority);
+    if (level == null)
+      return;
+    level.remove(entry.mySequence);
+    if (level.isEmpty())
+      myLevels.remove(entry.myPriority);
+  }
+
+  /**
+   * Removes all jobs
+   * @return removed jobs
+   */
+  List<DatabaseJob> clear() {
+    List<DatabaseJob> jobs = getJobs();
+    myEntries.clear();
+    myLevels.clear();
+    return jobs;
+  }
+
+  List<DatabaseJob> getJobs() {
+    List<DatabaseJob> jobs = Collections15.arrayList(myEntries.size());
+    for (TreeMap<Long, Entry> level : myLevels.descendingMap().values()) {
+      for (Entry entry : level.values()) {
+        jobs.add(entry.myJob);
+      }
+    }
+    return jobs;
+  }
+
+  boolean hasJobs(DatabaseJob.TransactionType type) {
+    for (Entry entry : myEntries.values()) {
+      if (entry.myJob.getTransactionType() == type)
+        return true;
+    }
+    return false;
+  }
+
+  boolean isEmpty() {
+    return myEntries.isEmpty();
+  }
+
+  int size() {
+    return myEntries.size();
+  }
+
+  /**
+   * Collects running time of a finished job
+   */
+  void jobFinished(DatabaseJob job, long duration) {
+    Object key = job.getStatisticsKey();
+    JobStatistics statistics = myStatistics.get(key);
+    if (statistics == null) {
+      statistics = new JobStatistics();
+      myStatistics.put(key, statistics);
+    }
+    statistics.add(duration);
+  }
+
+  /**
+   * @return average running time of jobs of the same class, 0 if unknown
+   */
+  long getExpectedTime(DatabaseJob job) {
+    JobStatistics statistics = myStatistics.get(job.getStatisticsKey());
+    return statistics == null ? 0 : statistics.myAverage;
+  }
+
+  /**
+   * @return how long the oldest pending job waits, ms
+   */
+  long getOldestWait(long now) {
+    long enqueued = now;
+    for (TreeMap<Long, Entry> level : myLevels.values()) {
+      if (!level.isEmpty()) enqueued = Math.min(enqueued, level.firstEntry().getValue().myEnqueued);
+    }
+    return now - enqueued;
+  }
+
+  void dump(StringBuilder out, long now) {
+    out.append("pending ").append(myEntries.size());
+    for (Map.Entry<Integer, TreeMap<Long, Entry>> e : myLevels.descendingMap().entrySet()) {
+      TreeMap<Long, Entry> level = e.getValue();
+      if (level.isEmpty())
+        continue;
+      out.append(", [").append(e.getKey()).append("]: ").append(level.size()).append(" waiting up to ")
+        .append(now - level.firstEntry().getValue().myEnqueued).append("ms");
+    }
+    out.append("; dequeued ").append(myDequeued);
+    if (myDequeued > 0) {
+      out.append(", wait avg ").append(myTotalWait / myDequeued).append("ms max ").append(myMaxWait).append("ms");
+    }
+    for (Map.Entry<Object, JobStatistics> e : myStatistics.entrySet()) {
+      JobStatistics statistics = e.getValue();
+      Object key = e.getKey();
+      String name = key instanceof Class ? ((Class) key).getName() : String.valueOf(key);
+      out.append("\n  ").append(name).append(": ").append(statistics.myCount).append(" jobs, avg ")
+        .append(statistics.myAverage).append("ms max ").append(statistics.myMax).append("ms");
+    }
+  }
+
+
+  private static class Entry {
+    private final Object myIdentity;
+    private final long mySequence;
+    private final long myEnqueued;
+    private DatabaseJob myJob;
+    private int myPriority;
+
+    private Entry(DatabaseJob job, Object identity, long sequence, long enqueued) {
+      myJob = job;
+      myIdentity = identity;
+      mySequence = sequence;
+      myEnqueued = enqueued;
+      myPriority = job.getPriority();
+    }
+  }
+
+
+  private static class JobStatistics {
+    private long myCount;
+    private long myAverage;
+    private long myMax;
+
+    private void add(long duration) {
+      // moving average, recent jobs weigh more
+      myAverage = myCount == 0 ? duration : (myAverage * 7 + duration) / 8;
+      myCount++;
+      myMax = Math.max(myMax, duration);
+    }
+  }
+}
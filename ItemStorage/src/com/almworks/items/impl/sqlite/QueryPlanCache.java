@@ -0,0 +1,114 @@
+package com.almworks.items.impl.sqlite;
+
+import com.almworks.items.api.DP;
+import com.almworks.items.impl.sqlite.filter.ExtractionOperator;
+import com.almworks.util.bool.BoolExpr;
+import org.almworks.util.TypedKey;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps {@link ExtractionOperator operators} built for resolved filters, so repeated queries with the same filter
+ * do not convert it to DNF and do not look for extraction factories again.<br>
+ * Operators do not depend on transaction, they are applied to each transaction separately. However, an operator may be
+ * built from a state of the database (for example, a subquery may be resolved while the operator is built). Such
+ * operator is {@link #markVolatile(TransactionContext) marked volatile} while it is built and is not cached.<br>
+ * The cache is cleared when tables are changed (see {@link DatabaseContext#getTableChangeCount()}). Transactions
+ * started before the end of a table change neither take nor put operators, since they may see other tables.<br>
+ * Operators keep the predicates they are built for, so predicates that refer short living objects are not cached
+ * (see {@link DP#isCacheable()}).
+ */
+public class QueryPlanCache {
+  private static final int MAX_PLANS = 500;
+  private static final TypedKey<Boolean> VOLATILE = TypedKey.create("volatilePlan");
+
+  private final Map<BoolExpr<DP>, ExtractionOperator> myPlans =
+    new LinkedHashMap<BoolExpr<DP>, ExtractionOperator>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<BoolExpr<DP>, ExtractionOperator> eldest) {
+        return size() > MAX_PLANS;
+      }
+    };
+  // Guarded by this
+  private long myTableChanges = 0;
+  private long myHits = 0;
+  private long myMisses = 0;
+
+  /**
+   * @return cached operator for the resolved filter, or null if the operator has to be built
+   */
+  @Nullable
+  synchronized ExtractionOperator get(BoolExpr<DP> resolution, TransactionContext context) {
+    ExtractionOperator operator = checkTables(context) ? myPlans.get(resolution) : null;
+    if (operator != null) myHits++;
+    else myMisses++;
+    return operator;
+  }
+
+  synchronized void put(BoolExpr<DP> resolution, ExtractionOperator operator, TransactionContext context) {
+    if (checkTables(context)) myPlans.put(resolution, operator);
+  }
+
+  /**
+   * Clears the cache if tables have been changed since the cached operators were built
+   * @return true if the transaction sees the same tables as the cached operators are built for
+   */
+  private boolean checkTables(TransactionContext context) {
+    long changes = context.getDatabaseContext().getTableChangeCount();
+    if (changes != myTableChanges) {
+      myPlans.clear();
+      myTableChanges = changes;
+    }
+    return context.getTableChangeCount() == changes;
+  }
+
+  /**
+   * Tells the cache that the operator being built depends on the current state of the database and must not be cached.
+   */
+  public static void markVolatile(TransactionContext context) {
+    VOLATILE.putTo(context.getTransactionCache(), true);
+  }
+
+  /**
+   * Starts building an operator
+   * @return state to be passed to {@link #finishBuild}
+   */
+  static boolean startBuild(TransactionContext context) {
+    Map<TypedKey<?>, ?> cache = context.getTransactionCache();
+    Boolean outer = VOLATILE.getFrom(cache);
+    VOLATILE.putTo(cache, false);
+    return outer != null && outer;
+  }
+
+  /**
+   * @param outer value returned by {@link #startBuild}
+   * @return true if the built operator may be cached
+   */
+  static boolean finishBuild(TransactionContext context, boolean outer) {
+    Map<TypedKey<?>, ?> cache = context.getTransactionCache();
+    Boolean isVolatile = VOLATILE.getFrom(cache);
+    boolean cacheable = isVolatile == null || !isVolatile;
+    // operators built outside depend on this one
+    VOLATILE.putTo(cache, outer || !cacheable);
+    return cacheable;
+  }
+
+  public synchronized long getHits() {
+    return myHits;
+  }
+
+  public synchronized long getMisses() {
+    return myMisses;
+  }
+
+  public synchronized int size() {
+    return myPlans.size();
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "QueryPlanCache[size=" + myPlans.size() + ", hits=" + myHits + ", misses=" + myMisses + "]";
+  }
+}
@@ -132,6 +132,7 @@ private void updateTcid(TransactionContext context) throws SQLiteException {
     assert context.getConnection() == myLastConnection : context + " " + myLastConnection;
     myTcid = createTcid(getTcidSequence(myTcid) + 1);
     context.setProperty(Schema.TCID, myTcid);
+    context.getDatabaseContext().tablesChanged();
   }
 
   private boolean validateTable(SQLiteConnection db, String physicalTable, String name, DBTable table,
@@ -15,11 +15,13 @@
 import org.almworks.util.Log;
 import org.almworks.util.TypedKey;
 import org.almworks.util.Util;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import static com.almworks.items.impl.sqlite.Schema.*;
 
@@ -40,6 +42,7 @@ public class TransactionContext implements TableResolver {
   private boolean myCancelled;
 
   private final long myTransactionTime;
+  private final long myTableChangeCount;
   private long myIcn = -1;
 
   private ChangedItemsCollector myChangeBuilder;
@@ -73,10 +76,33 @@ public class TransactionContext implements TableResolver {
 
 
   public TransactionContext(SQLiteConnection connection, SessionContext sessionContext, boolean writeAllowed) {
+    this(connection, sessionContext, writeAllowed, getTableChangeCount(sessionContext));
+  }
+
+  /**
+   * @param tableChangeCount {@link DatabaseContext#getTableChangeCount() table change count} when the SQLite
+   * transaction was started
+   */
+  TransactionContext(SQLiteConnection connection, SessionContext sessionContext, boolean writeAllowed,
+    long tableChangeCount)
+  {
     myConnection = connection;
     mySessionContext = sessionContext;
     myWriteAllowed = writeAllowed;
     myTransactionTime = System.currentTimeMillis();
+    myTableChangeCount = tableChangeCount;
+  }
+
+  private static long getTableChangeCount(SessionContext sessionContext) {
+    DatabaseContext context = sessionContext == null ? null : sessionContext.getDatabaseContext();
+    return context == null ? 0 : context.getTableChangeCount();
+  }
+
+  /**
+   * @return {@link DatabaseContext#getTableChangeCount() table change count} when the SQLite transaction was started
+   */
+  long getTableChangeCount() {
+    return myTableChangeCount;
   }
 
   public SessionContext getSessionContext() {
@@ -441,8 +467,24 @@ public SQLiteLongArray bindIterable(SQLiteLongArray array, LongIterable values,
   }
 
   public void itemChanged(long item) {
+    itemChanged(item, null);
+  }
+
+  /**
+   * @param attribute the changed attribute, null if it is not known what has changed
+   */
+  public void itemChanged(long item, @Nullable DBAttribute<?> attribute) {
     assert myWriteAllowed : this;
-    getChangeBuilder().itemChanged(item);
+    getChangeBuilder().itemChanged(item, attribute);
+  }
+
+  /**
+   * @return attributes changed in this transaction, null if not known
+   */
+  @Nullable
+  public Set<DBAttribute> getChangedAttributes() {
+    ChangedItemsCollector builder = myChangeBuilder;
+    return builder == null ? Collections.<DBAttribute>emptySet() : builder.getChangedAttributes();
   }
 
   public final SQLParts sql() {
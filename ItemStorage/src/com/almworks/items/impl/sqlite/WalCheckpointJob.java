@@ -0,0 +1,78 @@
+package com.almworks.items.impl.sqlite;
+
+import com.almworks.items.impl.dbadapter.DBCallback;
+import com.almworks.sqlite4java.SQLiteConnection;
+import com.almworks.sqlite4java.SQLiteStatement;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Runs a passive checkpoint of the write-ahead log. The checkpoint copies committed pages from the log into the
+ * database without waiting for readers or writers; pages still used by readers are left for the next checkpoint.<br>
+ * The checkpoint cannot run inside a transaction, so the job runs without one.
+ */
+public class WalCheckpointJob extends DatabaseJob {
+  // header of WAL file and of each frame
+  private static final int WAL_HEADER = 32;
+  private static final int FRAME_HEADER = 24;
+
+  private long myWalSize;
+  private int myLogFrames;
+  private int myCheckpointedFrames;
+  private long myDuration;
+
+  public WalCheckpointJob(@Nullable DBCallback callback) {
+    addCallback(callback);
+  }
+
+  @Override
+  protected void dbrun(TransactionContext context) throws Throwable {
+    long started = System.currentTimeMillis();
+    SQLiteConnection connection = context.getConnection();
+    SQLiteStatement st = connection.prepare("PRAGMA wal_checkpoint(PASSIVE)", false);
+    try {
+      if (st.step()) {
+        myLogFrames = st.columnInt(1);
+        myCheckpointedFrames = st.columnInt(2);
+      }
+    } finally {
+      st.dispose();
+    }
+    myDuration = System.currentTimeMillis() - started;
+    if (myLogFrames > 0) {
+      st = connection.prepare("PRAGMA page_size", false);
+      try {
+        if (st.step()) myWalSize = WAL_HEADER + (long) myLogFrames * (st.columnInt(0) + FRAME_HEADER);
+      } finally {
+        st.dispose();
+      }
+    }
+  }
+
+  @Override
+  public TransactionType getTransactionType() {
+    return TransactionType.NONE;
+  }
+
+  /**
+   * @return size of the log before the checkpoint, 0 if the database is not in WAL mode
+   */
+  public long getWalSize() {
+    return myWalSize;
+  }
+
+  /**
+   * @return true if all pages of the log are in the database, so the log will be restarted by the next write
+   */
+  public boolean isComplete() {
+    return myLogFrames <= 0 || myCheckpointedFrames == myLogFrames;
+  }
+
+  public long getDuration() {
+    return myDuration;
+  }
+
+  @Override
+  public String toString() {
+    return "checkpoint(" + myCheckpointedFrames + "/" + myLogFrames + ", " + myDuration + "ms)";
+  }
+}
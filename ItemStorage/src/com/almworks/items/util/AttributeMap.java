@@ -19,9 +19,16 @@ public static <T> AttributeMap singleton(DBAttribute<T> attribute, T value) {
 
   public <T> T put(DBAttribute<T> attribute, T value) {
     if (value != null)
-      return (T) myMap.put(attribute, value);
+      return (T) unwrap(myMap.put(attribute, value));
     else
-      return (T) myMap.remove(attribute);
+      return (T) unwrap(myMap.remove(attribute));
+  }
+
+  /**
+   * Puts a value that is decoded when it is first requested
+   */
+  public void putLazy(DBAttribute<?> attribute, LazyValue value) {
+    myMap.put(attribute, value);
   }
 
   public <T> void putFrom(AttributeMap other, DBAttribute<T> attribute) {
@@ -41,7 +48,7 @@ public void putAll(AttributeMap map) {
   }
 
   public <T> T get(DBAttribute<T> attribute) {
-    return (T) myMap.get(attribute);
+    return (T) unwrap(myMap.get(attribute));
   }
 
   public boolean containsKey(DBAttribute<?> attribute) {
@@ -59,7 +66,7 @@ public Set<DBAttribute<?>> keySet() {
   public <V> V fold(V parameter, AttributeValueFunction<V> function) {
     V pass = parameter;
     for (Map.Entry<DBAttribute<?>, Object> e : myMap.entrySet()) {
-      Object value = e.getValue();
+      Object value = unwrap(e.getValue());
       pass = function.f((DBAttribute<Object>) e.getKey(), value, pass);
     }
     return pass;
@@ -86,7 +93,7 @@ public boolean equals(Object o) {
       return false;
 
     for (Map.Entry<DBAttribute<?>, Object> entry : myMap.entrySet()) {
-      if (!DatabaseUtil.valueEquals(entry.getValue(), theirMap.get(entry.getKey())))
+      if (!DatabaseUtil.valueEquals(unwrap(entry.getValue()), unwrap(theirMap.get(entry.getKey()))))
         return false;
     }
 
@@ -97,7 +104,7 @@ public boolean equals(Object o) {
   public int hashCode() {
     int h = 0;
     for (Map.Entry<DBAttribute<?>, Object> entry : myMap.entrySet()) {
-      Object value = entry.getValue();
+      Object value = unwrap(entry.getValue());
       h += entry.getKey().hashCode() ^ DatabaseUtil.valueHash(value);
     }
     return h;
@@ -107,4 +114,33 @@ public int hashCode() {
   public String toString() {
     return myMap.toString();
   }
+
+  private static Object unwrap(Object value) {
+    return value instanceof LazyValue ? ((LazyValue) value).getValue() : value;
+  }
+
+
+  /**
+   * A value stored in encoded form. Decoding may happen in any thread and more than once, so it must not depend on
+   * the state of a transaction.
+   */
+  public static abstract class LazyValue {
+    private volatile Object myValue;
+
+    protected abstract Object decode();
+
+    public final Object getValue() {
+      Object value = myValue;
+      if (value == null) {
+        value = decode();
+        myValue = value;
+      }
+      return value;
+    }
+
+    @Override
+    public String toString() {
+      return String.valueOf(getValue());
+    }
+  }
 }
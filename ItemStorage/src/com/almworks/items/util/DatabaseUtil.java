@@ -47,7 +47,7 @@ public static <T> T getShadowValue(long artifact, DBAttribute<T> attribute, DBAt
     boolean defaultToMainValue, DBReader reader)
   {
     T result = null;
-    AttributeMap map = shadow == null ? null : reader.getValue(artifact, shadow);
+    AttributeMap map = shadow == null ? null : SyncAttributes.readShadow(reader, artifact, shadow);
     if (map != null)
       result = map.get(attribute);
     if (result == null && defaultToMainValue)
@@ -63,7 +63,7 @@ private static Object getValue(long artifact, DBAttribute<AttributeMap> shadow,
   private static Set<DBAttribute<?>> getAttributes(long artifact, DBAttribute<AttributeMap> shadow, DBReader reader) {
     if (shadow == null)
       return reader.getAttributeMap(artifact).keySet();
-    AttributeMap map = shadow.getValue(artifact, reader);
+    AttributeMap map = SyncAttributes.readShadow(reader, artifact, shadow);
     return map == null ? Collections.<DBAttribute<?>>emptySet() : map.keySet();
   }
 
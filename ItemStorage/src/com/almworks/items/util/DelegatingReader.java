@@ -9,6 +9,7 @@
 import org.jetbrains.annotations.Nullable;
 
 import java.io.DataOutputStream;
+import java.util.Collection;
 import java.util.Map;
 
 public class DelegatingReader implements DBReader {
@@ -25,6 +26,11 @@ public <T> T getValue(long item, DBAttribute<T> attribute) {
     return myReader.getValue(item, attribute);
   }
 
+  @Override
+  public void prefetchValues(LongList items, Collection<? extends DBAttribute<?>> attributes) {
+    myReader.prefetchValues(items, attributes);
+  }
+
   @Override
   public DBQuery query(BoolExpr<DP> expr) {
     return myReader.query(expr);
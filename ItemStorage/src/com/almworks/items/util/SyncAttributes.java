@@ -4,6 +4,12 @@
 import com.almworks.items.api.DBItemType;
 import com.almworks.items.api.DBReader;
 import com.almworks.items.api.Database;
+import org.almworks.util.Collections15;
+import org.almworks.util.Log;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+import java.util.Set;
 
 public class SyncAttributes {
   private static final DBNamespace NS = Database.NS.subModule("sync");
@@ -21,6 +27,14 @@ public class SyncAttributes {
   public static final DBAttribute<Boolean> INVISIBLE = DBAttribute.Bool(NS.attr("invisible"), "Invisible?");
   public static final DBAttribute<byte[]> CHANGE_HISTORY = NS.bytes("changeHistory", "Change History");
 
+  // Shadows written by the sync layer may be stored as deltas against BASE_SHADOW (see readShadow), the delta
+  // attributes belong to the sync layer namespace
+  private static final DBNamespace SHADOW_DELTA_NS = DBNamespace.moduleNs("com.almworks.itemSync");
+  public static final DBAttribute<String> SHADOW_DELTA_OF =
+    SHADOW_DELTA_NS.string("shadowDeltaOf", "Shadow Delta Reference", false);
+  public static final DBAttribute<List<String>> SHADOW_DELTA_REMOVED =
+    SHADOW_DELTA_NS.stringList("shadowDeltaRemoved", "Shadow Delta Removed", false);
+
   public static boolean isShadowable(DBAttribute<?> a, DBReader dbAccess) {
     long materialized = dbAccess.findMaterialized(a);
     if (materialized == 0)
@@ -39,6 +53,42 @@ public static boolean isShadowable(DBReader reader, long attr) {
     return value != null && value;
   }
 
+  /**
+   * Reads complete values of the shadow. A shadow may be stored as a delta against {@link #BASE_SHADOW}: the stored
+   * map contains only changed values, the {@link #SHADOW_DELTA_OF reference} to BASE and
+   * {@link #SHADOW_DELTA_REMOVED ids} of attributes that have value in BASE and have no value in the shadow.
+   * @return complete values of the shadow, null if the item has no shadow
+   */
+  @Nullable
+  public static AttributeMap readShadow(DBReader reader, long item, DBAttribute<AttributeMap> shadow) {
+    AttributeMap stored = reader.getValue(item, shadow);
+    if (stored == null || !stored.containsKey(SHADOW_DELTA_OF)) return stored;
+    String referenceId = stored.get(SHADOW_DELTA_OF);
+    if (!BASE_SHADOW.getId().equals(referenceId)) {
+      Log.error("Unknown shadow reference " + referenceId + " of " + shadow + " " + item);
+      return null;
+    }
+    AttributeMap base = reader.getValue(item, BASE_SHADOW);
+    if (base == null) {
+      Log.error("Missing " + BASE_SHADOW + " of " + shadow + " " + item);
+      base = new AttributeMap();
+    }
+    return applyShadowDelta(base, stored);
+  }
+
+  public static AttributeMap applyShadowDelta(AttributeMap base, AttributeMap delta) {
+    AttributeMap result = new AttributeMap();
+    List<String> removedIds = delta.get(SHADOW_DELTA_REMOVED);
+    Set<String> removed = removedIds != null ? Collections15.hashSet(removedIds) : Collections15.<String>emptySet();
+    for (DBAttribute<?> attribute : base.keySet()) {
+      if (!removed.contains(attribute.getId())) result.putFrom(base, attribute);
+    }
+    for (DBAttribute<?> attribute : delta.keySet()) {
+      if (!SHADOW_DELTA_OF.equals(attribute) && !SHADOW_DELTA_REMOVED.equals(attribute)) result.putFrom(delta, attribute);
+    }
+    return result;
+  }
+
   static {
     initShadowable(INVISIBLE);
   }
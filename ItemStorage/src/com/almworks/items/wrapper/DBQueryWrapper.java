@@ -11,6 +11,7 @@
 import com.almworks.util.bool.BoolExpr;
 import com.almworks.util.commons.LongObjFunction2;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 class DBQueryWrapper implements DBQuery {
   private final DBQuery myQuery;
@@ -47,6 +48,11 @@ public LongList distributionCount(DBAttribute<?>... groupAttributes) {
     return myQuery.distributionCount(groupAttributes);
   }
 
+  @Override
+  public LongList valueCount(DBAttribute<?> attribute, @Nullable DBAttribute<Long> parentAttribute) {
+    return myQuery.valueCount(attribute, parentAttribute);
+  }
+
   @NotNull
   @Override
   public LongArray copyItemsSorted() {
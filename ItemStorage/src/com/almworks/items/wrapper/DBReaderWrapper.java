@@ -9,6 +9,7 @@
 import org.jetbrains.annotations.NotNull;
 
 import java.io.DataOutputStream;
+import java.util.Collection;
 import java.util.Map;
 
 /**
@@ -33,6 +34,11 @@ public <T> T getValue(long item, DBAttribute<T> attribute) {
     return myReader.getValue(item, attribute);
   }
 
+  @Override
+  public void prefetchValues(LongList items, Collection<? extends DBAttribute<?>> attributes) {
+    myReader.prefetchValues(items, attributes);
+  }
+
   @Override
   public long getTransactionIcn() {
     return myReader.getTransactionIcn();
@@ -1,5 +1,6 @@
 package com.almworks.items.api;
 
+import com.almworks.items.impl.DBConfiguration;
 import com.almworks.items.impl.SQLiteDatabase;
 import com.almworks.util.exec.LongEventQueue;
 import com.almworks.util.files.FileUtil;
@@ -34,6 +35,29 @@ protected SQLiteDatabase createSQLiteMemoryDatabase() {
     return db;
   }
 
+  protected SQLiteDatabase createWalDatabase() {
+    try {
+      File file = createFileName();
+      return createWalDatabase(file, DBConfiguration.createDefault(file));
+    } catch (IOException e) {
+      throw new Error(e);
+    }
+  }
+
+  /**
+   * Starts the database in WAL mode, the configuration is changed to enable WAL
+   */
+  protected SQLiteDatabase createWalDatabase(File file, DBConfiguration configuration) {
+    tempFiles.add(file);
+    tempFiles.add(new File(file.getPath() + "-wal"));
+    tempFiles.add(new File(file.getPath() + "-shm"));
+    configuration.setWalEnabled(true);
+    SQLiteDatabase db = new SQLiteDatabase(file, null, configuration);
+    db.start();
+    databases.add(db);
+    return db;
+  }
+
   protected void enableSqlite4JavaLogging(boolean fine) {
     Logger.getLogger("com.almworks.sqlite4java").setLevel(Level.FINE);
     setWriteToStdout(true, fine ? Level.FINE : Level.INFO);
@@ -0,0 +1,80 @@
+package com.almworks.items.api;
+
+import com.almworks.items.dp.DPNotNull;
+import com.almworks.items.impl.DBConfiguration;
+import com.almworks.items.impl.SQLiteDatabase;
+import com.almworks.util.TestLog;
+import com.almworks.util.tests.CollectionsCompare;
+import org.almworks.util.Collections15;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class GroupCommitTests extends DatabaseFixture {
+  private static final DBAttribute<String> NAME = DBAttribute.String("name", "Name");
+
+  public void testFailedJobRolledBackAlone() throws InterruptedException {
+    DBConfiguration configuration = DBConfiguration.createDefault(null);
+    configuration.setGroupCommitSize(10);
+    SQLiteDatabase db = new SQLiteDatabase(null, null, configuration);
+    db.start();
+    databases.add(db);
+
+    // the queue is blocked while the batch is being queued
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    DBResult<Object> blocker = db.writeBackground(new WriteTransaction<Object>() {
+      @Override
+      public Object transaction(DBWriter writer) throws DBOperationCancelledException {
+        started.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          throw new DBOperationCancelledException();
+        }
+        return null;
+      }
+    });
+    assertTrue(started.await(10, TimeUnit.SECONDS));
+    List<DBResult<Long>> results = Collections15.arrayList();
+    for (int i = 0; i < 5; i++) {
+      final boolean fail = i == 2;
+      final String name = "n" + i;
+      results.add(db.writeBackground(new WriteTransaction<Long>() {
+        @Override
+        public Long transaction(DBWriter writer) throws DBOperationCancelledException {
+          long item = writer.nextItem();
+          writer.setValue(item, NAME, name);
+          if (fail) throw new RuntimeException("fail " + name);
+          return item;
+        }
+      }));
+    }
+    release.countDown();
+    blocker.waitForCompletion();
+    long lastIcn = 0;
+    for (int i = 0; i < results.size(); i++) {
+      DBResult<Long> result = results.get(i);
+      result.waitForCompletion();
+      assertEquals(i != 2, result.isSuccessful());
+      if (i != 2) {
+        assertTrue(result.getCommitIcn() > lastIcn);
+        lastIcn = result.getCommitIcn();
+      }
+    }
+    TestLog.getInstance().clearLog();
+
+    List<String> names = db.readForeground(new ReadTransaction<List<String>>() {
+      @Override
+      public List<String> transaction(DBReader reader) throws DBOperationCancelledException {
+        List<String> names = Collections15.arrayList();
+        for (long item : reader.query(DPNotNull.create(NAME)).copyItemsSorted().toNativeArray()) {
+          names.add(NAME.getValue(item, reader));
+        }
+        return names;
+      }
+    }).waitForCompletion();
+    new CollectionsCompare().order(names, "n0", "n1", "n3", "n4");
+  }
+}
@@ -0,0 +1,129 @@
+package com.almworks.items.api;
+
+import com.almworks.integers.LongArray;
+import com.almworks.integers.LongList;
+import com.almworks.items.util.AttributeMap;
+import com.almworks.items.util.DatabaseUtil;
+import org.almworks.util.Collections15;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+public class PrefetchValuesTests extends MemoryDatabaseFixture {
+  private static final LongList ITEMS = LongArray.create(TestData.ITEM3, TestData.ITEM1, TestData.ITEM2, TestData.ITEM1);
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    db.writeForeground(new WriteTransaction<Object>() {
+      @Override
+      public Object transaction(DBWriter writer) throws DBOperationCancelledException {
+        writeValues(writer, TestData.ITEM1, TestData.VALUESET1);
+        writeValues(writer, TestData.ITEM2, TestData.VALUESET2);
+        writer.setValue(TestData.ITEM3, TestData.MAP, TestData.SCALAR_VALUES);
+        return null;
+      }
+    }).waitForCompletion();
+  }
+
+  private static void writeValues(DBWriter writer, long item, AttributeMap values) {
+    for (DBAttribute attribute : values.keySet()) {
+      writer.setValue(item, attribute, values.get(attribute));
+    }
+  }
+
+  private static Collection<DBAttribute<?>> allAttributes() {
+    List<DBAttribute<?>> attributes = Collections15.<DBAttribute<?>>arrayList(TestData.VALUESET1.keySet());
+    attributes.add(TestData.MAP);
+    return attributes;
+  }
+
+  public void testPrefetchedValuesMatch() {
+    final AttributeMap[] expected = new AttributeMap[ITEMS.size()];
+    db.readForeground(new ReadTransaction<Object>() {
+      @Override
+      public Object transaction(DBReader reader) throws DBOperationCancelledException {
+        for (int i = 0; i < ITEMS.size(); i++) {
+          expected[i] = readAll(reader, ITEMS.get(i));
+        }
+        return null;
+      }
+    });
+    db.readForeground(new ReadTransaction<Object>() {
+      @Override
+      public Object transaction(DBReader reader) throws DBOperationCancelledException {
+        reader.prefetchValues(ITEMS, allAttributes());
+        for (int i = 0; i < ITEMS.size(); i++) {
+          AttributeMap actual = readAll(reader, ITEMS.get(i));
+          for (DBAttribute<?> attribute : allAttributes()) {
+            assertTrue(ITEMS.get(i) + " " + attribute,
+              DatabaseUtil.valueEquals(expected[i].get(attribute), actual.get(attribute)));
+          }
+        }
+        assertNull(reader.getValue(TestData.ITEM3, TestData.STRING));
+        assertNull(reader.getValue(TestData.ITEM3, TestData.STRING_LIST));
+        return null;
+      }
+    });
+  }
+
+  public void testWriteInvalidatesPrefetched() {
+    db.writeForeground(new WriteTransaction<Object>() {
+      @Override
+      public Object transaction(DBWriter writer) throws DBOperationCancelledException {
+        writer.prefetchValues(ITEMS, allAttributes());
+        writer.setValue(TestData.ITEM1, TestData.STRING, "changed");
+        writer.setValue(TestData.ITEM3, TestData.STRING_LIST, Arrays.asList("x", "y"));
+        assertEquals("changed", writer.getValue(TestData.ITEM1, TestData.STRING));
+        assertEquals(Arrays.asList("x", "y"), writer.getValue(TestData.ITEM3, TestData.STRING_LIST));
+        assertEquals(TestData.VALUESET2.get(TestData.STRING), writer.getValue(TestData.ITEM2, TestData.STRING));
+
+        writer.clearAttribute(TestData.INT);
+        assertNull(writer.getValue(TestData.ITEM1, TestData.INT));
+        assertNull(writer.getValue(TestData.ITEM2, TestData.INT));
+        return null;
+      }
+    }).waitForCompletion();
+  }
+
+  public void testMutableValuesAreCopied() {
+    db.readForeground(new ReadTransaction<Object>() {
+      @Override
+      public Object transaction(DBReader reader) throws DBOperationCancelledException {
+        reader.prefetchValues(ITEMS, Arrays.asList(TestData.ARRAY, TestData.MAP, TestData.STRING_LIST));
+        reader.getValue(TestData.ITEM1, TestData.ARRAY)[0] = 42;
+        reader.getValue(TestData.ITEM3, TestData.MAP).put(TestData.STRING, "changed");
+        reader.getValue(TestData.ITEM1, TestData.STRING_LIST).clear();
+        assertTrue(DatabaseUtil.valueEquals(TestData.VALUESET1.get(TestData.ARRAY),
+          reader.getValue(TestData.ITEM1, TestData.ARRAY)));
+        assertEquals(TestData.SCALAR_VALUES, reader.getValue(TestData.ITEM3, TestData.MAP));
+        assertEquals(TestData.VALUESET1.get(TestData.STRING_LIST), reader.getValue(TestData.ITEM1, TestData.STRING_LIST));
+        return null;
+      }
+    });
+  }
+
+  public void testEmptyRequest() {
+    db.readForeground(new ReadTransaction<Object>() {
+      @Override
+      public Object transaction(DBReader reader) throws DBOperationCancelledException {
+        reader.prefetchValues(LongList.EMPTY, allAttributes());
+        reader.prefetchValues(ITEMS, Collections.<DBAttribute<?>>emptyList());
+        assertEquals(TestData.VALUESET1.get(TestData.STRING), reader.getValue(TestData.ITEM1, TestData.STRING));
+        return null;
+      }
+    });
+  }
+
+  private static AttributeMap readAll(DBReader reader, long item) {
+    AttributeMap map = new AttributeMap();
+    for (DBAttribute attribute : allAttributes()) {
+      Object value = reader.getValue(item, attribute);
+      if (value != null)
+        map.put(attribute, value);
+    }
+    return map;
+  }
+}
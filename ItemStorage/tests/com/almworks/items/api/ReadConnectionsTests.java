@@ -0,0 +1,97 @@
+package com.almworks.items.api;
+
+import com.almworks.items.dp.DPNotNull;
+import com.almworks.items.impl.SQLiteDatabase;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class ReadConnectionsTests extends DatabaseFixture {
+  private static final DBAttribute<String> NAME = DBAttribute.String("name", "Name");
+
+  public void testSlowReadDoesNotBlockOthers() throws InterruptedException {
+    // several read connections are used with WAL only
+    SQLiteDatabase db = createWalDatabase();
+    write(db, DBPriority.FOREGROUND, "a").waitForCompletion();
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    DBResult<Object> slow = db.read(DBPriority.FOREGROUND, new ReadTransaction<Object>() {
+      @Override
+      public Object transaction(DBReader reader) throws DBOperationCancelledException {
+        started.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          throw new DBOperationCancelledException();
+        }
+        return null;
+      }
+    });
+    assertTrue(started.await(10, TimeUnit.SECONDS));
+    try {
+      assertEquals(1, count(db, DBPriority.FOREGROUND));
+      assertEquals(1, count(db, DBPriority.BACKGROUND));
+    } finally {
+      release.countDown();
+    }
+    slow.waitForCompletion();
+  }
+
+  public void testBackgroundReadSeesPrecedingWrites() {
+    SQLiteDatabase db = createFileDatabase();
+    for (int i = 0; i < 10; i++) {
+      write(db, DBPriority.BACKGROUND, "v" + i);
+      assertEquals(i + 1, count(db, DBPriority.BACKGROUND));
+    }
+  }
+
+  public void testRoutingWithoutWal() {
+    SQLiteDatabase db = createFileDatabase();
+    write(db, DBPriority.FOREGROUND, "a").waitForCompletion();
+    assertEquals("db:view", getReadThread(db, DBPriority.FOREGROUND));
+    // background reads must not hold the view connection or the writer's lock
+    assertEquals("db:main", getReadThread(db, DBPriority.BACKGROUND));
+  }
+
+  public void testRoutingWithWal() {
+    SQLiteDatabase db = createWalDatabase();
+    write(db, DBPriority.FOREGROUND, "a").waitForCompletion();
+    String foreground = getReadThread(db, DBPriority.FOREGROUND);
+    assertTrue(foreground, foreground.startsWith("db:view"));
+    // background reads run on the main queue while it has write jobs, such as a checkpoint
+    String background = getReadThread(db, DBPriority.BACKGROUND);
+    for (int i = 0; i < 50 && "db:main".equals(background); i++) {
+      sleep(20);
+      background = getReadThread(db, DBPriority.BACKGROUND);
+    }
+    assertTrue(background, background.startsWith("db:view") && !"db:view".equals(background));
+  }
+
+  private static String getReadThread(SQLiteDatabase db, DBPriority priority) {
+    return db.read(priority, new ReadTransaction<String>() {
+      @Override
+      public String transaction(DBReader reader) throws DBOperationCancelledException {
+        return Thread.currentThread().getName();
+      }
+    }).waitForCompletion();
+  }
+
+  private static DBResult<Object> write(SQLiteDatabase db, DBPriority priority, final String name) {
+    return db.write(priority, new WriteTransaction<Object>() {
+      @Override
+      public Object transaction(DBWriter writer) throws DBOperationCancelledException {
+        writer.setValue(writer.nextItem(), NAME, name);
+        return null;
+      }
+    });
+  }
+
+  private static long count(SQLiteDatabase db, DBPriority priority) {
+    return db.read(priority, new ReadTransaction<Long>() {
+      @Override
+      public Long transaction(DBReader reader) throws DBOperationCancelledException {
+        return reader.query(DPNotNull.create(NAME)).count();
+      }
+    }).waitForCompletion();
+  }
+}
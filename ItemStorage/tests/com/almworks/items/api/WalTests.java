@@ -0,0 +1,128 @@
+package com.almworks.items.api;
+
+import com.almworks.items.dp.DPNotNull;
+import com.almworks.items.impl.DBConfiguration;
+import com.almworks.items.impl.DBReaderImpl;
+import com.almworks.items.impl.SQLiteDatabase;
+import com.almworks.sqlite4java.SQLiteException;
+import com.almworks.sqlite4java.SQLiteStatement;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class WalTests extends DatabaseFixture {
+  private static final DBAttribute<String> NAME = DBAttribute.String("name", "Name");
+
+  private static final long WAL_SIZE_LIMIT = 32 * 1024;
+  private static final String LONG_NAME = "a name long enough to make the write-ahead log grow quickly, item #";
+
+  private File myFile;
+  private SQLiteDatabase db;
+
+  public WalTests() {
+    super(40000);
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myFile = createFileName();
+    DBConfiguration configuration = DBConfiguration.createDefault(myFile);
+    configuration.setWalSizeLimit(WAL_SIZE_LIMIT);
+    db = createWalDatabase(myFile, configuration);
+  }
+
+  public void testWriteDoesNotWaitForReaders() throws InterruptedException, IOException {
+    assertEquals("wal", db.readForeground(new ReadTransaction<String>() {
+      @Override
+      public String transaction(DBReader reader) throws DBOperationCancelledException {
+        try {
+          SQLiteStatement st = ((DBReaderImpl) reader).getContext().getConnection().prepare("PRAGMA journal_mode");
+          try {
+            return st.step() ? st.columnString(0) : null;
+          } finally {
+            st.dispose();
+          }
+        } catch (SQLiteException e) {
+          throw new DBException(e);
+        }
+      }
+    }).waitForCompletion());
+
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    DBResult<Long> slow = db.readForeground(new ReadTransaction<Long>() {
+      @Override
+      public Long transaction(DBReader reader) throws DBOperationCancelledException {
+        long before = reader.query(DPNotNull.create(NAME)).count();
+        started.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          throw new DBOperationCancelledException();
+        }
+        // the read transaction keeps its snapshot
+        assertEquals(before, reader.query(DPNotNull.create(NAME)).count());
+        return before;
+      }
+    });
+    assertTrue(started.await(10, TimeUnit.SECONDS));
+    try {
+      assertTrue(write("a").isSuccessful());
+    } finally {
+      release.countDown();
+    }
+    assertEquals(0, (long) slow.waitForCompletion());
+    assertTrue(slow.isSuccessful());
+    assertEquals(1, (long) db.readForeground(new ReadTransaction<Long>() {
+      @Override
+      public Long transaction(DBReader reader) throws DBOperationCancelledException {
+        return reader.query(DPNotNull.create(NAME)).count();
+      }
+    }).waitForCompletion());
+  }
+
+  public void testCheckpoint() throws InterruptedException {
+    for (int i = 0; i < 30 && db.getWalSize() == 0; i++) {
+      write("n" + i);
+      Thread.sleep(300);
+    }
+    assertTrue(db.getWalSize() > 0);
+  }
+
+  public void testCheckpointShrinksLog() throws InterruptedException {
+    assertNull(db.writeForeground(new WriteTransaction<Object>() {
+      @Override
+      public Object transaction(DBWriter writer) throws DBOperationCancelledException {
+        for (int i = 0; i < 3000; i++) writer.setValue(writer.nextItem(), NAME, LONG_NAME + i);
+        return null;
+      }
+    }).waitForCompletion());
+    // the housekeeper runs the checkpoint when the main queue gets empty, but not too often
+    long logSize = db.getWalSize();
+    for (int i = 0; i < 50 && logSize < 8 * WAL_SIZE_LIMIT; i++) {
+      write("w" + i);
+      Thread.sleep(300);
+      logSize = db.getWalSize();
+    }
+    assertTrue(String.valueOf(logSize), logSize >= 8 * WAL_SIZE_LIMIT);
+    // the log is restarted by the next write and truncated
+    assertTrue(write("last").isSuccessful());
+    long walLength = new File(myFile.getPath() + "-wal").length();
+    assertTrue(walLength + " " + logSize, walLength < logSize / 4);
+  }
+
+  private DBResult<Object> write(final String name) {
+    DBResult<Object> result = db.writeForeground(new WriteTransaction<Object>() {
+      @Override
+      public Object transaction(DBWriter writer) throws DBOperationCancelledException {
+        writer.setValue(writer.nextItem(), NAME, name);
+        return null;
+      }
+    });
+    result.waitForCompletion();
+    return result;
+  }
+}
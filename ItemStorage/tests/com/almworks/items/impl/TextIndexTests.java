@@ -0,0 +1,180 @@
+package com.almworks.items.impl;
+
+import com.almworks.integers.LongArray;
+import com.almworks.items.api.*;
+import com.almworks.items.dp.DPTextMatch;
+import com.almworks.items.impl.sqlite.TransactionContext;
+import com.almworks.items.util.SlaveUtils;
+import com.almworks.sqlite4java.SQLiteException;
+import com.almworks.sqlite4java.SQLiteStatement;
+import com.almworks.util.bool.BoolExpr;
+import com.almworks.util.commons.Procedure;
+import com.almworks.util.tests.CollectionsCompare;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class TextIndexTests extends MemoryDatabaseFixture {
+  private static final DBAttribute<String> TEXT = DBAttribute.String(":a:text", "text");
+  private static final DBAttribute<Long> MASTER = SlaveUtils.masterReference(":a:master", "master");
+  private static final List<DBAttribute<Long>> NO_SLAVES = Collections.emptyList();
+
+  private final CollectionsCompare compare = new CollectionsCompare();
+  private final long[] items = new long[3];
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    writeNoFail(new Procedure<DBWriter>() {
+      @Override
+      public void invoke(DBWriter writer) {
+        for (int i = 0; i < items.length; i++) items[i] = writer.nextItem();
+        writer.setValue(items[0], TEXT, "Database INDEX performance");
+        writer.setValue(items[1], TEXT, "Full-text search, full text");
+        writer.setValue(items[2], TEXT, "Indexing is slow");
+        writer.setValue(items[2], MASTER, items[0]);
+      }
+    });
+  }
+
+  public void testTokenize() {
+    assertEquals(Arrays.asList("hello", "world", "42", "x"), TextIndex.tokenize(" Hello, wORLD-42 x!"));
+    compare.order(new ArrayList<String>(TextIndex.getSearchRuns(new String[] {"full-text", "a", "Text"})), "full", "text");
+  }
+
+  public void testCandidates() {
+    buildIndex();
+    db.readForeground(new ReadTransaction<Object>() {
+      @Override
+      public Object transaction(DBReader reader) throws DBOperationCancelledException {
+        TransactionContext context = ((DBReaderImpl) reader).getContext();
+        try {
+          assertTrue(TextIndex.isComplete(context));
+          checkCandidates(context, new String[] {"index"}, NO_SLAVES, items[0], items[2]);
+          checkCandidates(context, new String[] {"DEX", "perf"}, NO_SLAVES, items[0]);
+          checkCandidates(context, new String[] {"full-text"}, NO_SLAVES, items[1]);
+          checkCandidates(context, new String[] {"slow"}, NO_SLAVES, items[2]);
+          checkCandidates(context, new String[] {"slow", "perf"}, Collections.singletonList(MASTER), items[0]);
+          checkCandidates(context, new String[] {"nothing"}, NO_SLAVES);
+          assertNull(TextIndex.findCandidates(context, new String[] {"a", "-"}, NO_SLAVES));
+        } catch (SQLiteException e) {
+          throw new DBException(e);
+        }
+        return null;
+      }
+    }).waitForCompletion();
+  }
+
+  public void testQuery() {
+    final BoolExpr<DP> expr = DPTextMatch.contains(TEXT, "Text S");
+    compare.order(query(expr), items[1]);
+    buildIndex();
+    compare.order(query(expr), items[1]);
+    writeNoFail(new Procedure<DBWriter>() {
+      @Override
+      public void invoke(DBWriter writer) {
+        writer.setValue(items[1], TEXT, "Other");
+        writer.setValue(items[0], TEXT, "Full-text Search");
+      }
+    });
+    compare.order(query(expr), items[0]);
+    assertTrue(query(DPTextMatch.contains(TEXT, "performance")).isEmpty());
+  }
+
+  public void testChangedValueReindexed() {
+    buildIndex();
+    final LongArray postings = readPostings(items[1]);
+    assertFalse(postings.isEmpty());
+    writeNoFail(new Procedure<DBWriter>() {
+      @Override
+      public void invoke(DBWriter writer) {
+        writer.setValue(items[1], TEXT, "Full-text search, full text");
+      }
+    });
+    // unchanged value keeps its postings
+    compare.order(readPostings(items[1]), postings.toNativeArray());
+    writeNoFail(new Procedure<DBWriter>() {
+      @Override
+      public void invoke(DBWriter writer) {
+        writer.setValue(items[1], TEXT, "Other");
+        writer.setValue(items[2], TEXT, null);
+      }
+    });
+    db.readForeground(new ReadTransaction<Object>() {
+      @Override
+      public Object transaction(DBReader reader) throws DBOperationCancelledException {
+        TransactionContext context = ((DBReaderImpl) reader).getContext();
+        try {
+          checkCandidates(context, new String[] {"full"}, NO_SLAVES);
+          checkCandidates(context, new String[] {"other"}, NO_SLAVES, items[1]);
+          checkCandidates(context, new String[] {"index"}, NO_SLAVES, items[0]);
+        } catch (SQLiteException e) {
+          throw new DBException(e);
+        }
+        return null;
+      }
+    }).waitForCompletion();
+    assertEquals(1, readPostings(items[1]).size());
+    assertTrue(readPostings(items[2]).isEmpty());
+  }
+
+  /**
+   * @return row ids of the item postings
+   */
+  private LongArray readPostings(final long item) {
+    return db.readForeground(new ReadTransaction<LongArray>() {
+      @Override
+      public LongArray transaction(DBReader reader) throws DBOperationCancelledException {
+        TransactionContext context = ((DBReaderImpl) reader).getContext();
+        LongArray rows = new LongArray();
+        try {
+          SQLiteStatement st = context.prepare(context.sql().append("SELECT rowid FROM ")
+            .append(context.getTableName(TextIndex.POSTINGS, false)).append(" WHERE item = ? ORDER BY 1"));
+          try {
+            st.bind(1, item);
+            while (st.step()) rows.add(st.columnLong(0));
+          } finally {
+            st.dispose();
+          }
+        } catch (SQLiteException e) {
+          throw new DBException(e);
+        }
+        return rows;
+      }
+    }).waitForCompletion();
+  }
+
+  private LongArray query(final BoolExpr<DP> expr) {
+    return db.readForeground(new ReadTransaction<LongArray>() {
+      @Override
+      public LongArray transaction(DBReader reader) throws DBOperationCancelledException {
+        return reader.query(expr).copyItemsSorted();
+      }
+    }).waitForCompletion();
+  }
+
+  private void buildIndex() {
+    db.writeForeground(new WriteTransaction<Object>() {
+      @Override
+      public Object transaction(DBWriter writer) throws DBOperationCancelledException {
+        TransactionContext context = ((DBReaderImpl) writer).getContext();
+        try {
+          while (!TextIndex.buildNext(context, 2)) ;
+        } catch (SQLiteException e) {
+          throw new DBException(e);
+        }
+        return null;
+      }
+    }).waitForCompletion();
+  }
+
+  private void checkCandidates(TransactionContext context, String[] words, List<DBAttribute<Long>> slaves,
+    long... expected) throws SQLiteException
+  {
+    LongArray candidates = TextIndex.findCandidates(context, words, slaves);
+    assertNotNull(candidates);
+    compare.order(candidates, expected);
+  }
+}
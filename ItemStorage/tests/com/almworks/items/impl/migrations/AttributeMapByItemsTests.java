@@ -0,0 +1,110 @@
+package com.almworks.items.impl.migrations;
+
+import com.almworks.items.api.*;
+import com.almworks.items.impl.AttributeAdapter;
+import com.almworks.items.impl.DBWriterImpl;
+import com.almworks.items.impl.sqlite.TransactionContext;
+import com.almworks.items.util.AttributeMap;
+import com.almworks.sqlite4java.SQLiteException;
+import com.almworks.sqlite4java.SQLiteStatement;
+import com.almworks.util.commons.Procedure;
+import util.external.CompactChar;
+import util.external.CompactInt;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+public class AttributeMapByItemsTests extends MemoryDatabaseFixture {
+  private static final int SIGNATURE_IDS = 0xA1151B0E;
+  private static final int SIGNATURE_ITEMS = 0xA1151B0F;
+  private static final DBAttribute<String> ANOTHER = DBAttribute.String("another", "Another");
+
+  public void testMigrate() {
+    final AttributeMap map = new AttributeMap();
+    map.put(TestData.STRING, "value");
+    map.put(ANOTHER, "another value");
+    writeNoFail(new Procedure<DBWriter>() {
+      @Override
+      public void invoke(DBWriter writer) {
+        writer.setValue(TestData.ITEM1, TestData.MAP, map);
+        assertEquals(SIGNATURE_ITEMS, readSignature(writer));
+        // replace with the value written in the old format
+        writeBlob(writer, encodeByIds(map));
+      }
+    });
+    writeNoFail(new Procedure<DBWriter>() {
+      @Override
+      public void invoke(DBWriter writer) {
+        assertEquals(SIGNATURE_IDS, readSignature(writer));
+        assertEquals(map, writer.getValue(TestData.ITEM1, TestData.MAP));
+        assertTrue(new AttributeMapByItems().migrate(writer));
+        assertEquals(SIGNATURE_ITEMS, readSignature(writer));
+      }
+    });
+    db.readForeground(new ReadTransaction<Object>() {
+      @Override
+      public Object transaction(DBReader reader) throws DBOperationCancelledException {
+        AttributeMap value = reader.getValue(TestData.ITEM1, TestData.MAP);
+        assertEquals(map, value);
+        assertEquals("value", value.get(TestData.STRING));
+        return null;
+      }
+    }).waitForCompletion();
+  }
+
+  private static byte[] encodeByIds(AttributeMap map) {
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bytes);
+      out.writeInt(SIGNATURE_IDS);
+      CompactInt.writeInt(out, map.size());
+      for (DBAttribute<?> attribute : map.keySet()) {
+        CompactChar.writeString(out, attribute.getId());
+        CompactChar.writeString(out, (String) map.get(attribute));
+      }
+      out.close();
+      return bytes.toByteArray();
+    } catch (IOException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  private static int readSignature(DBWriter writer) {
+    try {
+      SQLiteStatement st = prepare((DBWriterImpl) writer, "SELECT %s FROM %s WHERE item = ?");
+      try {
+        st.bind(1, TestData.ITEM1);
+        assertTrue(st.step());
+        byte[] blob = st.columnBlob(0);
+        return ((blob[0] & 0xFF) << 24) | ((blob[1] & 0xFF) << 16) | ((blob[2] & 0xFF) << 8) | (blob[3] & 0xFF);
+      } finally {
+        st.dispose();
+      }
+    } catch (SQLiteException e) {
+      throw new DBException(e);
+    }
+  }
+
+  private static void writeBlob(DBWriter writer, byte[] blob) {
+    try {
+      SQLiteStatement st = prepare((DBWriterImpl) writer, "UPDATE %2$s SET %1$s = ? WHERE item = ?");
+      try {
+        st.bind(1, blob);
+        st.bind(2, TestData.ITEM1);
+        st.step();
+      } finally {
+        st.dispose();
+      }
+    } catch (SQLiteException e) {
+      throw new DBException(e);
+    }
+  }
+
+  private static SQLiteStatement prepare(DBWriterImpl writer, String sql) throws SQLiteException {
+    TransactionContext context = writer.getContext();
+    AttributeAdapter adapter = writer.getAttributeAdapter(TestData.MAP);
+    String table = context.getTableName(adapter.getTable(), false);
+    return context.prepare(context.sql().append(String.format(sql, adapter.getScalarColumn().getName(), table)));
+  }
+}
@@ -0,0 +1,94 @@
+package com.almworks.items.impl.sqlite;
+
+import com.almworks.items.api.*;
+import com.almworks.items.impl.DBReaderImpl;
+import com.almworks.items.impl.DBWriterImpl;
+import com.almworks.util.commons.Procedure;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+public class ChangedAttributesLogTests extends MemoryDatabaseFixture {
+  private long myItem;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    writeNoFail(new Procedure<DBWriter>() {
+      @Override
+      public void invoke(DBWriter writer) {
+        myItem = writer.nextItem();
+        writer.setValue(myItem, TestData.BOOL, true);
+        writer.setValue(myItem, TestData.STRING, "a");
+      }
+    });
+  }
+
+  public void testLog() {
+    ChangedAttributesLog log = new ChangedAttributesLog();
+    log.transactionChanged(1, Collections.<DBAttribute>singleton(TestData.BOOL));
+    log.transactionChanged(2, Collections.<DBAttribute>singleton(TestData.INT));
+    log.transactionChanged(3, null);
+    assertEquals(Collections.<DBAttribute>emptySet(), log.getChangedAttributes(2, 2));
+    assertEquals(Collections.<DBAttribute>singleton(TestData.INT), log.getChangedAttributes(1, 2));
+    assertEquals(set(TestData.BOOL, TestData.INT), log.getChangedAttributes(0, 2));
+    assertNull(log.getChangedAttributes(2, 3));
+    assertNull(log.getChangedAttributes(2, 4));
+    // rolled back transaction is replaced
+    log.transactionChanged(3, Collections.<DBAttribute>singleton(TestData.STRING));
+    assertEquals(set(TestData.INT, TestData.STRING), log.getChangedAttributes(1, 3));
+  }
+
+  public void testTransactions() {
+    long icn = getLastIcn();
+    writeNoFail(new Procedure<DBWriter>() {
+      @Override
+      public void invoke(DBWriter writer) {
+        writer.setValue(myItem, TestData.STRING, "b");
+      }
+    });
+    assertEquals(Collections.<DBAttribute>singleton(TestData.STRING), getChangedAttributes(icn));
+    icn = getLastIcn();
+    writeNoFail(new Procedure<DBWriter>() {
+      @Override
+      public void invoke(DBWriter writer) {
+        writer.setValue(writer.nextItem(), TestData.STRING, "c");
+      }
+    });
+    assertNull(getChangedAttributes(icn));
+    icn = getLastIcn();
+    writeNoFail(new Procedure<DBWriter>() {
+      @Override
+      public void invoke(DBWriter writer) {
+        ((DBWriterImpl) writer).itemChanged(myItem);
+      }
+    });
+    assertNull(getChangedAttributes(icn));
+  }
+
+  private long getLastIcn() {
+    return db.readForeground(new ReadTransaction<Long>() {
+      @Override
+      public Long transaction(DBReader reader) throws DBOperationCancelledException {
+        return reader.getTransactionIcn() - 1;
+      }
+    }).waitForCompletion();
+  }
+
+  private Set<DBAttribute> getChangedAttributes(final long fromIcn) {
+    return db.readForeground(new ReadTransaction<Set<DBAttribute>>() {
+      @Override
+      public Set<DBAttribute> transaction(DBReader reader) throws DBOperationCancelledException {
+        TransactionContext context = ((DBReaderImpl) reader).getContext();
+        return context.getDatabaseContext().getChangedAttributesLog()
+          .getChangedAttributes(fromIcn, reader.getTransactionIcn() - 1);
+      }
+    }).waitForCompletion();
+  }
+
+  private static Set<DBAttribute> set(DBAttribute... attributes) {
+    return new HashSet<DBAttribute>(Arrays.asList(attributes));
+  }
+}
@@ -5,6 +5,7 @@
 import com.almworks.items.api.*;
 import com.almworks.items.dp.DPEquals;
 import com.almworks.util.bool.BoolExpr;
+import com.almworks.util.commons.Procedure;
 
 import java.util.*;
 
@@ -51,6 +52,37 @@ public Object transaction(DBReader reader) throws DBOperationCancelledException
     });
   }
 
+  public void testValueCount() {
+    final long[] items = new long[10];
+    writeNoFail(new Procedure<DBWriter>() {
+      @Override
+      public void invoke(DBWriter writer) {
+        for (int i = 0; i < items.length; i++) items[i] = writer.nextItem();
+        // values: items[0] <- items[1] <- items[2], items[3]
+        writer.setValue(items[1], TestData.LINK, items[0]);
+        writer.setValue(items[2], TestData.LINK, items[1]);
+        for (int i = 4; i < 10; i++) writer.setValue(items[i], TestData.BOOL, true);
+        writer.setValue(items[4], TestData.LONG, items[2]);
+        writer.setValue(items[5], TestData.LONG, items[2]);
+        writer.setValue(items[6], TestData.LONG, items[1]);
+        writer.setValue(items[7], TestData.LONG, items[3]);
+        writer.setValue(items[4], TestData.LONG_LIST, Arrays.asList(items[0], items[0], items[3]));
+        writer.setValue(items[5], TestData.LONG_LIST, Arrays.asList(items[3]));
+      }
+    });
+    db.readForeground(new ReadTransaction<Object>() {
+      @Override
+      public Object transaction(DBReader reader) throws DBOperationCancelledException {
+        DBQuery q = reader.query(DPEquals.create(TestData.BOOL, true));
+        checkDistribution(q.valueCount(TestData.LONG, null), 1, 0, 2, items[1], 1, items[2], 2, items[3], 1);
+        checkDistribution(q.valueCount(TestData.LONG, TestData.LINK), 1, 0, 2, items[0], 3, items[1], 3, items[2], 2, items[3], 1);
+        checkDistribution(q.valueCount(TestData.LONG_LIST, null), 1, 0, 4, items[0], 1, items[3], 2);
+        assertTrue(reader.query(DPEquals.create(TestData.INT, 1)).valueCount(TestData.LONG, null).isEmpty());
+        return null;
+      }
+    }).waitForCompletion();
+  }
+
   private void checkDistribution(LongList r, int dims, long ... expected) {
     assertEquals(createMap(LongArray.create(expected), dims), createMap(r, dims));
   }
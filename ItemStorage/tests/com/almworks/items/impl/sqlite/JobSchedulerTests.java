@@ -0,0 +1,110 @@
+package com.almworks.items.impl.sqlite;
+
+import com.almworks.util.tests.BaseTestCase;
+
+public class JobSchedulerTests extends BaseTestCase {
+  private final JobScheduler myScheduler = new JobScheduler();
+
+  public void testPriorityAndOrder() {
+    Job w1 = add(new Job(WRITE, 0), 0);
+    Job w2 = add(new Job(WRITE, 0), 0);
+    Job high = add(new Job(WRITE, 5), 0);
+    Job r = add(new Job(READ, 0), 0);
+    assertSame(high, myScheduler.select(true, 0));
+    assertSame(w1, myScheduler.select(true, 0));
+    assertSame(w2, myScheduler.select(true, 0));
+    assertSame(r, myScheduler.select(true, 0));
+    assertNull(myScheduler.select(true, 0));
+    assertTrue(myScheduler.isEmpty());
+  }
+
+  public void testAging() {
+    long period = JobScheduler.AGING_PERIOD;
+    Job low = add(new Job(WRITE, 0), 0);
+    Job high = add(new Job(WRITE, 3), 3 * period + period / 2);
+    // equal aged priority does not win
+    assertSame(high, myScheduler.select(false, 3 * period + period / 2));
+    assertSame(low, myScheduler.select(true, 4 * period));
+    assertSame(high, myScheduler.select(true, 4 * period));
+  }
+
+  public void testShortestRead() {
+    myScheduler.jobFinished(new Job(READ, 0), 100);
+    myScheduler.jobFinished(new FastJob(), 1);
+    Job slow = add(new Job(READ, 0), 0);
+    Job fast = add(new FastJob(), 0);
+    assertSame(fast, myScheduler.select(true, 0));
+    assertSame(slow, myScheduler.select(true, 0));
+
+    // reads do not pass writes
+    slow = add(new Job(READ, 0), 0);
+    Job write = add(new Job(WRITE, 0), 0);
+    fast = add(new FastJob(), 0);
+    assertSame(slow, myScheduler.select(true, 0));
+    assertSame(write, myScheduler.select(true, 0));
+    assertSame(fast, myScheduler.select(true, 0));
+  }
+
+  public void testIdentityAndState() {
+    Object identity = new Object();
+    Job first = add(new Job(READ, 0, identity), 0);
+    Job other = add(new Job(READ, 0), 0);
+    Job second = new Job(READ, 0, identity);
+    assertSame(first, myScheduler.add(second, 10));
+    assertEquals(2, myScheduler.size());
+    // the replacing job takes the place
+    assertSame(second, myScheduler.select(false, 10));
+
+    second.cancel();
+    assertSame(other, myScheduler.select(false, 10));
+    other.setPriority(1);
+    myScheduler.updatePriority(other);
+    Job last = add(new Job(READ, 1), 10);
+    assertSame(other, myScheduler.select(true, 10));
+    assertSame(last, myScheduler.select(true, 10));
+    assertTrue(myScheduler.isEmpty());
+  }
+
+  private Job add(Job job, long now) {
+    assertNull(myScheduler.add(job, now));
+    return job;
+  }
+
+  private static final DatabaseJob.TransactionType READ = DatabaseJob.TransactionType.READ_ROLLBACK;
+  private static final DatabaseJob.TransactionType WRITE = DatabaseJob.TransactionType.WRITE;
+
+  private static class Job extends DatabaseJob {
+    private final TransactionType myType;
+    private final Object myIdentity;
+
+    public Job(TransactionType type, int priority) {
+      this(type, priority, null);
+    }
+
+    public Job(TransactionType type, int priority, Object identity) {
+      myType = type;
+      myIdentity = identity;
+      setPriority(priority);
+    }
+
+    @Override
+    protected void dbrun(TransactionContext context) {
+    }
+
+    @Override
+    public Object getIdentity() {
+      return myIdentity != null ? myIdentity : this;
+    }
+
+    @Override
+    public TransactionType getTransactionType() {
+      return myType;
+    }
+  }
+
+  private static class FastJob extends Job {
+    public FastJob() {
+      super(READ, 0);
+    }
+  }
+}
@@ -0,0 +1,157 @@
+package com.almworks.items.impl.sqlite;
+
+import com.almworks.items.api.*;
+import com.almworks.items.dp.DPEquals;
+import com.almworks.items.dp.DPReferredBy;
+import com.almworks.items.impl.DBReaderImpl;
+import com.almworks.util.bool.BoolExpr;
+import com.almworks.util.commons.Procedure;
+
+public class QueryPlanCacheTests extends MemoryDatabaseFixture {
+  private static final BoolExpr<DP> EXPR = DPEquals.create(TestData.BOOL, true);
+
+  private long myItem;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    writeNoFail(new Procedure<DBWriter>() {
+      @Override
+      public void invoke(DBWriter writer) {
+        myItem = writer.nextItem();
+        writer.setValue(myItem, TestData.BOOL, true);
+        writer.setValue(myItem, TestData.LINK, myItem);
+      }
+    });
+  }
+
+  public void testCache() {
+    assertFalse(isCached(EXPR));
+    assertEquals(1, count(EXPR));
+    assertTrue(isCached(EXPR));
+    assertTrue(isCached(DPEquals.create(TestData.BOOL, true)));
+    long hits = getCache().getHits();
+    assertEquals(1, count(DPEquals.create(TestData.BOOL, true)));
+    assertTrue(getCache().getHits() > hits);
+
+    // new table changes TCID
+    writeNoFail(new Procedure<DBWriter>() {
+      @Override
+      public void invoke(DBWriter writer) {
+        writer.setValue(myItem, TestData.INT, 1);
+      }
+    });
+    assertFalse(isCached(EXPR));
+    assertEquals(1, count(EXPR));
+    assertTrue(isCached(EXPR));
+  }
+
+  public void testVolatileNotCached() {
+    BoolExpr<DP> expr = DPReferredBy.create(TestData.LINK, new VolatileDP().term());
+    assertEquals(1, count(expr));
+    assertFalse(isCached(expr));
+  }
+
+  public void testNotCacheableNotCached() {
+    BoolExpr<DP> expr = new NotCacheableDP().term();
+    assertEquals(1, count(expr));
+    assertFalse(isCached(expr));
+    BoolExpr<DP> and = EXPR.and(expr);
+    assertEquals(1, count(and));
+    assertFalse(isCached(and));
+  }
+
+  public void testNotCachedWhileTablesChange() {
+    writeNoFail(new Procedure<DBWriter>() {
+      @Override
+      public void invoke(DBWriter writer) {
+        // new table
+        writer.setValue(myItem, TestData.INT, 1);
+        assertEquals(1, writer.query(EXPR).count());
+        assertFalse(isCached(writer, EXPR));
+      }
+    });
+    assertFalse(isCached(EXPR));
+    assertEquals(1, count(EXPR));
+    assertTrue(isCached(EXPR));
+  }
+
+  private long count(final BoolExpr<DP> expr) {
+    return db.readForeground(new ReadTransaction<Long>() {
+      @Override
+      public Long transaction(DBReader reader) throws DBOperationCancelledException {
+        return reader.query(expr).count();
+      }
+    }).waitForCompletion();
+  }
+
+  private boolean isCached(final BoolExpr<DP> expr) {
+    return db.readForeground(new ReadTransaction<Boolean>() {
+      @Override
+      public Boolean transaction(DBReader reader) throws DBOperationCancelledException {
+        return isCached(reader, expr);
+      }
+    }).waitForCompletion();
+  }
+
+  private static boolean isCached(DBReader reader, BoolExpr<DP> expr) {
+    TransactionContext context = ((DBReaderImpl) reader).getContext();
+    return context.getDatabaseContext().getQueryPlanCache().get(expr, context) != null;
+  }
+
+  private QueryPlanCache getCache() {
+    return db.readForeground(new ReadTransaction<QueryPlanCache>() {
+      @Override
+      public QueryPlanCache transaction(DBReader reader) throws DBOperationCancelledException {
+        return ((DBReaderImpl) reader).getContext().getDatabaseContext().getQueryPlanCache();
+      }
+    }).waitForCompletion();
+  }
+
+  /**
+   * Resolves to a filter in each transaction
+   */
+  private static class VolatileDP extends DP {
+    @Override
+    public BoolExpr<DP> resolve(DBReader reader, DP.ResolutionSubscription subscription) {
+      return EXPR;
+    }
+
+    @Override
+    public boolean accept(long item, DBReader reader) {
+      return EXPR.getTerm().accept(item, reader);
+    }
+
+    @Override
+    protected boolean equalDP(DP other) {
+      return true;
+    }
+
+    @Override
+    protected int hashCodeDP() {
+      return 0;
+    }
+  }
+
+  private static class NotCacheableDP extends DP {
+    @Override
+    public boolean accept(long item, DBReader reader) {
+      return EXPR.getTerm().accept(item, reader);
+    }
+
+    @Override
+    public boolean isCacheable() {
+      return false;
+    }
+
+    @Override
+    protected boolean equalDP(DP other) {
+      return true;
+    }
+
+    @Override
+    protected int hashCodeDP() {
+      return 1;
+    }
+  }
+}
@@ -11,10 +11,12 @@
 import com.almworks.util.collections.LongSet;
 import com.almworks.util.commons.Procedure;
 import com.almworks.util.exec.ThreadGate;
+import org.almworks.util.Collections15;
 import org.almworks.util.Log;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicReference;
 
 class MergeManager {
@@ -38,6 +40,12 @@ public void resolve(AutoMergeData data) {
     }
   };
 
+  /**
+   * Shadows read by {@link AutoMerge} for every merged item
+   */
+  private static final List<DBAttribute<?>> MERGE_SHADOWS = Collections15.<DBAttribute<?>>unmodifiableListCopy(
+    SyncSchema.DOWNLOAD, SyncSchema.DONE_UPLOAD, SyncSchema.DONE_UPLOAD_HISTORY, SyncSchema.CONFLICT, SyncSchema.BASE);
+
   MergeManager(SyncManagerImpl manager) {
     myManager = manager;
   }
@@ -73,6 +81,7 @@ public boolean autoMergeNow(DBWriter writer, LongList items, EditCounterpart ign
   }
 
   private boolean mergeAll(DBWriter writer, LongList items, EditCounterpart ignoreLock) {
+    prefetchShadows(writer, items);
     boolean result = true;
     for (int i = 0; i < items.size(); i++)
       if (!doMerge(writer, items.get(i), ignoreLock))
@@ -80,6 +89,10 @@ private boolean mergeAll(DBWriter writer, LongList items, EditCounterpart ignore
     return result;
   }
 
+  private static void prefetchShadows(DBReader reader, LongList items) {
+    if (items.size() > 1) reader.prefetchValues(items, MERGE_SHADOWS);
+  }
+
   public void autoMergePartial(DBWriter writer, LongList items, EditCounterpart ignoreLock) {
     items = myManager.selectMergableNowDeferOther(writer, items, ignoreLock);
     mergeAll(writer, items, ignoreLock);
@@ -117,6 +130,7 @@ public Object transaction(DBWriter writer) throws DBOperationCancelledException
     }
 
     private void doMerge(DBWriter writer) {
+      prefetchShadows(writer, myRequested);
       WritableLongListIterator it = myRequested.iterator();
       while (it.hasNext()) {
         long item = it.nextValue();
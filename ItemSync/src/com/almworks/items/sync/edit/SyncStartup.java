@@ -49,6 +49,8 @@ private void runStartup(DBWriter writer) {
     clearUploads(writer);
     collectMerge(writer);
     clearIllegalState(writer);
+    int compacted = SyncSchema.compactShadows(writer);
+    if (compacted > 0) Log.debug("Shadows compacted: " + compacted);
   }
 
   private void clearIllegalState(DBWriter writer) {
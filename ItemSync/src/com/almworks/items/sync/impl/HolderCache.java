@@ -56,7 +56,7 @@ public VersionHolder getHolder(long item, DBAttribute<AttributeMap> shadow, bool
     VersionHolder holder;
     if (shadow == null) holder = new VersionHolder.Trunk(myReader, item);
     else {
-      AttributeMap values = myReader.getValue(item, shadow);
+      AttributeMap values = ShadowDelta.read(myReader, item, shadow);
       if (values == null) {
         holder = new EmptyHolder(myReader, item, shadow);
         if (!returnEmpty) {
@@ -119,16 +119,16 @@ private void setShadow(long item, @NotNull DBAttribute<AttributeMap> shadow, @Nu
     if (noData) {
       if (emptyMap) return;
       holder = new VersionHolder.Shadow(myReader, item, map, shadow);
-      writer.setValue(item, shadow, map);
+      ShadowDelta.write(writer, item, shadow, map);
     } else {
       if (emptyMap) {
         holder = new EmptyHolder(myReader, item, shadow);
-        writer.setValue(item, shadow, null);
+        ShadowDelta.write(writer, item, shadow, null);
       } else {
         if (holder.getClass() == VersionHolder.Shadow.class) ((VersionHolder.Shadow) holder).setValues(map);
         else if (holder.getClass() == VersionHolder.WriteShadow.class) ((VersionHolder.WriteShadow) holder).setValues(map);
         else Log.error("Unknown holder class " + holder);
-        writer.setValue(item, shadow, map);
+        ShadowDelta.write(writer, item, shadow, map);
       }
     }
     addHolder(holder);
@@ -0,0 +1,108 @@
+package com.almworks.items.sync.impl;
+
+import com.almworks.integers.LongArray;
+import com.almworks.items.api.DBAttribute;
+import com.almworks.items.api.DBReader;
+import com.almworks.items.api.DBWriter;
+import com.almworks.items.api.DP;
+import com.almworks.items.dp.DPNotNull;
+import com.almworks.items.util.AttributeMap;
+import com.almworks.items.util.DatabaseUtil;
+import com.almworks.items.util.SyncAttributes;
+import com.almworks.util.bool.BoolExpr;
+import org.almworks.util.Collections15;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Shadows other than {@link SyncSchema#BASE} usually differ from it in one or two attributes, so they are stored as
+ * deltas against BASE (the format is read by {@link SyncAttributes#readShadow}, so shadows are readable without
+ * the sync layer).<br>
+ * Trunk is not used as a reference since it is written bypassing sync layer.<br>
+ * All shadows are written via {@link #write}, so when BASE changes dependent shadows are rewritten against the new
+ * value. A stored shadow without the reference is a complete map, so shadows written directly are read correctly.
+ */
+class ShadowDelta {
+  static final DBAttribute<String> DELTA_OF = SyncAttributes.SHADOW_DELTA_OF;
+  static final DBAttribute<List<String>> DELTA_REMOVED = SyncAttributes.SHADOW_DELTA_REMOVED;
+  static final List<DBAttribute<AttributeMap>> DELTA_SHADOWS = Collections15.unmodifiableListCopy(
+    SyncSchema.CONFLICT, SyncSchema.DOWNLOAD, SyncSchema.UPLOAD_TASK, SyncSchema.DONE_UPLOAD);
+
+  /**
+   * @return complete values of the shadow, null if the item has no shadow
+   */
+  @Nullable
+  static AttributeMap read(DBReader reader, long item, DBAttribute<AttributeMap> shadow) {
+    return SyncAttributes.readShadow(reader, item, shadow);
+  }
+
+  /**
+   * Writes the shadow. When BASE is written shadows stored against it are rewritten against the new value.
+   */
+  static void write(DBWriter writer, long item, DBAttribute<AttributeMap> shadow, @Nullable AttributeMap map) {
+    if (SyncSchema.BASE.equals(shadow)) {
+      Map<DBAttribute<AttributeMap>, AttributeMap> dependent = Collections15.linkedHashMap();
+      for (DBAttribute<AttributeMap> delta : DELTA_SHADOWS) {
+        AttributeMap stored = writer.getValue(item, delta);
+        if (stored != null && stored.containsKey(DELTA_OF)) dependent.put(delta, read(writer, item, delta));
+      }
+      writer.setValue(item, shadow, map);
+      for (Map.Entry<DBAttribute<AttributeMap>, AttributeMap> entry : dependent.entrySet()) {
+        writer.setValue(item, entry.getKey(), encode(map, entry.getValue()));
+      }
+    } else if (map != null && DELTA_SHADOWS.contains(shadow)) {
+      writer.setValue(item, shadow, encode(writer.getValue(item, SyncSchema.BASE), map));
+    } else writer.setValue(item, shadow, map);
+  }
+
+  /**
+   * Rewrites complete shadows as deltas where possible
+   * @return number of rewritten shadows
+   */
+  static int compact(DBWriter writer) {
+    List<BoolExpr<DP>> shadows = Collections15.arrayList();
+    for (DBAttribute<AttributeMap> shadow : DELTA_SHADOWS) shadows.add(DPNotNull.create(shadow));
+    LongArray items = writer.query(DPNotNull.create(SyncSchema.BASE).and(BoolExpr.or(shadows))).copyItemsSorted();
+    int count = 0;
+    for (int i = 0; i < items.size(); i++) {
+      long item = items.get(i);
+      AttributeMap base = writer.getValue(item, SyncSchema.BASE);
+      for (DBAttribute<AttributeMap> shadow : DELTA_SHADOWS) {
+        AttributeMap stored = writer.getValue(item, shadow);
+        if (stored == null || stored.containsKey(DELTA_OF)) continue;
+        AttributeMap encoded = encode(base, stored);
+        if (encoded != stored) {
+          writer.setValue(item, shadow, encoded);
+          count++;
+        }
+      }
+    }
+    return count;
+  }
+
+  /**
+   * @return delta of the map against the base, or the map itself if the delta is not smaller
+   */
+  static AttributeMap encode(@Nullable AttributeMap base, AttributeMap map) {
+    if (base == null) return map;
+    AttributeMap delta = new AttributeMap();
+    for (DBAttribute<?> attribute : map.keySet()) {
+      Object value = map.get(attribute);
+      if (!DatabaseUtil.valueEquals(value, base.get(attribute))) delta.put((DBAttribute<Object>) attribute, value);
+    }
+    List<String> removed = Collections15.arrayList();
+    for (DBAttribute<?> attribute : base.keySet()) {
+      if (!map.containsKey(attribute)) removed.add(attribute.getId());
+    }
+    if (delta.size() + removed.size() >= map.size()) return map;
+    delta.put(DELTA_OF, SyncSchema.BASE.getId());
+    if (!removed.isEmpty()) delta.put(DELTA_REMOVED, removed);
+    return delta;
+  }
+
+  static AttributeMap apply(AttributeMap base, AttributeMap delta) {
+    return SyncAttributes.applyShadowDelta(base, delta);
+  }
+}
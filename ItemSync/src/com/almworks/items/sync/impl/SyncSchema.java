@@ -11,6 +11,7 @@
 import com.almworks.util.bool.BoolExpr;
 import org.almworks.util.Log;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.math.BigDecimal;
 
@@ -134,6 +135,24 @@ public static void setDecimalScale(int scale, DBAttribute<BigDecimal> ... attrib
     for (DBAttribute<BigDecimal> attribute : attributes) attribute.initialize(DECIMAL_SCALE, scale);
   }
 
+  /**
+   * Reads complete values of the shadow. Shadows may be stored as deltas, so direct read of the attribute may return
+   * partial values.
+   * @return shadow values or null if the item has no shadow
+   */
+  @Nullable
+  public static AttributeMap readShadow(DBReader reader, long item, DBAttribute<AttributeMap> shadow) {
+    return ShadowDelta.read(reader, item, shadow);
+  }
+
+  /**
+   * Rewrites shadows stored as complete maps as deltas against {@link #BASE}, where deltas are smaller
+   * @return number of rewritten shadows
+   */
+  public static int compactShadows(DBWriter writer) {
+    return ShadowDelta.compact(writer);
+  }
+
   public static boolean hasDoneUpload(DBReader reader, long item) {
     return reader.getValue(item, SyncSchema.DONE_UPLOAD) != null ||
       reader.getValue(item, SyncSchema.DONE_UPLOAD_HISTORY) != null;
@@ -160,7 +160,7 @@ public static ItemVersion readServer(DBReader reader, long item) {
   @Nullable
   public static ItemVersion readLastNotBaseServer(DBReader reader, long item) {
     for (DBAttribute<AttributeMap> shadow : SERVER_NOT_BASE_SHADOWS) {
-      AttributeMap map = reader.getValue(item, shadow);
+      AttributeMap map = SyncSchema.readShadow(reader, item, shadow);
       if (map != null) return new MapItemVersion(map, readServer(reader, item));
     }
     return null;
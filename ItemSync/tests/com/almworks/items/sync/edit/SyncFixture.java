@@ -115,6 +115,17 @@ public T transaction(DBReader reader) throws DBOperationCancelledException {
     }).get();
   }
 
+  protected AttributeMap readShadow(final long item, final DBAttribute<AttributeMap> shadow)
+    throws ExecutionException, InterruptedException
+  {
+    return db.readForeground(new ReadTransaction<AttributeMap>() {
+      @Override
+      public AttributeMap transaction(DBReader reader) throws DBOperationCancelledException {
+        return SyncSchema.readShadow(reader, item, shadow);
+      }
+    }).get();
+  }
+
   protected DBAttribute<?> loadAttribute(final long attributeItem) {
     return db.readForeground(new ReadTransaction<DBAttribute<?>>() {
       @Override
@@ -131,7 +142,7 @@ protected <T> void checkTrunk(long item, DBAttribute<T> attribute, @Nullable T e
   protected <T> void checkShadow(long item, DBAttribute<AttributeMap> shadow, DBAttribute<T> attribute, T value)
     throws ExecutionException, InterruptedException
   {
-    AttributeMap map = readAttribute(item, shadow);
+    AttributeMap map = readShadow(item, shadow);
     assertNotNull("Missing shadow " + shadow.toString(), map);
     assertEquals(value, map.get(attribute));
   }
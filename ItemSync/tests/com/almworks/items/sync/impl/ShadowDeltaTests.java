@@ -0,0 +1,84 @@
+package com.almworks.items.sync.impl;
+
+import com.almworks.items.api.DBAttribute;
+import com.almworks.items.api.DBWriter;
+import com.almworks.items.sync.edit.SyncFixture;
+import com.almworks.items.util.AttributeMap;
+import com.almworks.items.util.DatabaseUtil;
+import com.almworks.util.commons.Procedure;
+import org.almworks.util.Collections15;
+
+import java.util.List;
+
+public class ShadowDeltaTests extends SyncFixture {
+  private static final List<DBAttribute<String>> VALUES = Collections15.arrayList();
+  static {
+    for (int i = 0; i < 10; i++) VALUES.add(TEST_NS.string("value" + i, "Value " + i, true));
+  }
+
+  public void testEncode() {
+    AttributeMap base = map("a");
+    AttributeMap changed = map("a");
+    changed.put(VALUES.get(1), "b");
+    changed.put(VALUES.get(2), null);
+    AttributeMap delta = ShadowDelta.encode(base, changed);
+    assertEquals(SyncSchema.BASE.getId(), delta.get(ShadowDelta.DELTA_OF));
+    assertEquals(Collections15.arrayList(VALUES.get(2).getId()), delta.get(ShadowDelta.DELTA_REMOVED));
+    assertEquals(3, delta.size());
+    assertEquals(changed, ShadowDelta.apply(base, delta));
+
+    AttributeMap other = map("c");
+    assertSame(other, ShadowDelta.encode(base, other));
+    assertSame(other, ShadowDelta.encode(null, other));
+  }
+
+  public void testWriteShadows() {
+    writeNoFail(new Procedure<DBWriter>() {
+      @Override
+      public void invoke(DBWriter writer) {
+        long item = writer.nextItem();
+        HolderCache holders = HolderCache.instance(writer);
+        holders.setBase(item, map("a"));
+        AttributeMap conflict = map("a");
+        conflict.put(VALUES.get(0), "c");
+        holders.setConflict(item, conflict);
+        assertTrue(writer.getValue(item, SyncSchema.CONFLICT).containsKey(ShadowDelta.DELTA_OF));
+        assertEquals(conflict, SyncSchema.readShadow(writer, item, SyncSchema.CONFLICT));
+        // values not changed against BASE are read from BASE
+        assertEquals("a1", DatabaseUtil.getShadowValue(item, VALUES.get(1), SyncSchema.CONFLICT, false, writer));
+
+        holders.setBase(item, map("b"));
+        assertEquals(conflict, SyncSchema.readShadow(writer, item, SyncSchema.CONFLICT));
+        assertEquals(conflict, HolderCache.instance(writer).getConflict(item));
+
+        holders.setBase(item, null);
+        assertEquals(conflict, writer.getValue(item, SyncSchema.CONFLICT));
+      }
+    });
+  }
+
+  public void testCompact() {
+    writeNoFail(new Procedure<DBWriter>() {
+      @Override
+      public void invoke(DBWriter writer) {
+        long item = writer.nextItem();
+        writer.setValue(item, SyncSchema.BASE, map("a"));
+        AttributeMap download = map("a");
+        download.put(VALUES.get(5), "d");
+        writer.setValue(item, SyncSchema.DOWNLOAD, download);
+        writer.setValue(item, SyncSchema.UPLOAD_TASK, map("u"));
+        assertEquals(1, SyncSchema.compactShadows(writer));
+        assertEquals(2, writer.getValue(item, SyncSchema.DOWNLOAD).size());
+        assertEquals(download, SyncSchema.readShadow(writer, item, SyncSchema.DOWNLOAD));
+        assertEquals(map("u"), writer.getValue(item, SyncSchema.UPLOAD_TASK));
+        assertEquals(0, SyncSchema.compactShadows(writer));
+      }
+    });
+  }
+
+  private static AttributeMap map(String prefix) {
+    AttributeMap map = new AttributeMap();
+    for (int i = 0; i < VALUES.size(); i++) map.put(VALUES.get(i), prefix + i);
+    return map;
+  }
+}
@@ -25,6 +25,7 @@ class CacheUpdate implements Runnable {
   private final Map<DataLoader<?>, LoaderCounterpart> myLoaded = Collections15.hashMap();
   private final Map<CoherentUpdate<?>, Object> myCoherentUpdates = Collections15.hashMap();
   private final long myICN;
+  private DataTable.Snapshot myPreparedData;
 
   public CacheUpdate(DBImage image, DBReader reader, Lifespan life, Procedure<LongList> reload) {
     myImage = image;
@@ -42,6 +43,8 @@ public void perform() {
       LoaderCounterpart counterpart = LoaderCounterpart.load(this, loader, entry.getValue());
       myLoaded.put(loader, counterpart);
     }
+    // merge loaded values here, so the AWT thread only publishes the result
+    myPreparedData = DataTable.prepareUpdate(myImage.getDataSnapshot(), this);
     List<CoherentUpdate<?>> updates = Collections15.arrayList();
     myImage.copyCoherentUpdates(updates);
     for (CoherentUpdate<?> update : updates) {
@@ -55,6 +58,10 @@ public Map<DataLoader<?>, LoaderCounterpart> getLoaded() {
     return myLoaded;
   }
 
+  DataTable.Snapshot getPreparedData() {
+    return myPreparedData;
+  }
+
   @SuppressWarnings( {"unchecked"})
   @Override
   public void run() {
@@ -21,8 +21,6 @@
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * @author dyoma
@@ -31,7 +29,6 @@ public class DBImage implements Startable {
   public static final Role<DBImage> ROLE = Role.role(DBImage.class);
 
   private final Database myDB;
-  private final ReentrantReadWriteLock myLock = new ReentrantReadWriteLock();
   private final CopyOnWriteArrayList<BaseImageSlice> mySlices = new CopyOnWriteArrayList<BaseImageSlice>();
   private final DataTable myData = new DataTable();
   private final DetachComposite myLife = new DetachComposite();
@@ -44,16 +41,11 @@ public class DBImage implements Startable {
   private static final int STATE_STOPPED = 3;
 
   private final AtomicInteger myRunning = new AtomicInteger(STATE_INITIAL);
-  private long myICN = -1;
 
   public DBImage(Database db) {
     myDB = db;
   }
 
-  Lock getReadLock() {
-    return myLock.readLock();
-  }
-
   public Database getDatabase() {
     return myDB;
   }
@@ -63,13 +55,7 @@ public UserDataHolder getUserData() {
   }
 
   public boolean hasValue(long item, DataLoader<?> data) {
-    Lock lock = getReadLock();
-    lock.lock();
-    try {
-      return myData.hasValue(item, data);
-    } finally {
-      lock.unlock();
-    }
+    return myData.hasValue(item, data);
   }
 
   public <T> T getValue(long item, DBAttribute<T> attribute) {
@@ -77,13 +63,7 @@ public <T> T getValue(long item, DBAttribute<T> attribute) {
   }
 
   public <T> T getValue(long item, DataLoader<T> data) {
-    Lock lock = getReadLock();
-    lock.lock();
-    try {
-      return myData.getValue(item, data);
-    } finally {
-      lock.unlock();
-    }
+    return myData.getValue(item, data);
   }
 
   public ManualImageSlice manualSlice(Lifespan life) {
@@ -108,13 +88,7 @@ public ManualImageSlice createManualSlice() {
 
 
   public long getICN() {
-    Lock lock = getReadLock();
-    lock.lock();
-    try {
-      return myICN;
-    } finally {
-      lock.unlock();
-    }
+    return myData.getICN();
   }
 
   public void addCoherentUpdate(Lifespan life, CoherentUpdate<?> update) {
@@ -203,20 +177,18 @@ List<BaseImageSlice> copySlices() {
     return slices;
   }
 
+  /**
+   * @return current data, the update prepares the next snapshot from it
+   */
+  DataTable.Snapshot getDataSnapshot() {
+    return myData.getSnapshot();
+  }
+
   void updateComplete(CacheUpdate update) {
     Threads.assertAWTThread();
-    ReentrantReadWriteLock.WriteLock lock = myLock.writeLock();
-    lock.lock();
-    DataChange change;
-    Collection<BaseImageSlice> updatedSlices;
-    try {
-      change = myData.applyUpdate(update);
-      myICN = update.getICN();
-      updatedSlices = update.getSlices();
-      for (BaseImageSlice slice : updatedSlices) slice.applyUpdate(update, change);
-    } finally {
-      lock.unlock();
-    }
+    DataChange change = myData.applyUpdate(update.getPreparedData(), update);
+    Collection<BaseImageSlice> updatedSlices = update.getSlices();
+    for (BaseImageSlice slice : updatedSlices) slice.applyUpdate(update, change);
     myDBRequest.updateComplete();
     for (BaseImageSlice slice : updatedSlices) slice.notifyListeners(change);
   }
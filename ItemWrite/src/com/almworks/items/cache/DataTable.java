@@ -2,40 +2,103 @@
 
 import org.almworks.util.Collections15;
 
+import java.util.Collections;
 import java.util.Map;
 
+/**
+ * Loaded data of {@link DBImage}. The data is kept in immutable snapshots: readers take the current snapshot without
+ * locking, an update builds the next snapshot and publishes it.
+ */
 class DataTable {
-  private final Map<DataLoader<?>, LoaderCounterpart<?>> myData = Collections15.hashMap();
+  private volatile Snapshot mySnapshot = new Snapshot(-1, Collections.<DataLoader<?>, LoaderCounterpart<?>>emptyMap());
 
   public boolean hasValue(long item, DataLoader<?> data) {
-    LoaderCounterpart<?> storage = findStorage(data);
-    return storage != null && storage.hasValue(item);
+    return mySnapshot.hasValue(item, data);
   }
 
   public <T> T getValue(long item, DataLoader<T> data) {
-    LoaderCounterpart<T> storage = findStorage(data);
-    if (storage == null) return null;
-    return storage.getValue(item);
+    return mySnapshot.getValue(item, data);
   }
 
+  public long getICN() {
+    return mySnapshot.myICN;
+  }
+
+  Snapshot getSnapshot() {
+    return mySnapshot;
+  }
+
+  /**
+   * Builds the next snapshot, the current one is not changed. May be called from any thread.
+   */
   @SuppressWarnings( {"unchecked"})
-  public DataChange applyUpdate(CacheUpdate update) {
+  static Snapshot prepareUpdate(Snapshot base, CacheUpdate update) {
     DataChange event = new DataChange(update.getICN());
+    Map<DataLoader<?>, LoaderCounterpart<?>> data = Collections15.hashMap(base.myData);
     for (Map.Entry<DataLoader<?>, LoaderCounterpart> entry : update.getLoaded().entrySet()) {
       DataLoader<?> loader = entry.getKey();
-      LoaderCounterpart storage = findStorage(loader);
+      LoaderCounterpart storage = data.get(loader);
       LoaderCounterpart newData = entry.getValue();
-      if (storage != null) storage.updateData(loader, newData, event);
+      if (storage != null) data.put(loader, storage.merge(loader, newData, event));
       else {
-        myData.put(loader, newData);
+        data.put(loader, newData);
         event.addChange(loader, newData.getItems());
       }
     }
-    return event;
+    return new Snapshot(update.getICN(), data, base, event);
+  }
+
+  /**
+   * Publishes the prepared snapshot. If another snapshot has been published since the update was prepared, the update
+   * is prepared again.
+   * @return changes made by the update
+   */
+  public DataChange applyUpdate(Snapshot prepared, CacheUpdate update) {
+    if (prepared == null || prepared.myBase != mySnapshot) prepared = prepareUpdate(mySnapshot, update);
+    DataChange change = prepared.myChange;
+    mySnapshot = prepared.published();
+    return change;
   }
 
-  private <T> LoaderCounterpart<T> findStorage(DataLoader<T> loader) {
-    //noinspection unchecked
-    return (LoaderCounterpart<T>) myData.get(loader);
+
+  static class Snapshot {
+    private final long myICN;
+    private final Map<DataLoader<?>, LoaderCounterpart<?>> myData;
+    /**
+     * Snapshot this one is built from and the changes, until it is published
+     */
+    private final Snapshot myBase;
+    private final DataChange myChange;
+
+    private Snapshot(long icn, Map<DataLoader<?>, LoaderCounterpart<?>> data) {
+      this(icn, data, null, null);
+    }
+
+    private Snapshot(long icn, Map<DataLoader<?>, LoaderCounterpart<?>> data, Snapshot base, DataChange change) {
+      myICN = icn;
+      myData = data;
+      myBase = base;
+      myChange = change;
+    }
+
+    private Snapshot published() {
+      return new Snapshot(myICN, myData);
+    }
+
+    public boolean hasValue(long item, DataLoader<?> data) {
+      LoaderCounterpart<?> storage = findStorage(data);
+      return storage != null && storage.hasValue(item);
+    }
+
+    public <T> T getValue(long item, DataLoader<T> data) {
+      LoaderCounterpart<T> storage = findStorage(data);
+      if (storage == null) return null;
+      return storage.getValue(item);
+    }
+
+    private <T> LoaderCounterpart<T> findStorage(DataLoader<T> loader) {
+      //noinspection unchecked
+      return (LoaderCounterpart<T>) myData.get(loader);
+    }
   }
 }
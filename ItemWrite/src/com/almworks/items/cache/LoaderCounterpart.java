@@ -2,66 +2,200 @@
 
 import com.almworks.integers.LongArray;
 import com.almworks.integers.LongList;
+import org.almworks.util.Collections15;
 import org.almworks.util.Util;
 
 import java.util.List;
 
+/**
+ * Values loaded by a {@link DataLoader}, sorted by item. The counterpart is not modified after it is published to
+ * {@link DataTable}: an update {@link #merge merges} old and new values into a new counterpart.<br>
+ * Items are kept in chunks of limited size. A merge rebuilds only the chunks that get new values, other chunks are
+ * shared with the previous counterpart, so a small update of a large image does not copy all its values.
+ */
 class LoaderCounterpart<T> {
+  /**
+   * Size of chunks created from loaded values. A merged chunk grows up to twice the size before it is split.
+   */
+  static final int CHUNK_SIZE = 256;
   private static final Object NO_DATA = new Object();
-  private final LongArray myItems;
-  private final List<Object> myData;
+  private final Chunk[] myChunks;
+  /**
+   * First item of each chunk
+   */
+  private final LongArray myFirstItems;
 
-  private LoaderCounterpart(LongArray items, List<Object> values) {
-    myItems = items;
-    myData = values;
+  private LoaderCounterpart(List<Chunk> chunks) {
+    myChunks = chunks.toArray(new Chunk[chunks.size()]);
+    myFirstItems = new LongArray(myChunks.length);
+    for (Chunk chunk : myChunks) myFirstItems.add(chunk.myItems.get(0));
   }
 
   public static LoaderCounterpart load(CacheUpdate update, DataLoader<?> loader, LongList itemsToLoad) {
     LongArray items = LongArray.copy(itemsToLoad);
     items.sortUnique();
     List<?> values = loader.loadValues(update.getReader(), items, update.getLife(), update.getReload());
+    return create(items, values);
+  }
+
+  /**
+   * @param items sorted unique items
+   * @param values value of each item
+   */
+  static LoaderCounterpart create(LongList items, List<?> values) {
+    List<Chunk> chunks = Collections15.arrayList();
+    addChunks(items, values, 0, items.size(), CHUNK_SIZE, chunks);
     //noinspection unchecked
-    return new LoaderCounterpart(items, (List<Object>) values);
+    return new LoaderCounterpart(chunks);
   }
 
   public boolean hasValue(long item) {
-    int index = myItems.binarySearch(item);
-    return index >= 0 && myData.get(index) != NO_DATA;
+    Chunk chunk = findChunk(item);
+    if (chunk == null) return false;
+    int index = chunk.myItems.binarySearch(item);
+    return index >= 0 && chunk.myValues.get(index) != NO_DATA;
   }
 
   public T getValue(long item) {
-    int index = myItems.binarySearch(item);
+    Chunk chunk = findChunk(item);
+    if (chunk == null) return null;
+    int index = chunk.myItems.binarySearch(item);
     if (index < 0) return null;
-    return getValueAt(index);
+    return chunk.getValueAt(index);
   }
 
+  /**
+   * @return all items, the list is built by the call
+   */
   public LongList getItems() {
-    return myItems;
+    LongArray items = new LongArray();
+    for (Chunk chunk : myChunks) items.addAll(chunk.myItems);
+    return items;
+  }
+
+  int getChunkCount() {
+    return myChunks.length;
   }
 
-  public void updateData(DataLoader<?> loader, LoaderCounterpart<T> data, DataChange change) {
-    LongList items = data.getItems();
+  /**
+   * @return number of chunks that are shared with the other counterpart
+   */
+  int countSharedChunks(LoaderCounterpart<?> other) {
+    int count = 0;
+    for (Chunk chunk : myChunks) {
+      for (Chunk otherChunk : other.myChunks) {
+        if (chunk == otherChunk) {
+          count++;
+          break;
+        }
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Merges new values into the chunks they fall into. New values replace old ones, chunks without new values are
+   * shared with this counterpart.
+   * @return new counterpart, this one is not modified. This one if no value is changed
+   */
+  public LoaderCounterpart<T> merge(DataLoader<?> loader, LoaderCounterpart<T> data, DataChange change) {
+    LongList newItems = data.getItems();
+    List<Object> newValues = Collections15.arrayList(newItems.size());
+    for (Chunk chunk : data.myChunks) newValues.addAll(chunk.myValues);
     LongArray changed = new LongArray();
-    for (int i = 0; i < items.size(); i++) {
-      long item = items.get(i);
-      T newValue = data.getValueAt(i);
-      int index = myItems.binarySearch(item);
-      if (index < 0) {
-        index = -index - 1;
-        myItems.insert(index, item);
-        myData.add(index, newValue);
-        changed.add(item);
-      } else if (!Util.equals(getValueAt(index), newValue)) {
-        myData.set(index, newValue);
-        changed.add(item);
+    List<Chunk> chunks = Collections15.arrayList(myChunks.length + 1);
+    int newSize = newItems.size();
+    int j = 0;
+    for (int c = 0; c < myChunks.length; c++) {
+      Chunk chunk = myChunks[c];
+      int end = newSize;
+      // the first chunk also takes items that precede it
+      if (c + 1 < myChunks.length) {
+        end = newItems.binarySearch(myFirstItems.get(c + 1), j, newSize);
+        if (end < 0) end = -end - 1;
       }
+      if (end == j) chunks.add(chunk);
+      else chunk.merge(newItems, newValues, j, end, changed, chunks);
+      j = end;
+    }
+    if (myChunks.length == 0) {
+      addChunks(newItems, newValues, 0, newSize, CHUNK_SIZE, chunks);
+      changed.addAll(newItems);
     }
     change.addChange(loader, changed);
+    return changed.isEmpty() ? this : new LoaderCounterpart<T>(chunks);
+  }
+
+  private Chunk findChunk(long item) {
+    int index = myFirstItems.binarySearch(item);
+    if (index < 0) index = -index - 2;
+    return index >= 0 ? myChunks[index] : null;
   }
 
-  private T getValueAt(int index) {
+  /**
+   * Splits the items [from, to) to chunks of about the same size, not larger than the max size
+   */
+  private static void addChunks(LongList items, List<?> values, int from, int to, int maxSize, List<Chunk> chunks) {
+    int size = to - from;
+    if (size == 0) return;
+    int count = (size + maxSize - 1) / maxSize;
+    for (int i = 0; i < count; i++) {
+      int start = from + (int) ((long) size * i / count);
+      int end = from + (int) ((long) size * (i + 1) / count);
+      chunks.add(new Chunk(LongArray.copy(items.subList(start, end)), Collections15.<Object>arrayList(values.subList(start, end))));
+    }
+  }
+
+  private static class Chunk {
+    private final LongArray myItems;
+    private final List<Object> myValues;
+
+    private Chunk(LongArray items, List<Object> values) {
+      myItems = items;
+      myValues = values;
+    }
+
     @SuppressWarnings( {"unchecked"})
-    T val = (T) myData.get(index);
-    return val != NO_DATA ? val : null;
+    public <T> T getValueAt(int index) {
+      Object val = myValues.get(index);
+      return val != NO_DATA ? (T) val : null;
+    }
+
+    /**
+     * Merges sorted items of this chunk and new items [from, to) in one pass, adds resulting chunks
+     */
+    public void merge(LongList newItems, List<Object> newValues, int from, int to, LongArray changed, List<Chunk> chunks) {
+      int size = myItems.size();
+      LongArray items = new LongArray(size + to - from);
+      List<Object> values = Collections15.arrayList(size + to - from);
+      int changedCount = changed.size();
+      int i = 0;
+      int j = from;
+      while (i < size || j < to) {
+        if (j >= to || (i < size && myItems.get(i) < newItems.get(j))) {
+          items.add(myItems.get(i));
+          values.add(myValues.get(i));
+          i++;
+        } else if (i >= size || myItems.get(i) > newItems.get(j)) {
+          items.add(newItems.get(j));
+          values.add(newValues.get(j));
+          changed.add(newItems.get(j));
+          j++;
+        } else {
+          items.add(myItems.get(i));
+          Object newValue = newValues.get(j);
+          if (Util.equals(getValueAt(i), newValue != NO_DATA ? newValue : null)) values.add(myValues.get(i));
+          else {
+            values.add(newValue);
+            changed.add(myItems.get(i));
+          }
+          i++;
+          j++;
+        }
+      }
+      if (changed.size() == changedCount) chunks.add(this);
+      else if (items.size() <= 2 * CHUNK_SIZE) chunks.add(new Chunk(items, values));
+      else addChunks(items, values, 0, items.size(), CHUNK_SIZE, chunks);
+    }
   }
 }
@@ -14,6 +14,7 @@
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.Collections;
 import java.util.List;
 
 public class AttributeLoader<T> implements DataLoader<T> {
@@ -56,6 +57,7 @@ public String toString() {
   @Override
   public List<T> loadValues(DBReader reader, LongList items, Lifespan life, Procedure<LongList> invalidate) {
     List<T> values = Collections15.arrayList(items.size());
+    if (items.size() > 1) reader.prefetchValues(items, Collections.singleton(myAttribute));
     for (int i = 0; i < items.size(); i++) values.add(reader.getValue(items.get(i), myAttribute));
     return values;
   }
@@ -48,4 +48,28 @@ public void testManualSliceEvents() throws InterruptedException {
     assertEquals(4, supervisor.getEventCount());
     CHECK.unordered(event.getRemoved(), item);
   }
+
+  public void testUpdateMergesValues() throws InterruptedException {
+    long[] items = new long[5];
+    for (int i = 0; i < items.length; i++) items[i] = setValue(i, "v" + i);
+    ManualImageSlice slice = myImage.manualSlice(new DetachComposite());
+    Supervisor supervisor = Supervisor.create(slice);
+    slice.addData(VALUE_LOADER);
+    slice.addItems(items[1], items[3]);
+    supervisor.waitForData(items[3], VALUE);
+    slice.addItems(items);
+    supervisor.waitForData(items[4], VALUE);
+    supervisor.waitForData(items[0], VALUE);
+
+    int count = supervisor.getEventCount();
+    setValue(2, "changed");
+    EventCopy event = supervisor.waitForEvent(count + 1);
+    CHECK.unordered(event.getChange(), items[2]);
+    // read outside AWT thread
+    for (int i = 0; i < items.length; i++) {
+      assertTrue(myImage.hasValue(items[i], VALUE_LOADER));
+      assertEquals(i == 2 ? "changed" : "v" + i, myImage.getValue(items[i], VALUE_LOADER));
+    }
+    assertEquals(event.getICN(), myImage.getICN());
+  }
 }
@@ -0,0 +1,79 @@
+package com.almworks.items.cache;
+
+import com.almworks.integers.LongArray;
+import com.almworks.util.tests.BaseTestCase;
+import org.almworks.util.Collections15;
+
+import java.util.Collections;
+import java.util.List;
+
+public class LoaderCounterpartTests extends BaseTestCase {
+  private static final DataLoader<?> LOADER = DataLoader.IDENTITY_LOADER;
+
+  public void testSingleItemUpdateOfLargeImage() {
+    int size = 100000;
+    LongArray items = new LongArray(size);
+    List<String> values = Collections15.arrayList(size);
+    // even items, so new items can be inserted between
+    for (int i = 0; i < size; i++) {
+      items.add(2 * i);
+      values.add("v" + 2 * i);
+    }
+    LoaderCounterpart<String> image = LoaderCounterpart.create(items, values);
+    int chunks = image.getChunkCount();
+    assertTrue(String.valueOf(chunks), chunks >= size / LoaderCounterpart.CHUNK_SIZE);
+
+    DataChange change = new DataChange(1);
+    LoaderCounterpart<String> updated = merge(image, change, 5000, "changed");
+    assertEquals("changed", updated.getValue(5000));
+    assertEquals("v5000", image.getValue(5000));
+    assertTrue(change.isChanged(5000, LOADER));
+    // only the chunk of the item is copied
+    assertEquals(chunks, updated.getChunkCount());
+    assertEquals(chunks - 1, updated.countSharedChunks(image));
+
+    // new items go to the chunk of the preceding item or to the first one
+    change = new DataChange(2);
+    LoaderCounterpart<String> inserted = merge(updated, change, 5001, "new");
+    inserted = merge(inserted, change, -1, "first");
+    inserted = merge(inserted, change, 2 * size + 1, "last");
+    assertEquals(chunks - 3, inserted.countSharedChunks(updated));
+    assertEquals("new", inserted.getValue(5001));
+    assertEquals("first", inserted.getValue(-1));
+    assertEquals("last", inserted.getValue(2 * size + 1));
+    assertEquals("changed", inserted.getValue(5000));
+    assertEquals("v5002", inserted.getValue(5002));
+    assertFalse(inserted.hasValue(5003));
+    assertFalse(inserted.hasValue(-2));
+    assertEquals(size + 3, inserted.getItems().size());
+  }
+
+  public void testEqualValueNotChanged() {
+    LoaderCounterpart<String> image = LoaderCounterpart.create(LongArray.create(1, 2, 3), Collections15.arrayList("a", "b", "c"));
+    DataChange change = new DataChange(1);
+    assertSame(image, merge(image, change, 2, "b"));
+    assertFalse(change.isChanged(2, LOADER));
+  }
+
+  public void testChunkSplit() {
+    LoaderCounterpart<String> image = LoaderCounterpart.create(LongArray.create(0), Collections.singletonList("v0"));
+    DataChange change = new DataChange(1);
+    // with the old item the merged chunk has 3 full chunks of items
+    int count = 3 * LoaderCounterpart.CHUNK_SIZE - 1;
+    LongArray items = new LongArray(count);
+    List<String> values = Collections15.arrayList(count);
+    for (int i = 1; i <= count; i++) {
+      items.add(i);
+      values.add("v" + i);
+    }
+    LoaderCounterpart<String> merged = image.merge(LOADER, LoaderCounterpart.create(items, values), change);
+    assertEquals(3, merged.getChunkCount());
+    for (int i = 0; i <= count; i++) assertEquals("v" + i, merged.getValue(i));
+    assertEquals(count + 1, merged.getItems().size());
+  }
+
+  @SuppressWarnings("unchecked")
+  private static LoaderCounterpart<String> merge(LoaderCounterpart<String> image, DataChange change, long item, String value) {
+    return image.merge(LOADER, LoaderCounterpart.create(LongArray.create(item), Collections.singletonList(value)), change);
+  }
+}
@@ -17,6 +17,7 @@
 import com.almworks.api.store.Store;
 import com.almworks.api.syncreg.ItemHypercube;
 import com.almworks.api.syncreg.ItemHypercubeUtils;
+import com.almworks.engine.gui.TextController;
 import com.almworks.integers.LongArray;
 import com.almworks.integers.LongIterator;
 import com.almworks.integers.LongList;
@@ -72,6 +73,7 @@
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Set;
@@ -296,6 +298,12 @@ public boolean matchAllWords(long issueItem, char[][] charWords, String[] string
     return false;
   }
 
+  @Override
+  public List<DBAttribute<Long>> getFullTextSlaveReferences() {
+    // Human text of descriptions and comments differs from the raw text when HTML is converted
+    return TextController.isRawTextConverted() ? null : Collections.singletonList(Comment.ISSUE);
+  }
+
   @Override
   public ItemHypercube adjustHypercube(@NotNull ItemHypercube hypercube) {
     LongList projects = myConfigHolder.getCurrentProjects();
@@ -20,6 +20,7 @@
 import java.util.Objects;
 
 class JiraDownloadOwner implements DownloadOwner {
+  private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
   private final JiraConnection3 myConnection;
 
   JiraDownloadOwner(JiraConnection3 connection) {
@@ -37,15 +38,28 @@ public boolean isValid() {
   @Override
   public HttpResponseData load(DetachComposite life, String argument, boolean retrying, boolean noninteractive, BasicScalarModel<Boolean> cancelFlag)
     throws CannotCreateLoaderException, IOException, HttpLoaderException
+  {
+    return load(life, argument, retrying, noninteractive, cancelFlag, 0, null);
+  }
+
+  @Override
+  public HttpResponseData load(DetachComposite life, String argument, boolean retrying, boolean noninteractive, BasicScalarModel<Boolean> cancelFlag,
+    long offset, @Nullable String validator) throws CannotCreateLoaderException, IOException, HttpLoaderException
   {
     RestSession session = myConnection.getConfigHolder().createSession();
     if (session == null) throw new CannotCreateLoaderException();
     try {
-      RestResponse response = session.perform(RestSession.GetDelete.get(argument, RestSession.getDebugName(argument)), RequestPolicy.SAFE_TO_RETRY);
+      RestResponse response = session.perform(createGet(argument, offset, validator), RequestPolicy.SAFE_TO_RETRY);
       if (!response.isSuccessful()) {
-        RestResponse fixedResponse = tryFixArgument(session, argument);
+        RestResponse fixedResponse = tryFixArgument(session, argument, offset, validator);
         if (fixedResponse != null) response = fixedResponse;
       }
+      if (offset > 0 && response.getStatusCode() == HTTP_RANGE_NOT_SATISFIABLE) {
+        // The file has changed since the partial download
+        LogHelper.debug("Cannot resume download", argument, offset);
+        response.getHttpResponse().releaseConnection();
+        return load(life, argument, retrying, noninteractive, cancelFlag, 0, null);
+      }
       response.ensureSuccessful();
       return response.getHttpResponse();
     } catch (ConnectorException e) {
@@ -63,7 +77,7 @@ public HttpResponseData load(DetachComposite life, String argument, boolean retr
    * @throws ConnectorException on network failure
    */
   @Nullable
-  private RestResponse tryFixArgument(RestSession session, String argument) throws ConnectorException {
+  private RestResponse tryFixArgument(RestSession session, String argument, long offset, @Nullable String validator) throws ConnectorException {
     try {
       URI uri = new URI(argument);
       URI baseUrl = new URI(session.getBaseUrl());
@@ -77,6 +91,18 @@ private RestResponse tryFixArgument(RestSession session, String argument) throws
       LogHelper.debug("Failed to fix URL", argument, e);
       return null;
     }
-    return session.perform(RestSession.GetDelete.get(argument, RestSession.getDebugName(argument)), RequestPolicy.SAFE_TO_RETRY);
+    return session.perform(createGet(argument, offset, validator), RequestPolicy.SAFE_TO_RETRY);
+  }
+
+  /**
+   * @param validator sent as If-Range, so the server ignores the range and sends whole content if the file has changed
+   */
+  private static RestSession.Request createGet(String url, long offset, @Nullable String validator) {
+    RestSession.Request request = RestSession.GetDelete.get(url, RestSession.getDebugName(url));
+    if (offset > 0) {
+      request.addRequestHeader("Range", "bytes=" + offset + "-");
+      if (validator != null) request.addRequestHeader("If-Range", validator);
+    }
+    return request;
   }
 }
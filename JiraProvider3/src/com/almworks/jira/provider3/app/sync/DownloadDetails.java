@@ -17,7 +17,9 @@
 import com.almworks.jira.provider3.sync.download2.process.DBIssueWrite;
 import com.almworks.jira.provider3.sync.download2.process.util.DownloadIssueUtil;
 import com.almworks.jira.provider3.sync.download2.process.util.ProgressInfo;
+import com.almworks.restconnector.RequestScheduler;
 import com.almworks.restconnector.RestSession;
+import com.almworks.util.Env;
 import com.almworks.util.LogHelper;
 import com.almworks.util.Trio;
 import com.almworks.util.i18n.text.LocalizedAccessor;
@@ -31,6 +33,10 @@
 
 class DownloadDetails extends BaseOperation {
   private static final LocalizedAccessor.Value M_UPDATING_DB = ConnectorManager.LOCAL.getFactory("progress.message.updatingDB");
+  /**
+   * Max number of issues which details are downloaded at the same time. Each issue is loaded into own transaction
+   */
+  private static final int MAX_CONCURRENT_ISSUES = Env.getInteger("jiraclient.details.concurrency", 1, 16, 4);
 
   private final SetHolderModel<SyncProblem> myProblems;
   private final List<Trio<Long, Integer, String>> myTask;
@@ -70,22 +76,28 @@ public List<Trio<Long, Integer, String>> transaction(DBReader reader) throws DBO
   public void perform(RestSession session) throws ConnectorException {
     myServerInfo.ensureHasData(session);
     ProgressInfo[] progresses = myProgress.split(myTask.size());
+    RequestScheduler scheduler = new RequestScheduler(session, MAX_CONCURRENT_ISSUES);
     int index = 0;
     for (Trio<Long, Integer, String> trio : myTask) {
       ProgressInfo progress = progresses[index];
       index++;
-      long item = trio.getFirst();
-      String key = trio.getThird();
-      Integer id = trio.getSecond();
-      progress.startActivity("Downloading details for " + key);
-      try {
-        downloadDetails(session, id, progress);
-      } catch (ConnectorException e) {
-        LogHelper.warning("Download details problem", e);
-        myProblems.add(new ExceptionItemProblem(item, key, e, myServerInfo.getConnection(), JiraSynchronizer.getCause(e)));
-      } finally {
-        progress.setDone();
-      }
+      scheduler.submit(s -> downloadIssue(s, trio, progress));
+    }
+    scheduler.waitAll(myProgress.getCancelFlag());
+  }
+
+  private void downloadIssue(RestSession session, Trio<Long, Integer, String> trio, ProgressInfo progress) throws ConnectorException {
+    long item = trio.getFirst();
+    String key = trio.getThird();
+    Integer id = trio.getSecond();
+    progress.startActivity("Downloading details for " + key);
+    try {
+      downloadDetails(session, id, progress);
+    } catch (ConnectorException e) {
+      LogHelper.warning("Download details problem", e);
+      myProblems.add(new ExceptionItemProblem(item, key, e, myServerInfo.getConnection(), JiraSynchronizer.getCause(e)));
+    } finally {
+      progress.setDone();
     }
   }
 
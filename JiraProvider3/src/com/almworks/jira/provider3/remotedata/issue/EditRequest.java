@@ -160,7 +160,8 @@ public void addProblem(UploadProblem problem) {
   public static void ensureHasServerInfo(UploadContext context, RestSession session) throws ConnectorException {
     if (context.getUserData().getUserData(EditRequest.SERVER_INFO) == null) {
       RestServerInfo serverInfo = RestServerInfo.get(session);
-      context.getUserData().putUserData(EditRequest.SERVER_INFO, serverInfo);
+      // concurrently uploaded units may have loaded it already
+      context.getUserData().putIfAbsent(EditRequest.SERVER_INFO, serverInfo);
     }
   }
 }
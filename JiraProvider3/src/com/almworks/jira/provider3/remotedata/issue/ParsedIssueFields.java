@@ -16,6 +16,7 @@
 import com.almworks.restconnector.json.JSONKey;
 import com.almworks.restconnector.json.sax.*;
 import com.almworks.util.LogHelper;
+import com.almworks.util.collections.UserDataHolder;
 import com.almworks.util.Pair;
 import com.almworks.util.commons.Procedure;
 import com.almworks.util.commons.Procedure2;
@@ -30,10 +31,15 @@
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.function.BiConsumer;
 
 public class ParsedIssueFields {
-  private static final TypedKey<Map<Pair<Integer, Integer>, ParsedIssueFields>> CREATE_META = TypedKey.create("createMeta");
+  /**
+   * Units of independent issues are uploaded concurrently and share the session, so the cache is concurrent
+   */
+  private static final TypedKey<ConcurrentMap<Pair<Integer, Integer>, ParsedIssueFields>> CREATE_META = TypedKey.create("createMeta");
   private final Map<String, Info> myInfos = Collections15.hashMap();
   private final List<BiConsumer<String, JSONObject>> myAdditionalFieldProcessors = new ArrayList<>();
 
@@ -87,11 +93,7 @@ public LocationHandler createFieldsHandler() {
 
   public static ParsedIssueFields loadCreateMeta(RestSession session, int projectId, int typeId) throws ConnectorException {
     Pair<Integer, Integer> loadedKey = Pair.create(projectId, typeId);
-    Map<Pair<Integer, Integer>, ParsedIssueFields> cache = session.getUserData().getUserData(CREATE_META);
-    if (cache == null) {
-      cache = Collections15.hashMap();
-      session.getUserData().putUserData(CREATE_META, cache);
-    }
+    ConcurrentMap<Pair<Integer, Integer>, ParsedIssueFields> cache = getCreateMetaCache(session);
     ParsedIssueFields fields = cache.get(loadedKey);
     if (fields == null) {
       RestResponse response = session.restGet("api/2/issue/createmeta?projectIds=" + projectId + "&issuetypeIds=" + typeId + "&expand=projects.issuetypes.fields.", RequestPolicy.SAFE_TO_RETRY);
@@ -99,11 +101,18 @@ public static ParsedIssueFields loadCreateMeta(RestSession session, int projectI
       fields = new ParsedIssueFields();
       response.parseJSON(new PeekObjectEntry("fields", 8, PeekEntryValue.objectValue(new ParseFields(fields))).getUpLink());
       LogHelper.assertError(!fields.myInfos.isEmpty(), "No fields for project:", projectId, "type:", typeId);
-      cache.put(loadedKey, fields);
+      ParsedIssueFields known = cache.putIfAbsent(loadedKey, fields);
+      if (known != null) fields = known;
     }
     return fields;
   }
 
+  private static ConcurrentMap<Pair<Integer, Integer>, ParsedIssueFields> getCreateMetaCache(RestSession session) {
+    UserDataHolder userData = session.getUserData();
+    userData.putIfAbsent(CREATE_META, new ConcurrentHashMap<Pair<Integer, Integer>, ParsedIssueFields>());
+    return userData.getUserData(CREATE_META);
+  }
+
   private void addInfo(String field, boolean required, List<String> operations) {
     myInfos.put(field, new Info(field, required, operations));
   }
@@ -21,6 +21,7 @@
 import com.almworks.util.i18n.text.LocalizedAccessor;
 import org.almworks.util.TypedKey;
 import org.almworks.util.Util;
+import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.json.simple.JSONObject;
 import org.json.simple.parser.ParseException;
@@ -49,6 +50,12 @@ class NewIssue extends CreateIssueUnit {
     myParentItem = parentItem;
   }
 
+  @NotNull
+  @Override
+  public Collection<? extends UploadUnit> getDependencies() {
+    return myParentItem != null ? Collections.singleton(myParentItem) : Collections.<UploadUnit>emptyList();
+  }
+
   @Override
   public Map<UploadUnit, ConnectorException> loadServerState(RestSession session, EntityTransaction transaction, UploadContext context, TypedKey<Boolean> purpose) throws ConnectorException {
     if (BEFORE_UPLOAD.equals(purpose)) {
@@ -18,11 +18,13 @@
 import org.almworks.util.Util;
 import org.jdom.Document;
 import org.jdom.Element;
+import org.jetbrains.annotations.NotNull;
 import org.json.simple.JSONObject;
 import org.json.simple.parser.ParseException;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 
 class MoveParentType extends BaseMoveUnit {
   private static final String P_OPERATION = "operation";
@@ -43,6 +45,12 @@ public MoveParentType(CreateIssueUnit create, UploadUnit prevStep, int stepIndex
     myValues = values;
   }
 
+  @NotNull
+  @Override
+  public Collection<? extends UploadUnit> getDependencies() {
+    return Collections.singleton(myNewParent);
+  }
+
   @Override
   protected Collection<? extends UploadProblem> doPerform(RestSession session, UploadContext context, int issueId)
     throws ConnectorException, UploadProblem.Thrown
@@ -9,9 +9,11 @@
 import com.almworks.jira.provider3.services.upload.UploadUnit;
 import com.almworks.restconnector.RestSession;
 import com.almworks.util.LogHelper;
+import org.jetbrains.annotations.NotNull;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 
 class MoveToSubtask extends BaseMoveUnit {
   private final CreateIssueUnit myNewParent;
@@ -23,6 +25,12 @@ public MoveToSubtask(CreateIssueUnit create, UploadUnit prevStep, int stepIndex,
     myValues = values;
   }
 
+  @NotNull
+  @Override
+  public Collection<? extends UploadUnit> getDependencies() {
+    return Collections.singleton(myNewParent);
+  }
+
   @Override
   protected Collection<? extends UploadProblem> doPerform(RestSession session, UploadContext context, int issueId)
     throws ConnectorException, UploadProblem.Thrown {
@@ -17,6 +17,11 @@
 
 class JiraUploadContext {
   private static final LocalizedAccessor.Value A_PREPARING = JiraUploadComponent.I18N.getFactory("stage.upload.activity.prepare");
+  /**
+   * Max number of independent blocks uploaded at the same time. The actual number of concurrent requests is limited by the
+   * {@link RestSession#getMaxConcurrentRequests() session} too.
+   */
+  private static final int MAX_CONCURRENT_BLOCKS = 4;
   private final ProgressInfo myProgress;
   private final RestSession mySession;
   private final List<UploadUnit> myAllUnits;
@@ -86,30 +91,34 @@ private void performUpload(ProgressInfo progress) throws CancelledException { //
     int prevCompleted = uploadOrder.getCompleteCount() -1;
     while (prevCompleted < uploadOrder.getCompleteCount()) {
       prevCompleted = uploadOrder.getCompleteCount();
-      for (int b = 0; b < uploadOrder.getBlockCount(); b++) {
-        Collection<UploadUnit> units = uploadOrder.startBlock(b);
-        uploadUnits(units, uploadOrder, progress);
-      }
+      uploadOrder.uploadRound(mySession, MAX_CONCURRENT_BLOCKS, progress.getCancelFlag(), units -> uploadUnits(units, uploadOrder, progress));
       if (prevCompleted < uploadOrder.getCompleteCount()) continue;
       uploadUnits(uploadOrder.startOtherUnits(), uploadOrder, progress);
     }
     uploadOrder.logNotDone(myContext);
     progress.setDone();
   }
+
+  /**
+   * Uploads units of single block while any of them completes. Called concurrently for independent blocks.
+   */
   private void uploadUnits(Collection<UploadUnit> units, UploadOrder uploadOrder, ProgressInfo wholeProgress) throws CancelledException {
-    int prevComplete = uploadOrder.getCompleteCount() - 1;
-    while (prevComplete < uploadOrder.getCompleteCount()) {
-      prevComplete = uploadOrder.getCompleteCount();
-      for (UploadUnit unit : units) {
+    List<UploadUnit> left = Collections15.arrayList(units);
+    int prevLeft = left.size() + 1;
+    while (!left.isEmpty() && left.size() < prevLeft) {
+      prevLeft = left.size();
+      for (UploadUnit unit : Collections15.arrayList(left)) {
         wholeProgress.checkCancelled();
         if (myContext.isFailed(unit) || unit.isDone()) {
           uploadOrder.onUnitComplete(unit);
+          left.remove(unit);
           continue;
         }
         Collection<? extends UploadProblem> problems = uploadSingleUnit(unit);
         if (problems == null || problems.isEmpty()) {
           LogHelper.assertError(unit.isDone() || unit.isSurelyFailed(myContext), "Not done without problem", unit);
           uploadOrder.onUnitComplete(unit);
+          left.remove(unit);
           Collection<Pair<Long,String>> masterItems = unit.getMasterItems();
           if (masterItems.size() == 1) myContext.onChangeUploaded(masterItems.iterator().next().getFirst());
         } else {
@@ -122,7 +131,10 @@ private void uploadUnits(Collection<UploadUnit> units, UploadOrder uploadOrder,
               failed = true;
             }
           }
-          if (failed) uploadOrder.onUnitComplete(unit);
+          if (failed) {
+            uploadOrder.onUnitComplete(unit);
+            left.remove(unit);
+          }
         }
       }
     }
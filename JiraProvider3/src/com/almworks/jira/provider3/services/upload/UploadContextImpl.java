@@ -24,6 +24,9 @@
 
 import java.util.*;
 
+/**
+ * Independent units are uploaded concurrently, so methods that access collected problems and caches are synchronized.
+ */
 class UploadContextImpl implements UploadContext {
   private final HashMap<Long, UploadUnit.Factory> myFactories;
   private final JiraConnection3 myConnection;
@@ -44,12 +47,12 @@ class UploadContextImpl implements UploadContext {
    */
   private final LongSet myConflicts = new LongSet();
 
-  private UploadContextImpl(HashMap<Long, UploadUnit.Factory> factories, JiraConnection3 connection, SetHolderModel<SyncProblem> problems, LongList initialRequest) {
+  UploadContextImpl(HashMap<Long, UploadUnit.Factory> factories, JiraConnection3 connection, RemoteMetaConfig remoteMetaConfig, SetHolderModel<SyncProblem> problems, LongList initialRequest) {
     myFactories = factories;
     myConnection = connection;
     myMessages = new MessageCollector(this, problems);
     myInitialRequest = LongSet.copy(initialRequest);
-    myRemoteMetaConfig = connection.getCustomFields().createIssueConversion();
+    myRemoteMetaConfig = remoteMetaConfig;
   }
 
   @Override
@@ -66,7 +69,7 @@ public UserDataHolder getUserData() {
 
   @Override
   @NotNull
-  public UserDataHolder getItemCache(long item) {
+  public synchronized UserDataHolder getItemCache(long item) {
     UserDataHolder cache = myItemCache.get(item);
     if (cache == null) {
       cache = new UserDataHolder();
@@ -76,7 +79,7 @@ public UserDataHolder getItemCache(long item) {
   }
 
   @Override
-  public boolean isFailed(UploadUnit unit) {
+  public synchronized boolean isFailed(UploadUnit unit) {
     if (unit == null) {
       LogHelper.error("Null unit");
       return true;
@@ -89,7 +92,7 @@ public Map<String, FieldKind> getCustomFieldKinds() {
     return myRemoteMetaConfig.getFieldKinds();
   }
 
-  LongList getUploadedPrimary() {
+  synchronized LongList getUploadedPrimary() {
     return myUploadedPrimary;
   }
 
@@ -106,14 +109,14 @@ static UploadContextImpl prepare(DBReader reader, Map<DBItemType, UploadUnit.Fac
       if (type <= 0) LogHelper.warning("Upload: not materialized", entry.getKey());
       loaded.put(type, entry.getValue());
     }
-    return new UploadContextImpl(loaded, connection, problems, initialRequest);
+    return new UploadContextImpl(loaded, connection, connection.getCustomFields().createIssueConversion(), problems, initialRequest);
   }
 
   EntityTransaction createTransaction() {
     return getConnection().getServerInfo().createTransaction();
   }
 
-  void addProblem(UploadUnit unit, UploadProblem problem) {
+  synchronized void addProblem(UploadUnit unit, UploadProblem problem) {
     myFailedUnits.add(unit);
     addMessage(unit, problem);
     if (isConflict(problem)) {
@@ -134,12 +137,12 @@ private static boolean isConflict(UploadProblem problem) {
   }
 
   @Override
-  public void addMessage(UploadUnit unit, UploadProblem message) {
+  public synchronized void addMessage(UploadUnit unit, UploadProblem message) {
     myMessages.addMessage(unit, message);
   }
 
   @Nullable
-  List<Pair<UploadUnit, UploadProblem>> getConflicts(long item) {
+  synchronized List<Pair<UploadUnit, UploadProblem>> getConflicts(long item) {
     if (!myConflicts.contains(item)) return null;
     return myMessages.selectConflicts(item);
   }
@@ -148,11 +151,11 @@ public boolean isInitiallyRequested(long item) {
     return myInitialRequest.contains(item);
   }
 
-  public LongList getMandatoryConflicts() {
+  public synchronized LongList getMandatoryConflicts() {
     return myPrimaryConflicts;
   }
 
-  void addProblems(Map<UploadUnit, ConnectorException> problems) {
+  synchronized void addProblems(Map<UploadUnit, ConnectorException> problems) {
     if (problems == null) return;
     for (Map.Entry<UploadUnit, ConnectorException> entry : problems.entrySet()) addProblem(entry.getKey(), entry.getValue());
   }
@@ -161,7 +164,7 @@ void addProblem(UploadUnit unit, ConnectorException e) {
     if (unit != null && e != null) addProblem(unit, UploadProblem.exception(e));
   }
 
-  void onChangeUploaded(long masterItem) {
+  synchronized void onChangeUploaded(long masterItem) {
     myUploadedPrimary.add(masterItem);
   }
 
@@ -1,125 +1,182 @@
 package com.almworks.jira.provider3.services.upload;
 
 import com.almworks.api.connector.CancelledException;
+import com.almworks.api.connector.ConnectorException;
 import com.almworks.jira.provider3.sync.download2.process.util.ProgressInfo;
+import com.almworks.restconnector.RequestScheduler;
+import com.almworks.restconnector.RestSession;
 import com.almworks.util.LogHelper;
 import com.almworks.util.Pair;
 import com.almworks.util.i18n.text.LocalizedAccessor;
+import com.almworks.util.model.ScalarModel;
 import gnu.trove.TLongObjectHashMap;
 import org.almworks.util.Collections15;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.*;
 
+/**
+ * Upload plan: units are grouped to blocks, a block holds units of single master item or single unit that has several
+ * master items. Units of a block are uploaded one by one, blocks form dependency graph: a block of a subtask
+ * depends on the block of its new parent, a block of a link depends on blocks of linked issues.<br>
+ * Independent blocks are uploaded concurrently, so the upload progress is tracked under the order lock.<br>
+ * Units without master item are uploaded after all blocks, when the blocks make no more progress.
+ */
 class UploadOrder {
   private static final LocalizedAccessor.MessageStr M_PROGRESS_BLOCK = JiraUploadComponent.I18N.messageStr("upload.info.progress.block");
   private final ProgressInfo myWholeProgress;
   private final List<UnitsBlock> myBlocks;
-  private final ArrayList<UploadUnit> myOtherUnits;
+  private final Map<UploadUnit, UnitsBlock> myUnitBlocks;
   private final ProgressInfo myOtherProgress;
+  // guarded by this {
+  private final List<UploadUnit> myOtherUnits;
   private final Map<UploadUnit, UploadProblem> myWaitReason = Collections15.hashMap();
   private final Set<UploadUnit> myCompleted = Collections15.hashSet();
-  private UnitsBlock myCurrentBlock = null;
+  // }
 
-  private UploadOrder(ProgressInfo progress, List<UnitsBlock> blocks, ArrayList<UploadUnit> otherUnits, ProgressInfo otherProgress) {
+  private UploadOrder(ProgressInfo progress, List<UnitsBlock> blocks, Map<UploadUnit, UnitsBlock> unitBlocks,
+    List<UploadUnit> otherUnits, ProgressInfo otherProgress)
+  {
     myWholeProgress = progress;
     myBlocks = blocks;
+    myUnitBlocks = unitBlocks;
     myOtherUnits = otherUnits;
     myOtherProgress = otherProgress;
   }
 
-
   public int getBlockCount() {
     return myBlocks.size();
   }
 
-  public int getCompleteCount() {
+  public synchronized int getCompleteCount() {
     return myCompleted.size();
   }
 
-  public Collection<UploadUnit> startBlock(int i) throws CancelledException {
-    UnitsBlock block = myBlocks.get(i);
-    myCurrentBlock = block;
+  /**
+   * Uploads units left in all blocks once. A block is started when all blocks it depends on are finished in this round,
+   * not more than the width blocks are uploaded at the same time.
+   */
+  public void uploadRound(RestSession session, int width, @Nullable ScalarModel<Boolean> cancelFlag, BlockUpload upload) throws CancelledException {
+    Round round = new Round(new RequestScheduler(session, width), upload);
+    round.start();
+    try {
+      round.myScheduler.waitAll(cancelFlag);
+    } catch (CancelledException e) {
+      throw e;
+    } catch (ConnectorException e) {
+      LogHelper.error("Block upload failed", e);
+    }
+  }
+
+  private synchronized Collection<UploadUnit> startBlock(UnitsBlock block) throws CancelledException {
     ArrayList<UploadUnit> result = Collections15.arrayList(block.myUnits);
     if (!result.isEmpty()) myWholeProgress.startActivity(M_PROGRESS_BLOCK.formatMessage(block.myDisplayableMaster));
     return result;
   }
 
-  public Collection<UploadUnit> startOtherUnits() throws CancelledException {
-    myCurrentBlock = null;
+  public synchronized Collection<UploadUnit> startOtherUnits() throws CancelledException {
     ArrayList<UploadUnit> result = Collections15.arrayList(myOtherUnits);
     if (!result.isEmpty()) myWholeProgress.startActivity(M_PROGRESS_BLOCK.formatMessage(""));
     return result;
   }
 
-  public void onUnitComplete(UploadUnit unit) {
+  public synchronized void onUnitComplete(UploadUnit unit) {
     if (myCompleted.contains(unit)) return;
-    if (myCurrentBlock != null && completeBlockUnit(myCurrentBlock, unit)) return;
-    if (myOtherUnits.contains(unit)) {
-      myOtherUnits.remove(unit);
-      myOtherProgress.spawn(1.0/(myOtherUnits.size() + 1)).setDone();
+    if (myOtherUnits.remove(unit)) {
+      myOtherProgress.spawn(1.0 / (myOtherUnits.size() + 1)).setDone();
       myWaitReason.remove(unit);
       myCompleted.add(unit);
       return;
     }
-    UnitsBlock block = findBlock(unit);
-    if (block != null) {
-      LogHelper.error("Unit complete out of order", unit);
-      completeBlockUnit(myCurrentBlock, unit);
+    UnitsBlock block = myUnitBlocks.get(unit);
+    if (block == null || !block.myUnits.remove(unit)) {
+      LogHelper.error("Unknown unit complete", unit);
       return;
     }
-    LogHelper.error("Unknown unit complete", unit);
-  }
-
-  public void onUnitWaits(UploadUnit unit, UploadProblem problem) {
-    myWaitReason.put(unit, problem);
-  }
-
-  private UnitsBlock findBlock(UploadUnit unit) {
-    for (UnitsBlock block : myBlocks) if (block.myUnits.contains(unit)) return block;
-    return null;
-  }
-
-  private boolean completeBlockUnit(UnitsBlock block, UploadUnit unit) {
-    if (!block.myUnits.remove(unit)) return false;
     block.myProgress.spawn(1.0 / (block.myUnits.size() + 1)).setDone();
     myWaitReason.remove(unit);
     myCompleted.add(unit);
-    return true;
+  }
+
+  public synchronized void onUnitWaits(UploadUnit unit, UploadProblem problem) {
+    myWaitReason.put(unit, problem);
   }
 
   public static UploadOrder prepare(List<UploadUnit> units, ProgressInfo progress) {
-    ArrayList<UploadUnit> otherUnits = Collections15.arrayList();
-    TLongObjectHashMap<UnitsBlock> blocks = new TLongObjectHashMap<>();
+    List<UnitsBlock> blocks = Collections15.arrayList();
+    List<UploadUnit> otherUnits = Collections15.arrayList();
+    Map<UploadUnit, UnitsBlock> unitBlocks = Collections15.hashMap();
+    TLongObjectHashMap<UnitsBlock> masterBlocks = new TLongObjectHashMap<>();
     for (UploadUnit unit : units) {
       Collection<Pair<Long,String>> masterItems = unit.getMasterItems();
       Pair<Long,String> singleMaster = masterItems.size() == 1 ? masterItems.iterator().next() : null;
       Long item = singleMaster != null ? singleMaster.getFirst() : null;
-      if (item == null || item < 0) {
-        LogHelper.assertError(singleMaster == null, "Wrong master item", singleMaster);
+      if (masterItems.isEmpty()) {
         otherUnits.add(unit);
         continue;
       }
-      UnitsBlock block = blocks.get(item);
-      if (block == null) {
-        block = new UnitsBlock(item, singleMaster.getSecond());
-        blocks.put(item, block);
+      UnitsBlock block;
+      if (item == null || item < 0) {
+        LogHelper.assertError(singleMaster == null, "Wrong master item", singleMaster);
+        block = new UnitsBlock("");
+        blocks.add(block);
+      } else {
+        block = masterBlocks.get(item);
+        if (block == null) {
+          block = new UnitsBlock(singleMaster.getSecond());
+          masterBlocks.put(item, block);
+          blocks.add(block);
+        }
       }
       block.myUnits.add(unit);
+      unitBlocks.put(unit, block);
     }
-    //noinspection unchecked
-    List<UnitsBlock> unitsByMaster = (List<UnitsBlock>)(List<?>)Arrays.asList(blocks.getValues());
+    for (UnitsBlock block : blocks) {
+      for (UploadUnit unit : block.myUnits) {
+        for (UploadUnit dependency : unit.getDependencies()) block.addDependency(unitBlocks.get(dependency));
+        if (unit.getMasterItems().size() > 1)
+          for (Pair<Long, String> master : unit.getMasterItems()) block.addDependency(masterBlocks.get(master.getFirst()));
+      }
+    }
+    breakCycles(blocks);
     int total = units.size();
     progress.split(total);
-    for (UnitsBlock block : unitsByMaster) {
+    for (UnitsBlock block : blocks) {
       int count = block.myUnits.size();
       block.myProgress = progress.spawn(((double) count) / total);
       total -= count;
     }
     ProgressInfo otherProgress = progress.spawnAll();
-    return new UploadOrder(progress, unitsByMaster, otherUnits, otherProgress);
+    return new UploadOrder(progress, blocks, unitBlocks, otherUnits, otherProgress);
   }
 
-  public Collection<UploadUnit> getLeftUnits() {
+  /**
+   * Blocks that depend on each other would never start. Their dependencies are dropped, so they are uploaded in any
+   * order, a unit waits for the other one with a {@link UploadProblem#isTemporary() temporary} problem
+   */
+  private static void breakCycles(List<UnitsBlock> blocks) {
+    Map<UnitsBlock, Integer> waiting = Collections15.hashMap();
+    ArrayDeque<UnitsBlock> ready = new ArrayDeque<>();
+    for (UnitsBlock block : blocks) {
+      waiting.put(block, block.myDependencies.size());
+      if (block.myDependencies.isEmpty()) ready.add(block);
+    }
+    while (!ready.isEmpty()) {
+      for (UnitsBlock dependent : ready.poll().myDependents) {
+        int count = waiting.get(dependent) - 1;
+        waiting.put(dependent, count);
+        if (count == 0) ready.add(dependent);
+      }
+    }
+    for (UnitsBlock block : blocks) {
+      if (waiting.get(block) == 0) continue;
+      LogHelper.warning("Cyclic upload dependency", block.myDisplayableMaster, block.myUnits);
+      for (UnitsBlock dependency : block.myDependencies) dependency.myDependents.remove(block);
+      block.myDependencies.clear();
+    }
+  }
+
+  public synchronized Collection<UploadUnit> getLeftUnits() {
     ArrayList<UploadUnit> result = Collections15.arrayList();
     for (UnitsBlock block : myBlocks) {
       result.addAll(block.myUnits);
@@ -128,7 +185,7 @@ public Collection<UploadUnit> getLeftUnits() {
     return result;
   }
 
-  public void logNotDone(UploadContextImpl context) {
+  public synchronized void logNotDone(UploadContextImpl context) {
     for (UploadUnit unit : getLeftUnits()) {
       UploadProblem problem = myWaitReason.get(unit);
       if (problem != null) {
@@ -138,15 +195,77 @@ public void logNotDone(UploadContextImpl context) {
     }
   }
 
+  interface BlockUpload {
+    /**
+     * Uploads units of a block in the given order. May be called concurrently for different blocks.
+     */
+    void upload(Collection<UploadUnit> units) throws CancelledException;
+  }
+
   private static class UnitsBlock {
-    private final long myMasterItem;
     private final String myDisplayableMaster;
     private final List<UploadUnit> myUnits = Collections15.arrayList();
+    private final Set<UnitsBlock> myDependencies = Collections15.linkedHashSet();
+    private final Set<UnitsBlock> myDependents = Collections15.linkedHashSet();
     public ProgressInfo myProgress;
 
-    private UnitsBlock(long masterItem, String displayableMaster) {
-      myMasterItem = masterItem;
+    private UnitsBlock(String displayableMaster) {
       myDisplayableMaster = displayableMaster;
     }
+
+    public void addDependency(@Nullable UnitsBlock block) {
+      // dependency on a unit that does not participate in this upload is already satisfied
+      if (block == null || block == this) return;
+      myDependencies.add(block);
+      block.myDependents.add(this);
+    }
+  }
+
+  private class Round {
+    private final RequestScheduler myScheduler;
+    private final BlockUpload myUpload;
+    // guarded by UploadOrder.this
+    private final Map<UnitsBlock, Integer> myWaiting = Collections15.hashMap();
+
+    public Round(RequestScheduler scheduler, BlockUpload upload) {
+      myScheduler = scheduler;
+      myUpload = upload;
+    }
+
+    public void start() {
+      List<UnitsBlock> ready = Collections15.arrayList();
+      synchronized (UploadOrder.this) {
+        for (UnitsBlock block : myBlocks) {
+          myWaiting.put(block, block.myDependencies.size());
+          if (block.myDependencies.isEmpty()) ready.add(block);
+        }
+      }
+      for (UnitsBlock block : ready) submit(block);
+    }
+
+    private void submit(UnitsBlock block) {
+      myScheduler.submit(session -> upload(block));
+    }
+
+    private void upload(UnitsBlock block) throws CancelledException {
+      try {
+        Collection<UploadUnit> units = startBlock(block);
+        if (!units.isEmpty()) myUpload.upload(units);
+      } finally {
+        for (UnitsBlock dependent : onFinished(block)) submit(dependent);
+      }
+    }
+
+    private List<UnitsBlock> onFinished(UnitsBlock block) {
+      List<UnitsBlock> ready = Collections15.arrayList();
+      synchronized (UploadOrder.this) {
+        for (UnitsBlock dependent : block.myDependents) {
+          int count = myWaiting.get(dependent) - 1;
+          myWaiting.put(dependent, count);
+          if (count == 0) ready.add(dependent);
+        }
+      }
+      return ready;
+    }
   }
 }
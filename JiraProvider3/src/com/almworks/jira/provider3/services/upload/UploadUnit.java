@@ -12,6 +12,7 @@
 
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Map;
 
 public interface UploadUnit {
@@ -85,6 +86,17 @@ public interface UploadUnit {
   @NotNull
   Collection<Pair<Long,String>> getMasterItems();
 
+  /**
+   * Units of the same master item are uploaded one by one in the order they are created. Units of different master items
+   * may be uploaded concurrently, unless one of them depends on another.
+   * @return units of other master items that have to be uploaded before this unit. For example, a new subtask needs its
+   * parent to be submitted first.
+   */
+  @NotNull
+  default Collection<? extends UploadUnit> getDependencies() {
+    return Collections.emptyList();
+  }
+
   interface Factory {
     /**
      * Collects dependencies of the mandatory item.<br>
@@ -12,6 +12,7 @@
 import com.almworks.items.sync.util.identity.DBIdentity;
 import com.almworks.jira.connector2.JiraServerVersionInfo;
 import com.almworks.jira.provider3.app.connection.JiraConnection3;
+import com.almworks.jira.provider3.custom.FieldKind;
 import com.almworks.jira.provider3.schema.ConnectionProperties;
 import com.almworks.jira.provider3.schema.Jira;
 import com.almworks.jira.provider3.sync.download2.process.util.DownloadIssueUtil;
@@ -30,6 +31,7 @@
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TimeZone;
 
@@ -47,6 +49,10 @@ public class ServerInfo {
   private ConnectionProperties myCurrent = ConnectionProperties.createEmpty();
   private ConnectionProperties myActual = null;
   // }
+  /**
+   * Custom field kinds the metadata has been written with since the application start. Null until the metadata is written
+   */
+  private volatile Map<String, FieldKind> myMetaFieldKinds = null;
 
   public ServerInfo(JiraConnection3 connection) {
     myConnection = connection;
@@ -154,6 +160,15 @@ public Object transaction(DBReader reader) throws DBOperationCancelledException
     }).waitForCompletion();
   }
 
+  @Nullable
+  public Map<String, FieldKind> getMetaFieldKinds() {
+    return myMetaFieldKinds;
+  }
+
+  public void setMetaFieldKinds(Map<String, FieldKind> fieldKinds) {
+    myMetaFieldKinds = fieldKinds;
+  }
+
   @NotNull
   public JiraConnection3 getConnection() {
     return myConnection;
@@ -12,8 +12,10 @@
 import com.almworks.jira.provider3.sync.schema.ServerIssue;
 import com.almworks.restconnector.RestSession;
 import com.almworks.restconnector.jql.JqlQuery;
+import com.almworks.restconnector.json.sax.EntryFilter;
 import com.almworks.restconnector.json.sax.JSONCollector;
 import com.almworks.restconnector.json.sax.LocationHandler;
+import com.almworks.util.Env;
 import com.almworks.util.LogHelper;
 import com.almworks.util.commons.Procedure;
 import com.almworks.util.i18n.text.LocalizedAccessor;
@@ -25,6 +27,14 @@ public class RestIssueProcessor implements Procedure<JSONObject> {
   public static final LocalizedAccessor.Message2 PROGRESS_LOAD_NEXT = ConnectorManager.LOCAL.message2("loadQuery.progress.load.next");
 
   private static final int MAX_ISSUES = 100;
+  /**
+   * Number of query pages loaded in background while the current page is being processed
+   */
+  private static final int PREFETCH_PAGES = Env.getInteger("jiraclient.jql.prefetch", 0, 8, 2);
+  /**
+   * Number of issue transactions which may wait for DB write while next issues are being loaded
+   */
+  private static final int WRITE_DEPTH = Env.getInteger("jiraclient.jql.write.depth", 0, 8, 2);
 
   private final CustomFieldsSchema myCustomSchema;
   private final DBIssueWrite myWrite;
@@ -57,7 +67,7 @@ public void invoke(JSONObject issue) {
     myIssueCount++;
     if (myIssueCount >= MAX_ISSUES)
       try {
-        finishTransaction();
+        submitTransaction();
       } catch (ConnectorException e) {
         LogHelper.error("Should not happen");  // todo JCO-1390
       }
@@ -79,7 +89,15 @@ public EntityTransaction getCurrentTransaction() {
     return myCurrentTransaction;
   }
 
+  /**
+   * Writes the current transaction and waits until all transactions are written
+   */
   public void finishTransaction() throws ConnectorException {
+    submitTransaction();
+    myWrite.flush();
+  }
+
+  private void submitTransaction() throws ConnectorException {
     if (myCurrentTransaction == null) return;
     myWrite.writeTransaction(myCurrentTransaction);
     myCurrentTransaction = null;
@@ -104,12 +122,41 @@ public static RestIssueProcessor loadQuery(RestSession session, @NotNull JqlQuer
   public static RestIssueProcessor loadQuery(RestSession session, DBIssueWrite issueWrite, ProgressInfo progress, RestQueryPager pager) throws ConnectorException {
     CustomFieldsSchema schema = CustomFieldsSchema.loadFromDB(issueWrite.getSyncManager(), issueWrite.getMetaConfig().getFieldKinds(), issueWrite.getConnection());
     RestIssueProcessor loadIssues = new RestIssueProcessor(schema, issueWrite);
-    pager.loadAll(session, loadIssues.toHandler(), progress, PROGRESS_LOAD_FIRST, PROGRESS_LOAD_NEXT);
+    pager.setPrefetch(PREFETCH_PAGES, issueWrite.getSessionLock());
+    issueWrite.setWriteDepth(WRITE_DEPTH);
+    try {
+      pager.loadAll(session, loadIssues.toHandler(), progress, PROGRESS_LOAD_FIRST, PROGRESS_LOAD_NEXT);
+    } catch (ConnectorException e) {
+      // Complete the submitted transactions, so the issues of loaded pages are written as if they were written one by one
+      issueWrite.flush();
+      throw e;
+    }
     loadIssues.finishTransaction();
     return loadIssues;
   }
 
   public LocationHandler toHandler() {
-    return JSONCollector.objectConsumer(this);
+    return JSONCollector.objectConsumer(this, new IssueFilter());
+  }
+
+  /**
+   * Accepts issue identity and only the fields that have a converter. Other fields (rendered fields, ignored system
+   * fields, unknown custom fields) are skipped while parsing.
+   */
+  private class IssueFilter implements EntryFilter {
+    private final EntryFilter myFields = new EntryFilter() {
+      @Override
+      public EntryFilter enter(String key) {
+        boolean known = JiraIssueJsonFields.STATIC_FIELDS.getField(key) != null || myCustomSchema.getField(key) != null;
+        return known ? EntryFilter.ALL : null;
+      }
+    };
+
+    @Override
+    public EntryFilter enter(String key) {
+      if (JRIssue.FIELDS.getName().equals(key)) return myFields;
+      if (JRIssue.ID.getName().equals(key) || JRIssue.KEY.getName().equals(key)) return EntryFilter.ALL;
+      return null;
+    }
   }
 }
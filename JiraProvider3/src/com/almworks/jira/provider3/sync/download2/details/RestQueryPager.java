@@ -1,5 +1,6 @@
 package com.almworks.jira.provider3.sync.download2.details;
 
+import com.almworks.api.connector.CancelledException;
 import com.almworks.api.connector.ConnectorException;
 import com.almworks.integers.IntArray;
 import com.almworks.jira.connector2.JiraInternalException;
@@ -14,10 +15,17 @@
 import com.almworks.restconnector.json.sax.LocationHandler;
 import com.almworks.restconnector.json.sax.PeekArrayElement;
 import com.almworks.util.LogHelper;
+import com.almworks.util.exec.ThreadGate;
 import com.almworks.util.i18n.text.LocalizedAccessor;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
 public class RestQueryPager {
   @NotNull
   private final JqlQuery myJql;
@@ -29,6 +37,12 @@ public class RestQueryPager {
   private int myTotal = -1;
   private int myMaxResult = -1;
   private int myStart;
+  /**
+   * @see #setPrefetch(int, Lock)
+   */
+  private int myPrefetchPages = 0;
+  @Nullable
+  private Lock mySessionLock = null;
 
   public RestQueryPager(@NotNull JqlQuery jql) {
     myJql = jql;
@@ -88,23 +102,40 @@ public void setMaxResult(int maxResult) {
     myMaxResult = maxResult;
   }
 
+  /**
+   * Enables loading of next pages in background while the current page is being processed.<br>
+   * The background thread requests pages one by one and buffers them, so it never performs more than one request at a time.
+   * @param pages max number of loaded but not processed yet pages. Zero disables background loading
+   * @param sessionLock if not null, the background thread holds the lock while it uses the session. Other users of the
+   *                    same session has to take the lock to avoid concurrent requests
+   */
+  public void setPrefetch(int pages, @Nullable Lock sessionLock) {
+    myPrefetchPages = Math.max(0, pages);
+    mySessionLock = sessionLock;
+  }
+
   /**
    * @param issueHandler handler that consumes issues (elements of "issues" array)
    * @return page size. This can be equal to number of loaded issues or can be greater if last page is loaded.<br>
    * May return 0 if nothing is actually loaded and so page size is not known
    */
   public int loadNext(RestSession session, LocationHandler issueHandler) throws ConnectorException {
+    return processPage(requestPage(session, myStart), issueHandler);
+  }
+
+  /**
+   * @return successful response or null if the server replied with one of {@link #myNoResultCodes}
+   */
+  @Nullable
+  private RestResponse requestPage(RestSession session, int start) throws ConnectorException {
     JqlSearch search = createSearch();
     if (myMaxResult < 0) search.setDefaultMaxResult();
     else search.setMaxResult(myMaxResult);
-    search.setStart(myStart);
+    search.setStart(start);
     RestResponse response = search.request(session);
     if (!response.isSuccessful()) {
       int statusCode = response.getStatusCode();
-      if (myNoResultCodes.contains(statusCode)) {
-        myTotal = myStart; // Set query ended state
-        return 0;
-      }
+      if (myNoResultCodes.contains(statusCode)) return null;
       RestResponse.ErrorResponse errorResponse = response.createErrorResponse();
       if (statusCode == 400) {
         ConnectorException problem = search.maybeInaccessibleProject(session, errorResponse);
@@ -113,6 +144,14 @@ public int loadNext(RestSession session, LocationHandler issueHandler) throws Co
       LogHelper.warning("Query failed", statusCode, response.getLastUrl(), search);
       throw errorResponse.toException();
     }
+    return response;
+  }
+
+  private int processPage(@Nullable RestResponse response, LocationHandler issueHandler) throws ConnectorException {
+    if (response == null) {
+      myTotal = myStart; // Set query ended state
+      return 0;
+    }
     JSONCollector getTotal = new JSONCollector(null);
     JSONCollector getMaxResults = new JSONCollector(null);
     JSONCollector getStartAt = new JSONCollector(null);
@@ -136,7 +175,9 @@ public int loadNext(RestSession session, LocationHandler issueHandler) throws Co
 
   /**
    * Loads whole query from current start up to end or up to {@link #myMaxResult} if positive value is specified<br>
-   * When optional progress is provided informs it about progress. If an optional activity template is provided - shows current loading state.
+   * When optional progress is provided informs it about progress. If an optional activity template is provided - shows current loading state.<br>
+   * If {@link #setPrefetch(int, Lock) prefetch} is enabled, the first page is loaded in the caller thread, the rest are
+   * requested in background. The issueHandler is always called in the caller thread and in the query order.
    * @param issueHandler issues consumer same as in {@link #loadNext(com.almworks.restconnector.RestSession, com.almworks.restconnector.json.sax.LocationHandler)}
    * @param firstActivity progress activity message when total query size is not known (happens before first page is loaded)
    * @param nextActivity progress activity pattern when total number of issues is known. arg1 - current start, arg2 - {@link #getTotal() total count} (always not negative)
@@ -144,25 +185,178 @@ public int loadNext(RestSession session, LocationHandler issueHandler) throws Co
    */
   public void loadAll(RestSession session, LocationHandler issueHandler, @Nullable ProgressInfo progress, @Nullable LocalizedAccessor.Value firstActivity, @Nullable LocalizedAccessor.Message2 nextActivity) throws ConnectorException {
     while (true) {
-      if (progress != null) {
-        String message;
-        if (myTotal >= 0 && nextActivity != null) message = nextActivity.formatMessage(String.valueOf(myStart), String.valueOf(myTotal));
-        else if (myTotal < 0 && firstActivity != null) message = firstActivity.create();
-        else message = null;
-        if (message != null) progress.startActivity(message);
-        else progress.checkCancelled();
-      }
+      startPage(progress, firstActivity, nextActivity);
       int maxResults = loadNext(session, issueHandler);
-      if (progress != null) {
-        int left = myTotal - myStart;
-        (left == 0 ? progress : progress.spawn(Math.min(1.0, ((double) maxResults)/ left))).setDone();
+      if (!finishPage(progress, maxResults)) break;
+      if (myPrefetchPages > 0 && myMaxResult <= 0 && !loadPrefetched(session, issueHandler, progress, nextActivity, maxResults)) break;
+    }
+  }
+
+  private void startPage(@Nullable ProgressInfo progress, @Nullable LocalizedAccessor.Value firstActivity, @Nullable LocalizedAccessor.Message2 nextActivity) throws CancelledException {
+    if (progress == null) return;
+    String message;
+    if (myTotal >= 0 && nextActivity != null) message = nextActivity.formatMessage(String.valueOf(myStart), String.valueOf(myTotal));
+    else if (myTotal < 0 && firstActivity != null) message = firstActivity.create();
+    else message = null;
+    if (message != null) progress.startActivity(message);
+    else progress.checkCancelled();
+  }
+
+  /**
+   * @return true if the query has more pages to load
+   */
+  private boolean finishPage(@Nullable ProgressInfo progress, int maxResults) {
+    if (progress != null) {
+      int left = myTotal - myStart;
+      (left == 0 ? progress : progress.spawn(Math.min(1.0, ((double) maxResults)/ left))).setDone();
+    }
+    myStart += maxResults;
+    if (myStart >= myTotal) return false;
+    if (myMaxResult > 0 && maxResults >= myMaxResult) return false;
+    if (maxResults <= 0) {
+      LogHelper.error("No issues loaded", myStart, myMaxResult, myTotal, maxResults);
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Processes pages loaded in background up to the total known when the background loading starts.
+   * @param pageSize the size of the page returned by the server
+   * @return true if the query may have more pages to load (the total has grown or the server has changed page size)
+   */
+  private boolean loadPrefetched(RestSession session, LocationHandler issueHandler, @Nullable ProgressInfo progress, @Nullable LocalizedAccessor.Message2 nextActivity, int pageSize) throws ConnectorException {
+    PageFetcher fetcher = new PageFetcher(session, myStart, myTotal, pageSize);
+    ThreadGate.LONG.execute(fetcher);
+    try {
+      while (true) {
+        startPage(progress, null, nextActivity);
+        Page page = fetcher.take(progress);
+        if (page == null) return true;
+        if (page.myStart != myStart) {
+          LogHelper.warning("Page start mismatch", myStart, page.myStart);
+          return true;
+        }
+        int maxResults = processPage(page.getResponse(), issueHandler);
+        if (!finishPage(progress, maxResults)) return false;
+        if (maxResults != pageSize) return true;
       }
-      myStart += maxResults;
-      if (myStart >= myTotal) break;
-      if (myMaxResult > 0 && maxResults >= myMaxResult) break;
-      if (maxResults <= 0) {
-        LogHelper.error("No issues loaded", myStart, myMaxResult, myTotal, maxResults);
-        break;
+    } finally {
+      fetcher.stop();
+    }
+  }
+
+  private static class Page {
+    private final int myStart;
+    @Nullable
+    private final RestResponse myResponse;
+    @Nullable
+    private final Exception myFailure;
+
+    private Page(int start, @Nullable RestResponse response, @Nullable Exception failure) {
+      myStart = start;
+      myResponse = response;
+      myFailure = failure;
+    }
+
+    @Nullable
+    public RestResponse getResponse() throws ConnectorException {
+      if (myFailure instanceof ConnectorException) throw (ConnectorException) myFailure;
+      if (myFailure instanceof RuntimeException) throw (RuntimeException) myFailure;
+      return myResponse;
+    }
+
+    public boolean isLast() {
+      return myResponse == null || myFailure != null;
+    }
+  }
+
+  /**
+   * Requests pages in background thread and passes them to the caller thread via bounded queue. Blocks when the queue is
+   * full until the caller takes a page or {@link #stop() stops} loading.
+   */
+  private class PageFetcher implements Runnable {
+    private final Page END = new Page(-1, null, null);
+    private final RestSession mySession;
+    private final int myFirstStart;
+    private final int myTotal;
+    private final int myPageSize;
+    private final BlockingQueue<Page> myPages = new ArrayBlockingQueue<>(myPrefetchPages);
+    private final CountDownLatch myFinished = new CountDownLatch(1);
+    private volatile boolean myStopped = false;
+
+    public PageFetcher(RestSession session, int firstStart, int total, int pageSize) {
+      mySession = session;
+      myFirstStart = firstStart;
+      myTotal = total;
+      myPageSize = pageSize;
+    }
+
+    @Override
+    public void run() {
+      try {
+        for (int start = myFirstStart; start < myTotal && !myStopped; start += myPageSize) {
+          Page page = loadPage(start);
+          if (!put(page) || page.isLast()) break;
+        }
+      } finally {
+        put(END);
+        myFinished.countDown();
+      }
+    }
+
+    private Page loadPage(int start) {
+      Lock lock = mySessionLock;
+      if (lock != null) lock.lock();
+      try {
+        RestResponse response = requestPage(mySession, start);
+        if (response != null) response.getString(); // Load whole content and release the connection
+        return new Page(start, response, null);
+      } catch (ConnectorException | RuntimeException e) {
+        return new Page(start, null, e);
+      } finally {
+        if (lock != null) lock.unlock();
+      }
+    }
+
+    private boolean put(Page page) {
+      try {
+        while (!myStopped) if (myPages.offer(page, 100, TimeUnit.MILLISECONDS)) return true;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      return false;
+    }
+
+    /**
+     * @return next page or null if all pages are loaded
+     */
+    @Nullable
+    public Page take(@Nullable ProgressInfo progress) throws CancelledException {
+      while (true) {
+        Page page;
+        try {
+          page = myPages.poll(100, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new CancelledException();
+        }
+        if (page == END) return null;
+        if (page != null) return page;
+        if (progress != null) progress.checkCancelled();
+      }
+    }
+
+    /**
+     * Stops loading and waits until the background thread finishes current request, so the session can be used again
+     */
+    public void stop() {
+      myStopped = true;
+      myPages.clear();
+      try {
+        myFinished.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
       }
     }
   }
@@ -26,13 +26,22 @@ class FieldCollector {
   }
 
   public void processField(String fieldId, JSONObject field, int prjId, int typeId) {
+    if (addFieldScope(fieldId, field, prjId, typeId)) myFieldOptions.addFieldOptions(fieldId, field);
+  }
+
+  /**
+   * Marks the field applicable in the scope, but does not collect the field options. Used when an equal field is already
+   * {@link #processField(String, JSONObject, int, int) processed}
+   * @return true if the field is a custom field
+   */
+  public boolean addFieldScope(String fieldId, JSONObject field, int prjId, int typeId) {
     String atlassianClass = CustomFieldOptionsCollector.getFieldCustomClass(field);
     if (atlassianClass == null) {
       LogHelper.assertError(!CustomFieldsSchema.isCustomField(fieldId), "Missing field data", fieldId, field);
-      return;
+      return false;
     }
     myFieldScopes.addScope(fieldId, prjId, typeId);
-    myFieldOptions.addFieldOptions(fieldId, field);
+    return true;
   }
 
   /**
@@ -14,19 +14,36 @@
 import com.almworks.jira.provider3.sync.download2.rest.JRIssue;
 import com.almworks.jira.provider3.sync.download2.rest.JqlSearch;
 import com.almworks.restconnector.RequestPolicy;
+import com.almworks.restconnector.RequestScheduler;
 import com.almworks.restconnector.RestResponse;
 import com.almworks.restconnector.RestSession;
 import com.almworks.restconnector.jql.JQLCompareConstraint;
+import com.almworks.restconnector.json.JSONKey;
 import com.almworks.util.LogHelper;
+import com.almworks.util.io.IOUtils;
+import org.almworks.util.Collections15;
+import org.almworks.util.Failure;
 import org.almworks.util.Util;
 import org.jetbrains.annotations.Nullable;
 import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
 
-import java.util.Map;
-import java.util.Set;
+import java.io.UnsupportedEncodingException;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 class LoadEditMeta extends MetaOperation {
+  /**
+   * Max number of projects and issue types which editmeta is loaded at the same time
+   */
+  private static final int MAX_CONCURRENT_PROBES = 4;
+  /**
+   * Returned by {@link #loadEditMeta(RestSession, int, int)} when the editmeta is not accessible
+   */
+  static final String ALL_SCOPE = "";
+
   private final FieldCollector myFieldCollector;
 
   protected LoadEditMeta(FieldCollector fieldCollector) {
@@ -41,59 +58,133 @@ public void perform(RestSession session, EntityTransaction transaction, Progress
     IntList projectIds = projectsAndTypes.getProjectIds();
     ProgressInfo[] progresses = progress.split(projectIds.size());
     Set<Integer> filter = context.getDataOrNull(LoadRestMeta.PROJECT_FILTER);
+    List<Probe> probes = Collections15.arrayList();
+    ConcurrentHashMap<String, JSONObject> parsedFields = new ConcurrentHashMap<>();
     for (int i = 0; i <projectIds.size(); i++) {
       ProgressInfo prjProgress = progresses[i];
       int prjId = projectIds.get(i);
-      if (filter == null || filter.contains(prjId)) {
+      IntList types = projectsAndTypes.getTypes(prjId);
+      if ((filter == null || filter.contains(prjId)) && types != null) {
         prjProgress.startActivity(projectsAndTypes.getProjectName(prjId));
-        IntList types = projectsAndTypes.getTypes(prjId);
-        loadTypes(session, transaction, prjId, types, prjProgress);
-      }
-      prjProgress.setDone();
+        ProgressInfo[] typeProgresses = prjProgress.split(types.size());
+        for (int j = 0; j < types.size(); j++) probes.add(new Probe(prjId, types.get(j), typeProgresses[j], parsedFields));
+      } else prjProgress.setDone();
+    }
+    RequestScheduler scheduler = new RequestScheduler(session, MAX_CONCURRENT_PROBES);
+    for (Probe probe : probes) scheduler.submit(probe::load);
+    try {
+      scheduler.waitAll(progress.getCancelFlag());
+    } catch (CancelledException e) {
+      throw e;
+    } catch (ConnectorException e) {
+      LogHelper.warning("Failed to load editmeta", e);
     }
+    // Results are processed in the same order as they were loaded sequentially, so the collected fields do not depend on
+    // the order of responses
+    Set<JSONObject> processedFields = Collections.newSetFromMap(new IdentityHashMap<JSONObject, Boolean>());
+    for (Probe probe : probes) probe.process(transaction, processedFields);
   }
 
-  private void loadTypes(RestSession session, EntityTransaction transaction, int prjId, @Nullable IntList types, ProgressInfo progress) throws CancelledException {
-    if (types == null) return;
-    ProgressInfo[] progresses = progress.split(types.size());
-    ProgressInfo prevProgress = null;
-    for (int i = 0; i < types.size(); i++) {
-      if (prevProgress != null) prevProgress.setDone();
-      prevProgress = progresses[i];
-      int typeId = types.get(i);
-      JSONObject fields;
+  /**
+   * Loads editmeta of an issue of the project and type
+   * @return editmeta response content, {@link #ALL_SCOPE} if the editmeta is not accessible, null if there is no issue
+   * of the type in the project
+   */
+  @Nullable
+  String loadEditMeta(RestSession session, int prjId, int typeId) throws ConnectorException {
+    JSONObject issue = new JqlSearch(CompositeConstraint.and(
+            JQLCompareConstraint.equal("project", prjId),
+            JQLCompareConstraint.equal("type", typeId)
+    )).addFields("key").querySingle(session);
+    if (issue == null) return null;
+    String key = JRIssue.KEY.getValue(issue);
+    RestResponse response = session.restGet(String.format("api/2/issue/%s/editmeta", key), RequestPolicy.SAFE_TO_RETRY);
+    if (!response.isSuccessful()) return ALL_SCOPE;
+    return response.getString();
+  }
+
+  private static String getDigest(String editMeta) {
+    try {
+      return IOUtils.md5sum(editMeta);
+    } catch (NoSuchAlgorithmException | UnsupportedEncodingException e) {
+      throw new Failure(e);
+    }
+  }
+
+  /**
+   * Issue types often share field configuration, so many probes get equal editmeta. The response is parsed as soon as it
+   * is loaded, equal responses share the same parsed fields, so raw responses are not kept until all probes finish.
+   */
+  private class Probe {
+    private final int myPrjId;
+    private final int myTypeId;
+    private final ProgressInfo myProgress;
+    private final ConcurrentHashMap<String, JSONObject> myParsedFields;
+    private boolean myAllScope;
+    private JSONObject myFields;
+
+    public Probe(int prjId, int typeId, ProgressInfo progress, ConcurrentHashMap<String, JSONObject> parsedFields) {
+      myPrjId = prjId;
+      myTypeId = typeId;
+      myProgress = progress;
+      myParsedFields = parsedFields;
+    }
+
+    public void load(RestSession session) throws CancelledException {
       try {
-        JSONObject issue = new JqlSearch(CompositeConstraint.and(
-                JQLCompareConstraint.equal("project", prjId),
-                JQLCompareConstraint.equal("type", typeId)
-        )).addFields("key").querySingle(session);
-        if (issue == null) continue;
-        String key = JRIssue.KEY.getValue(issue);
-        RestResponse response = session.restGet(String.format("api/2/issue/%s/editmeta", key), RequestPolicy.SAFE_TO_RETRY);
-        if (!response.isSuccessful()) {
-          myFieldCollector.addAllScope(prjId, typeId);
-          continue;
-        }
-        fields = JRField.FIELDS.getValue(response.getJSONObject());
+        String editMeta = loadEditMeta(session, myPrjId, myTypeId);
+        if (ALL_SCOPE.equals(editMeta)) myAllScope = true;
+        else if (editMeta != null) myFields = parseFields(editMeta);
       } catch (CancelledException e) {
         throw e;
       } catch (ConnectorException e) {
-        LogHelper.warning("Exception during load editmeta", prjId, typeId, e);
-        continue;
+        LogHelper.warning("Exception during load editmeta", myPrjId, myTypeId, e);
+      } finally {
+        myProgress.setDone();
+      }
+    }
+
+    @Nullable
+    private JSONObject parseFields(String editMeta) {
+      String digest = getDigest(editMeta);
+      JSONObject fields = myParsedFields.get(digest);
+      if (fields != null) return fields;
+      try {
+        fields = JRField.FIELDS.getValue(JSONKey.ROOT_OBJECT.getValue(new JSONParser().parse(editMeta)));
       } catch (ParseException e) {
-        LogHelper.warning("Failed to parse editmeta", prjId, typeId, e);
-        continue;
+        LogHelper.warning("Failed to parse editmeta", myPrjId, myTypeId, e);
+        return null;
+      }
+      if (fields == null) {
+        LogHelper.warning("Missing editmeta fields", myPrjId, myTypeId);
+        return null;
+      }
+      JSONObject known = myParsedFields.putIfAbsent(digest, fields);
+      return known != null ? known : fields;
+    }
+
+    /**
+     * Options of the fields shared with an already processed probe are collected once.
+     * @param processedFields fields of already processed probes
+     */
+    public void process(EntityTransaction transaction, Set<JSONObject> processedFields) {
+      if (myAllScope) {
+        myFieldCollector.addAllScope(myPrjId, myTypeId);
+        return;
       }
+      if (myFields == null) return;
+      boolean known = !processedFields.add(myFields);
       JiraFieldsInfo fieldsInfo = JiraFieldsInfo.getInstance(transaction);
-      for (Map.Entry<String, Object> entry : ((Map<String, Object>) fields).entrySet()) {
+      for (Map.Entry<String, Object> entry : ((Map<String, Object>) myFields).entrySet()) {
         JSONObject field = Util.castNullable(JSONObject.class, entry.getValue());
         String fieldId = entry.getKey();
         if (field == null || fieldId == null) {
           LogHelper.error("Missing field", entry);
           continue;
         }
-        myFieldCollector.processField(fieldId, field, prjId, typeId);
-        fieldsInfo.processField(prjId, typeId, fieldId, field);
+        if (known) myFieldCollector.addFieldScope(fieldId, field, myPrjId, myTypeId);
+        else myFieldCollector.processField(fieldId, field, myPrjId, myTypeId);
+        fieldsInfo.processField(myPrjId, myTypeId, fieldId, field);
       }
     }
   }
@@ -3,10 +3,13 @@
 import com.almworks.api.connector.CancelledException;
 import com.almworks.api.connector.ConnectorException;
 import com.almworks.integers.IntList;
+import com.almworks.items.api.*;
+import com.almworks.items.entities.api.EntityKey;
 import com.almworks.items.entities.api.collector.transaction.EntityHolder;
 import com.almworks.items.entities.api.collector.transaction.EntityTransaction;
 import com.almworks.jira.connector2.JiraInternalException;
 import com.almworks.jira.provider3.app.sync.BaseOperation;
+import com.almworks.jira.provider3.custom.FieldKind;
 import com.almworks.jira.provider3.custom.impl.CustomFieldsComponent;
 import com.almworks.jira.provider3.custom.impl.RemoteMetaConfig;
 import com.almworks.jira.provider3.issue.features.edit.screens.LoadScreensOperation;
@@ -18,15 +21,19 @@
 import com.almworks.jira.provider3.sync.download2.process.util.EntityDBUpdate;
 import com.almworks.jira.provider3.sync.download2.process.util.ProgressInfo;
 import com.almworks.jira.provider3.sync.schema.ServerGroup;
+import com.almworks.jira.provider3.sync.schema.ServerJira;
 import com.almworks.jira.provider3.sync.schema.ServerProjectRole;
 import com.almworks.jira.provider3.users.LoadAssignableUsers;
+import com.almworks.restconnector.ResponseDigest;
 import com.almworks.restconnector.RestSession;
 import com.almworks.util.LogHelper;
 import com.almworks.util.i18n.text.CurrentLocale;
 import com.almworks.util.i18n.text.LocalizedAccessor;
 import org.almworks.util.Collections15;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 public class LoadRestMeta extends BaseOperation {
@@ -36,6 +43,12 @@ public class LoadRestMeta extends BaseOperation {
    */
   public static final LoadedMetaKey<Set<Integer>> PROJECT_FILTER = LoadedMetaKey.createMetaKey("projectFilter", null);
   public static final LoadedMetaKey<ProjectsAndTypes> PROJECTS = LoadedMetaKey.createMetaKey("projectsTypes", I18N.getFactory("download.meta.projects.noProjects"));
+  /**
+   * Digests of responses of the operations, the last written metadata is loaded from. Space-separated, one per operation.
+   * @see ResponseDigest
+   */
+  private static final EntityKey<String> META_DIGEST = EntityKey.string("connection.metaDigest", null);
+  private static final DBAttribute<String> META_DIGEST_ATTRIBUTE = ServerJira.toScalarAttribute(META_DIGEST);
 
   private final ServerInfo myServerInfo;
   private final RemoteMetaConfig myMetaConfig;
@@ -127,22 +140,74 @@ public void perform(RestSession session) throws CancelledException {
     double[] ratios = new double[myOperations.size()];
     for (int i = 0; i < myOperations.size(); i++) ratios[i] = myOperations.get(i).getEstimate();
     ProgressInfo[] progresses = myProgress.splitRatio(ratios);
+    String[] digests = new String[myOperations.size()];
     for (int i = 0; i < myOperations.size(); i++) {
       myProgress.checkCancelled();
+      ResponseDigest digest = new ResponseDigest();
+      ResponseDigest outer = session.setResponseDigest(digest);
       try {
         myOperations.get(i).perform(session, transaction, progresses[i], myContext);
+        digests[i] = digest.getValue();
       } catch (JiraInternalException e) {
         LogHelper.warning(e); // continue to load other metaInfo
       } catch (RuntimeException e) {
         LogHelper.error(e); // continue to load other metaInfo
       } finally {
+        session.setResponseDigest(outer);
         progresses[i].setDone();
       }
     }
     myProgress.checkCancelled();
+    String metaDigest = joinDigests(digests);
+    Map<String, FieldKind> fieldKinds = myMetaConfig.getFieldKinds();
+    if (!isMetaChanged(digests, metaDigest, fieldKinds)) {
+      LogHelper.debug("Metadata not changed, write skipped", myServerInfo.getConnection().getConnectionID());
+      return;
+    }
+    // Null digest means that an operation failed and might load partial metadata, so the next load writes it again
+    ServerInfo.changeConnection(transaction).setValue(META_DIGEST, metaDigest);
     myFieldCollector.postProcess(transaction, true);
     EntityDBUpdate update = new EntityDBUpdate(transaction, myMetaConfig);
-    myServerInfo.getSyncManager().writeDownloaded(update).waitForCompletion();
+    DBResult<?> result = myServerInfo.getSyncManager().writeDownloaded(update);
+    result.waitForCompletion();
+    if (result.isSuccessful()) myServerInfo.setMetaFieldKinds(fieldKinds);
+  }
+
+  /**
+   * All operations share the transaction and the written metadata replaces the previous one, so the metadata is written
+   * unless each operation got the same responses as the operations the stored metadata is loaded from.<br>
+   * The metadata is written at least once since the application start, because the same responses may be converted
+   * differently after upgrade. It is written again when custom field kinds are changed.
+   */
+  private boolean isMetaChanged(String[] digests, @Nullable String metaDigest, Map<String, FieldKind> fieldKinds) {
+    if (metaDigest == null) return true;
+    Map<String, FieldKind> writtenKinds = myServerInfo.getMetaFieldKinds();
+    if (writtenKinds == null || !writtenKinds.equals(fieldKinds)) return true;
+    String written = myServerInfo.getSyncManager().enquireRead(DBPriority.BACKGROUND, new ReadTransaction<String>() {
+      @Override
+      public String transaction(DBReader reader) throws DBOperationCancelledException {
+        long connection = reader.findMaterialized(myServerInfo.getConnectionObj());
+        return connection > 0 ? reader.getValue(connection, META_DIGEST_ATTRIBUTE) : null;
+      }
+    }).waitForCompletion();
+    if (metaDigest.equals(written)) return false;
+    String[] writtenDigests = written != null ? written.split(" ") : new String[0];
+    List<String> changed = Collections15.arrayList();
+    for (int i = 0; i < digests.length; i++)
+      if (i >= writtenDigests.length || !digests[i].equals(writtenDigests[i])) changed.add(myOperations.get(i).getClass().getName());
+    LogHelper.debug("Metadata changed", changed);
+    return true;
+  }
+
+  @Nullable("When an operation failed")
+  private static String joinDigests(String[] digests) {
+    StringBuilder builder = new StringBuilder();
+    for (String digest : digests) {
+      if (digest == null) return null;
+      if (builder.length() > 0) builder.append(' ');
+      builder.append(digest);
+    }
+    return builder.toString();
   }
 
   private void loadCommentsVisibility(RestSession session, EntityTransaction transaction, ProgressInfo progress) throws ConnectorException {
@@ -36,9 +36,12 @@
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.ArrayDeque;
 import java.util.Collection;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class DBIssueWrite {
   private final ServerInfo myServerInfo;
@@ -48,6 +51,17 @@ public class DBIssueWrite {
   private final RemoteMetaConfig myConversion;
   @SuppressWarnings("unchecked")
   private final FireEventSupport<Procedure<EntityTransaction>> myPostTransaction = (FireEventSupport)FireEventSupport.create(Procedure.class);
+  /**
+   * Submitted and not processed yet transactions in submit order
+   */
+  private final ArrayDeque<PendingWrite> myPending = new ArrayDeque<>();
+  private final ReentrantLock mySessionLock = new ReentrantLock();
+  private int myWriteDepth = 0;
+  /**
+   * Set in DB thread when a submitted transaction has unresolved problems. Subsequent transactions are deferred until the
+   * problems are resolved and the transaction is written.
+   */
+  private volatile boolean myHalted = false;
 
   public DBIssueWrite(RestSession session, ServerInfo serverInfo, RemoteMetaConfig conversion) {
     myServerInfo = serverInfo;
@@ -77,14 +91,78 @@ public void addPostTransaction(Procedure<EntityTransaction> procedure) {
     myPostTransaction.addStraightListener(Lifespan.FOREVER, procedure);
   }
 
+  /**
+   * Sets max number of transactions that may be submitted to DB and not confirmed yet when {@link #writeTransaction(EntityTransaction)}
+   * returns. Zero means write transactions one by one.<br>
+   * The transactions are committed in the order they are submitted.
+   * Post-transaction procedures and {@link #getLatestUpdate() sync point} are processed in the caller thread in the same order.
+   * @see #flush()
+   */
+  public void setWriteDepth(int depth) {
+    myWriteDepth = Math.max(0, depth);
+  }
+
+  /**
+   * The lock guards the session against concurrent requests. The session is used to resolve DB write problems, a background
+   * user of the session has to hold the lock while it performs requests.
+   */
+  public Lock getSessionLock() {
+    return mySessionLock;
+  }
+
   public void writeTransaction(EntityTransaction transaction) throws ConnectorException {
-    DBResult<?> result = updateDB(transaction, myServerInfo, mySession, mySyncPoint, myConversion);
+    myPending.addLast(submit(transaction));
+    while (myPending.size() > myWriteDepth) finishWrite(myPending.removeFirst());
+  }
+
+  /**
+   * Waits until all submitted transactions are written
+   */
+  public void flush() throws ConnectorException {
+    while (!myPending.isEmpty()) finishWrite(myPending.removeFirst());
+  }
+
+  private PendingWrite submit(EntityTransaction transaction) {
+    MyDBUpdate update = createUpdate(transaction);
+    return new PendingWrite(transaction, update, writeDownloaded(update));
+  }
+
+  MyDBUpdate createUpdate(EntityTransaction transaction) {
+    return new MyDBUpdate(transaction, mySyncPoint, myConversion, this);
+  }
+
+  DBResult<?> writeDownloaded(DownloadProcedure<DBDrain> procedure) {
+    return getSyncManager().writeDownloaded(procedure);
+  }
+
+  DBResult<?> resolveProblems(EntityTransaction transaction, Collection<EntityHolder> problems) throws ConnectorException {
+    return resolveProblems(transaction, problems, myServerInfo, mySession, myConversion);
+  }
+
+  private void finishWrite(PendingWrite write) throws ConnectorException {
+    DBResult<?> result = write.myResult;
+    result.waitForCompletion();
+    Collection<EntityHolder> problems = write.myUpdate.getProblems();
+    if (problems != null) {
+      // All transactions submitted after this one are deferred. Wait until DB is done with them, then write them again in the same order
+      for (PendingWrite pending : myPending) pending.myResult.waitForCompletion();
+      mySessionLock.lock();
+      try {
+        result = resolveProblems(write.myTransaction, problems);
+      } finally {
+        mySessionLock.unlock();
+      }
+      myHalted = false;
+      List<PendingWrite> deferred = Collections15.arrayList(myPending);
+      myPending.clear();
+      for (PendingWrite pending : deferred) myPending.addLast(pending.myUpdate.isDeferred() ? submit(pending.myTransaction) : pending);
+    }
     long icn = result.isSuccessful() ? result.getCommitIcn() : 0;
     if (icn > 0) {
       LogHelper.assertError(myLastICN < icn, myLastICN, icn);
       myLastICN = icn;
-      myPostTransaction.getDispatcher().invoke(transaction);
-      List<EntityHolder> issues = transaction.getAllEntities(ServerIssue.TYPE);
+      myPostTransaction.getDispatcher().invoke(write.myTransaction);
+      List<EntityHolder> issues = write.myTransaction.getAllEntities(ServerIssue.TYPE);
       mySyncPoint.processIssues(issues);
     } else LogHelper.error("DB update failed", result.getErrors());
   }
@@ -94,20 +172,21 @@ public EntityTransaction createTransaction() {
   }
 
   public static DBResult<?> updateDB(EntityTransaction transaction, ServerInfo serverInfo, RestSession session, @Nullable SyncPointHolder syncPoint, RemoteMetaConfig metaConfig) throws ConnectorException {
-    EntityDBUpdate update = new MyDBUpdate(transaction, syncPoint, metaConfig);
+    EntityDBUpdate update = new MyDBUpdate(transaction, syncPoint, metaConfig, null);
     DBResult<?> result = serverInfo.getSyncManager().writeDownloaded(update);
     result.waitForCompletion();
     Collection<EntityHolder> problems = update.getProblems();
-    if (problems != null) {
-      ResolutionProblems resolutionProblems = new ResolutionProblems(session, serverInfo, metaConfig);
-      resolutionProblems.addAll(problems);
-      resolutionProblems.resolve();
-      FinalWrite procedure = new FinalWrite(transaction, metaConfig);
-      result = serverInfo.getSyncManager().writeDownloaded(procedure);
-      result.waitForCompletion();
-      return result;
+    if (problems != null) return resolveProblems(transaction, problems, serverInfo, session, metaConfig);
+    return result;
+  }
 
-    }
+  private static DBResult<?> resolveProblems(EntityTransaction transaction, Collection<EntityHolder> problems, ServerInfo serverInfo, RestSession session, RemoteMetaConfig metaConfig) throws ConnectorException {
+    ResolutionProblems resolutionProblems = new ResolutionProblems(session, serverInfo, metaConfig);
+    resolutionProblems.addAll(problems);
+    resolutionProblems.resolve();
+    FinalWrite procedure = new FinalWrite(transaction, metaConfig);
+    DBResult<?> result = serverInfo.getSyncManager().writeDownloaded(procedure);
+    result.waitForCompletion();
     return result;
   }
 
@@ -123,11 +202,44 @@ public long getLastICN() {
   static class MyDBUpdate extends EntityDBUpdate {
     @Nullable
     private final SyncPointHolder mySyncPoint;
+    /**
+     * The write this update is submitted by. Null if the update is not a part of pipelined write
+     */
+    @Nullable
+    private final DBIssueWrite myWrite;
+    private volatile boolean myDeferred = false;
 
-
-    public MyDBUpdate(EntityTransaction transaction, SyncPointHolder syncPoint, RemoteMetaConfig metaConfig) {
+    public MyDBUpdate(EntityTransaction transaction, SyncPointHolder syncPoint, RemoteMetaConfig metaConfig, @Nullable DBIssueWrite write) {
       super(transaction, metaConfig);
       mySyncPoint = syncPoint;
+      myWrite = write;
+    }
+
+    @Override
+    public void write(DBDrain drain) throws DBOperationCancelledException {
+      myDeferred = false;
+      if (myWrite != null && myWrite.myHalted) {
+        // A previous transaction has to be written first
+        myDeferred = true;
+        throw new DBOperationCancelledException();
+      }
+      try {
+        writeEntities(drain);
+      } catch (DBOperationCancelledException e) {
+        if (myWrite != null && getProblems() != null) myWrite.myHalted = true;
+        throw e;
+      }
+    }
+
+    /**
+     * Writes the transaction entities or collects {@link #getProblems() problems} and cancels the DB transaction
+     */
+    void writeEntities(DBDrain drain) throws DBOperationCancelledException {
+      super.write(drain);
+    }
+
+    public boolean isDeferred() {
+      return myDeferred;
     }
 
     @Override
@@ -137,6 +249,18 @@ protected void beforeResolve(EntityWriter writer) {
     }
   }
 
+  private static class PendingWrite {
+    private final EntityTransaction myTransaction;
+    private final MyDBUpdate myUpdate;
+    private final DBResult<?> myResult;
+
+    public PendingWrite(EntityTransaction transaction, MyDBUpdate update, DBResult<?> result) {
+      myTransaction = transaction;
+      myUpdate = update;
+      myResult = result;
+    }
+  }
+
   public static void beforeWrite(EntityWriter writer) {
     writer.ensureResolved();
     PrepareWorklogsUpload.findFailedUploads(writer);
@@ -0,0 +1,88 @@
+package com.almworks.jira.provider3;
+
+import com.almworks.api.connector.http.dump.ResponseDumper;
+import com.almworks.api.http.HttpResponseData;
+import com.almworks.restconnector.RestResponse;
+import com.almworks.util.commons.ProcedureE;
+import org.apache.commons.httpclient.URI;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Response with the given status and content, for sessions that reply without a server
+ */
+public class StringResponse implements HttpResponseData {
+  private final int myStatusCode;
+  private final byte[] myContent;
+
+  public static RestResponse create(String url, int statusCode, String content) {
+    return new RestResponse(url, new ResponseDumper(new StringResponse(statusCode, content)), null, null);
+  }
+
+  public StringResponse(int statusCode, String content) {
+    myStatusCode = statusCode;
+    myContent = content.getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Override
+  public String getContentFilename() {
+    return null;
+  }
+
+  @Override
+  public String getContentType() {
+    return myStatusCode == 200 ? "application/json" : "text/plain";
+  }
+
+  @Override
+  public String getFullContentType() {
+    return getContentType() + "; charset=UTF-8";
+  }
+
+  @Override
+  public long getContentLength() {
+    return myContent.length;
+  }
+
+  @Override
+  public void readStream(ProcedureE<InputStream, IOException> reader) throws IOException {
+    reader.invoke(new ByteArrayInputStream(myContent));
+  }
+
+  @NotNull
+  @Override
+  public Map<String, String> getResponseHeaders() {
+    return Collections.emptyMap();
+  }
+
+  @Override
+  public URI getLastURI() {
+    return null;
+  }
+
+  @Override
+  public int getStatusCode() {
+    return myStatusCode;
+  }
+
+  @NotNull
+  @Override
+  public String getStatusText() {
+    return String.valueOf(myStatusCode);
+  }
+
+  @Override
+  public String getCharset() {
+    return "UTF-8";
+  }
+
+  @Override
+  public void releaseConnection() {
+  }
+}
@@ -0,0 +1,16 @@
+package com.almworks.jira.provider3.remotedata.issue.edit;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Issue units that are created without DB, for tests of upload planning. The units cannot be uploaded.
+ */
+public class TestIssueUnits {
+  public static CreateIssueUnit newIssue(long item, @Nullable CreateIssueUnit parent) {
+    return new NewIssue(item, null, null, parent);
+  }
+
+  public static CreateIssueUnit submitted(long item, int issueId, String key) {
+    return new SubmittedIssue(item, issueId, key);
+  }
+}
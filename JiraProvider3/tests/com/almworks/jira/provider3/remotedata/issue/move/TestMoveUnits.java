@@ -0,0 +1,19 @@
+package com.almworks.jira.provider3.remotedata.issue.move;
+
+import com.almworks.jira.provider3.remotedata.issue.edit.CreateIssueUnit;
+import com.almworks.jira.provider3.remotedata.issue.fields.IssueFieldValue;
+import com.almworks.jira.provider3.services.upload.UploadUnit;
+import org.almworks.util.Collections15;
+
+/**
+ * Move units for tests of upload planning. The units cannot be uploaded.
+ */
+public class TestMoveUnits {
+  public static UploadUnit moveToSubtask(CreateIssueUnit issue, CreateIssueUnit newParent) {
+    return new MoveToSubtask(issue, null, 0, newParent, Collections15.<IssueFieldValue>arrayList());
+  }
+
+  public static UploadUnit moveParentType(CreateIssueUnit issue, CreateIssueUnit newParent, int newTypeId) {
+    return new MoveParentType(issue, null, 0, newParent, newTypeId, Collections15.<IssueFieldValue>arrayList());
+  }
+}
@@ -0,0 +1,58 @@
+package com.almworks.jira.provider3.schema;
+
+import com.almworks.items.api.DBAttribute;
+import com.almworks.items.api.DBWriter;
+import com.almworks.items.sync.edit.SyncFixture;
+import com.almworks.items.sync.impl.HolderCache;
+import com.almworks.items.sync.impl.SyncSchema;
+import com.almworks.items.util.AttributeMap;
+import com.almworks.util.commons.Procedure;
+
+import java.util.Date;
+
+public class WorklogTests extends SyncFixture {
+  private static final Date STARTED = new Date(1500000000000L);
+
+  public void testMergeableAgainstDeltaShadow() {
+    writeNoFail(new Procedure<DBWriter>() {
+      @Override
+      public void invoke(DBWriter writer) {
+        // local comment edit and server time change do not conflict
+        long item = createWorklog(writer, Worklog.COMMENT, "local", Worklog.TIME_SECONDS, 7200);
+        assertTrue(Worklog.isMergeable(writer, item));
+        // local time edit conflicts with server start change
+        item = createWorklog(writer, Worklog.TIME_SECONDS, 1800, Worklog.STARTED, new Date(STARTED.getTime() + 3600000));
+        assertFalse(Worklog.isMergeable(writer, item));
+      }
+    });
+  }
+
+  /**
+   * Creates a locally edited worklog with new server version stored as a delta against BASE
+   */
+  private static <L, S> long createWorklog(DBWriter writer, DBAttribute<L> local, L localValue, DBAttribute<S> server,
+    S serverValue)
+  {
+    long item = writer.nextItem();
+    AttributeMap base = new AttributeMap();
+    base.put(Worklog.ID, (int) item);
+    base.put(Worklog.TIME_SECONDS, 3600);
+    base.put(Worklog.STARTED, STARTED);
+    base.put(Worklog.COMMENT, "server");
+    for (DBAttribute<?> attribute : base.keySet()) copy(writer, item, base, attribute);
+    writer.setValue(item, local, localValue);
+    AttributeMap download = base.copy();
+    download.put(server, serverValue);
+    HolderCache holders = HolderCache.instance(writer);
+    holders.setBase(item, base);
+    holders.setDownload(item, download);
+    // the server version differs in one attribute
+    assertEquals(download, SyncSchema.readShadow(writer, item, SyncSchema.DOWNLOAD));
+    assertTrue(writer.getValue(item, SyncSchema.DOWNLOAD).size() < download.size());
+    return item;
+  }
+
+  private static <T> void copy(DBWriter writer, long item, AttributeMap map, DBAttribute<T> attribute) {
+    writer.setValue(item, attribute, map.get(attribute));
+  }
+}
@@ -0,0 +1,311 @@
+package com.almworks.jira.provider3.services.upload;
+
+import com.almworks.api.connector.CancelledException;
+import com.almworks.api.connector.ConnectorException;
+import com.almworks.api.engine.SyncProblem;
+import com.almworks.integers.LongArray;
+import com.almworks.items.entities.api.collector.transaction.EntityTransaction;
+import com.almworks.jira.provider3.StringResponse;
+import com.almworks.jira.provider3.remotedata.issue.edit.CreateIssueUnit;
+import com.almworks.jira.provider3.remotedata.issue.edit.TestIssueUnits;
+import com.almworks.jira.provider3.remotedata.issue.move.TestMoveUnits;
+import com.almworks.jira.provider3.sync.download2.process.util.ProgressInfo;
+import com.almworks.restconnector.RequestPolicy;
+import com.almworks.restconnector.RestResponse;
+import com.almworks.restconnector.RestSession;
+import com.almworks.util.Pair;
+import com.almworks.util.collections.LongSet;
+import com.almworks.util.exec.LongEventQueue;
+import com.almworks.util.model.SetHolderModel;
+import com.almworks.util.tests.BaseTestCase;
+import org.almworks.util.Collections15;
+import org.almworks.util.TypedKey;
+import org.jetbrains.annotations.NotNull;
+import org.json.simple.JSONObject;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class UploadOrderTests extends BaseTestCase {
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    LongEventQueue.installToContext();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    LongEventQueue.removeFromContext();
+    super.tearDown();
+  }
+
+  public void testConcurrentEqualsSequential() throws CancelledException {
+    ScriptedSession sequentialSession = new ScriptedSession(1, "comment2", "comment13");
+    TestContext sequential = upload(sequentialSession);
+    assertEquals(1, sequentialSession.myMaxRunning.get());
+
+    ScriptedSession concurrentSession = new ScriptedSession(4, "comment2", "comment13");
+    TestContext concurrent = upload(concurrentSession);
+    assertTrue(concurrentSession.myMaxRunning.get() > 1);
+
+    // independent blocks are uploaded in any order
+    assertEquals(sequentialSession.getUploaded(), concurrentSession.getUploaded());
+    assertEquals(Collections15.arrayList(), concurrent.myViolations);
+    // conflict of a not requested issue is not mandatory
+    assertEquals(LongSet.create(2), sequential.getMandatoryConflicts());
+    assertEquals(sequential.getMandatoryConflicts(), concurrent.getMandatoryConflicts());
+    for (TestContext context : Arrays.asList(sequential, concurrent)) {
+      assertNotNull(context.getConflicts(2));
+      assertNotNull(context.getConflicts(13));
+      assertNull(context.getConflicts(1));
+    }
+    assertEquals(LongSet.create(1, 2, 3, 4, 11, 12, 13), sequential.getUploadedPrimary());
+    assertEquals(sequential.getUploadedPrimary(), concurrent.getUploadedPrimary());
+  }
+
+  public void testCycle() throws CancelledException {
+    TestContext context = new TestContext();
+    FakeUnit a = context.unit("A", 1);
+    FakeUnit b = context.unit("B", 2);
+    a.myDependencies.add(b);
+    b.myDependencies.add(a);
+    ScriptedSession session = new ScriptedSession(2);
+    new JiraUploadContext(ProgressInfo.createDeaf(), session, Collections15.<UploadUnit>arrayList(a, b), context).perform();
+    assertEquals(Collections15.arrayList("A", "B"), session.getUploaded());
+  }
+
+  public void testLinkWaitsForMasterBlocks() throws CancelledException {
+    TestContext context = new TestContext();
+    List<UploadUnit> units = Collections15.arrayList();
+    FakeUnit link = context.unit("link", -1);
+    link.myMasters.add(Pair.create(1L, "1"));
+    link.myMasters.add(Pair.create(2L, "2"));
+    units.add(link);
+    for (int i = 1; i <= 3; i++) {
+      units.add(context.unit("create" + i, i));
+      units.add(context.unit("comment" + i, i));
+    }
+    ScriptedSession session = new ScriptedSession(4);
+    new JiraUploadContext(ProgressInfo.createDeaf(), session, units, context).perform();
+    List<String> order = session.getUploadOrder();
+    assertEquals(7, order.size());
+    for (String name : Arrays.asList("create1", "comment1", "create2", "comment2"))
+      assertTrue(order.toString(), order.indexOf(name) < order.indexOf("link"));
+  }
+
+  public void testNoMasterUnitsAfterBlocks() throws CancelledException {
+    TestContext context = new TestContext();
+    List<UploadUnit> units = Collections15.arrayList();
+    units.add(context.unit("global", -1));
+    for (int i = 1; i <= 3; i++) {
+      units.add(context.unit("create" + i, i));
+      units.add(context.unit("comment" + i, i));
+    }
+    ScriptedSession session = new ScriptedSession(4);
+    new JiraUploadContext(ProgressInfo.createDeaf(), session, units, context).perform();
+    List<String> order = session.getUploadOrder();
+    assertEquals(7, order.size());
+    // units without master wait until the blocks make no progress, as with sequential upload
+    assertEquals("global", order.get(6));
+  }
+
+  public void testIssueUnitDependencies() throws CancelledException {
+    CreateIssueUnit parent = TestIssueUnits.newIssue(1, null);
+    CreateIssueUnit subtask = TestIssueUnits.newIssue(2, parent);
+    CreateIssueUnit other = TestIssueUnits.newIssue(5, null);
+    UploadUnit toSubtask = TestMoveUnits.moveToSubtask(TestIssueUnits.submitted(3, 30, "T-3"), parent);
+    UploadUnit changeParent = TestMoveUnits.moveParentType(TestIssueUnits.submitted(4, 40, "T-4"), parent, 7);
+    List<UploadUnit> units = Collections15.<UploadUnit>arrayList(subtask, toSubtask, changeParent, other, parent);
+    final UploadOrder order = UploadOrder.prepare(units, ProgressInfo.createDeaf());
+    final List<String> log = Collections.synchronizedList(Collections15.<String>arrayList());
+    order.uploadRound(new ScriptedSession(4), 4, null, new UploadOrder.BlockUpload() {
+      @Override
+      public void upload(Collection<UploadUnit> blockUnits) {
+        long master = blockUnits.iterator().next().getMasterItems().iterator().next().getFirst();
+        log.add("start " + master);
+        sleep(20);
+        for (UploadUnit unit : blockUnits) order.onUnitComplete(unit);
+        log.add("end " + master);
+      }
+    });
+    assertEquals(5, order.getCompleteCount());
+    int parentEnd = log.indexOf("end 1");
+    for (int item = 2; item <= 4; item++) assertTrue(log.toString(), parentEnd < log.indexOf("start " + item));
+    // independent issues are uploaded concurrently
+    assertTrue(log.toString(), log.indexOf("start 5") < parentEnd);
+  }
+
+  /**
+   * Uploads three new issues with comments, a new subtask of each, a link of two issues and a unit that requires a unit
+   * of another issue without declared dependency, so it completes in a later round
+   */
+  private static TestContext upload(ScriptedSession session) throws CancelledException {
+    TestContext context = new TestContext();
+    List<UploadUnit> units = Collections15.arrayList();
+    for (int i = 1; i <= 3; i++) {
+      FakeUnit create = context.unit("create" + i, i);
+      units.add(create);
+      units.add(context.unit("comment" + i, i, create));
+      FakeUnit subtask = context.unit("subtask" + i, 10 + i, create);
+      subtask.myDependencies.add(create);
+      units.add(subtask);
+      units.add(context.unit("comment1" + i, 10 + i, subtask));
+    }
+    FakeUnit link = context.unit("link", -1, context.myUnits.get("create1"), context.myUnits.get("create2"));
+    link.myMasters.add(Pair.create(1L, "1"));
+    link.myMasters.add(Pair.create(2L, "2"));
+    units.add(link);
+    units.add(context.unit("late", 4, context.myUnits.get("comment11")));
+
+    new JiraUploadContext(ProgressInfo.createDeaf(), session, units, context).perform();
+    for (UploadUnit unit : units) assertTrue(String.valueOf(unit), unit.isDone() || context.isFailed(unit));
+    return context;
+  }
+
+  /**
+   * Replies to issue updates, the updates of the conflict units get "409 Conflict"
+   */
+  private static class ScriptedSession extends RestSession {
+    private final int myMaxConcurrent;
+    private final Set<String> myConflicts;
+    private final List<String> myUploaded = Collections.synchronizedList(Collections15.<String>arrayList());
+    private final AtomicInteger myRunning = new AtomicInteger();
+    private final AtomicInteger myMaxRunning = new AtomicInteger();
+
+    public ScriptedSession(int maxConcurrent, String ... conflicts) {
+      super("http://localhost/", null, null, null, null, null);
+      myMaxConcurrent = maxConcurrent;
+      myConflicts = Collections15.hashSet(conflicts);
+    }
+
+    @Override
+    public int getMaxConcurrentRequests() {
+      return myMaxConcurrent;
+    }
+
+    public List<String> getUploadOrder() {
+      synchronized (myUploaded) {
+        return Collections15.arrayList(myUploaded);
+      }
+    }
+
+    /**
+     * @return sorted names of successfully uploaded units
+     */
+    public List<String> getUploaded() {
+      List<String> result;
+      synchronized (myUploaded) {
+        result = Collections15.arrayList(myUploaded);
+      }
+      Collections.sort(result);
+      return result;
+    }
+
+    @Override
+    public RestResponse restPut(String path, @NotNull JSONObject request, RequestPolicy policy) {
+      myMaxRunning.accumulateAndGet(myRunning.incrementAndGet(), Math::max);
+      sleep(10);
+      myRunning.decrementAndGet();
+      String name = path.substring(path.lastIndexOf('/') + 1);
+      String url = getRestResourcePath(path);
+      if (myConflicts.contains(name)) return StringResponse.create(url, 409, "Changed on server");
+      myUploaded.add(name);
+      return StringResponse.create(url, 204, "");
+    }
+  }
+
+  private static class TestContext extends UploadContextImpl {
+    private final Map<String, FakeUnit> myUnits = Collections15.hashMap();
+    private final List<String> myViolations = Collections.synchronizedList(Collections15.<String>arrayList());
+
+    public TestContext() {
+      super(Collections15.<Long, UploadUnit.Factory>hashMap(), null, null, new SetHolderModel<SyncProblem>(), LongArray.create(1, 2, 3, 4));
+    }
+
+    public FakeUnit unit(String name, long master, FakeUnit ... requires) {
+      FakeUnit unit = new FakeUnit(this, name, requires);
+      if (master > 0) unit.myMasters.add(Pair.create(master, String.valueOf(master)));
+      myUnits.put(name, unit);
+      return unit;
+    }
+
+    @Override
+    public synchronized void addMessage(UploadUnit unit, UploadProblem message) {
+      // no connection to create UI problems
+    }
+
+    @Override
+    EntityTransaction createTransaction() {
+      return new EntityTransaction();
+    }
+  }
+
+  private static class FakeUnit implements UploadUnit {
+    private final TestContext myContext;
+    private final String myName;
+    private final List<FakeUnit> myRequires;
+    private final List<Pair<Long, String>> myMasters = Collections15.arrayList();
+    private final List<UploadUnit> myDependencies = Collections15.arrayList();
+    private volatile boolean myDone;
+
+    public FakeUnit(TestContext context, String name, FakeUnit[] requires) {
+      myContext = context;
+      myName = name;
+      myRequires = Arrays.asList(requires);
+    }
+
+    @Override
+    public boolean isDone() {
+      return myDone;
+    }
+
+    @Override
+    public boolean isSurelyFailed(UploadContext context) {
+      return false;
+    }
+
+    @Override
+    public Map<UploadUnit, ConnectorException> loadServerState(RestSession session, EntityTransaction transaction, UploadContext context, TypedKey<Boolean> purpose) {
+      return null;
+    }
+
+    @Override
+    public UploadProblem onInitialStateLoaded(EntityTransaction transaction, UploadContext context) {
+      return null;
+    }
+
+    @Override
+    public Collection<? extends UploadProblem> perform(RestSession session, UploadContext context) throws ConnectorException {
+      for (FakeUnit required : myRequires) {
+        if (required.isDone()) continue;
+        // a link is uploaded after blocks of linked issues
+        if (myDependencies.contains(required) || myMasters.size() > 1) myContext.myViolations.add(myName + " before " + required.myName);
+        return UploadProblem.notNow(required.myName).toCollection();
+      }
+      RestResponse response = session.restPut("api/2/issue/" + myName, new JSONObject(), RequestPolicy.FAILURE_ONLY);
+      if (response.getStatusCode() == 409) return UploadProblem.conflict(myMasters.get(0).getFirst(), "Conflict", null).toCollection();
+      myDone = true;
+      return Collections.emptyList();
+    }
+
+    @Override
+    public void finishUpload(EntityTransaction transaction, PostUploadContext context) {
+    }
+
+    @Override
+    public Collection<Pair<Long, String>> getMasterItems() {
+      return myMasters;
+    }
+
+    @NotNull
+    @Override
+    public Collection<? extends UploadUnit> getDependencies() {
+      return myDependencies;
+    }
+
+    @Override
+    public String toString() {
+      return myName;
+    }
+  }
+}
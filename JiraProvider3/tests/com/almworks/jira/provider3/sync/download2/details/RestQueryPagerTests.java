@@ -0,0 +1,214 @@
+package com.almworks.jira.provider3.sync.download2.details;
+
+import com.almworks.api.connector.ConnectorException;
+import com.almworks.items.entities.api.collector.transaction.EntityTransaction;
+import com.almworks.jira.provider3.StringResponse;
+import com.almworks.jira.provider3.sync.download2.process.TestIssueWrite;
+import com.almworks.jira.provider3.sync.download2.process.util.ProgressInfo;
+import com.almworks.restconnector.RequestPolicy;
+import com.almworks.restconnector.RestResponse;
+import com.almworks.restconnector.RestSession;
+import com.almworks.restconnector.jql.JqlQuery;
+import com.almworks.restconnector.json.sax.JSONCollector;
+import com.almworks.spi.provider.util.ServerSyncPoint;
+import com.almworks.util.exec.LongEventQueue;
+import com.almworks.util.tests.BaseTestCase;
+import org.almworks.util.Collections15;
+import org.json.simple.JSONObject;
+import org.json.simple.JSONValue;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RestQueryPagerTests extends BaseTestCase {
+  private static final int PAGE_SIZE = 10;
+  private static final long BASE_TIME = 1500000000000L;
+
+  private TestIssueWrite myWrite;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    LongEventQueue.installToContext();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    if (myWrite != null) myWrite.dispose();
+    myWrite = null;
+    LongEventQueue.removeFromContext();
+    super.tearDown();
+  }
+
+  public void testPrefetchKeepsPageOrder() throws ConnectorException {
+    ScriptedSession sequential = new ScriptedSession(95, -1);
+    List<Integer> sequentialIds = loadIds(sequential, 0);
+    ScriptedSession prefetch = new ScriptedSession(95, -1);
+    List<Integer> prefetchIds = loadIds(prefetch, 2);
+
+    List<Integer> expected = Collections15.arrayList();
+    for (int id = 1; id <= 95; id++) expected.add(id);
+    assertEquals(expected, sequentialIds);
+    assertEquals(expected, prefetchIds);
+    List<Integer> starts = Collections15.arrayList(0, 10, 20, 30, 40, 50, 60, 70, 80, 90);
+    assertEquals(starts, sequential.getStarts());
+    assertEquals(starts, prefetch.getStarts());
+    assertEquals(1, prefetch.myMaxRunning.get());
+  }
+
+  public void testFailureMidway() {
+    ScriptedSession session = new ScriptedSession(95, 40);
+    List<Integer> ids = Collections15.arrayList();
+    try {
+      loadIds(session, 2, ids);
+      fail("Failure is not reported");
+    } catch (ConnectorException e) {
+      // expected
+    }
+    assertEquals(40, ids.size());
+    assertEquals(Integer.valueOf(40), ids.get(39));
+    // No page is requested after the failed one
+    assertEquals(Collections15.arrayList(0, 10, 20, 30, 40), session.getStarts());
+  }
+
+  public void testWritePipeline() throws ConnectorException {
+    myWrite = new TestIssueWrite();
+    myWrite.setWriteDepth(2);
+    myWrite.addProblems(21);
+    ScriptedSession session = new ScriptedSession(95, -1);
+    loadAndWrite(session);
+    myWrite.flush();
+
+    List<String> expected = Collections15.arrayList();
+    for (int id = 1; id <= 91; id += PAGE_SIZE) {
+      if (id == 21) {
+        expected.add("resolve 21");
+        expected.add("final 21");
+      } else expected.add("write " + id);
+    }
+    assertEquals(expected, myWrite.getLog());
+    assertEquals(Collections15.arrayList(1, 11, 21, 31, 41, 51, 61, 71, 81, 91), myWrite.getProcessed());
+    checkSyncPoint(95);
+    assertEquals(1, session.myMaxRunning.get());
+  }
+
+  public void testWritePipelineFailureMidway() {
+    myWrite = new TestIssueWrite();
+    myWrite.setWriteDepth(2);
+    ScriptedSession session = new ScriptedSession(95, 40);
+    try {
+      loadAndWrite(session);
+      fail("Failure is not reported");
+    } catch (ConnectorException e) {
+      // expected
+    }
+    // Same as RestIssueProcessor.loadQuery does on failure
+    try {
+      myWrite.flush();
+    } catch (ConnectorException e) {
+      fail(e.getMessage());
+    }
+    assertEquals(Collections15.arrayList("write 1", "write 11", "write 21", "write 31"), myWrite.getLog());
+    assertEquals(Collections15.arrayList(1, 11, 21, 31), myWrite.getProcessed());
+    checkSyncPoint(40);
+  }
+
+  private static List<Integer> loadIds(RestSession session, int prefetch) throws ConnectorException {
+    List<Integer> ids = Collections15.arrayList();
+    loadIds(session, prefetch, ids);
+    return ids;
+  }
+
+  private static void loadIds(RestSession session, int prefetch, final List<Integer> ids) throws ConnectorException {
+    final Thread caller = Thread.currentThread();
+    RestQueryPager pager = RestQueryPager.allFields(JqlQuery.EMPTY);
+    pager.setPrefetch(prefetch, null);
+    pager.loadAll(session, JSONCollector.objectConsumer(issue -> {
+      assertSame(caller, Thread.currentThread());
+      ids.add(Integer.parseInt((String) issue.get("id")));
+    }), ProgressInfo.createDeaf(), null, null);
+  }
+
+  /**
+   * Writes every page as a separate transaction, same as {@link RestIssueProcessor} does with the page size transactions
+   */
+  private void loadAndWrite(RestSession session) throws ConnectorException {
+    final EntityTransaction[] transaction = {null};
+    RestQueryPager pager = RestQueryPager.allFields(JqlQuery.EMPTY);
+    pager.setPrefetch(2, myWrite.getSessionLock());
+    pager.loadAll(session, JSONCollector.objectConsumer(issue -> {
+      if (transaction[0] == null) transaction[0] = myWrite.createTransaction();
+      int id = Integer.parseInt((String) issue.get("id"));
+      TestIssueWrite.addIssue(transaction[0], id, getUpdated(id));
+      if (id % PAGE_SIZE != 0) return;
+      try {
+        myWrite.writeTransaction(transaction[0]);
+      } catch (ConnectorException e) {
+        fail(e.getMessage());
+      }
+      transaction[0] = null;
+    }), ProgressInfo.createDeaf(), null, null);
+    if (transaction[0] != null) myWrite.writeTransaction(transaction[0]);
+  }
+
+  /**
+   * Issues are updated in id order
+   */
+  private static long getUpdated(int id) {
+    return BASE_TIME + id * 1000L;
+  }
+
+  private void checkSyncPoint(int latestId) {
+    ServerSyncPoint syncPoint = myWrite.getLatestUpdate();
+    assertNotNull(syncPoint);
+    assertEquals(latestId, syncPoint.getLatestIssueId());
+    assertEquals(getUpdated(latestId), syncPoint.getSyncTime());
+  }
+
+  /**
+   * Replies to search requests with pages of {@link #PAGE_SIZE} issues. Issue ids are 1..total in query order.
+   */
+  private static class ScriptedSession extends RestSession {
+    private final int myTotal;
+    private final int myFailStart;
+    private final List<Integer> myStarts = Collections.synchronizedList(Collections15.<Integer>arrayList());
+    private final AtomicInteger myRunning = new AtomicInteger();
+    private final AtomicInteger myMaxRunning = new AtomicInteger();
+
+    /**
+     * @param failStart the page starting at the index fails. Negative value means all pages are loaded successfully
+     */
+    public ScriptedSession(int total, int failStart) {
+      super("http://localhost/", null, null, null, null, null);
+      myTotal = total;
+      myFailStart = failStart;
+    }
+
+    public List<Integer> getStarts() {
+      synchronized (myStarts) {
+        return Collections15.arrayList(myStarts);
+      }
+    }
+
+    @Override
+    public RestResponse postString(String path, String rawString, RequestPolicy policy) {
+      JSONObject request = (JSONObject) JSONValue.parse(rawString);
+      int start = ((Number) request.get("startAt")).intValue();
+      myStarts.add(start);
+      myMaxRunning.accumulateAndGet(myRunning.incrementAndGet(), Math::max);
+      // Let the caller process the previous page
+      sleep(5);
+      myRunning.decrementAndGet();
+      String url = getRestResourcePath(path);
+      if (start == myFailStart) return StringResponse.create(url, 500, "Server failure");
+      StringBuilder issues = new StringBuilder();
+      for (int id = start + 1; id <= Math.min(start + PAGE_SIZE, myTotal); id++) {
+        if (issues.length() > 0) issues.append(",");
+        issues.append("{\"id\":\"").append(id).append("\",\"key\":\"T-").append(id).append("\"}");
+      }
+      String page = "{\"startAt\":" + start + ",\"maxResults\":" + PAGE_SIZE + ",\"total\":" + myTotal + ",\"issues\":[" + issues + "]}";
+      return StringResponse.create(url, 200, page);
+    }
+  }
+}
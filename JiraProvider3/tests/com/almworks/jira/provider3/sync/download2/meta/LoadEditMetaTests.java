@@ -0,0 +1,149 @@
+package com.almworks.jira.provider3.sync.download2.meta;
+
+import com.almworks.api.connector.ConnectorException;
+import com.almworks.integers.IntArray;
+import com.almworks.items.entities.api.collector.transaction.EntityTransaction;
+import com.almworks.jira.provider3.sync.download2.meta.core.LoadMetaContext;
+import com.almworks.jira.provider3.sync.download2.process.util.ProgressInfo;
+import com.almworks.restconnector.RestSession;
+import com.almworks.util.exec.LongEventQueue;
+import com.almworks.util.tests.BaseTestCase;
+import org.almworks.util.Collections15;
+import org.json.simple.JSONObject;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class LoadEditMetaTests extends BaseTestCase {
+  private static final String FIELDS_A = "{\"fields\":{" +
+    "\"customfield_1\":{\"required\":false,\"name\":\"One\",\"allowedValues\":[{\"id\":\"1\",\"value\":\"a\"}]}," +
+    "\"customfield_2\":{\"required\":true,\"name\":\"Two\"}}}";
+  private static final String FIELDS_B = "{\"fields\":{\"customfield_2\":{\"required\":false,\"name\":\"Two\"}}}";
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    LongEventQueue.installToContext();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    LongEventQueue.removeFromContext();
+    super.tearDown();
+  }
+
+  public void testConcurrentEqualsSequential() throws ConnectorException {
+    RecordingCollector sequential = new RecordingCollector();
+    TestLoadEditMeta sequentialLoad = new TestLoadEditMeta(sequential);
+    sequentialLoad.perform(createSession(1), new EntityTransaction(), ProgressInfo.createDeaf(), createContext());
+    assertEquals(1, sequentialLoad.myMaxRunning.get());
+
+    RecordingCollector concurrent = new RecordingCollector();
+    TestLoadEditMeta concurrentLoad = new TestLoadEditMeta(concurrent);
+    concurrentLoad.perform(createSession(4), new EntityTransaction(), ProgressInfo.createDeaf(), createContext());
+    assertTrue(concurrentLoad.myMaxRunning.get() > 1);
+
+    assertEquals(sequential.myCalls, concurrent.myCalls);
+    assertEquals(10, concurrentLoad.myProbes.get());
+  }
+
+  public void testEqualFieldsProcessedOnce() throws ConnectorException {
+    RecordingCollector collector = new RecordingCollector();
+    new TestLoadEditMeta(collector).perform(createSession(4), new EntityTransaction(), ProgressInfo.createDeaf(), createContext());
+    List<String> expected = Collections15.arrayList(
+      "options customfield_1 10 1", "options customfield_2 10 1",
+      "scope customfield_1 10 2", "scope customfield_2 10 2",
+      "options customfield_2 10 3",
+      "all 10 4",
+      "scope customfield_1 20 1", "scope customfield_2 20 1",
+      "scope customfield_1 20 2", "scope customfield_2 20 2",
+      "scope customfield_2 20 3",
+      "all 20 4");
+    // fields of editmeta come in any order
+    Collections.sort(expected);
+    Collections.sort(collector.myCalls);
+    assertEquals(expected, collector.myCalls);
+  }
+
+  public void testEqualResponsesShareFields() throws ConnectorException {
+    RecordingCollector collector = new RecordingCollector();
+    new TestLoadEditMeta(collector).perform(createSession(4), new EntityTransaction(), ProgressInfo.createDeaf(), createContext());
+    // responses of both projects for the types 1 and 2 are parsed into the same instance
+    assertEquals(4, collector.myFieldOne.size());
+    for (JSONObject field : collector.myFieldOne) assertSame(collector.myFieldOne.get(0), field);
+  }
+
+  private static LoadMetaContext createContext() {
+    ProjectsAndTypes projects = new ProjectsAndTypes();
+    projects.addProject(10, "A", "Project A");
+    projects.addProject(20, "B", "Project B");
+    projects.setProjectTypes(10, IntArray.create(1, 2, 3, 4, 5));
+    projects.setProjectTypes(20, IntArray.create(1, 2, 3, 4, 5));
+    LoadMetaContext context = new LoadMetaContext();
+    context.putLoadedData(LoadRestMeta.PROJECTS, projects);
+    return context;
+  }
+
+  private static RestSession createSession(final int maxConcurrent) {
+    return new RestSession("http://localhost/", null, null, null, null, null) {
+      @Override
+      public int getMaxConcurrentRequests() {
+        return maxConcurrent;
+      }
+    };
+  }
+
+  private static class TestLoadEditMeta extends LoadEditMeta {
+    private final AtomicInteger myRunning = new AtomicInteger();
+    private final AtomicInteger myMaxRunning = new AtomicInteger();
+    private final AtomicInteger myProbes = new AtomicInteger();
+
+    public TestLoadEditMeta(FieldCollector fieldCollector) {
+      super(fieldCollector);
+    }
+
+    @Override
+    String loadEditMeta(RestSession session, int prjId, int typeId) {
+      myMaxRunning.accumulateAndGet(myRunning.incrementAndGet(), Math::max);
+      myProbes.incrementAndGet();
+      // later probes respond sooner, so concurrent responses come in another order
+      sleep(20 - 2 * typeId);
+      myRunning.decrementAndGet();
+      switch (typeId) {
+      // not the same string instance
+      case 1: case 2: return new String(FIELDS_A);
+      case 3: return FIELDS_B;
+      case 4: return ALL_SCOPE;
+      default: return null;
+      }
+    }
+  }
+
+  private static class RecordingCollector extends FieldCollector {
+    private final List<String> myCalls = Collections15.arrayList();
+    private final List<JSONObject> myFieldOne = Collections15.arrayList();
+
+    public RecordingCollector() {
+      super(null);
+    }
+
+    @Override
+    public void processField(String fieldId, JSONObject field, int prjId, int typeId) {
+      myCalls.add("options " + fieldId + " " + prjId + " " + typeId);
+      if ("customfield_1".equals(fieldId)) myFieldOne.add(field);
+    }
+
+    @Override
+    public boolean addFieldScope(String fieldId, JSONObject field, int prjId, int typeId) {
+      myCalls.add("scope " + fieldId + " " + prjId + " " + typeId);
+      if ("customfield_1".equals(fieldId)) myFieldOne.add(field);
+      return true;
+    }
+
+    @Override
+    public void addAllScope(int prjId, int typeId) {
+      myCalls.add("all " + prjId + " " + typeId);
+    }
+  }
+}
@@ -0,0 +1,92 @@
+package com.almworks.jira.provider3.sync.download2.process;
+
+import com.almworks.api.connector.ConnectorException;
+import com.almworks.items.entities.api.collector.transaction.EntityTransaction;
+import com.almworks.spi.provider.util.ServerSyncPoint;
+import com.almworks.util.tests.BaseTestCase;
+import org.almworks.util.Collections15;
+
+import java.util.Collections;
+import java.util.List;
+
+public class DBIssueWriteTests extends BaseTestCase {
+  private static final long BASE_TIME = 1500000000000L;
+  private final List<TestIssueWrite> myWrites = Collections15.arrayList();
+
+  @Override
+  protected void tearDown() throws Exception {
+    for (TestIssueWrite write : myWrites) write.dispose();
+    myWrites.clear();
+    super.tearDown();
+  }
+
+  public void testPipelinedEqualsSequential() throws ConnectorException {
+    TestIssueWrite sequential = createWrite(0);
+    writeAll(sequential, 5);
+    TestIssueWrite pipelined = createWrite(2);
+    writeAll(pipelined, 5);
+
+    List<String> expected = Collections15.arrayList("write 1", "write 4", "write 7", "write 10", "write 13");
+    assertEquals(expected, sequential.getLog());
+    assertEquals(expected, pipelined.getLog());
+    assertEquals(Collections15.arrayList(1, 4, 7, 10, 13), pipelined.getProcessed());
+    assertEquals(sequential.getProcessed(), pipelined.getProcessed());
+    assertEquals(5, pipelined.getLastICN());
+    checkSyncPoint(pipelined, 9);
+    checkSyncPoint(sequential, 9);
+  }
+
+  public void testDeferredAfterProblems() throws ConnectorException {
+    TestIssueWrite write = createWrite(3);
+    write.addProblems(7);
+    writeAll(write, 5);
+    // Transactions submitted after the problem one are written after the problems are resolved
+    assertEquals(Collections15.arrayList("write 1", "write 4", "resolve 7", "final 7", "write 10", "write 13"), write.getLog());
+    assertEquals(Collections15.arrayList(1, 4, 7, 10, 13), write.getProcessed());
+    checkSyncPoint(write, 9);
+  }
+
+  public void testSyncPointFollowsWrittenTransactions() throws ConnectorException {
+    TestIssueWrite write = createWrite(2);
+    write.addProblems(1);
+    for (int i = 0; i < 3; i++) write.writeTransaction(createTransaction(write, 3 * i + 1, 3));
+    // Not confirmed transactions do not affect the sync point
+    assertEquals(Collections.singletonList(1), write.getProcessed());
+    checkSyncPoint(write, 2);
+    write.flush();
+    assertEquals(Collections15.arrayList(1, 4, 7), write.getProcessed());
+    checkSyncPoint(write, 9);
+  }
+
+  private TestIssueWrite createWrite(int depth) {
+    TestIssueWrite write = new TestIssueWrite();
+    write.setWriteDepth(depth);
+    myWrites.add(write);
+    return write;
+  }
+
+  private static void writeAll(TestIssueWrite write, int count) throws ConnectorException {
+    for (int i = 0; i < count; i++) write.writeTransaction(createTransaction(write, 3 * i + 1, 3));
+    write.flush();
+  }
+
+  private static EntityTransaction createTransaction(TestIssueWrite write, int firstId, int count) {
+    EntityTransaction transaction = write.createTransaction();
+    for (int id = firstId; id < firstId + count; id++) TestIssueWrite.addIssue(transaction, id, getUpdated(id));
+    return transaction;
+  }
+
+  /**
+   * Issues are updated out of id order, the issue #9 is the latest updated one
+   */
+  static long getUpdated(int id) {
+    return BASE_TIME + ((id * 7) % 16) * 1000;
+  }
+
+  private static void checkSyncPoint(DBIssueWrite write, int latestId) {
+    ServerSyncPoint syncPoint = write.getLatestUpdate();
+    assertNotNull(syncPoint);
+    assertEquals(latestId, syncPoint.getLatestIssueId());
+    assertEquals(getUpdated(latestId), syncPoint.getSyncTime());
+  }
+}
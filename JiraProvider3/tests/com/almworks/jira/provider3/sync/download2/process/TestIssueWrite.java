@@ -0,0 +1,141 @@
+package com.almworks.jira.provider3.sync.download2.process;
+
+import com.almworks.api.connector.ConnectorException;
+import com.almworks.items.api.DBOperationCancelledException;
+import com.almworks.items.api.DBResult;
+import com.almworks.items.entities.api.collector.transaction.EntityHolder;
+import com.almworks.items.entities.api.collector.transaction.EntityTransaction;
+import com.almworks.items.impl.AbstractHandle;
+import com.almworks.items.sync.DBDrain;
+import com.almworks.items.sync.DownloadProcedure;
+import com.almworks.items.sync.util.identity.DBIdentity;
+import com.almworks.jira.provider3.schema.Jira;
+import com.almworks.jira.provider3.sync.ServerInfo;
+import com.almworks.jira.provider3.sync.schema.ServerIssue;
+import com.almworks.util.tests.BaseTestCase;
+import org.almworks.util.Collections15;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Issue write over a fake DB. The DB executes transactions one by one in a separate thread and logs them as
+ * "write &lt;id&gt;" (the id of the first issue of the transaction). A transaction marked with {@link #addProblems(int)}
+ * fails to resolve its entities once, the resolution is logged as "resolve &lt;id&gt;" and "final &lt;id&gt;".
+ */
+public class TestIssueWrite extends DBIssueWrite {
+  private static final String CONNECTION_ID = "CONN-ECTI-ON_I-D";
+
+  private final ExecutorService myDB = Executors.newSingleThreadExecutor();
+  private final Set<Integer> myProblems = Collections.synchronizedSet(Collections15.<Integer>hashSet());
+  private final List<String> myLog = Collections.synchronizedList(Collections15.<String>arrayList());
+  private final List<Integer> myProcessed = Collections15.arrayList();
+  private long myIcn = 0;
+
+  public TestIssueWrite() {
+    super(null, null, null);
+    addPostTransaction(transaction -> myProcessed.add(getFirstId(transaction)));
+  }
+
+  public void dispose() {
+    myDB.shutdown();
+  }
+
+  /**
+   * Resolution of the transaction which starts with the issue has problems
+   */
+  public void addProblems(int issueId) {
+    myProblems.add(issueId);
+  }
+
+  /**
+   * @return DB log in the order of DB transactions
+   */
+  public List<String> getLog() {
+    synchronized (myLog) {
+      return Collections15.arrayList(myLog);
+    }
+  }
+
+  /**
+   * @return first issue ids of the transactions passed to post-transaction procedures
+   */
+  public List<Integer> getProcessed() {
+    return myProcessed;
+  }
+
+  @Override
+  public EntityTransaction createTransaction() {
+    return ServerInfo.priCreateTransaction(CONNECTION_ID, DBIdentity.fromDBObject(Jira.createConnectionObject(CONNECTION_ID)));
+  }
+
+  public static void addIssue(EntityTransaction transaction, int id, long updated) {
+    EntityHolder issue = transaction.addEntity(ServerIssue.TYPE, ServerIssue.ID, id);
+    issue.setValue(ServerIssue.CREATED, new Date(updated - 1000));
+    issue.setValue(ServerIssue.UPDATED, new Date(updated));
+    issue.setValue(ServerIssue.UPDATED_STRING, String.valueOf(updated));
+  }
+
+  @Override
+  MyDBUpdate createUpdate(final EntityTransaction transaction) {
+    return new MyDBUpdate(transaction, null, null, this) {
+      private volatile Collection<EntityHolder> myUnresolved = null;
+
+      @Override
+      void writeEntities(DBDrain drain) throws DBOperationCancelledException {
+        int id = getFirstId(transaction);
+        if (myProblems.remove(id)) {
+          myUnresolved = transaction.getAllEntities(ServerIssue.TYPE);
+          throw new DBOperationCancelledException();
+        }
+        myLog.add("write " + id);
+      }
+
+      @Override
+      public Collection<EntityHolder> getProblems() {
+        return myUnresolved;
+      }
+    };
+  }
+
+  @Override
+  DBResult<?> writeDownloaded(final DownloadProcedure<DBDrain> procedure) {
+    final AbstractHandle<Object> result = new AbstractHandle<Object>() {};
+    myDB.execute(() -> {
+      // Let the caller go ahead
+      BaseTestCase.sleep(5);
+      try {
+        procedure.write(null);
+      } catch (DBOperationCancelledException e) {
+        result.finished(false);
+        return;
+      }
+      result.setIcn(++myIcn);
+      result.finished(true);
+    });
+    return result;
+  }
+
+  @Override
+  DBResult<?> resolveProblems(final EntityTransaction transaction, Collection<EntityHolder> problems) throws ConnectorException {
+    final int id = getFirstId(transaction);
+    myLog.add("resolve " + id);
+    DBResult<?> result = writeDownloaded(new DownloadProcedure<DBDrain>() {
+      @Override
+      public void write(DBDrain drain) {
+        myLog.add("final " + id);
+      }
+
+      @Override
+      public void onFinished(DBResult<?> result) {
+      }
+    });
+    result.waitForCompletion();
+    return result;
+  }
+
+  private static int getFirstId(EntityTransaction transaction) {
+    return transaction.getAllEntities(ServerIssue.TYPE).get(0).getScalarValue(ServerIssue.ID);
+  }
+}
@@ -0,0 +1,201 @@
+package com.almworks.restconnector;
+
+import com.almworks.util.LogHelper;
+import org.apache.commons.httpclient.util.DateParseException;
+import org.apache.commons.httpclient.util.DateUtil;
+import org.jetbrains.annotations.Nullable;
+
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Limits requests a {@link RestSession} sends to the server.<br>
+ * The number of concurrent requests is controlled by AIMD: the limit is halved each time the server throttles a request
+ * (HTTP 429 or 503) and grows back by one after every "limit" successful requests.<br>
+ * When the server tells when it accepts requests again (Retry-After, or X-RateLimit-Remaining: 0 with X-RateLimit-Reset)
+ * all requests are paused till that time. Otherwise a throttled request is paused with exponential backoff and jitter.<br>
+ * The limiter also collects statistics: current concurrency limit, request rate and number of throttled requests.
+ */
+public class RateLimiter {
+  private static final long BASE_BACKOFF = 2000;
+  private static final long MAX_PAUSE = 5 * 60 * 1000;
+  private static final long RATE_WINDOW = 10000;
+
+  private final int myMaxConcurrency;
+  // Guarded by this
+  private double myConcurrencyLimit;
+  private int myActive = 0;
+  private long myPausedUntil = 0;
+  private long myThrottledCount = 0;
+  private long myRequestCount = 0;
+  private long myWindowStart = System.currentTimeMillis();
+  private int myWindowRequests = 0;
+  private double myRequestRate = 0;
+
+  public RateLimiter(int maxConcurrency) {
+    myMaxConcurrency = Math.max(1, maxConcurrency);
+    myConcurrencyLimit = myMaxConcurrency;
+  }
+
+  /**
+   * Waits till a request may be sent.
+   * @param timeout max time to wait, milliseconds
+   * @return true if the request may be sent, the caller must {@link #release()} it when the request is done.
+   * false if the timeout has elapsed.
+   */
+  public synchronized boolean tryAcquire(long timeout) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + timeout;
+    while (true) {
+      long now = System.currentTimeMillis();
+      long wait;
+      if (now < myPausedUntil) wait = myPausedUntil - now;
+      else if (myActive >= (int) myConcurrencyLimit) wait = deadline - now;
+      else {
+        myActive++;
+        return true;
+      }
+      wait = Math.min(wait, deadline - now);
+      if (wait <= 0) return false;
+      wait(wait);
+    }
+  }
+
+  public synchronized void release() {
+    myActive--;
+    notifyAll();
+  }
+
+  /**
+   * Notifies that the server has processed a request
+   */
+  public void onResponse(RestResponse response) {
+    onSuccess(getRateLimitReset(response));
+  }
+
+  /**
+   * @param resumeAt time when the server accepts requests again, 0 means no pause is required
+   */
+  synchronized void onSuccess(long resumeAt) {
+    countRequest();
+    if (myConcurrencyLimit < myMaxConcurrency) {
+      myConcurrencyLimit = Math.min(myMaxConcurrency, myConcurrencyLimit + 1 / myConcurrencyLimit);
+      notifyAll();
+    }
+    if (resumeAt > 0) pauseUntil(resumeAt);
+  }
+
+  /**
+   * Notifies that the server has throttled a request. Pauses all requests
+   * @param attempt number of the request's previous throttled attempts
+   */
+  public void onThrottled(RestResponse response, int attempt) {
+    long resumeAt = getRetryAfter(response);
+    if (resumeAt <= 0) resumeAt = getRateLimitReset(response);
+    if (resumeAt <= 0) resumeAt = System.currentTimeMillis() + getBackoff(attempt);
+    onThrottled(resumeAt);
+    LogHelper.warning("Request throttled", response.getStatusCode(), attempt, this);
+  }
+
+  synchronized void onThrottled(long resumeAt) {
+    countRequest();
+    myThrottledCount++;
+    myConcurrencyLimit = Math.max(1, myConcurrencyLimit / 2);
+    pauseUntil(resumeAt);
+  }
+
+  /**
+   * @param attempt number of previous attempts
+   * @return time to wait before the next attempt: exponentially growing with random jitter
+   */
+  public static long getBackoff(int attempt) {
+    long backoff = Math.min(MAX_PAUSE, BASE_BACKOFF << Math.min(Math.max(attempt, 0), 16));
+    return backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+  }
+
+  public static boolean isThrottled(int httpCode) {
+    return httpCode == 429 || httpCode == 503;
+  }
+
+  public synchronized int getConcurrencyLimit() {
+    return (int) myConcurrencyLimit;
+  }
+
+  public synchronized long getThrottledCount() {
+    return myThrottledCount;
+  }
+
+  public synchronized long getRequestCount() {
+    return myRequestCount;
+  }
+
+  /**
+   * @return requests per second during the last complete statistics window
+   */
+  public synchronized double getRequestRate() {
+    return myRequestRate;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return String.format("RateLimiter[limit=%.1f/%d, active=%d, rate=%.1f/s, throttled=%d/%d]", myConcurrencyLimit,
+      myMaxConcurrency, myActive, myRequestRate, myThrottledCount, myRequestCount);
+  }
+
+  private void countRequest() {
+    myRequestCount++;
+    myWindowRequests++;
+    long now = System.currentTimeMillis();
+    long elapsed = now - myWindowStart;
+    if (elapsed >= RATE_WINDOW) {
+      myRequestRate = myWindowRequests * 1000.0 / elapsed;
+      myWindowRequests = 0;
+      myWindowStart = now;
+    }
+  }
+
+  private void pauseUntil(long time) {
+    time = Math.min(time, System.currentTimeMillis() + MAX_PAUSE);
+    if (time > myPausedUntil) myPausedUntil = time;
+  }
+
+  /**
+   * @return the time from Retry-After header (either delay in seconds or HTTP date), or 0 if not available
+   */
+  private static long getRetryAfter(RestResponse response) {
+    String value = trim(response.getResponseHeader("Retry-After"));
+    if (value == null) return 0;
+    try {
+      return System.currentTimeMillis() + Math.max(0, Long.parseLong(value)) * 1000;
+    } catch (NumberFormatException e) {
+      try {
+        return DateUtil.parseDate(value).getTime();
+      } catch (DateParseException e1) {
+        LogHelper.debug("Wrong Retry-After", value);
+        return 0;
+      }
+    }
+  }
+
+  /**
+   * @return the time from X-RateLimit-Reset header if no requests remain, or 0
+   */
+  private static long getRateLimitReset(RestResponse response) {
+    if (!"0".equals(trim(response.getResponseHeader("X-RateLimit-Remaining")))) return 0;
+    String reset = trim(response.getResponseHeader("X-RateLimit-Reset"));
+    if (reset == null) return 0;
+    try {
+      return OffsetDateTime.parse(reset).toInstant().toEpochMilli();
+    } catch (DateTimeParseException e) {
+      LogHelper.debug("Wrong X-RateLimit-Reset", reset);
+      return 0;
+    }
+  }
+
+  @Nullable
+  private static String trim(@Nullable String value) {
+    if (value == null) return null;
+    value = value.trim();
+    return value.isEmpty() ? null : value;
+  }
+}
@@ -0,0 +1,105 @@
+package com.almworks.restconnector;
+
+import com.almworks.api.connector.CancelledException;
+import com.almworks.api.connector.ConnectorException;
+import com.almworks.util.LogHelper;
+import com.almworks.util.commons.ProcedureE;
+import com.almworks.util.exec.ThreadGate;
+import com.almworks.util.model.ScalarModel;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayDeque;
+
+/**
+ * Performs session operations in background threads. Not more than the limit operations run at the same time, the limit
+ * never exceeds {@link RestSession#getMaxConcurrentRequests()}.<br>
+ * The operations are started in the submit order. An operation is expected to handle its own failures, if an operation
+ * throws an exception the first one is rethrown by {@link #waitAll(ScalarModel)}.
+ */
+public class RequestScheduler {
+  private final RestSession mySession;
+  private final int myLimit;
+  private final Object myLock = new Object();
+  // Guarded by myLock
+  private final ArrayDeque<ProcedureE<RestSession, ConnectorException>> myQueue = new ArrayDeque<>();
+  private int myRunners = 0;
+  private int myUnfinished = 0;
+  private Exception myFailure = null;
+
+  public RequestScheduler(RestSession session, int limit) {
+    mySession = session;
+    myLimit = Math.max(1, Math.min(limit, session.getMaxConcurrentRequests()));
+  }
+
+  public int getLimit() {
+    return myLimit;
+  }
+
+  public void submit(ProcedureE<RestSession, ConnectorException> operation) {
+    boolean startRunner;
+    synchronized (myLock) {
+      myQueue.addLast(operation);
+      myUnfinished++;
+      startRunner = myRunners < myLimit;
+      if (startRunner) myRunners++;
+    }
+    // Long queue runs tasks one by one in a single thread, each runner needs own thread
+    if (startRunner) ThreadGate.NEW_THREAD.execute(this::runQueue);
+  }
+
+  private void runQueue() {
+    while (true) {
+      ProcedureE<RestSession, ConnectorException> operation;
+      synchronized (myLock) {
+        operation = myQueue.pollFirst();
+        if (operation == null) {
+          myRunners--;
+          return;
+        }
+      }
+      try {
+        operation.invoke(mySession);
+      } catch (ConnectorException | RuntimeException e) {
+        LogHelper.warning("Scheduled operation failed", operation, e);
+        synchronized (myLock) {
+          if (myFailure == null) myFailure = e;
+        }
+      } finally {
+        synchronized (myLock) {
+          myUnfinished--;
+          myLock.notifyAll();
+        }
+      }
+    }
+  }
+
+  /**
+   * Waits until all submitted operations are done.<br>
+   * When the cancel flag is raised, drops not started operations, waits for running ones and throws {@link CancelledException}
+   */
+  public void waitAll(@Nullable ScalarModel<Boolean> cancelFlag) throws ConnectorException {
+    boolean cancelled = false;
+    boolean interrupted = Thread.interrupted();
+    synchronized (myLock) {
+      while (myUnfinished > 0) {
+        if (!cancelled && (interrupted || (cancelFlag != null && Boolean.TRUE.equals(cancelFlag.getValue())))) {
+          cancelled = true;
+          myUnfinished -= myQueue.size();
+          myQueue.clear();
+          continue;
+        }
+        try {
+          myLock.wait(100);
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+      if (interrupted) Thread.currentThread().interrupt();
+      if (cancelled) throw new CancelledException();
+      Exception failure = myFailure;
+      myFailure = null;
+      if (failure instanceof ConnectorException) throw (ConnectorException) failure;
+      if (failure instanceof RuntimeException) throw (RuntimeException) failure;
+    }
+  }
+}
@@ -0,0 +1,83 @@
+package com.almworks.restconnector;
+
+import com.almworks.util.LogHelper;
+import org.almworks.util.Collections15;
+import org.almworks.util.Failure;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Digest of content of responses read while the digest is {@link RestSession#setResponseDigest(ResponseDigest) set} to
+ * a session. Equal digests mean that the same requests got the same responses.<br>
+ * The {@link #getValue() value} does not depend on the order of responses, so requests performed concurrently produce
+ * the same value each time. Methods are thread-safe.
+ */
+public class ResponseDigest {
+  private final List<String> myResponses = Collections15.arrayList();
+
+  /**
+   * @return number of responses read
+   */
+  public synchronized int getResponseCount() {
+    return myResponses.size();
+  }
+
+  /**
+   * @return digest of all responses read so far
+   */
+  @NotNull
+  public String getValue() {
+    List<String> responses;
+    synchronized (this) {
+      responses = Collections15.arrayList(myResponses);
+    }
+    Collections.sort(responses);
+    MessageDigest digest = createDigest();
+    for (String response : responses) digest.update(getBytes(response));
+    return toHex(digest.digest());
+  }
+
+  void addContent(String url, int statusCode, MessageDigest content) {
+    String response = statusCode + " " + url + " " + toHex(content.digest());
+    synchronized (this) {
+      myResponses.add(response);
+    }
+  }
+
+  void addContent(String url, int statusCode, String content) {
+    MessageDigest digest = createDigest();
+    digest.update(getBytes(content));
+    addContent(url, statusCode, digest);
+  }
+
+  static MessageDigest createDigest() {
+    try {
+      return MessageDigest.getInstance("MD5");
+    } catch (NoSuchAlgorithmException e) {
+      LogHelper.error(e);
+      throw new Failure(e);
+    }
+  }
+
+  private static byte[] getBytes(String string) {
+    try {
+      return string.getBytes("UTF-8");
+    } catch (UnsupportedEncodingException e) {
+      throw new Failure(e);
+    }
+  }
+
+  private static String toHex(byte[] bytes) {
+    StringBuilder builder = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes) {
+      builder.append(Character.forDigit((b >> 4) & 0xF, 16));
+      builder.append(Character.forDigit(b & 0xF, 16));
+    }
+    return builder.toString();
+  }
+}
@@ -32,6 +32,8 @@
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.StringReader;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
 import java.util.*;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -46,13 +48,16 @@ public class RestResponse {
   private final String myUrl;
   private final HttpResponseData myData;
   private final RestSession.Request myRequest;
+  @Nullable
+  private final ResponseDigest myDigest;
   private int myStatusCode = 0;
   private String myStringContent;
 
-  public RestResponse(String url, ResponseDumper response, RestSession.Request request) {
+  public RestResponse(String url, ResponseDumper response, RestSession.Request request, @Nullable ResponseDigest digest) {
     myUrl = url;
     myData = response;
     myRequest = request;
+    myDigest = digest;
   }
 
   public RestSession.Request getRequest() {
@@ -87,6 +92,7 @@ public String getString(CharValidator validator) throws ConnectionException {
     } catch (IOException e) {
       throw new ConnectionException(getLastUrl(), "connection failure", e);
     }
+    if (myDigest != null && myStringContent != null) myDigest.addContent(myUrl, getStatusCode(), myStringContent);
     return myStringContent;
   }
 
@@ -147,9 +153,16 @@ public ErrorResponse createErrorResponse() {
     return ErrorResponse.noDetails(new HttpFailureConnectionException(getLastUrl(), getStatusCode(), getStatusText()));
   }
 
+  /**
+   * @return the header value. Header names are case-insensitive
+   */
   public String getResponseHeader(String header) {
     Map<String,String> headers = myData.getResponseHeaders();
-    return headers.get(header);
+    String value = headers.get(header);
+    if (value != null) return value;
+    for (Map.Entry<String, String> entry : headers.entrySet())
+      if (header.equalsIgnoreCase(entry.getKey())) return entry.getValue();
+    return null;
   }
 
   @NotNull
@@ -168,13 +181,32 @@ public void parseJSON(final LocationHandler handler) throws ConnectionException,
     parseJSON(handler, null);
   }
 
+  /**
+   * Parses the content with SAX-like handler. If the content is already {@link #getString() loaded} parses the loaded string,
+   * otherwise parses the content stream.
+   */
   public void parseJSON(final LocationHandler handler, @Nullable final StreamTransferTracker tracker) throws ConnectionException, CannotParseException {
+    if (myStringContent != null) {
+      try {
+        new JSONParser().parse(new StringReader(myStringContent), new LocationHandler.ContentAdapter(handler));
+      } catch (ParseException e) {
+        throw new CannotParseException(getLastUrl(), "cannot parse JSON output", e);
+      } catch (IOException e) {
+        throw new ConnectionException(getLastUrl(), "parser IO failure", e);
+      }
+      return;
+    }
     class Parser implements ProcedureE<InputStream, IOException> {
       private ParseException myException;
+      private MessageDigest myContentDigest;
 
       @Override
       public void invoke(InputStream stream) throws IOException {
         stream = StreamTransferTracker.TrackStream.wrap(stream, tracker);
+        if (myDigest != null) {
+          myContentDigest = ResponseDigest.createDigest();
+          stream = new DigestInputStream(stream, myContentDigest);
+        }
         InputStreamReader reader = new InputStreamReader(stream, myData.getCharset());
         JSONParser parser = new JSONParser();
         try {
@@ -188,6 +220,7 @@ public void invoke(InputStream stream) throws IOException {
       Parser reader = new Parser();
       myData.readStream(reader);
       if (reader.myException != null) throw new CannotParseException(getLastUrl(), "cannot parse JSON output", reader.myException);
+      if (reader.myContentDigest != null) myDigest.addContent(myUrl, getStatusCode(), reader.myContentDigest);
     } catch (IOException e) {
       throw new ConnectionException(getLastUrl(), "parser IO failure", e);
     }
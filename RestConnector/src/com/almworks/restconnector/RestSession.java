@@ -9,10 +9,12 @@
 import com.almworks.http.errors.SNIErrorHandler;
 import com.almworks.jira.connector2.JiraCredentialsRequiredException;
 import com.almworks.jira.connector2.JiraEnv;
+import com.almworks.util.Env;
 import com.almworks.util.LogHelper;
 import com.almworks.util.LogPrivacyPolizei;
 import com.almworks.util.collections.UserDataHolder;
 import com.almworks.util.commons.Condition;
+import com.almworks.util.http.PooledHttpConnectionManager;
 import org.almworks.util.*;
 import org.apache.commons.httpclient.*;
 import org.apache.commons.httpclient.methods.ByteArrayRequestEntity;
@@ -34,6 +36,11 @@
 
 public class RestSession {
   public static final TypedKey<List<Cookie>> SESSION_COOKIES = TypedKey.create("sessionIdCookie");
+  /**
+   * Number of times a request is resent when the server throttles it
+   * @see RateLimiter
+   */
+  private static final int MAX_THROTTLED_RETRIES = Env.getInteger("jiraclient.throttle.retries", 0, 20, 4);
 
   private final String myBaseUrl;
   private final HttpMaterial myMaterial;
@@ -41,9 +48,20 @@ public class RestSession {
   private final List<HttpDumper.DumpSpec> myDumperSpec;
   private final SNIErrorHandler mySNIErrorHandler;
   private final UserDataHolder myUserData = new UserDataHolder();
-  private JiraCredentials myCredentials;
+  private volatile JiraCredentials myCredentials;
   private final UserDataHolder mySessionData;
+  /**
+   * Guards session initialization and login. Jobs running in different threads wait while one of them logs in.
+   */
+  private final Object myLoginLock = new Object();
+  // Guarded by myLoginLock
   private boolean myInitStarted = false;
+  /**
+   * Incremented each time the session is logged in again. Guarded by myLoginLock
+   */
+  private int myLoginGeneration = 0;
+  private volatile RateLimiter myRateLimiter;
+  private volatile ResponseDigest myResponseDigest;
 
   public RestSession(String baseUrl, HttpMaterial material, @Nullable List<HttpDumper.DumpSpec> dumperSpec,
                      @NotNull JiraCredentials credentials, UserDataHolder sessionData, SNIErrorHandler sniErrorHandler) {
@@ -60,9 +78,12 @@ void updateSessionCookies() {
     List<Cookie> sessionIdCookies = mySessionData.getUserData(SESSION_COOKIES);
     if (sessionIdCookies != null) {
       HttpState state = getHttpClient().getState();
-      state.clearCookies();
-      for (Cookie cookie : sessionIdCookies)
-        state.addCookie(new Cookie(cookie.getDomain(), cookie.getName(), cookie.getValue(), cookie.getPath(), cookie.getExpiryDate(), cookie.getSecure()));
+      //noinspection SynchronizationOnLocalVariableOrMethodParameter
+      synchronized (state) { // Other threads must not see the state without cookies
+        state.clearCookies();
+        for (Cookie cookie : sessionIdCookies)
+          state.addCookie(new Cookie(cookie.getDomain(), cookie.getName(), cookie.getValue(), cookie.getPath(), cookie.getExpiryDate(), cookie.getSecure()));
+      }
     }
   }
 
@@ -101,6 +122,45 @@ public UserDataHolder getUserData() {
     return myUserData;
   }
 
+  /**
+   * @return max number of requests the session can perform at the same time.<br>
+   * Each thread performs its requests over own HTTP connection, the number of connections to the server is limited by the
+   * connection manager. If the manager has single connection, concurrent requests are not supported.
+   * @see RequestScheduler
+   */
+  public int getMaxConcurrentRequests() {
+    HttpConnectionManager manager = getHttpClient().getHttpConnectionManager();
+    return manager instanceof PooledHttpConnectionManager ? ((PooledHttpConnectionManager) manager).getMaxHostConnections() : 1;
+  }
+
+  /**
+   * @return the limiter which controls requests sent by this session. Provides request statistics
+   */
+  @NotNull
+  public RateLimiter getRateLimiter() {
+    RateLimiter limiter = myRateLimiter;
+    if (limiter == null) {
+      synchronized (this) {
+        limiter = myRateLimiter;
+        if (limiter == null) myRateLimiter = limiter = new RateLimiter(getMaxConcurrentRequests());
+      }
+    }
+    return limiter;
+  }
+
+  /**
+   * Sets the digest which collects content of responses read from now on. Responses of requests performed by the session
+   * from any thread are collected, the digest is not changed by responses obtained before it is set.
+   * @param digest the digest to collect responses or null to stop collecting
+   * @return the previous digest
+   */
+  @Nullable
+  public ResponseDigest setResponseDigest(@Nullable ResponseDigest digest) {
+    ResponseDigest previous = myResponseDigest;
+    myResponseDigest = digest;
+    return previous;
+  }
+
   public String getRestResourcePath(String path) {
     return myBaseUrl + "rest/" + path;
   }
@@ -217,29 +277,60 @@ private void preparePerform(Job job) {
   }
 
   private void ensureInitialized() throws ConnectorException {
-    if (myInitStarted) return;
-    updateSessionCookies();
-    myInitStarted = true;
-    myCredentials.initNewSession(this);
+    synchronized (myLoginLock) {
+      if (myInitStarted) return;
+      updateSessionCookies();
+      myInitStarted = true;
+      myCredentials.initNewSession(this);
+    }
+  }
+
+  private int getLoginGeneration() {
+    synchronized (myLoginLock) {
+      return myLoginGeneration;
+    }
+  }
+
+  /**
+   * Logs in again, unless another job has already done it since the generation was obtained
+   */
+  private void reLogin(int loginGeneration) throws ConnectorException {
+    synchronized (myLoginLock) {
+      if (loginGeneration != myLoginGeneration) return;
+      myCredentials.ensureLoggedIn(this, false);
+      myLoginGeneration++;
+    }
   }
 
   private void doPerform(Job job) throws ConnectorException {
     ensureInitialized();
-    if (job.isNeedsLogin()) myCredentials.ensureLoggedIn(this, true);
+    if (job.isNeedsLogin()) {
+      synchronized (myLoginLock) {
+        myCredentials.ensureLoggedIn(this, true);
+      }
+    }
     int attempt = 0;
+    int throttled = 0;
     boolean forcedLogin = false;
+    RateLimiter limiter = getRateLimiter();
     while (true) {
       ensureInitialized();
+      int loginGeneration = getLoginGeneration();
       RestResponse response;
       try {
-        job.load();
-        response = job.ensureHasResponse();
+        acquire(limiter, job);
+        try {
+          job.load();
+          response = job.ensureHasResponse();
+        } finally {
+          limiter.release();
+        }
       } catch (ConnectionException e) {
         int httpCode = HttpFailureConnectionException.findHttpCode(e);
         if (!shouldRetry(attempt, httpCode, job)) throw e;
         LogHelper.warning("Waiting before retry", attempt, httpCode, job);
         try {
-          Thread.sleep(2000); // Wait before retry, see https://jira.almworks.com/browse/JCO-1537
+          Thread.sleep(RateLimiter.getBackoff(attempt)); // Wait before retry, see https://jira.almworks.com/browse/JCO-1537
         } catch (InterruptedException interrupted) {
           Thread.currentThread().interrupt();
           LogHelper.warning(interrupted);
@@ -248,6 +339,14 @@ private void doPerform(Job job) throws ConnectorException {
         attempt++;
         continue;
       }
+      if (RateLimiter.isThrottled(response.getStatusCode())) {
+        limiter.onThrottled(response, throttled);
+        if (throttled >= MAX_THROTTLED_RETRIES) return;
+        throttled++;
+        job.releaseResponse();
+        continue;
+      }
+      limiter.onResponse(response);
       if (!job.isAuxiliary()) {
         JiraCredentials.ResponseCheck check = myCredentials.checkResponse(this, job, response);
         if (check.isFailed()) {
@@ -255,7 +354,7 @@ private void doPerform(Job job) throws ConnectorException {
           job.releaseResponse();
           if (forcedLogin) throw new JiraCredentialsRequiredException();
           forcedLogin = true;
-          myCredentials.ensureLoggedIn(this, false);
+          reLogin(loginGeneration);
           continue;
         }
       }
@@ -282,12 +381,29 @@ public JiraCredentials getCredentials() {
   public void updateCredentials(@NotNull JiraCredentials credentials) {
     //noinspection ConstantConditions
     if (credentials != null && credentials != myCredentials) {
-      LogHelper.warning("Credentials updated", myBaseUrl, myCredentials, credentials);
-      myCredentials = credentials;
-      HttpState state = getHttpClient().getState();
-      state.clearCookies();
-      myUserData.putUserData(SESSION_COOKIES, null);
-      myInitStarted = false;
+      synchronized (myLoginLock) {
+        LogHelper.warning("Credentials updated", myBaseUrl, myCredentials, credentials);
+        myCredentials = credentials;
+        HttpState state = getHttpClient().getState();
+        state.clearCookies();
+        myUserData.putUserData(SESSION_COOKIES, null);
+        myInitStarted = false;
+        myLoginGeneration++;
+      }
+    }
+  }
+
+  /**
+   * Waits till the limiter allows to send the request
+   */
+  private void acquire(RateLimiter limiter, Job job) throws ConnectionException {
+    try {
+      while (!limiter.tryAcquire(500)) myMaterial.checkCancelled();
+    } catch (HttpCancelledException e) {
+      throw new ConnectionException(job.getRequest().getUrl(), "cancelled", e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ConnectionException(job.getRequest().getUrl(), "interrupted", e);
     }
   }
 
@@ -384,7 +500,7 @@ public boolean isAccepted(Integer value) {
       } finally {
         if (!success) requestDumper.finishWithException(null);
       }
-      return new RestResponse(myUrl, requestDumper.responseObtained(response), this);
+      return new RestResponse(myUrl, requestDumper.responseObtained(response), this, session.myResponseDigest);
     }
 
     private void dumpRequest(RequestDumper dumper) {
@@ -534,7 +650,7 @@ public static class Job {
     private RestResponse myResponse;
     /**
      * Marked as auxiliary. The auxiliary jobs does not perform any session checks.<br>
-     * The session performs only one primary job at a time. And may perform one nested auxiliary job.
+     * The session performs only one primary job at a time in a thread. And may perform one nested auxiliary job.
      */
     private boolean myAuxiliary;
     /** Reason why the job is failed */
@@ -0,0 +1,28 @@
+package com.almworks.restconnector.json.sax;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Selects object entries collected by {@link JSONCollector}. Values of skipped entries are not built, so a consumer
+ * that needs only some entries of a large object does not allocate the whole tree.
+ */
+public interface EntryFilter {
+  EntryFilter ALL = new EntryFilter() {
+    @Override
+    public EntryFilter enter(String key) {
+      return this;
+    }
+
+    @Override
+    public String toString() {
+      return "ALL";
+    }
+  };
+
+  /**
+   * @param key object entry name
+   * @return filter for entries of objects inside the entry value, null if the entry has to be skipped
+   */
+  @Nullable
+  EntryFilter enter(String key);
+}
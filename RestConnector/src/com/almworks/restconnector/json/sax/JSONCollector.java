@@ -17,11 +17,13 @@
 /**
  * Collects subtree into JSON object presentation.It allows to:<br>
  * process subtrees in DOM-style during SAX-like processing. User target constructor parameter<br>
- * Peek the value and hold it for later processing. Use {@link #getObject()}.
+ * Peek the value and hold it for later processing. Use {@link #getObject()}.<br>
+ * Collects only entries accepted by the {@link EntryFilter filter}, other entries are skipped without building their values.
  */
 public class JSONCollector implements LocationHandler {
   @Nullable
   private final Procedure<Object> myTarget;
+  private final EntryFilter myFilter;
   private final ArrayList<Builder> myBuilderStack = Collections15.arrayList();
   private Object myObject = null;
   private final Builder myDefault = new Builder() {
@@ -31,11 +33,11 @@ public Builder start(LocationHandler.Location what, String key, Object value) th
       case OBJECT:
         JSONObject object = new JSONObject();
         myObject = object;
-        return new BuildObject(object);
+        return new BuildObject(object, myFilter);
       case ARRAY:
         JSONArray array = new JSONArray();
         myObject = array;
-        return new BuildArray(array);
+        return new BuildArray(array, myFilter);
       case PRIMITIVE:
         myObject = value;
         return null;
@@ -45,17 +47,29 @@ public Builder start(LocationHandler.Location what, String key, Object value) th
   };
 
   public JSONCollector(@Nullable Procedure<Object> target) {
+    this(target, EntryFilter.ALL);
+  }
+
+  public JSONCollector(@Nullable Procedure<Object> target, EntryFilter filter) {
     myTarget = target;
+    myFilter = filter;
   }
 
   public static JSONCollector objectConsumer(final Procedure<JSONObject> consumer) {
+    return objectConsumer(consumer, EntryFilter.ALL);
+  }
+
+  /**
+   * @param filter selects entries of the consumed objects
+   */
+  public static JSONCollector objectConsumer(final Procedure<JSONObject> consumer, EntryFilter filter) {
     return new JSONCollector(new Procedure<Object>() {
       @Override
       public void invoke(Object arg) {
         JSONObject object = JSONKey.ROOT_OBJECT.getValue(arg);
         if (object != null) consumer.invoke(object);
       }
-    });
+    }, filter);
   }
 
   /**
@@ -235,33 +249,45 @@ private interface Builder {
     Builder start(LocationHandler.Location what, String key, Object value) throws ParseException;
   }
 
+  /**
+   * Consumes a skipped value and everything nested in it
+   */
+  private static final Builder SKIP = new Builder() {
+    @Override
+    public Builder start(LocationHandler.Location what, String key, Object value) {
+      return what == LocationHandler.Location.PRIMITIVE ? null : this;
+    }
+
+    @Override
+    public String toString() {
+      return "SKIP";
+    }
+  };
+
   private static class BuildObject implements Builder {
     private final JSONObject myObject;
+    private final EntryFilter myFilter;
 
-    private BuildObject(JSONObject object) {
+    private BuildObject(JSONObject object, EntryFilter filter) {
       myObject = object;
+      myFilter = filter;
     }
 
     @Override
     public Builder start(LocationHandler.Location what, String key, Object value) {
-      if (what == LocationHandler.Location.ENTRY) return new PutValue(myObject, key);
-      switch (what) {
-      case ENTRY:
-        break;
-      case ARRAY:
-        break;
-      case PRIMITIVE:
-        break;
-      }
-      return null;  //To change body of implemented methods use File | Settings | File Templates.
+      if (what != LocationHandler.Location.ENTRY) return null;
+      EntryFilter filter = myFilter.enter(key);
+      return filter != null ? new PutValue(myObject, key, filter) : SKIP;
     }
   }
 
   private static class BuildArray implements Builder {
     private final JSONArray myArray;
+    private final EntryFilter myFilter;
 
-    public BuildArray(JSONArray array) {
+    public BuildArray(JSONArray array, EntryFilter filter) {
       myArray = array;
+      myFilter = filter;
     }
 
     @Override
@@ -272,12 +298,12 @@ public Builder start(LocationHandler.Location what, String key, Object value) th
       case OBJECT:
         JSONObject object = new JSONObject();
         addValue = object;
-        next = new BuildObject(object);
+        next = new BuildObject(object, myFilter);
         break;
       case ARRAY:
         JSONArray array = new JSONArray();
         addValue = array;
-        next = new BuildArray(array);
+        next = new BuildArray(array, myFilter);
         break;
       case PRIMITIVE:
         addValue = value;
@@ -294,10 +320,12 @@ public Builder start(LocationHandler.Location what, String key, Object value) th
   private static class PutValue implements Builder {
     private final JSONObject myTarget;
     private final String myKey;
+    private final EntryFilter myFilter;
 
-    private PutValue(JSONObject target, String key) {
+    private PutValue(JSONObject target, String key, EntryFilter filter) {
       myTarget = target;
       myKey = key;
+      myFilter = filter;
     }
 
     @Override
@@ -308,12 +336,12 @@ public Builder start(LocationHandler.Location what, String key, Object value) th
       case OBJECT:
         JSONObject object = new JSONObject();
         putValue = object;
-        next = new BuildObject(object);
+        next = new BuildObject(object, myFilter);
         break;
       case ARRAY:
         JSONArray array = new JSONArray();
         putValue = array;
-        next = new BuildArray(array);
+        next = new BuildArray(array, myFilter);
         break;
       case PRIMITIVE:
         putValue = value;
@@ -0,0 +1,60 @@
+package com.almworks.restconnector;
+
+import com.almworks.util.tests.BaseTestCase;
+
+public class RateLimiterTests extends BaseTestCase {
+  public void testConcurrencyLimit() throws InterruptedException {
+    RateLimiter limiter = new RateLimiter(4);
+    for (int i = 0; i < 4; i++) assertTrue(limiter.tryAcquire(0));
+    assertFalse(limiter.tryAcquire(10));
+    limiter.release();
+    assertTrue(limiter.tryAcquire(0));
+    for (int i = 0; i < 4; i++) limiter.release();
+  }
+
+  public void testAdditiveIncreaseMultiplicativeDecrease() throws InterruptedException {
+    RateLimiter limiter = new RateLimiter(8);
+    limiter.onThrottled(0);
+    assertEquals(4, limiter.getConcurrencyLimit());
+    limiter.onThrottled(0);
+    limiter.onThrottled(0);
+    limiter.onThrottled(0);
+    assertEquals(1, limiter.getConcurrencyLimit());
+    assertEquals(4, limiter.getThrottledCount());
+
+    assertTrue(limiter.tryAcquire(0));
+    assertFalse(limiter.tryAcquire(10));
+    limiter.release();
+
+    limiter.onSuccess(0);
+    assertEquals(2, limiter.getConcurrencyLimit());
+    for (int i = 0; i < 100; i++) limiter.onSuccess(0);
+    assertEquals(8, limiter.getConcurrencyLimit());
+    assertEquals(105, limiter.getRequestCount());
+    assertEquals(4, limiter.getThrottledCount());
+  }
+
+  public void testPause() throws InterruptedException {
+    RateLimiter limiter = new RateLimiter(2);
+    limiter.onThrottled(System.currentTimeMillis() + 300);
+    long start = System.currentTimeMillis();
+    assertFalse(limiter.tryAcquire(50));
+    assertTrue(limiter.tryAcquire(5000));
+    assertTrue(System.currentTimeMillis() - start >= 250);
+    limiter.release();
+
+    limiter.onSuccess(System.currentTimeMillis() + 200);
+    assertFalse(limiter.tryAcquire(0));
+  }
+
+  public void testBackoff() {
+    for (int attempt = 0; attempt < 5; attempt++) {
+      long max = 2000L << attempt;
+      for (int i = 0; i < 20; i++) {
+        long backoff = RateLimiter.getBackoff(attempt);
+        assertTrue(attempt + " " + backoff, backoff >= max / 2 && backoff <= max);
+      }
+    }
+    assertTrue(RateLimiter.getBackoff(100) <= 5 * 60 * 1000);
+  }
+}
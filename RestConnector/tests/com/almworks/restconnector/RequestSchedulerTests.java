@@ -0,0 +1,98 @@
+package com.almworks.restconnector;
+
+import com.almworks.api.connector.CancelledException;
+import com.almworks.api.connector.ConnectorException;
+import com.almworks.jira.connector2.JiraInternalException;
+import com.almworks.util.exec.LongEventQueue;
+import com.almworks.util.model.BasicScalarModel;
+import com.almworks.util.tests.BaseTestCase;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RequestSchedulerTests extends BaseTestCase {
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    LongEventQueue.installToContext();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    LongEventQueue.removeFromContext();
+    super.tearDown();
+  }
+
+  public void testLimit() throws ConnectorException {
+    RequestScheduler scheduler = new RequestScheduler(createSession(3), 10);
+    assertEquals(3, scheduler.getLimit());
+    assertEquals(1, new RequestScheduler(createSession(3), 1).getLimit());
+    assertEquals(1, new RequestScheduler(createSession(1), 10).getLimit());
+
+    final AtomicInteger running = new AtomicInteger();
+    final AtomicInteger maxRunning = new AtomicInteger();
+    final AtomicInteger done = new AtomicInteger();
+    for (int i = 0; i < 20; i++)
+      scheduler.submit(session -> {
+        int current = running.incrementAndGet();
+        maxRunning.accumulateAndGet(current, Math::max);
+        sleep(5);
+        running.decrementAndGet();
+        done.incrementAndGet();
+      });
+    scheduler.waitAll(null);
+    assertEquals(20, done.get());
+    assertTrue(String.valueOf(maxRunning.get()), maxRunning.get() <= 3);
+    assertTrue(String.valueOf(maxRunning.get()), maxRunning.get() > 1);
+  }
+
+  public void testFailure() throws ConnectorException {
+    RequestScheduler scheduler = new RequestScheduler(createSession(2), 2);
+    final AtomicInteger done = new AtomicInteger();
+    scheduler.submit(session -> {
+      throw new JiraInternalException("failure");
+    });
+    for (int i = 0; i < 5; i++) scheduler.submit(session -> done.incrementAndGet());
+    try {
+      scheduler.waitAll(null);
+      fail();
+    } catch (JiraInternalException e) {
+      // expected
+    }
+    assertEquals(5, done.get());
+    scheduler.waitAll(null);
+  }
+
+  public void testCancel() throws InterruptedException {
+    RequestScheduler scheduler = new RequestScheduler(createSession(1), 1);
+    final CountDownLatch started = new CountDownLatch(1);
+    final AtomicInteger done = new AtomicInteger();
+    scheduler.submit(session -> {
+      started.countDown();
+      long finish = System.currentTimeMillis() + 200;
+      while (System.currentTimeMillis() < finish) Thread.yield();
+      done.incrementAndGet();
+    });
+    for (int i = 0; i < 5; i++) scheduler.submit(session -> done.incrementAndGet());
+    assertTrue(started.await(5, TimeUnit.SECONDS));
+    try {
+      scheduler.waitAll(BasicScalarModel.createWithValue(true, false));
+      fail();
+    } catch (CancelledException e) {
+      // expected
+    } catch (ConnectorException e) {
+      fail(e.getMessage());
+    }
+    assertEquals(1, done.get());
+  }
+
+  private static RestSession createSession(final int maxConcurrent) {
+    return new RestSession("http://localhost/", null, null, null, null, null) {
+      @Override
+      public int getMaxConcurrentRequests() {
+        return maxConcurrent;
+      }
+    };
+  }
+}
@@ -0,0 +1,42 @@
+package com.almworks.restconnector;
+
+import com.almworks.util.tests.BaseTestCase;
+
+import java.security.MessageDigest;
+
+public class ResponseDigestTests extends BaseTestCase {
+  public void testOrder() {
+    ResponseDigest digest1 = new ResponseDigest();
+    digest1.addContent("a", 200, "{\"a\":1}");
+    digest1.addContent("b", 200, "{\"b\":2}");
+    ResponseDigest digest2 = new ResponseDigest();
+    digest2.addContent("b", 200, "{\"b\":2}");
+    digest2.addContent("a", 200, "{\"a\":1}");
+    assertEquals(2, digest1.getResponseCount());
+    assertEquals(digest1.getValue(), digest2.getValue());
+    assertEquals(new ResponseDigest().getValue(), new ResponseDigest().getValue());
+  }
+
+  public void testChanges() {
+    String value = digest("a", 200, "{\"a\":1}");
+    assertEquals(value, digest("a", 200, "{\"a\":1}"));
+    assertFalse(value.equals(digest("a", 200, "{\"a\":2}")));
+    assertFalse(value.equals(digest("b", 200, "{\"a\":1}")));
+    assertFalse(value.equals(digest("a", 404, "{\"a\":1}")));
+    assertFalse(value.equals(new ResponseDigest().getValue()));
+  }
+
+  public void testStream() throws Exception {
+    ResponseDigest digest = new ResponseDigest();
+    MessageDigest content = ResponseDigest.createDigest();
+    content.update("{\"a\":1}".getBytes("UTF-8"));
+    digest.addContent("a", 200, content);
+    assertEquals(digest("a", 200, "{\"a\":1}"), digest.getValue());
+  }
+
+  private static String digest(String url, int status, String content) {
+    ResponseDigest digest = new ResponseDigest();
+    digest.addContent(url, status, content);
+    return digest.getValue();
+  }
+}
@@ -0,0 +1,88 @@
+package com.almworks.restconnector.json.sax;
+
+import com.almworks.util.commons.Procedure;
+import com.almworks.util.tests.BaseTestCase;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+/**
+ * Compares collecting whole issues of a large search response with collecting only requested fields. The number of
+ * collected entries shows how many JSON values are not allocated.<br>
+ * All tests should finish in several seconds
+ */
+public class JSONCollectorPerformanceTests extends BaseTestCase {
+  private static final int ISSUES = 2000;
+  private static final EntryFilter ISSUE_FILTER = new EntryFilter() {
+    private final EntryFilter myFields = new EntryFilter() {
+      @Override
+      public EntryFilter enter(String key) {
+        return key.equals("summary") || key.equals("status") ? ALL : null;
+      }
+    };
+
+    @Override
+    public EntryFilter enter(String key) {
+      return key.equals("fields") ? myFields : key.equals("id") || key.equals("key") ? ALL : null;
+    }
+  };
+
+  public void testSearchResponse() throws ParseException {
+    String response = createResponse();
+    // warm up
+    parse(response, EntryFilter.ALL);
+    parse(response, ISSUE_FILTER);
+
+    long fullStart = System.currentTimeMillis();
+    int fullCount = parse(response, EntryFilter.ALL);
+    long fullTime = System.currentTimeMillis() - fullStart;
+    long filteredStart = System.currentTimeMillis();
+    int filteredCount = parse(response, ISSUE_FILTER);
+    long filteredTime = System.currentTimeMillis() - filteredStart;
+    System.out.println("Response: " + response.length() / 1024 + "KB, " + ISSUES + " issues. Collected entries: all "
+      + fullCount + " in " + fullTime + "ms, filtered " + filteredCount + " in " + filteredTime + "ms");
+    assertTrue(filteredCount * 5 < fullCount);
+  }
+
+  /**
+   * @return number of collected object entries
+   */
+  private static int parse(String response, EntryFilter filter) throws ParseException {
+    final int[] count = {0};
+    JSONCollector issues = JSONCollector.objectConsumer(new Procedure<JSONObject>() {
+      @Override
+      public void invoke(JSONObject issue) {
+        count[0] += countEntries(issue);
+      }
+    }, filter);
+    new JSONParser().parse(response, new LocationHandler.ContentAdapter(PeekArrayElement.entryArray("issues", issues)), true);
+    return count[0];
+  }
+
+  private static int countEntries(Object value) {
+    int count = 0;
+    if (value instanceof JSONObject) {
+      for (Object entry : ((JSONObject) value).values()) count += 1 + countEntries(entry);
+    } else if (value instanceof Iterable) {
+      for (Object element : (Iterable<?>) value) count += countEntries(element);
+    }
+    return count;
+  }
+
+  private static String createResponse() {
+    StringBuilder json = new StringBuilder("{\"startAt\":0,\"total\":").append(ISSUES).append(",\"issues\":[");
+    for (int i = 0; i < ISSUES; i++) {
+      if (i > 0) json.append(',');
+      json.append("{\"id\":\"").append(10000 + i).append("\",\"key\":\"TEST-").append(i)
+        .append("\",\"self\":\"http://jira/rest/api/2/issue/").append(10000 + i).append("\",\"fields\":{")
+        .append("\"summary\":\"Summary of issue ").append(i).append("\",")
+        .append("\"status\":{\"id\":\"1\",\"name\":\"Open\"},");
+      for (int f = 0; f < 20; f++)
+        json.append("\"customfield_").append(f).append("\":{\"value\":\"Option ").append(f).append("\",\"id\":\"").append(f).append("\"},");
+      json.append("\"progress\":{\"progress\":0,\"total\":0}},\"renderedFields\":{\"description\":\"<p>");
+      for (int r = 0; r < 20; r++) json.append("Rendered description text. ");
+      json.append("</p>\"}}");
+    }
+    return json.append("]}").toString();
+  }
+}
@@ -60,6 +60,35 @@ public void visit(Location what, boolean start, @Nullable String key, @Nullable
     assertEquals(2, countNull[0]);
   }
 
+  public void testFilter() throws ParseException {
+    final EntryFilter fields = new EntryFilter() {
+      @Override
+      public EntryFilter enter(String key) {
+        return key.startsWith("known") ? ALL : null;
+      }
+    };
+    EntryFilter filter = new EntryFilter() {
+      @Override
+      public EntryFilter enter(String key) {
+        return "fields".equals(key) ? fields : "id".equals(key) ? ALL : null;
+      }
+    };
+    JSONCollector collector = new JSONCollector(null, filter);
+    parse("{'id' : 1, 'expand' : {'a' : [1, {'b' : 2}]}, " +
+      "'fields' : {'known1' : {'x' : [{'y' : 1}]}, 'other' : [[1], {'z' : []}], 'known2' : 'v'}, 'self' : 'url'}", collector);
+    JSONObject object = collector.getJsonObject();
+    assertEquals(2, object.size());
+    assertEquals(1l, object.get("id"));
+    JSONObject fieldValues = (JSONObject) object.get("fields");
+    assertEquals(2, fieldValues.size());
+    assertEquals("v", fieldValues.get("known2"));
+    JSONArray x = (JSONArray) ((JSONObject) fieldValues.get("known1")).get("x");
+    assertEquals(1l, ((JSONObject) x.get(0)).get("y"));
+
+    JSONArray array = parse(JSONArray.class, "[{'id' : 1, 'other' : 2}]");
+    assertEquals(2, ((JSONObject) array.get(0)).size());
+  }
+
   @NotNull
   private <T> T parse(Class<T> expectedClass, String json) throws ParseException {
     JSONCollector collector = new JSONCollector(null);
@@ -19,6 +19,10 @@ public class HttpClientProviderImpl implements HttpClientProvider {
   private static final int SOCKET_TIMEOUT = getSocketTimeout();
   private static final String IP_RESOLUTION_POSITIVE_CACHE_SECONDS = "60";
   private static final String IP_RESOLUTION_NEGATIVE_CACHE_SECONDS = "10";
+  /**
+   * Max number of requests to the same host the client performs at the same time
+   */
+  private static final int MAX_HOST_CONNECTIONS = Env.getInteger("http.max.host.connections", 1, 16, 4);
 
   private static int getSocketTimeout() {
     int timeout = DEFAULT_TIMEOUT;
@@ -49,7 +53,7 @@ public HttpClient createHttpClient() {
     installProtocols();
     installCookiePolicy();
     installNetworkParameters();
-    MyHttpClient httpClient = new MyHttpClient();
+    MyHttpClient httpClient = new MyHttpClient(MAX_HOST_CONNECTIONS);
     httpClient.watchProxy(myHttpProxyInfo);
     HttpConnectionManagerParams params = httpClient.getHttpConnectionManager().getParams();
     params.setConnectionTimeout(SOCKET_TIMEOUT);
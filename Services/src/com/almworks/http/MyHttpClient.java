@@ -6,6 +6,7 @@
 import com.almworks.util.collections.ChangeListener;
 import com.almworks.util.exec.ThreadGate;
 import com.almworks.util.http.ExtendedHttpConnectionManager;
+import com.almworks.util.http.PooledHttpConnectionManager;
 import org.almworks.util.Log;
 import org.almworks.util.Util;
 import org.almworks.util.detach.Lifecycle;
@@ -27,8 +28,8 @@ public class MyHttpClient extends HttpClient {
   private boolean myUseProxy = false;
   private boolean myUseProxyAuth = false;
 
-  public MyHttpClient() {
-    super(new ExtendedHttpConnectionManager());
+  public MyHttpClient(int maxHostConnections) {
+    super(new PooledHttpConnectionManager(maxHostConnections));
     myProxyInfo = HttpProxyInfo.NO_PROXY;
     refreshProxyInfo();
   }
@@ -0,0 +1,203 @@
+package com.almworks.util.http;
+
+import org.almworks.util.Log;
+import org.almworks.util.RuntimeInterruptedException;
+import org.apache.commons.httpclient.HostConfiguration;
+import org.apache.commons.httpclient.HttpConnection;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Connection manager that allows several threads to use the same HttpClient. Each thread gets own connection, not more
+ * than maxHostConnections connections to the same host are used at the same time.<br>
+ * A thread owns a connection until it is released. Like {@link ExtendedHttpConnectionManager} does with its single
+ * connection, a thread that asks for a connection again gets the connection it already owns, and the previous response
+ * is dropped.<br>
+ * {@link #closeConnection()} closes all connections (both idle and used), so it still cancels running requests.
+ */
+public class PooledHttpConnectionManager extends ExtendedHttpConnectionManager {
+  /**
+   * If a thread waits for a connection longer, a connection above the limit is opened. This prevents deadlock when
+   * all connections are held by threads that are waiting for something the waiting thread is doing.
+   */
+  private static final long MAX_WAIT = 30000;
+
+  private final int myMaxHostConnections;
+  // Guarded by this
+  private final List<Entry> myEntries = new ArrayList<Entry>();
+
+  public PooledHttpConnectionManager(int maxHostConnections) {
+    myMaxHostConnections = Math.max(1, maxHostConnections);
+  }
+
+  public int getMaxHostConnections() {
+    return myMaxHostConnections;
+  }
+
+  /**
+   * The timeout is ignored (same as {@link org.apache.commons.httpclient.SimpleHttpConnectionManager} does).
+   */
+  public HttpConnection getConnectionWithTimeout(HostConfiguration hostConfiguration, long timeout) {
+    Thread thread = Thread.currentThread();
+    HttpConnection own;
+    synchronized (this) {
+      Entry entry = findOwned(thread);
+      own = entry != null ? entry.myConnection : null;
+    }
+    // May release the connection, so do it before the connection is reused
+    if (own != null) finishLastResponse(own);
+    long waitStart = System.currentTimeMillis();
+    synchronized (this) {
+      while (true) {
+        Entry entry = findOwned(thread);
+        if (entry == null) {
+          reclaimAbandoned();
+          boolean overLimit = System.currentTimeMillis() - waitStart >= MAX_WAIT;
+          if (overLimit || countUsed(hostConfiguration) < myMaxHostConnections) {
+            if (overLimit) Log.warn("Connection limit exceeded " + hostConfiguration);
+            entry = findFree(hostConfiguration);
+            if (entry == null) entry = findFree(null);
+            if (entry == null) {
+              entry = new Entry(new ExtendedHttpConnection(hostConfiguration));
+              entry.myConnection.setHttpConnectionManager(this);
+              entry.myConnection.getParams().setDefaults(getParams());
+              myEntries.add(entry);
+            }
+          }
+        }
+        if (entry != null) {
+          entry.myOwner = thread;
+          entry.myIdleSince = Long.MAX_VALUE;
+          configure(entry.myConnection, hostConfiguration);
+          return entry.myConnection;
+        }
+        try {
+          wait(1000);
+        } catch (InterruptedException e) {
+          throw new RuntimeInterruptedException(e);
+        }
+      }
+    }
+  }
+
+  public void releaseConnection(HttpConnection conn) {
+    finishLastResponse(conn);
+    synchronized (this) {
+      for (Entry entry : myEntries) {
+        if (entry.myConnection == conn) {
+          entry.myOwner = null;
+          entry.myIdleSince = System.currentTimeMillis();
+          notifyAll();
+          return;
+        }
+      }
+    }
+    Log.debug("Unknown connection released " + conn);
+  }
+
+  public void closeConnection() {
+    List<HttpConnection> connections = new ArrayList<HttpConnection>();
+    synchronized (this) {
+      for (Entry entry : myEntries) connections.add(entry.myConnection);
+    }
+    for (HttpConnection connection : connections) {
+      try {
+        connection.close();
+      } catch (Exception e) {
+        // ignore
+      }
+    }
+  }
+
+  public void closeIdleConnections(long idleTimeout) {
+    long maxIdleTime = System.currentTimeMillis() - idleTimeout;
+    List<HttpConnection> idle = new ArrayList<HttpConnection>();
+    synchronized (this) {
+      for (Iterator<Entry> it = myEntries.iterator(); it.hasNext(); ) {
+        Entry entry = it.next();
+        if (entry.myOwner == null && entry.myIdleSince <= maxIdleTime) {
+          idle.add(entry.myConnection);
+          it.remove();
+        }
+      }
+    }
+    for (HttpConnection connection : idle) connection.close();
+  }
+
+  private Entry findOwned(Thread thread) {
+    for (Entry entry : myEntries) if (entry.myOwner == thread) return entry;
+    return null;
+  }
+
+  /**
+   * @param hostConfiguration required host, null means any
+   */
+  private Entry findFree(HostConfiguration hostConfiguration) {
+    for (Entry entry : myEntries) {
+      if (entry.myOwner != null) continue;
+      if (hostConfiguration == null || isSameHost(hostConfiguration, entry.myConnection)) return entry;
+    }
+    return null;
+  }
+
+  private int countUsed(HostConfiguration hostConfiguration) {
+    int count = 0;
+    for (Entry entry : myEntries)
+      if (entry.myOwner != null && isSameHost(hostConfiguration, entry.myConnection)) count++;
+    return count;
+  }
+
+  /**
+   * Threads may die without releasing their connection (when the last response is not read)
+   */
+  private void reclaimAbandoned() {
+    for (Entry entry : myEntries) {
+      if (entry.myOwner != null && !entry.myOwner.isAlive()) {
+        entry.myOwner = null;
+        entry.myConnection.setLastResponseInputStream(null);
+        entry.myConnection.close();
+      }
+    }
+  }
+
+  private static boolean isSameHost(HostConfiguration hostConfiguration, HttpConnection connection) {
+    return hostConfiguration.hostEquals(connection) && hostConfiguration.proxyEquals(connection);
+  }
+
+  private static void configure(HttpConnection connection, HostConfiguration hostConfiguration) {
+    if (isSameHost(hostConfiguration, connection)) return;
+    if (connection.isOpen()) connection.close();
+    connection.setHost(hostConfiguration.getHost());
+    connection.setPort(hostConfiguration.getPort());
+    connection.setProtocol(hostConfiguration.getProtocol());
+    connection.setLocalAddress(hostConfiguration.getLocalAddress());
+    connection.setProxyHost(hostConfiguration.getProxyHost());
+    connection.setProxyPort(hostConfiguration.getProxyPort());
+  }
+
+  private static void finishLastResponse(HttpConnection connection) {
+    InputStream lastResponse = connection.getLastResponseInputStream();
+    if (lastResponse != null) {
+      connection.setLastResponseInputStream(null);
+      try {
+        lastResponse.close();
+      } catch (IOException e) {
+        connection.close();
+      }
+    }
+  }
+
+  private static class Entry {
+    private final HttpConnection myConnection;
+    private Thread myOwner;
+    private long myIdleSince = Long.MAX_VALUE;
+
+    private Entry(HttpConnection connection) {
+      myConnection = connection;
+    }
+  }
+}
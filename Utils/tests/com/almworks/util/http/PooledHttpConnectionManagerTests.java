@@ -0,0 +1,85 @@
+package com.almworks.util.http;
+
+import com.almworks.util.tests.BaseTestCase;
+import org.apache.commons.httpclient.HostConfiguration;
+import org.apache.commons.httpclient.HttpConnection;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class PooledHttpConnectionManagerTests extends BaseTestCase {
+  private static final HostConfiguration HOST_A = createHost("a.example.com");
+  private static final HostConfiguration HOST_B = createHost("b.example.com");
+
+  public void testThreadReusesOwnConnection() {
+    PooledHttpConnectionManager manager = new PooledHttpConnectionManager(2);
+    HttpConnection connection = manager.getConnectionWithTimeout(HOST_A, 0);
+    assertTrue(connection instanceof ExtendedHttpConnection);
+    assertSame(manager, connection.getHttpConnectionManager());
+    assertSame(connection, manager.getConnectionWithTimeout(HOST_A, 0));
+    manager.releaseConnection(connection);
+    assertSame(connection, manager.getConnectionWithTimeout(HOST_A, 0));
+    // Other host, own connection is reconfigured
+    HttpConnection other = manager.getConnectionWithTimeout(HOST_B, 0);
+    assertSame(connection, other);
+    assertEquals("b.example.com", other.getHost());
+  }
+
+  public void testHostLimit() throws InterruptedException {
+    final PooledHttpConnectionManager manager = new PooledHttpConnectionManager(1);
+    HttpConnection first = manager.getConnectionWithTimeout(HOST_A, 0);
+    final AtomicReference<HttpConnection> second = new AtomicReference<HttpConnection>();
+    final AtomicReference<HttpConnection> otherHost = new AtomicReference<HttpConnection>();
+    final CountDownLatch otherDone = new CountDownLatch(1);
+    Thread thread = new Thread() {
+      public void run() {
+        otherHost.set(manager.getConnectionWithTimeout(HOST_B, 0));
+        manager.releaseConnection(otherHost.get());
+        otherDone.countDown();
+        second.set(manager.getConnectionWithTimeout(HOST_A, 0));
+      }
+    };
+    thread.start();
+    assertTrue(otherDone.await(5, TimeUnit.SECONDS));
+    assertNotSame(first, otherHost.get());
+    thread.join(300);
+    assertTrue(thread.isAlive());
+    assertNull(second.get());
+
+    manager.releaseConnection(first);
+    thread.join(5000);
+    assertFalse(thread.isAlive());
+    assertNotNull(second.get());
+    assertEquals("a.example.com", second.get().getHost());
+  }
+
+  public void testReclaimAbandoned() throws InterruptedException {
+    final PooledHttpConnectionManager manager = new PooledHttpConnectionManager(1);
+    final AtomicReference<HttpConnection> abandoned = new AtomicReference<HttpConnection>();
+    Thread thread = new Thread() {
+      public void run() {
+        abandoned.set(manager.getConnectionWithTimeout(HOST_A, 0));
+      }
+    };
+    thread.start();
+    thread.join(5000);
+    assertSame(abandoned.get(), manager.getConnectionWithTimeout(HOST_A, 0));
+  }
+
+  public void testCloseIdleConnections() {
+    PooledHttpConnectionManager manager = new PooledHttpConnectionManager(2);
+    HttpConnection connection = manager.getConnectionWithTimeout(HOST_A, 0);
+    manager.closeIdleConnections(0);
+    assertSame(connection, manager.getConnectionWithTimeout(HOST_A, 0));
+    manager.releaseConnection(connection);
+    manager.closeIdleConnections(0);
+    assertNotSame(connection, manager.getConnectionWithTimeout(HOST_A, 0));
+  }
+
+  private static HostConfiguration createHost(String host) {
+    HostConfiguration configuration = new HostConfiguration();
+    configuration.setHost(host, 80, "http");
+    return configuration;
+  }
+}